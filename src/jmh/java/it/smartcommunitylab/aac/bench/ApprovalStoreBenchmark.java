@@ -0,0 +1,98 @@
+package it.smartcommunitylab.aac.bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.oauth2.provider.approval.Approval;
+import org.springframework.util.FileSystemUtils;
+
+import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcApprovalStore;
+
+/*
+ * Approval lookups on a large table, embedded H2 on disk
+ *
+ * The table is seeded in a single statement with a fixed layout: every user
+ * approved 5 scopes for 10 clients, clients are spread evenly. Lookups pick
+ * random users and clients, so that most reads miss the database cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ApprovalStoreBenchmark {
+
+    private static final int SCOPES = 5;
+    private static final int CLIENTS_PER_USER = 10;
+
+    @Param({ "100000", "10000000" })
+    private long approvals;
+
+    @Param({ "1000" })
+    private int clients;
+
+    private File directory;
+    private AutoJdbcApprovalStore approvalStore;
+    private long users;
+
+    @Setup
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("aac-approvals-").toFile();
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:file:" + new File(directory, "approvals").getAbsolutePath(), "sa", "");
+        approvalStore = new AutoJdbcApprovalStore(dataSource);
+
+        // row x: user x / 50, client (user * 10 + k) % clients, scope x % 5
+        int rows = SCOPES * CLIENTS_PER_USER;
+        users = approvals / rows;
+        new JdbcTemplate(dataSource).update(
+                "INSERT INTO oauth_approvals (expiresAt,status,lastModifiedAt,userId,clientId,scope) "
+                        + "SELECT DATEADD('DAY', 30, CURRENT_TIMESTAMP), 'APPROVED', CURRENT_TIMESTAMP, "
+                        + "CONCAT('subject-', CAST(X / ? AS VARCHAR)), "
+                        + "CONCAT('client-', CAST(MOD((X / ?) * ? + MOD(X / ?, ?), ?) AS VARCHAR)), "
+                        + "CONCAT('scope-', CAST(MOD(X, ?) AS VARCHAR)) "
+                        + "FROM SYSTEM_RANGE(0, ?)",
+                rows, rows, CLIENTS_PER_USER, SCOPES, CLIENTS_PER_USER, clients, SCOPES, users * rows - 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    // the lookup done at every authorization and token request
+    @Benchmark
+    public Collection<Approval> getApprovals() {
+        long user = ThreadLocalRandom.current().nextLong(users);
+        int k = ThreadLocalRandom.current().nextInt(CLIENTS_PER_USER);
+        return approvalStore.getApprovals("subject-" + user, "client-" + ((user * CLIENTS_PER_USER + k) % clients));
+    }
+
+    @Benchmark
+    public Collection<Approval> findUserApprovals() {
+        return approvalStore.findUserApprovals("subject-" + ThreadLocalRandom.current().nextLong(users));
+    }
+
+    @Benchmark
+    public Collection<Approval> findClientApprovals() {
+        return approvalStore.findClientApprovals("client-" + ThreadLocalRandom.current().nextInt(clients));
+    }
+}
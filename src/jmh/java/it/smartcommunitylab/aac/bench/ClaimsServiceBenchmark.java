@@ -0,0 +1,113 @@
+package it.smartcommunitylab.aac.bench;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.smartcommunitylab.aac.Config;
+import it.smartcommunitylab.aac.claims.DefaultClaimsService;
+import it.smartcommunitylab.aac.claims.InMemoryExtractorsRegistry;
+import it.smartcommunitylab.aac.claims.LocalGraalExecutionService;
+import it.smartcommunitylab.aac.claims.ScopeClaimsExtractorProvider;
+import it.smartcommunitylab.aac.core.ClientDetails;
+import it.smartcommunitylab.aac.core.UserDetails;
+import it.smartcommunitylab.aac.core.service.UserService;
+import it.smartcommunitylab.aac.model.User;
+
+/*
+ * User claims for a client requesting scopes from services in many realms
+ *
+ * Users are served from memory, so that the numbers reflect extractors, claim
+ * merging and the optional claim mapping function.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClaimsServiceBenchmark {
+
+    @Param({ "1", "10" })
+    private int realms;
+
+    @Param({ "5" })
+    private int services;
+
+    @Param({ "5" })
+    private int scopes;
+
+    @Param({ "10" })
+    private int roles;
+
+    @Param({ "false", "true" })
+    private boolean mapping;
+
+    private DefaultClaimsService claimsService;
+    private UserDetails userDetails;
+    private ClientDetails client;
+    private List<String> requestedScopes;
+
+    @Setup
+    public void setup() throws Exception {
+        List<String> realmIds = Fixtures.realms(realms);
+        List<ScopeClaimsExtractorProvider> providers = Fixtures.services(realmIds, services, scopes);
+
+        // one user view per realm, as resolved by the user service
+        Map<String, User> users = new HashMap<>();
+        for (String realm : realmIds) {
+            users.put(realm, Fixtures.user("subject-0", realm, realmIds, roles));
+        }
+
+        UserService userService = mock(UserService.class);
+        when(userService.getUser(any(UserDetails.class), anyString()))
+                .thenAnswer(i -> users.get(i.<String>getArgument(1)));
+
+        userDetails = mock(UserDetails.class);
+        when(userDetails.getSubjectId()).thenReturn("subject-0");
+        when(userDetails.getRealm()).thenReturn(realmIds.get(0));
+
+        claimsService = new DefaultClaimsService(new InMemoryExtractorsRegistry(providers, Collections.emptyList()));
+        claimsService.setUserService(userService);
+        claimsService.setExecutionService(new LocalGraalExecutionService());
+        claimsService.afterPropertiesSet();
+
+        client = Fixtures.clientDetails("client-0", realmIds.get(0));
+        if (!mapping) {
+            client.setHookFunctions(null);
+        }
+
+        Set<String> serviceScopes = Fixtures.serviceScopes(providers);
+        requestedScopes = new ArrayList<>(serviceScopes);
+        requestedScopes.add(Config.SCOPE_PROFILE);
+        requestedScopes.add(Config.SCOPE_USER_ROLE);
+    }
+
+    @Benchmark
+    public Map<String, Serializable> getUserClaims() throws Exception {
+        return claimsService.getUserClaims(userDetails, client.getRealm(), client, requestedScopes,
+                Collections.emptyList(), Collections.emptyMap());
+    }
+}
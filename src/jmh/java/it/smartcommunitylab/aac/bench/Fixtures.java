@@ -0,0 +1,257 @@
+package it.smartcommunitylab.aac.bench;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import it.smartcommunitylab.aac.claims.Claim;
+import it.smartcommunitylab.aac.claims.ClaimsSet;
+import it.smartcommunitylab.aac.claims.DefaultClaimsSet;
+import it.smartcommunitylab.aac.claims.ScopeClaimsExtractor;
+import it.smartcommunitylab.aac.claims.ScopeClaimsExtractorProvider;
+import it.smartcommunitylab.aac.claims.model.StringClaim;
+import it.smartcommunitylab.aac.core.ClientDetails;
+import it.smartcommunitylab.aac.model.RealmRole;
+import it.smartcommunitylab.aac.model.User;
+import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+
+/*
+ * Fixture generators for benchmarks
+ *
+ * Builds deterministic sets of realms, services with scopes, roles and clients
+ * shaped like a multi-tenant deployment. Sizes are driven by benchmark params.
+ */
+public class Fixtures {
+
+    public static final String CLAIM_MAPPING = "function claimMapping(claims) {\n"
+            + "  claims['groups'] = (claims['roles'] || []).map(function(r) { return r.toUpperCase(); });\n"
+            + "  claims['custom'] = { 'realm': claims['realm'], 'count': Object.keys(claims).length };\n"
+            + "  return claims;\n"
+            + "}";
+
+    public static List<String> realms(int count) {
+        List<String> realms = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            realms.add("realm-" + i);
+        }
+
+        return realms;
+    }
+
+    public static Set<String> scopes(String serviceId, int count) {
+        Set<String> scopes = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            scopes.add(serviceId + ".scope-" + i);
+        }
+
+        return scopes;
+    }
+
+    /*
+     * Services, one extractor provider per service answering to its scopes
+     */
+    public static List<ScopeClaimsExtractorProvider> services(Collection<String> realms, int services,
+            int scopes) {
+        List<ScopeClaimsExtractorProvider> providers = new ArrayList<>();
+        for (String realm : realms) {
+            for (int i = 0; i < services; i++) {
+                String serviceId = realm + ".service-" + i;
+                providers.add(new ServiceExtractorProvider(realm, serviceId, scopes(serviceId, scopes)));
+            }
+        }
+
+        return providers;
+    }
+
+    public static Set<String> serviceScopes(List<ScopeClaimsExtractorProvider> providers) {
+        return providers.stream()
+                .flatMap(p -> p.getScopes().stream())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /*
+     * Users with roles in every realm
+     */
+    public static User user(String subjectId, String realm, Collection<String> realms, int roles) {
+        User user = new User(subjectId, realm);
+        user.setRealm(realm);
+        user.setUsername("user-" + subjectId);
+        user.setEmail(subjectId + "@example.org");
+
+        List<RealmRole> rr = new ArrayList<>();
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        for (String r : realms) {
+            for (int i = 0; i < roles; i++) {
+                rr.add(new RealmRole(r, "role-" + i));
+                authorities.add(new SimpleGrantedAuthority(r + ":ROLE_" + i));
+            }
+        }
+
+        user.setRealmRoles(rr);
+        user.setAuthorities(authorities);
+        return user;
+    }
+
+    /*
+     * Clients
+     */
+    public static OAuth2ClientDetails client(String clientId, String realm, Set<String> scopes) {
+        OAuth2ClientDetails client = new OAuth2ClientDetails();
+        client.setClientId(clientId);
+        client.setClientSecret("secret-" + clientId);
+        client.setName(clientId);
+        client.setRealm(realm);
+        client.setScope(scopes);
+        client.setResourceIds(Collections.emptySet());
+        client.setAuthorizedGrantTypes(new HashSet<>(
+                Arrays.asList("authorization_code", "refresh_token", "client_credentials")));
+        client.setRegisteredRedirectUris(Collections.singleton("http://localhost/callback"));
+        client.setHookFunctions(Collections.singletonMap("claimMapping", CLAIM_MAPPING));
+        return client;
+    }
+
+    public static ClientDetails clientDetails(String clientId, String realm) {
+        ClientDetails client = new ClientDetails(clientId, realm, "oauth2", Collections.emptyList());
+        client.setHookFunctions(Collections.singletonMap("claimMapping", CLAIM_MAPPING));
+        return client;
+    }
+
+    public static OAuth2Authentication authentication(OAuth2ClientDetails client, String subjectId,
+            Set<String> scopes) {
+        OAuth2Request request = new OAuth2Request(
+                Collections.singletonMap("client_id", client.getClientId()), client.getClientId(),
+                Collections.emptyList(), true, scopes, client.getResourceIds(),
+                "http://localhost/callback", Collections.singleton("code"), new HashMap<>());
+
+        UsernamePasswordAuthenticationToken userAuth = new UsernamePasswordAuthenticationToken(
+                subjectId, null, Collections.singleton(new SimpleGrantedAuthority("ROLE_USER")));
+
+        return new OAuth2Authentication(request, userAuth);
+    }
+
+    /*
+     * Configuration maps as stored by entities
+     */
+    public static Map<String, Serializable> configMap(int size) {
+        Map<String, Serializable> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            switch (i % 4) {
+            case 0:
+                map.put("key" + i, "value-" + i);
+                break;
+            case 1:
+                map.put("flag" + i, i % 3 == 0);
+                break;
+            case 2:
+                map.put("count" + i, i * 100);
+                break;
+            default:
+                map.put("list" + i, new ArrayList<>(Arrays.asList("a" + i, "b" + i, "c" + i)));
+            }
+        }
+
+        return map;
+    }
+
+    /*
+     * Extractors
+     */
+    public static class ServiceExtractorProvider implements ScopeClaimsExtractorProvider {
+        private final String resourceId;
+        private final Set<String> scopes;
+        private final ScopeClaimsExtractor extractor;
+
+        public ServiceExtractorProvider(String realm, String resourceId, Set<String> scopes) {
+            this.resourceId = resourceId;
+            this.scopes = scopes;
+            this.extractor = new ServiceExtractor(realm, resourceId, scopes);
+        }
+
+        @Override
+        public String getResourceId() {
+            return resourceId;
+        }
+
+        @Override
+        public Collection<String> getScopes() {
+            return scopes;
+        }
+
+        @Override
+        public ScopeClaimsExtractor getExtractor(String scope) {
+            return scopes.contains(scope) ? extractor : null;
+        }
+    }
+
+    public static class ServiceExtractor implements ScopeClaimsExtractor {
+        private final String realm;
+        private final String resourceId;
+        private final Set<String> scopes;
+
+        public ServiceExtractor(String realm, String resourceId, Set<String> scopes) {
+            this.realm = realm;
+            this.resourceId = resourceId;
+            this.scopes = scopes;
+        }
+
+        @Override
+        public String getRealm() {
+            return realm;
+        }
+
+        @Override
+        public String getResourceId() {
+            return resourceId;
+        }
+
+        @Override
+        public Collection<String> getScopes() {
+            return scopes;
+        }
+
+        @Override
+        public ClaimsSet extractUserClaims(String scope, User user, ClientDetails client, Collection<String> scopes,
+                Map<String, Serializable> extensions) {
+            List<Claim> claims = new ArrayList<>();
+            claims.add(new StringClaim("username", user.getUsername()));
+            claims.add(new StringClaim("scope", scope));
+            if (user.getRealmRoles() != null) {
+                for (RealmRole r : user.getRealmRoles()) {
+                    if (realm.equals(r.getRealm())) {
+                        claims.add(new StringClaim("roles", r.getRole()));
+                    }
+                }
+            }
+
+            DefaultClaimsSet set = new DefaultClaimsSet();
+            set.setResourceId(resourceId);
+            set.setScope(scope);
+            set.setNamespace(resourceId);
+            set.setUser(true);
+            set.setClaims(claims);
+            return set;
+        }
+
+        @Override
+        public ClaimsSet extractClientClaims(String scope, ClientDetails client, Collection<String> scopes,
+                Map<String, Serializable> extensions) {
+            return null;
+        }
+    }
+}
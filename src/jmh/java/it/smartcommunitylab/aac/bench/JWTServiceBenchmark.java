@@ -0,0 +1,75 @@
+package it.smartcommunitylab.aac.bench;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import it.smartcommunitylab.aac.jwt.DefaultJWTSigningAndValidationService;
+import it.smartcommunitylab.aac.jwt.JWTService;
+import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+
+/*
+ * Signing of access and id tokens with the default RSA signer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JWTServiceBenchmark {
+
+    private JWTService jwtService;
+    private OAuth2ClientDetails client;
+    private JWTClaimsSet claims;
+
+    @Setup
+    public void setup() throws Exception {
+        RSAKey key = new RSAKeyGenerator(2048)
+                .keyID("benchmark")
+                .keyUse(KeyUse.SIGNATURE)
+                .generate();
+
+        DefaultJWTSigningAndValidationService signService = new DefaultJWTSigningAndValidationService(
+                Collections.singletonMap(key.getKeyID(), key));
+        signService.setDefaultSigningAlgorithmName(JWSAlgorithm.RS256.getName());
+        jwtService = new JWTService(signService);
+
+        client = Fixtures.client("client-0", "realm-0", Fixtures.scopes("aac", 5));
+
+        long now = System.currentTimeMillis();
+        claims = new JWTClaimsSet.Builder()
+                .issuer("http://localhost:8080")
+                .subject("subject-0")
+                .audience("client-0")
+                .issueTime(new Date(now))
+                .expirationTime(new Date(now + 3600 * 1000L))
+                .jwtID(UUID.randomUUID().toString())
+                .claim("realm", "realm-0")
+                .claim("scope", String.join(" ", client.getScope()))
+                .build();
+    }
+
+    @Benchmark
+    public String buildAndSignJWT() {
+        return jwtService.buildAndSignJWT(client, claims).serialize();
+    }
+}
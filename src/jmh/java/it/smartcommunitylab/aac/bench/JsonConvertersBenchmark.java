@@ -0,0 +1,128 @@
+package it.smartcommunitylab.aac.bench;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.smartcommunitylab.aac.repository.HashMapBase64Converter;
+import it.smartcommunitylab.aac.repository.HashMapConverter;
+
+/*
+ * Entity attribute conversion, as paid on every client and provider load
+ *
+ * Each entity stores a distinct json. Loads follow a skewed pattern: most hit a
+ * small set of hot entities, the rest are spread over the whole corpus, so
+ * the larger corpus overflows the converter cache and the cold tail parses.
+ * The miss benchmarks convert json never seen before, the parse baseline
+ * reads the same loads with a plain mapper, as converters did before caching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonConvertersBenchmark {
+
+    // share of loads served by the hot entities, which are a tenth of the corpus
+    private static final int HOT_LOADS = 90;
+    private static final int HOT_ENTITIES = 10;
+
+    // clients define a handful of hooks
+    private static final int HOOKS = 5;
+
+    @Param({ "10", "100" })
+    private int size;
+
+    // the converter cache holds 4M chars of json: 1000 entities fit, 20000
+    // overflow it, and with larger maps even the hot entities do
+    @Param({ "1000", "20000" })
+    private int entities;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HashMapConverter converter = new HashMapConverter();
+    private final HashMapBase64Converter base64Converter = new HashMapBase64Converter();
+
+    private String[] json;
+    private String[] base64Json;
+
+    // unique values for the miss path
+    private final AtomicLong sequence = new AtomicLong();
+    private String missJson;
+    private String missBase64Json;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Setup
+    public void setup() {
+        json = new String[entities];
+        base64Json = new String[entities];
+
+        for (int e = 0; e < entities; e++) {
+            Map<String, Serializable> config = Fixtures.configMap(size);
+            config.put("id", "entity-" + e);
+            json[e] = converter.convertToDatabaseColumn((Map) config);
+
+            Map<String, String> hooks = new HashMap<>();
+            for (int i = 0; i < HOOKS; i++) {
+                hooks.put("hook" + i, Fixtures.CLAIM_MAPPING);
+            }
+            hooks.put("id", "entity-" + e);
+            base64Json[e] = base64Converter.convertToDatabaseColumn(hooks);
+        }
+
+        // an extra unique key is appended per call
+        missJson = json[0].substring(0, json[0].length() - 1);
+        missBase64Json = base64Json[0].substring(0, base64Json[0].length() - 1);
+    }
+
+    private int next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int hot = Math.max(1, entities / HOT_ENTITIES);
+        return random.nextInt(100) < HOT_LOADS ? random.nextInt(hot) : random.nextInt(entities);
+    }
+
+    @Benchmark
+    public Map<String, String> convertToEntityAttribute() {
+        return converter.convertToEntityAttribute(json[next()]);
+    }
+
+    @Benchmark
+    public Map<String, String> convertBase64ToEntityAttribute() {
+        return base64Converter.convertToEntityAttribute(base64Json[next()]);
+    }
+
+    @Benchmark
+    public Map<String, String> convertToEntityAttributeMiss() {
+        return converter.convertToEntityAttribute(
+                missJson + ",\"miss-" + sequence.incrementAndGet() + "\":\"miss\"}");
+    }
+
+    @Benchmark
+    public Map<String, String> convertBase64ToEntityAttributeMiss() {
+        return base64Converter.convertToEntityAttribute(
+                missBase64Json + ",\"miss-" + sequence.incrementAndGet() + "\":\"bWlzcw==\"}");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public Map<String, Object> parseBaseline() throws Exception {
+        return mapper.readValue(json[next()], Map.class);
+    }
+}
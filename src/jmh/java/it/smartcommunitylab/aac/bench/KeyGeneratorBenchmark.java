@@ -0,0 +1,48 @@
+package it.smartcommunitylab.aac.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.keygen.BytesKeyGenerator;
+import org.springframework.security.crypto.keygen.KeyGenerators;
+
+import it.smartcommunitylab.aac.oauth.common.ThreadLocalBytesKeyGenerator;
+
+/*
+ * Random key generation under contention, as for tokens and client secrets
+ * issued by concurrent requests: a single shared generator against per-thread
+ * ones. Run with -t to compare thread counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class KeyGeneratorBenchmark {
+
+    private static final int KEY_LENGTH = 20;
+
+    private final BytesKeyGenerator shared = KeyGenerators.secureRandom(KEY_LENGTH);
+    private final BytesKeyGenerator threadLocal = new ThreadLocalBytesKeyGenerator(KEY_LENGTH);
+
+    @Benchmark
+    public byte[] sharedSecureRandom() {
+        return shared.generateKey();
+    }
+
+    @Benchmark
+    public byte[] threadLocalDrbg() {
+        return threadLocal.generateKey();
+    }
+}
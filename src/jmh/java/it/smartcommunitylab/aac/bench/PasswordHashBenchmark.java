@@ -0,0 +1,49 @@
+package it.smartcommunitylab.aac.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.smartcommunitylab.aac.crypto.PasswordHash;
+
+/*
+ * Password validation cost, as paid on every internal login
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordHashBenchmark {
+
+    @Param({ "1000", "10000" })
+    private int iterations;
+
+    private String hash;
+
+    @Setup
+    public void setup() throws Exception {
+        hash = PasswordHash.createHash("benchmark-password", iterations);
+    }
+
+    @Benchmark
+    public boolean validatePassword() throws Exception {
+        return PasswordHash.validatePassword("benchmark-password", hash);
+    }
+
+    @Benchmark
+    public boolean validateWrongPassword() throws Exception {
+        return PasswordHash.validatePassword("wrong-password", hash);
+    }
+}
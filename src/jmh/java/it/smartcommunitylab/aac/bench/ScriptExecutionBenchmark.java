@@ -0,0 +1,52 @@
+package it.smartcommunitylab.aac.bench;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.smartcommunitylab.aac.claims.LocalGraalExecutionService;
+
+/*
+ * Claim mapping functions executed in the graal sandbox
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ScriptExecutionBenchmark {
+
+    private LocalGraalExecutionService executionService;
+    private Map<String, Serializable> claims;
+
+    @Setup
+    public void setup() {
+        executionService = new LocalGraalExecutionService();
+
+        claims = new HashMap<>();
+        claims.put("sub", "subject-0");
+        claims.put("realm", "realm-0");
+        claims.put("username", "user-0");
+        claims.put("roles", new ArrayList<>(Arrays.asList("role-0", "role-1", "role-2", "role-3")));
+    }
+
+    @Benchmark
+    public Map<String, Serializable> executeFunction() throws Exception {
+        return executionService.executeFunction("claimMapping", Fixtures.CLAIM_MAPPING, claims);
+    }
+}
@@ -0,0 +1,99 @@
+package it.smartcommunitylab.aac.bench;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import it.smartcommunitylab.aac.oauth.OAuth2TokenServices;
+import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+import it.smartcommunitylab.aac.oauth.service.OAuth2ClientDetailsService;
+import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcTokenStore;
+
+/*
+ * Access token issuance, with refresh tokens, on the jdbc store over embedded
+ * H2
+ *
+ * Clients are served from memory so that the numbers reflect token generation
+ * and persistence, enhancers are not configured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenServicesBenchmark {
+
+    @Param({ "10" })
+    private int realms;
+
+    @Param({ "10" })
+    private int clientsPerRealm;
+
+    @Param({ "20" })
+    private int scopes;
+
+    private OAuth2TokenServices tokenServices;
+    private OAuth2Authentication[] authentications;
+
+    @Setup
+    public void setup() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID().toString() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        AutoJdbcTokenStore tokenStore = new AutoJdbcTokenStore(dataSource);
+
+        Map<String, OAuth2ClientDetails> clients = new HashMap<>();
+        List<String> realmIds = Fixtures.realms(realms);
+        for (String realm : realmIds) {
+            Set<String> realmScopes = Fixtures.scopes(realm, scopes);
+            realmScopes.add("offline_access");
+            for (int i = 0; i < clientsPerRealm; i++) {
+                String clientId = realm + "-client-" + i;
+                clients.put(clientId, Fixtures.client(clientId, realm, realmScopes));
+            }
+        }
+
+        OAuth2ClientDetailsService clientDetailsService = mock(OAuth2ClientDetailsService.class);
+        when(clientDetailsService.loadClientByClientId(anyString()))
+                .thenAnswer(i -> clients.get(i.<String>getArgument(0)));
+
+        tokenServices = new OAuth2TokenServices(tokenStore);
+        tokenServices.setClientDetailsService(clientDetailsService);
+
+        List<OAuth2Authentication> list = clients.values().stream()
+                .map(c -> Fixtures.authentication(c, "subject-" + c.getClientId(), c.getScope()))
+                .collect(Collectors.toList());
+        authentications = list.toArray(new OAuth2Authentication[0]);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken createAccessToken() {
+        OAuth2Authentication authentication = authentications[ThreadLocalRandom.current()
+                .nextInt(authentications.length)];
+        return tokenServices.createAccessToken(authentication);
+    }
+}
@@ -0,0 +1,104 @@
+package it.smartcommunitylab.aac.bench;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import it.smartcommunitylab.aac.oauth.AACOAuth2AccessToken;
+import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcTokenStore;
+
+/*
+ * Token store reads and writes on embedded H2
+ *
+ * The store is prefilled with tokens spread over clients and users, reads pick
+ * random existing tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenStoreBenchmark {
+
+    @Param({ "1000", "10000" })
+    private int tokens;
+
+    @Param({ "50" })
+    private int clients;
+
+    private AutoJdbcTokenStore tokenStore;
+    private List<OAuth2Authentication> authentications;
+    private List<String> values;
+
+    @Setup
+    public void setup() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID().toString() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        tokenStore = new AutoJdbcTokenStore(dataSource);
+
+        authentications = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            OAuth2ClientDetails client = Fixtures.client("client-" + i, "realm-" + (i % 10),
+                    Fixtures.scopes("aac", 5));
+            authentications.add(Fixtures.authentication(client, "subject-" + i, client.getScope()));
+        }
+
+        values = new ArrayList<>(tokens);
+        for (int i = 0; i < tokens; i++) {
+            OAuth2AccessToken token = token(authentications.get(i % clients));
+            tokenStore.storeAccessToken(token, authentications.get(i % clients));
+            values.add(token.getValue());
+        }
+    }
+
+    @Benchmark
+    public OAuth2AccessToken readAccessToken() {
+        return tokenStore.readAccessToken(random(values));
+    }
+
+    @Benchmark
+    public OAuth2Authentication readAuthentication() {
+        return tokenStore.readAuthentication(random(values));
+    }
+
+    @Benchmark
+    public OAuth2AccessToken storeAccessToken() {
+        OAuth2Authentication authentication = random(authentications);
+        OAuth2AccessToken token = token(authentication);
+        tokenStore.storeAccessToken(token, authentication);
+        return token;
+    }
+
+    private static OAuth2AccessToken token(OAuth2Authentication authentication) {
+        AACOAuth2AccessToken token = new AACOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setSubject(authentication.getName());
+        token.setAuthorizedParty(authentication.getOAuth2Request().getClientId());
+        token.setScope(authentication.getOAuth2Request().getScope());
+        token.setExpiration(new Date(System.currentTimeMillis() + 3600 * 1000L));
+        return token;
+    }
+
+    private static <T> T random(List<T> list) {
+        return list.get(ThreadLocalRandom.current().nextInt(list.size()));
+    }
+}
@@ -0,0 +1,220 @@
+package it.smartcommunitylab.aac.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.util.StreamUtils;
+
+/*
+ * Scripted browser for the authorization code flow
+ *
+ * Follows redirects by hand, keeps session cookies and submits the internal
+ * login form and the approval form with their hidden fields (csrf included),
+ * until the authorization server redirects to the client with a code. One
+ * instance per flow, cookies are not shared.
+ */
+public class BrowserClient {
+
+    private static final int MAX_STEPS = 10;
+    private static final String LOGIN_ACTION = "/auth/internal/login/";
+
+    private static final Pattern FORM = Pattern.compile("<form\\b([^>]*)>(.*?)</form>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern INPUT = Pattern.compile("<input\\b([^>]*)>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE = Pattern.compile("([a-zA-Z_:-]+)\\s*=\\s*[\"']([^\"']*)[\"']");
+
+    private final String baseUrl;
+    private final Map<String, String> cookies = new LinkedHashMap<>();
+
+    public BrowserClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    /*
+     * Run the flow from the authorize url, returns the code sent to the redirect
+     * uri
+     */
+    public String authorize(String workload, String authorizeUrl, String username, String password,
+            String redirectUri) throws IOException {
+        Response response = request(workload, "GET", authorizeUrl, null);
+        for (int i = 0; i < MAX_STEPS; i++) {
+            if (response.location != null) {
+                if (response.location.startsWith(redirectUri)) {
+                    String code = queryParam(response.location, "code");
+                    if (code == null) {
+                        throw new IOException("no code in redirect " + response.location);
+                    }
+                    return code;
+                }
+
+                response = request(workload, "GET", response.location, null);
+                continue;
+            }
+
+            // either the login page or the approval page
+            Map<String, String> form = null;
+            String action = null;
+            Matcher m = FORM.matcher(response.body);
+            while (m.find() && action == null) {
+                Map<String, String> attrs = attributes(m.group(1));
+                String a = attrs.get("action");
+                if (a == null) {
+                    continue;
+                }
+
+                Map<String, String> fields = hiddenFields(m.group(2));
+                if (a.contains(LOGIN_ACTION)) {
+                    fields.put("username", username);
+                    fields.put("password", password);
+                    action = a;
+                    form = fields;
+                } else if (fields.containsKey("user_oauth_approval")) {
+                    action = a;
+                    form = fields;
+                }
+            }
+
+            if (action == null) {
+                throw new IOException("unexpected page at step " + i + ", status " + response.status);
+            }
+
+            response = request(workload, "POST", action, form);
+        }
+
+        throw new IOException("too many steps");
+    }
+
+    private Response request(String workload, String method, String url, Map<String, String> params)
+            throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(resolve(url)).openConnection();
+        conn.setInstanceFollowRedirects(false);
+        conn.setRequestMethod(method);
+        conn.setRequestProperty(QueryCounter.HEADER, workload);
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(30000);
+        if (!cookies.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            cookies.forEach((k, v) -> sb.append(sb.length() > 0 ? "; " : "").append(k).append('=').append(v));
+            conn.setRequestProperty("Cookie", sb.toString());
+        }
+
+        if (params != null) {
+            byte[] body = encode(params).getBytes(StandardCharsets.UTF_8);
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(body);
+            }
+        }
+
+        int status = conn.getResponseCode();
+        List<String> setCookies = conn.getHeaderFields().get("Set-Cookie");
+        if (setCookies != null) {
+            for (String c : setCookies) {
+                String pair = c.split(";", 2)[0];
+                int idx = pair.indexOf('=');
+                if (idx > 0) {
+                    cookies.put(pair.substring(0, idx).trim(), pair.substring(idx + 1).trim());
+                }
+            }
+        }
+
+        InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+        byte[] body = in != null ? StreamUtils.copyToByteArray(in) : new byte[0];
+        if (in != null) {
+            // keep connection reusable
+            in.close();
+        }
+
+        if (status >= 400) {
+            throw new IOException("status " + status + " for " + url);
+        }
+
+        String location = status >= 300 && status < 400 ? conn.getHeaderField("Location") : null;
+        return new Response(status, location, new String(body, StandardCharsets.UTF_8));
+    }
+
+    private String resolve(String url) {
+        url = url.replace("&amp;", "&");
+        if (url.startsWith("http://") || url.startsWith("https://")) {
+            return url;
+        }
+
+        return baseUrl + (url.startsWith("/") ? "" : "/") + url;
+    }
+
+    private static Map<String, String> hiddenFields(String html) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        Matcher m = INPUT.matcher(html);
+        while (m.find()) {
+            Map<String, String> attrs = attributes(m.group(1));
+            if ("hidden".equalsIgnoreCase(attrs.get("type")) && attrs.containsKey("name")) {
+                fields.put(attrs.get("name"), attrs.getOrDefault("value", ""));
+            }
+        }
+
+        return fields;
+    }
+
+    private static Map<String, String> attributes(String tag) {
+        Map<String, String> attrs = new LinkedHashMap<>();
+        Matcher m = ATTRIBUTE.matcher(tag);
+        while (m.find()) {
+            attrs.put(m.group(1).toLowerCase(), m.group(2));
+        }
+
+        return attrs;
+    }
+
+    private static String queryParam(String url, String name) throws IOException {
+        int idx = url.indexOf('?');
+        if (idx < 0) {
+            return null;
+        }
+
+        for (String kv : url.substring(idx + 1).split("&")) {
+            String[] p = kv.split("=", 2);
+            if (p[0].equals(name) && p.length > 1) {
+                return URLDecoder.decode(p[1], "UTF-8");
+            }
+        }
+
+        return null;
+    }
+
+    private static String encode(Map<String, String> params) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(URLEncoder.encode(e.getKey(), "UTF-8")).append('=')
+                    .append(URLEncoder.encode(e.getValue(), "UTF-8"));
+        }
+
+        return sb.toString();
+    }
+
+    private static class Response {
+        private final int status;
+        private final String location;
+        private final String body;
+
+        Response(int status, String location, String body) {
+            this.status = status;
+            this.location = location;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package it.smartcommunitylab.aac.loadtest;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/*
+ * Jdbc driver delegating to the real one, with statement counting
+ *
+ * Use as jdbc:loadtest:<url>, for example jdbc:loadtest:h2:mem:aac
+ */
+public class CountingDriver implements Driver {
+
+    public static final String PREFIX = "jdbc:loadtest:";
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+
+        return QueryCounter.wrap(DriverManager.getConnection(target(url), info));
+    }
+
+    @Override
+    public boolean acceptsURL(String url) throws SQLException {
+        return url != null && url.startsWith(PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+        return DriverManager.getDriver(target(url)).getPropertyInfo(target(url), info);
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    private static String target(String url) {
+        return "jdbc:" + url.substring(PREFIX.length());
+    }
+}
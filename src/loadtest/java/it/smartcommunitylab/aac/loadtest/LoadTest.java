@@ -0,0 +1,388 @@
+package it.smartcommunitylab.aac.loadtest;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import it.smartcommunitylab.aac.AACMain;
+
+/*
+ * Load test driver for the oauth2/oidc endpoints
+ *
+ * By default boots AAC in process on an in-memory H2, with the clients from
+ * loadtest-bootstrap.yaml and local stubs for webhooks and jwks, then runs a
+ * weighted mix of workloads from a pool of threads. Set loadtest.url to target
+ * an already running instance instead, db query counts are available only for
+ * the in process mode.
+ *
+ * The authcode workload scripts the whole browser flow with pkce: authorize,
+ * internal form login, approval and code exchange, with loadtest.username and
+ * loadtest.password for an internal account.
+ *
+ * Reports latency percentiles, throughput (also per core) and db queries per
+ * request for each workload, as text and as json in loadtest.result.
+ * Requests made only to prepare a workload are tagged as setup and are not
+ * reported.
+ */
+public class LoadTest {
+
+    public static final String CLIENT_CREDENTIALS = "client_credentials";
+    public static final String PASSWORD = "password";
+    public static final String REFRESH = "refresh";
+    public static final String INTROSPECT = "introspect";
+    public static final String REVOKE = "revoke";
+    public static final String USERINFO = "userinfo";
+    public static final String AUTHCODE = "authcode";
+
+    // helper requests are tagged apart and left out of the report
+    private static final String SETUP = "setup";
+
+    private static final int POOL_SIZE = 1000;
+
+    private final OAuthClient client;
+    private final String url;
+    private final String clientId;
+    private final String redirectUri;
+    private final String username;
+    private final String password;
+    private final Map<String, Integer> mix;
+
+    // tokens shared among workers, slots are overwritten by new tokens
+    private final AtomicReferenceArray<String> accessTokens = new AtomicReferenceArray<>(POOL_SIZE);
+    private final AtomicReferenceArray<String> userTokens = new AtomicReferenceArray<>(POOL_SIZE);
+    private final AtomicReferenceArray<String> refreshTokens = new AtomicReferenceArray<>(POOL_SIZE);
+
+    private final Map<String, Histogram> latencies = new LinkedHashMap<>();
+    private final Map<String, AtomicLong> errors = new HashMap<>();
+    private volatile boolean recording = false;
+
+    public LoadTest(OAuthClient client, String url, String clientId, String redirectUri,
+            String username, String password, Map<String, Integer> mix) {
+        this.client = client;
+        this.url = url;
+        this.clientId = clientId;
+        this.redirectUri = redirectUri;
+        this.username = username;
+        this.password = password;
+        this.mix = mix;
+
+        for (String w : mix.keySet()) {
+            latencies.put(w, new ConcurrentHistogram(TimeUnit.SECONDS.toNanos(60), 3));
+            errors.put(w, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("loadtest.url");
+        int port = Integer.getInteger("loadtest.port", 18080);
+        int stubsPort = Integer.getInteger("loadtest.stubs.port", 18089);
+        long stubsDelay = Long.getLong("loadtest.stubs.delay", 0);
+        int threads = Integer.getInteger("loadtest.threads", 16);
+        int duration = Integer.getInteger("loadtest.duration", 60);
+        int warmup = Integer.getInteger("loadtest.warmup", 10);
+        String result = System.getProperty("loadtest.result", "target/loadtest-result.json");
+
+        String clientId = System.getProperty("loadtest.clientId", "loadtest-client");
+        String clientSecret = System.getProperty("loadtest.clientSecret", "loadtest-secret");
+        String username = System.getProperty("loadtest.username");
+        String password = System.getProperty("loadtest.password");
+        String redirectUri = System.getProperty("loadtest.redirectUri", "http://localhost:" + stubsPort + "/callback");
+
+        // user workloads need credentials for the password grant and the internal login
+        String defaultMix = StringUtils.hasText(username)
+                ? "client_credentials:20,introspect:30,revoke:5,password:10,refresh:20,userinfo:10,authcode:5"
+                : "client_credentials:40,introspect:50,revoke:10";
+        Map<String, Integer> mix = parseMix(System.getProperty("loadtest.mix", defaultMix));
+
+        StubServers stubs = new StubServers(stubsPort, stubsDelay);
+        stubs.start();
+
+        ConfigurableApplicationContext context = null;
+        if (!StringUtils.hasText(url)) {
+            url = "http://localhost:" + port;
+            context = new SpringApplicationBuilder(AACMain.class)
+                    .properties(
+                            "server.port=" + port,
+                            "application.url=" + url,
+                            "management.server.port=-1",
+                            "jdbc.driver=" + CountingDriver.class.getName(),
+                            "jdbc.url=" + CountingDriver.PREFIX + "h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+                            "bootstrap.apply=true",
+                            "bootstrap.file=classpath:/loadtest-bootstrap.yaml",
+                            "logging.level.it.smartcommunitylab.aac=WARN",
+                            "logging.level.traceUserToken=WARN")
+                    .run();
+        }
+
+        try {
+            LoadTest test = new LoadTest(new OAuthClient(url, clientId, clientSecret), url, clientId, redirectUri,
+                    username, password, mix);
+            test.seed();
+            Map<String, Object> report = test.run(threads, warmup, duration, context != null);
+            report.put("webhookCalls", stubs.getWebhookCalls());
+            report.put("jwksCalls", stubs.getJwksCalls());
+
+            ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            File file = new File(result);
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            mapper.writeValue(file, report);
+            System.out.println("results written to " + file.getAbsolutePath());
+        } finally {
+            stubs.stop();
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    /*
+     * Fill token pools so that every workload has something to work on
+     */
+    public void seed() throws Exception {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            accessTokens.set(i, clientCredentials(SETUP));
+        }
+
+        if (StringUtils.hasText(username)) {
+            for (int i = 0; i < POOL_SIZE; i++) {
+                passwordGrant(SETUP, i);
+            }
+        }
+    }
+
+    public Map<String, Object> run(int threads, int warmup, int duration, boolean countQueries)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup + duration);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                while (System.nanoTime() < end) {
+                    execute(pick());
+                }
+            });
+        }
+
+        // discard warmup
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmup));
+        latencies.values().forEach(Histogram::reset);
+        errors.values().forEach(e -> e.set(0));
+        QueryCounter.reset();
+        recording = true;
+        long start = System.nanoTime();
+
+        executor.shutdown();
+        executor.awaitTermination(duration + 60, TimeUnit.SECONDS);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        recording = false;
+
+        return report(threads, elapsed, countQueries);
+    }
+
+    private String pick() {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int r = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<String, Integer> e : mix.entrySet()) {
+            r -= e.getValue();
+            if (r < 0) {
+                return e.getKey();
+            }
+        }
+
+        return CLIENT_CREDENTIALS;
+    }
+
+    private void execute(String workload) {
+        int slot = ThreadLocalRandom.current().nextInt(POOL_SIZE);
+        try {
+            long start = System.nanoTime();
+            switch (workload) {
+            case CLIENT_CREDENTIALS:
+                accessTokens.set(slot, clientCredentials(workload));
+                break;
+            case INTROSPECT:
+                client.post(workload, "/oauth/introspect", params("token", accessTokens.get(slot)));
+                break;
+            case REVOKE:
+                // revoke a fresh token, keep issuance out of the measure and out of
+                // client_credentials queries
+                String token = clientCredentials(SETUP);
+                start = System.nanoTime();
+                client.post(workload, "/oauth/revoke", params("token", token));
+                break;
+            case PASSWORD:
+                passwordGrant(workload, slot);
+                break;
+            case REFRESH:
+                // concurrent refreshes of the same token are expected, as in storms
+                Map<String, Object> response = client.post(workload, "/oauth/token",
+                        params("grant_type", "refresh_token", "refresh_token", refreshTokens.get(slot)));
+                store(slot, response);
+                break;
+            case USERINFO:
+                client.get(workload, "/userinfo", userTokens.get(slot));
+                break;
+            case AUTHCODE:
+                // full browser flow, login included
+                authorizationCode(workload, slot);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown workload " + workload);
+            }
+
+            if (recording) {
+                latencies.get(workload).recordValue(System.nanoTime() - start);
+            }
+        } catch (Exception e) {
+            if (recording) {
+                errors.get(workload).incrementAndGet();
+            }
+        }
+    }
+
+    private String clientCredentials(String workload) throws Exception {
+        Map<String, Object> response = client.post(workload, "/oauth/token",
+                params("grant_type", "client_credentials"));
+        return (String) response.get("access_token");
+    }
+
+    private void passwordGrant(String workload, int slot) throws Exception {
+        Map<String, Object> response = client.post(workload, "/oauth/token",
+                params("grant_type", "password", "username", username, "password", password,
+                        "scope", "openid profile offline_access"));
+        store(slot, response);
+    }
+
+    private void authorizationCode(String workload, int slot) throws Exception {
+        // pkce with S256
+        byte[] bytes = new byte[32];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        String verifier = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        String challenge = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                MessageDigest.getInstance("SHA-256").digest(verifier.getBytes(StandardCharsets.US_ASCII)));
+        String state = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+        StringBuilder authorizeUrl = new StringBuilder("/oauth/authorize?response_type=code");
+        params("client_id", clientId, "redirect_uri", redirectUri, "scope", "openid profile", "state", state,
+                "code_challenge", challenge, "code_challenge_method", "S256")
+                .forEach((k, v) -> {
+                    try {
+                        authorizeUrl.append('&').append(k).append('=').append(URLEncoder.encode(v, "UTF-8"));
+                    } catch (UnsupportedEncodingException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+
+        // fresh session for every flow
+        String code = new BrowserClient(url).authorize(workload, authorizeUrl.toString(), username, password,
+                redirectUri);
+
+        Map<String, Object> response = client.post(workload, "/oauth/token",
+                params("grant_type", "authorization_code", "code", code, "redirect_uri", redirectUri,
+                        "code_verifier", verifier));
+        store(slot, response);
+    }
+
+    private void store(int slot, Map<String, Object> response) {
+        if (response.get("access_token") != null) {
+            userTokens.set(slot, (String) response.get("access_token"));
+        }
+        if (response.get("refresh_token") != null) {
+            refreshTokens.set(slot, (String) response.get("refresh_token"));
+        }
+    }
+
+    private Map<String, Object> report(int threads, double elapsed, boolean countQueries) {
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("threads", threads);
+        report.put("cores", cores);
+        report.put("duration", elapsed);
+
+        List<Map<String, Object>> workloads = new ArrayList<>();
+        System.out.println(String.format("%-20s %10s %8s %10s %10s %9s %9s %9s %9s %9s %9s",
+                "workload", "requests", "errors", "req/s", "req/s/core",
+                "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "queries"));
+
+        for (Map.Entry<String, Histogram> e : latencies.entrySet()) {
+            String workload = e.getKey();
+            Histogram h = e.getValue();
+            long count = h.getTotalCount();
+            double throughput = count / elapsed;
+
+            Map<String, Object> w = new LinkedHashMap<>();
+            w.put("workload", workload);
+            w.put("requests", count);
+            w.put("errors", errors.get(workload).get());
+            w.put("throughput", throughput);
+            w.put("throughputPerCore", throughput / cores);
+            w.put("p50", millis(h.getValueAtPercentile(50)));
+            w.put("p90", millis(h.getValueAtPercentile(90)));
+            w.put("p99", millis(h.getValueAtPercentile(99)));
+            w.put("p999", millis(h.getValueAtPercentile(99.9)));
+            w.put("max", millis(h.getMaxValue()));
+            if (countQueries && count > 0) {
+                w.put("queriesPerRequest", (double) QueryCounter.getCount(workload) / count);
+            }
+            workloads.add(w);
+
+            System.out.println(String.format("%-20s %10d %8d %10.1f %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9s",
+                    workload, count, errors.get(workload).get(), throughput, throughput / cores,
+                    w.get("p50"), w.get("p90"), w.get("p99"), w.get("p999"), w.get("max"),
+                    w.containsKey("queriesPerRequest")
+                            ? String.format("%.1f", w.get("queriesPerRequest"))
+                            : "-"));
+        }
+
+        report.put("workloads", workloads);
+        return report;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Map<String, String> params(String... kv) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < kv.length; i += 2) {
+            map.put(kv[i], kv[i + 1]);
+        }
+
+        return map;
+    }
+
+    private static Map<String, Integer> parseMix(String value) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String entry : StringUtils.commaDelimitedListToStringArray(value)) {
+            String[] kv = entry.trim().split(":");
+            mix.put(kv[0], kv.length > 1 ? Integer.parseInt(kv[1]) : 1);
+        }
+
+        return mix;
+    }
+}
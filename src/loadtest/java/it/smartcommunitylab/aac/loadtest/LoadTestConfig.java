@@ -0,0 +1,41 @@
+package it.smartcommunitylab.aac.loadtest;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/*
+ * Hooks registered in the application when booted by the harness
+ */
+@Configuration
+public class LoadTestConfig {
+
+    @Bean
+    public FilterRegistrationBean<OncePerRequestFilter> queryCounterFilter() {
+        FilterRegistrationBean<OncePerRequestFilter> bean = new FilterRegistrationBean<>(
+                new OncePerRequestFilter() {
+                    @Override
+                    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                            FilterChain filterChain) throws ServletException, IOException {
+                        // tag thread for the duration of the request
+                        QueryCounter.setWorkload(request.getHeader(QueryCounter.HEADER));
+                        try {
+                            filterChain.doFilter(request, response);
+                        } finally {
+                            QueryCounter.setWorkload(null);
+                        }
+                    }
+                });
+        bean.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return bean;
+    }
+}
@@ -0,0 +1,102 @@
+package it.smartcommunitylab.aac.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+
+import org.springframework.util.StreamUtils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Minimal oauth2 client over keep-alive connections
+ *
+ * Every request carries the workload header, so that the server side can
+ * attribute db queries.
+ */
+public class OAuthClient {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> typeRef = new TypeReference<Map<String, Object>>() {
+    };
+
+    private final String baseUrl;
+    private final String basicAuth;
+
+    public OAuthClient(String baseUrl, String clientId, String clientSecret) {
+        this.baseUrl = baseUrl;
+        this.basicAuth = "Basic " + Base64.getEncoder()
+                .encodeToString((clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Map<String, Object> post(String workload, String path, Map<String, String> params) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(URLEncoder.encode(e.getKey(), "UTF-8")).append('=')
+                    .append(URLEncoder.encode(e.getValue(), "UTF-8"));
+        }
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        HttpURLConnection conn = open(workload, path, basicAuth);
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body);
+        }
+
+        return read(conn);
+    }
+
+    public Map<String, Object> get(String workload, String path, String accessToken) throws IOException {
+        HttpURLConnection conn = open(workload, path, "Bearer " + accessToken);
+        conn.setRequestMethod("GET");
+        return read(conn);
+    }
+
+    private HttpURLConnection open(String workload, String path, String authorization) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setRequestProperty("Authorization", authorization);
+        conn.setRequestProperty(QueryCounter.HEADER, workload);
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(30000);
+        return conn;
+    }
+
+    private Map<String, Object> read(HttpURLConnection conn) throws IOException {
+        int status = conn.getResponseCode();
+        InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+        byte[] body = in != null ? StreamUtils.copyToByteArray(in) : new byte[0];
+        if (in != null) {
+            // keep connection reusable
+            in.close();
+        }
+
+        if (status >= 400) {
+            throw new IOException("status " + status + ": " + new String(body, StandardCharsets.UTF_8));
+        }
+
+        if (body.length == 0) {
+            return Collections.emptyMap();
+        }
+
+        try {
+            return mapper.readValue(body, typeRef);
+        } catch (IOException e) {
+            // revocation answers with a plain body
+            return Collections.emptyMap();
+        }
+    }
+}
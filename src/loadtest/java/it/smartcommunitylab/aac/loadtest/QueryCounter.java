@@ -0,0 +1,102 @@
+package it.smartcommunitylab.aac.loadtest;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.ClassUtils;
+
+/*
+ * Counts statements executed on behalf of each workload
+ *
+ * Request threads are tagged by the filter from a request header, statements
+ * run on a tagged thread are attributed to that workload.
+ */
+public class QueryCounter {
+
+    public static final String HEADER = "X-Loadtest-Workload";
+
+    private static final ThreadLocal<String> current = new ThreadLocal<>();
+    private static final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+
+    public static void setWorkload(String workload) {
+        if (workload == null) {
+            current.remove();
+        } else {
+            current.set(workload);
+        }
+    }
+
+    public static long getCount(String workload) {
+        AtomicLong c = counts.get(workload);
+        return c != null ? c.get() : 0;
+    }
+
+    public static void reset() {
+        counts.clear();
+    }
+
+    private static void count() {
+        String workload = current.get();
+        if (workload != null) {
+            counts.computeIfAbsent(workload, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    public static Connection wrap(Connection connection) {
+        return (Connection) wrap(Connection.class, connection,
+                (m, r) -> r instanceof Statement ? wrapStatement((Statement) r) : r);
+    }
+
+    private static Object wrapStatement(Statement statement) {
+        return Proxy.newProxyInstance(QueryCounter.class.getClassLoader(),
+                Arrays.stream(ClassUtils.getAllInterfaces(statement))
+                        .filter(i -> Modifier.isPublic(i.getModifiers()))
+                        .toArray(Class<?>[]::new),
+                new Handler(statement, (m, r) -> r) {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().startsWith("execute")) {
+                            count();
+                        }
+                        return super.invoke(proxy, method, args);
+                    }
+                });
+    }
+
+    private static Object wrap(Class<?> type, Object target, ResultMapper mapper) {
+        return Proxy.newProxyInstance(QueryCounter.class.getClassLoader(), new Class<?>[] { type },
+                new Handler(target, mapper));
+    }
+
+    private interface ResultMapper {
+        Object map(Method method, Object result);
+    }
+
+    private static class Handler implements InvocationHandler {
+        private final Object target;
+        private final ResultMapper mapper;
+
+        Handler(Object target, ResultMapper mapper) {
+            this.target = target;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            try {
+                return mapper.map(method, method.invoke(target, args));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
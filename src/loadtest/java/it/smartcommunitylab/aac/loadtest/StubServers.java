@@ -0,0 +1,93 @@
+package it.smartcommunitylab.aac.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.StreamUtils;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Local stand-ins for the external endpoints clients point AAC to
+ *
+ * Serves client webhooks, which AAC calls on every token grant, and a client
+ * JWKS uri. Optional latency simulates remote endpoints.
+ */
+public class StubServers {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long delay;
+
+    private final AtomicLong webhookCalls = new AtomicLong();
+    private final AtomicLong jwksCalls = new AtomicLong();
+
+    public StubServers(int port, long delay) throws IOException, JOSEException {
+        this.delay = delay;
+
+        RSAKey key = new RSAKeyGenerator(2048).keyID("loadtest").keyUse(KeyUse.SIGNATURE).generate();
+        byte[] jwks = new JWKSet(key.toPublicJWK()).toString().getBytes(StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/webhook", exchange -> {
+            webhookCalls.incrementAndGet();
+            // drain payload
+            try (InputStream in = exchange.getRequestBody()) {
+                StreamUtils.drain(in);
+            }
+            respond(exchange, "{\"approved\":true}".getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/jwks", exchange -> {
+            jwksCalls.incrementAndGet();
+            respond(exchange, jwks);
+        });
+
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public long getWebhookCalls() {
+        return webhookCalls.get();
+    }
+
+    public long getJwksCalls() {
+        return jwksCalls.get();
+    }
+
+    private void respond(HttpExchange exchange, byte[] body) throws IOException {
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -5,7 +5,6 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotBlank;
@@ -62,12 +61,8 @@ public class AttributeProviderController {
             @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm) throws NoSuchRealmException {
         logger.debug("list ap for realm " + String.valueOf(realm));
 
-        return providerManager.listAttributeProviders(realm)
-                .stream()
-                .map(cp -> {
-                    cp.setRegistered(providerManager.isProviderRegistered(realm, cp));
-                    return cp;
-                }).collect(Collectors.toList());
+        // registration status is filled by the manager
+        return providerManager.listAttributeProviders(realm);
     }
 
     @GetMapping("/ap/{realm}/{providerId}")
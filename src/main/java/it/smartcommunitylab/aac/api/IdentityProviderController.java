@@ -4,7 +4,6 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotBlank;
@@ -60,12 +59,8 @@ public class IdentityProviderController {
             @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm) throws NoSuchRealmException {
         logger.debug("list idp for realm " + String.valueOf(realm));
 
-        return providerManager.listIdentityProviders(realm)
-                .stream()
-                .map(cp -> {
-                    cp.setRegistered(providerManager.isProviderRegistered(realm, cp));
-                    return cp;
-                }).collect(Collectors.toList());
+        // registration status is filled by the manager
+        return providerManager.listIdentityProviders(realm);
     }
 
     @GetMapping("/idp/{realm}/{providerId}")
@@ -185,6 +185,19 @@ public class ScriptAttributeProvider extends AbstractProvider implements Attribu
 
     @Override
     public Collection<UserAttributes> getAttributes(String subjectId) {
+        return getAttributes(subjectId, providerConfig.getAttributeSets());
+    }
+
+    @Override
+    public Collection<UserAttributes> getAttributes(String subjectId, Collection<String> setIds) {
+        // skip the store when no requested set is served here
+        List<String> sets = providerConfig.getAttributeSets().stream()
+                .filter(setIds::contains)
+                .collect(Collectors.toList());
+        if (sets.isEmpty()) {
+            return Collections.emptyList();
+        }
+
         // fetch from store
         Map<String, Serializable> attributes = attributeStore.findAttributes(subjectId);
         if (attributes == null || attributes.isEmpty()) {
@@ -194,7 +207,7 @@ public class ScriptAttributeProvider extends AbstractProvider implements Attribu
         List<UserAttributes> result = new ArrayList<>();
 
         // build sets from stored values
-        for (String setId : providerConfig.getAttributeSets()) {
+        for (String setId : sets) {
             try {
                 AttributeSet as = attributeService.getAttributeSet(setId);
                 String prefix = setId + "|";
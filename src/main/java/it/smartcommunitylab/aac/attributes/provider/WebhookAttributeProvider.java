@@ -249,6 +249,19 @@ public class WebhookAttributeProvider extends AbstractProvider implements Attrib
 
     @Override
     public Collection<UserAttributes> getAttributes(String subjectId) {
+        return getAttributes(subjectId, providerConfig.getAttributeSets());
+    }
+
+    @Override
+    public Collection<UserAttributes> getAttributes(String subjectId, Collection<String> setIds) {
+        // skip the store when no requested set is served here
+        List<String> sets = providerConfig.getAttributeSets().stream()
+                .filter(setIds::contains)
+                .collect(Collectors.toList());
+        if (sets.isEmpty()) {
+            return Collections.emptyList();
+        }
+
         // fetch from store
         Map<String, Serializable> attributes = attributeStore.findAttributes(subjectId);
         if (attributes == null || attributes.isEmpty()) {
@@ -258,7 +271,7 @@ public class WebhookAttributeProvider extends AbstractProvider implements Attrib
         List<UserAttributes> result = new ArrayList<>();
 
         // build sets from stored values
-        for (String setId : providerConfig.getAttributeSets()) {
+        for (String setId : sets) {
             try {
                 AttributeSet as = attributeService.getAttributeSet(setId);
                 String prefix = setId + "|";
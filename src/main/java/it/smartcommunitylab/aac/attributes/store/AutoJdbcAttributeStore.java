@@ -1,17 +1,26 @@
 package it.smartcommunitylab.aac.attributes.store;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.util.Set;
 
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.util.Pair;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -19,16 +28,46 @@ import org.springframework.jdbc.core.support.SqlLobValue;
 import org.springframework.security.oauth2.common.util.SerializationUtils;
 import org.springframework.util.Assert;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.smartcommunitylab.aac.utils.JdbcSchemaUtils;
+
+/*
+ * Attribute store with DB table creation on startup
+ *
+ * Writing a full set only touches the rows which changed: current rows are
+ * read and compared with the new set, then inserts, updates and deletes are
+ * sent as batches, so repeated logins with the same attributes cost a single
+ * select. Values are written as java serialization unless the compact encoding
+ * is enabled, which stores simple values with a tagged encoding. Both are
+ * always read, enable compact writes once every node runs this version.
+ */
 public class AutoJdbcAttributeStore {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String TABLE_NAME = "attributes";
 
     private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS attributes (entity_id VARCHAR(256), provider_id VARCHAR(256), attr_key VARCHAR(256), attr_value BLOB);";
-    private static final String DEFAULT_SELECT_STATEMENT = "select attr_value from attributes where  provider_id = ? and entity_id = ? and attr_key = ?";
+    private static final String DEFAULT_CREATE_ENTITY_INDEX_STATEMENT = "CREATE INDEX attributes_entity ON attributes (provider_id, entity_id)";
+    private static final String DEFAULT_SELECT_STATEMENT = "select attr_key, attr_value from attributes where  provider_id = ? and entity_id = ? and attr_key = ?";
     private static final String DEFAULT_FIND_STATEMENT = "select entity_id, provider_id, attr_key, attr_value from attributes where  provider_id = ? and entity_id = ?";
     private static final String DEFAULT_INSERT_STATEMENT = "insert into attributes (provider_id, entity_id, attr_key, attr_value) values (?, ?, ?, ?)";
     private static final String DEFAULT_UPDATE_STATEMENT = "update attributes set attr_value = ?  where  provider_id = ? and entity_id = ? and attr_key = ?";
     private static final String DEFAULT_DELETE_STATEMENT = "delete from attributes where provider_id = ? and entity_id = ? and attr_key = ?";
     private static final String DEFAULT_CLEAR_STATEMENT = "delete from attributes where provider_id = ? and entity_id = ?";
 
+    // value encodings, java serialization streams start with 0xAC
+    private static final byte TEXT = 'T';
+    private static final byte BOOLEAN = 'B';
+    private static final byte INTEGER = 'I';
+    private static final byte LONG = 'L';
+    private static final byte DOUBLE = 'D';
+
+    private static final int[] INSERT_TYPES = new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB };
+    private static final int[] UPDATE_TYPES = new int[] { Types.BLOB, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR };
+    private static final int[] DELETE_TYPES = new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR };
+
     private String createAttributesSql = DEFAULT_CREATE_TABLE_STATEMENT;
     private String selectAttributeSql = DEFAULT_SELECT_STATEMENT;
     private String findAttributesSql = DEFAULT_FIND_STATEMENT;
@@ -39,15 +78,45 @@ public class AutoJdbcAttributeStore {
 
     private final JdbcTemplate jdbcTemplate;
     private final RowMapper<Pair<String, Serializable>> rowMapper = new AttributeRowMapper();
+    private final RowMapper<Pair<String, byte[]>> rawRowMapper = (rs, rowNum) -> Pair.of(rs.getString("attr_key"),
+            rs.getBytes("attr_value"));
+
+    // write simple values with the tagged encoding, older nodes can't read it
+    private boolean compactEncoding = false;
+
+    // metrics
+    private DistributionSummary rowsWritten;
+    private Counter unchanged;
 
     public AutoJdbcAttributeStore(DataSource dataSource) {
         Assert.notNull(dataSource, "DataSource required");
         this.jdbcTemplate = new JdbcTemplate(dataSource);
-        initSchema();
+        initSchema(dataSource);
     }
 
-    protected void initSchema() {
+    protected void initSchema(DataSource dataSource) {
         jdbcTemplate.execute(createAttributesSql);
+
+        // lookups are always by entity
+        if (!JdbcSchemaUtils.readIndexNames(dataSource, TABLE_NAME).contains("attributes_entity")) {
+            try {
+                jdbcTemplate.execute(DEFAULT_CREATE_ENTITY_INDEX_STATEMENT);
+            } catch (DataAccessException e) {
+                logger.warn("error creating index on " + TABLE_NAME + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void setCompactEncoding(boolean compactEncoding) {
+        this.compactEncoding = compactEncoding;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            rowsWritten = DistributionSummary.builder("aac.attributes.rows.written").baseUnit("rows")
+                    .register(meterRegistry);
+            unchanged = Counter.builder("aac.attributes.unchanged").register(meterRegistry);
+        }
     }
 
     public Serializable getAttribute(String providerId, String entityId, String key) {
@@ -67,29 +136,72 @@ public class AutoJdbcAttributeStore {
     }
 
     public void setAttributes(String providerId, String entityId, Set<Entry<String, Serializable>> attributesSet) {
-        jdbcTemplate.update(clearAttributeSql, providerId, entityId);
-
+        // encode once, sorted for stable batches
+        Map<String, byte[]> values = new TreeMap<>();
         for (Entry<String, Serializable> entry : attributesSet) {
-            jdbcTemplate.update(insertAttributeSql,
-                    new Object[] {
-                            providerId, entityId, entry.getKey(),
-                            new SqlLobValue(SerializationUtils.serialize(entry.getValue()))
-                    }, new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB });
+            values.put(entry.getKey(), encode(entry.getValue()));
+        }
 
+        // diff with current rows, always read from DB so that writes from other
+        // nodes or rolled back transactions are seen, duplicated keys from legacy writes are rewritten
+        Map<String, byte[]> current = new HashMap<>();
+        boolean duplicates = false;
+        for (Pair<String, byte[]> p : jdbcTemplate.query(findAttributesSql, rawRowMapper, providerId, entityId)) {
+            duplicates |= current.put(p.getFirst(), p.getSecond()) != null;
+        }
+
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+
+        if (duplicates) {
+            jdbcTemplate.update(clearAttributeSql, providerId, entityId);
+            current.clear();
+        }
+
+        for (Entry<String, byte[]> e : values.entrySet()) {
+            byte[] old = current.remove(e.getKey());
+            if (old == null) {
+                inserts.add(new Object[] { providerId, entityId, e.getKey(), new SqlLobValue(e.getValue()) });
+            } else if (!Arrays.equals(old, e.getValue())) {
+                updates.add(new Object[] { new SqlLobValue(e.getValue()), providerId, entityId, e.getKey() });
+            }
+        }
+        for (String key : current.keySet()) {
+            deletes.add(new Object[] { providerId, entityId, key });
         }
 
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(deleteAttributeSql, deletes, DELETE_TYPES);
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(updateAttributeSql, updates, UPDATE_TYPES);
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(insertAttributeSql, inserts, INSERT_TYPES);
+        }
+
+        int rows = inserts.size() + updates.size() + deletes.size();
+        if (rows == 0 && !duplicates && unchanged != null) {
+            unchanged.increment();
+        }
+        record(rows);
     }
 
     public void addAttribute(String providerId, String entityId, String key, Serializable value) {
         jdbcTemplate.update(insertAttributeSql,
                 new Object[] {
                         providerId, entityId, key,
-                        new SqlLobValue(SerializationUtils.serialize(value))
-                }, new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB });
+                        new SqlLobValue(encode(value))
+                }, INSERT_TYPES);
     }
 
     public void updateAttribute(String providerId, String entityId, String key, Serializable value) {
-        jdbcTemplate.update(updateAttributeSql, value, providerId, entityId, key);
+        jdbcTemplate.update(updateAttributeSql,
+                new Object[] {
+                        new SqlLobValue(encode(value)),
+                        providerId, entityId, key
+                }, UPDATE_TYPES);
     }
 
     public void deleteAttribute(String providerId, String entityId, String key) {
@@ -128,11 +240,63 @@ public class AutoJdbcAttributeStore {
         this.clearAttributeSql = clearAttributeSql;
     }
 
+    private void record(int rows) {
+        if (rowsWritten != null) {
+            rowsWritten.record(rows);
+        }
+    }
+
+    /*
+     * Value encoding
+     */
+    private byte[] encode(Serializable value) {
+        if (!compactEncoding) {
+            return SerializationUtils.serialize(value);
+        }
+
+        if (value instanceof String) {
+            byte[] text = ((String) value).getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(1 + text.length).put(TEXT).put(text).array();
+        } else if (value instanceof Boolean) {
+            return new byte[] { BOOLEAN, (byte) (((Boolean) value) ? 1 : 0) };
+        } else if (value instanceof Integer) {
+            return ByteBuffer.allocate(5).put(INTEGER).putInt((Integer) value).array();
+        } else if (value instanceof Long) {
+            return ByteBuffer.allocate(9).put(LONG).putLong((Long) value).array();
+        } else if (value instanceof Double) {
+            return ByteBuffer.allocate(9).put(DOUBLE).putDouble((Double) value).array();
+        }
+
+        return SerializationUtils.serialize(value);
+    }
+
+    private static Serializable decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        switch (bytes[0]) {
+        case TEXT:
+            return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+        case BOOLEAN:
+            return bytes[1] != 0;
+        case INTEGER:
+            return buffer.getInt();
+        case LONG:
+            return buffer.getLong();
+        case DOUBLE:
+            return buffer.getDouble();
+        default:
+            return SerializationUtils.deserialize(bytes);
+        }
+    }
+
     private static class AttributeRowMapper implements RowMapper<Pair<String, Serializable>> {
         @Override
         public Pair<String, Serializable> mapRow(ResultSet rs, int rowNum) throws SQLException {
             String key = rs.getString("attr_key");
-            Serializable value = SerializationUtils.deserialize(rs.getBytes("attr_value"));
+            Serializable value = decode(rs.getBytes("attr_value"));
             return Pair.of(key, value);
         }
 
@@ -1,7 +1,9 @@
 package it.smartcommunitylab.aac.audit.store;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.boot.actuate.audit.AuditEvent;
 import org.springframework.boot.actuate.audit.AuditEventRepository;
@@ -13,11 +15,18 @@ public interface AuditEventStore extends AuditEventRepository {
     public long countByRealm(String realm, Instant after, Instant before,
             String type);
 
+    // realm -> type -> counts over consecutive periods starting at after
+    public Map<String, Map<String, long[]>> countByRealmAndType(Instant after, Duration period, int periods);
+
     public long countByPrincipal(String principal, Instant after, Instant before, String type);
 
     public List<RealmAuditEvent> findByRealm(String realm, Instant after, Instant before,
             String type);
 
+    // most recent events first, at most limit
+    public List<RealmAuditEvent> findByRealm(String realm, Instant after, Instant before,
+            String type, int limit);
+
     public List<AuditEvent> findByPrincipal(String principal, Instant after, Instant before, String type);
 
 }
@@ -1,18 +1,25 @@
 package it.smartcommunitylab.aac.audit.store;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
 import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.RowMapperResultSetExtractor;
 import org.springframework.security.oauth2.common.util.SerializationUtils;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
@@ -39,6 +46,9 @@ public class AutoJdbcAuditEventStore implements AuditEventStore {
 
     private static final String DEFAULT_COUNT_PRINCIPAL_STATEMENT = "select count(*) from `audit` where principal = ?";
     private static final String DEFAULT_COUNT_REALM_STATEMENT = "select count(*) from `audit` where realm = ?";
+    private static final String DEFAULT_COUNT_PERIOD_COLUMN = "sum(case when `time` between ? and ? then 1 else 0 end)";
+    private static final String DEFAULT_COUNT_GROUP_STATEMENT = "select `realm`, `type`, %COLUMNS% from `audit` "
+            + "where `realm` is not null and `time` >= ? group by `realm`, `type`";
 
     private static final String TIME_AFTER_CONDITION = "`time` >= ?";
     private static final String TIME_BETWEEN_CONDITION = "`time` between ? and ? ";
@@ -142,9 +152,48 @@ public class AutoJdbcAuditEventStore implements AuditEventStore {
         return jdbcTemplate.queryForObject(query.toString(), Long.class, params.toArray(new Object[0]));
     }
 
+    @Override
+    public Map<String, Map<String, long[]>> countByRealmAndType(Instant after, Duration period, int periods) {
+        Assert.notNull(after, "after required");
+        Assert.isTrue(periods > 0, "periods must be a positive number");
+
+        // single scan, one column per period
+        StringBuilder columns = new StringBuilder();
+        List<Object> params = new LinkedList<>();
+        for (int i = 0; i < periods; i++) {
+            Instant start = after.plus(period.multipliedBy(i));
+            if (i > 0) {
+                columns.append(", ");
+            }
+            columns.append(DEFAULT_COUNT_PERIOD_COLUMN);
+            params.add(new java.sql.Timestamp(start.toEpochMilli()));
+            params.add(new java.sql.Timestamp(start.plus(period).minusMillis(1).toEpochMilli()));
+        }
+        params.add(new java.sql.Timestamp(after.toEpochMilli()));
+
+        String sql = StringUtils.replace(DEFAULT_COUNT_GROUP_STATEMENT, "%COLUMNS%", columns.toString());
+        Map<String, Map<String, long[]>> result = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            long[] counts = new long[periods];
+            for (int i = 0; i < periods; i++) {
+                counts[i] = rs.getLong(3 + i);
+            }
+            result.computeIfAbsent(rs.getString(1), k -> new HashMap<>())
+                    .put(rs.getString(2), counts);
+        }, params.toArray(new Object[0]));
+
+        return result;
+    }
+
     @Override
     public List<RealmAuditEvent> findByRealm(String realm, Instant after, Instant before,
             String type) {
+        return findByRealm(realm, after, before, type, 0);
+    }
+
+    @Override
+    public List<RealmAuditEvent> findByRealm(String realm, Instant after, Instant before,
+            String type, int limit) {
         StringBuilder query = new StringBuilder();
         query.append(selectByRealmAuditEvent);
 
@@ -169,7 +218,16 @@ public class AutoJdbcAuditEventStore implements AuditEventStore {
 
         query.append(" ").append(orderBy);
 
-        return jdbcTemplate.query(query.toString(), rowMapper, params.toArray(new Object[0])).stream()
+        // limit via max rows, avoids reading and deserializing the whole set
+        String sql = query.toString();
+        PreparedStatementSetter pss = new ArgumentPreparedStatementSetter(params.toArray(new Object[0]));
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            if (limit > 0) {
+                ps.setMaxRows(limit);
+            }
+            return ps;
+        }, pss, new RowMapperResultSetExtractor<>(rowMapper)).stream()
                 .filter(e -> (e instanceof RealmAuditEvent))
                 .map(e -> (RealmAuditEvent) e)
                 .collect(Collectors.toList());
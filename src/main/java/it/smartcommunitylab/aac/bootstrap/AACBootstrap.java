@@ -2,7 +2,16 @@ package it.smartcommunitylab.aac.bootstrap;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -14,6 +23,7 @@ import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
@@ -56,6 +66,22 @@ public class AACBootstrap {
     @Value("${admin.username}")
     private String adminUsername;
 
+    @Value("${bootstrap.providers.async}")
+    private boolean providersAsync;
+
+    @Value("${bootstrap.providers.threads}")
+    private int providersThreads;
+
+    @Value("${bootstrap.providers.timeout}")
+    private int providersTimeout;
+
+    // status
+    private volatile boolean coreReady = false;
+    private volatile boolean providersReady = false;
+    private volatile int providersTotal = 0;
+    private final AtomicInteger providersActive = new AtomicInteger();
+    private final AtomicInteger providersFailed = new AtomicInteger();
+
     @Autowired
     private ResourceLoader resourceLoader;
 
@@ -106,11 +132,36 @@ public class AACBootstrap {
             // build a security context as admin to bootstrap configs
             // initContext(adminUsername);
 
-            // bootstrap providers
-            // TODO use a dedicated thread, or a multithread
+            // bootstrap system providers, required for core
             bootstrapSystemProviders();
-            bootstrapIdentityProviders();
-            bootstrapAttributeProviders();
+            coreReady = true;
+            logger.info("core ready");
+
+        } catch (Exception e) {
+            logger.error("error bootstrapping: " + e.getMessage());
+            e.printStackTrace();
+        }
+
+        if (!coreReady) {
+            // realms depend on core, skip and leave providers as not ready
+            logger.error("core bootstrap failed, skip realms bootstrap");
+            return;
+        }
+
+        if (providersAsync) {
+            // realm providers are activated in background, node is usable meanwhile
+            Thread thread = new Thread(() -> bootstrapRealms(), "bootstrap-realms");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            bootstrapRealms();
+        }
+    }
+
+    private void bootstrapRealms() {
+        try {
+            // bootstrap realm providers on dedicated executor
+            bootstrapRealmProviders();
 
             // custom bootstrap
             if (apply) {
@@ -123,6 +174,8 @@ public class AACBootstrap {
         } catch (Exception e) {
             logger.error("error bootstrapping: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            providersReady = true;
         }
     }
 
@@ -154,91 +207,229 @@ public class AACBootstrap {
                     if (logger.isTraceEnabled()) {
                         e.printStackTrace();
                     }
+                } finally {
+                    // registered bypassing the manager, invalidate cached listings
+                    authorityManager.touchProviders(idp.getRealm());
                 }
             }
         }
 
     }
 
-    private void bootstrapIdentityProviders() {
+    private void bootstrapRealmProviders() {
         Map<String, IdentityAuthority> ias = authorityManager.listIdentityAuthorities().stream()
                 .collect(Collectors.toMap(a -> a.getAuthorityId(), a -> a));
+        Map<String, AttributeAuthority> aas = authorityManager.listAttributeAuthorities().stream()
+                .collect(Collectors.toMap(a -> a.getAuthorityId(), a -> a));
 
         // load all realm providers from storage
         Collection<Realm> realms = realmManager.listRealms();
 
-        // we iterate by realm to load consistently each realm
-        // we use parallel to leverage default threadpool, loading should be thread-safe
-        realms.parallelStream().forEach(realm -> {
-            Collection<ConfigurableIdentityProvider> idps = identityProviderService.listProviders(realm.getSlug());
-
-            for (ConfigurableIdentityProvider idp : idps) {
-                // try register
-                if (idp.isEnabled()) {
-                    try {
-                        // register via authorityManager
-//                        authorityManager.registerIdentityProvider(idp);
+        // use a dedicated bounded pool, registration may fetch remote metadata and
+        // should not starve the common pool
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("bootstrap-providers-");
+        threadFactory.setDaemon(true);
+        ExecutorService executor = Executors.newFixedThreadPool(providersThreads, threadFactory);
 
-                        // register directly with authority
-                        IdentityAuthority ia = ias.get(idp.getAuthority());
-                        if (ia == null) {
-                            throw new IllegalArgumentException(
-                                    "no authority for " + String.valueOf(idp.getAuthority()));
-                        }
+        // registrations run here, so that a worker can give up on a stuck one after
+        // the timeout and move on to the next provider in queue
+        CustomizableThreadFactory registrarFactory = new CustomizableThreadFactory("bootstrap-registrar-");
+        registrarFactory.setDaemon(true);
+        ExecutorService registrar = Executors.newCachedThreadPool(registrarFactory);
 
-                        ia.registerIdentityProvider(idp);
-                    } catch (Exception e) {
-                        logger.error("error registering provider " + idp.getProvider() + " for realm "
-                                + idp.getRealm() + ": " + e.getMessage());
+        // we iterate by realm to load consistently each realm
+        Map<Future<Long>, Activation> activations = new LinkedHashMap<>();
+        try {
+            for (Realm realm : realms) {
+                Collection<ConfigurableIdentityProvider> idps = identityProviderService
+                        .listProviders(realm.getSlug());
+                for (ConfigurableIdentityProvider idp : idps) {
+                    if (idp.isEnabled()) {
+                        IdentityAuthority ia = ias.get(idp.getAuthority());
+                        Activation activation = new Activation(idp, () -> {
+                            // register directly with authority
+                            if (ia == null) {
+                                throw new IllegalArgumentException(
+                                        "no authority for " + String.valueOf(idp.getAuthority()));
+                            }
+
+                            ia.registerIdentityProvider(idp);
+                        }, () -> ia.unregisterIdentityProvider(idp.getProvider()));
+                        activations.put(executor.submit(() -> activateProvider(registrar, activation)),
+                                activation);
+                    }
+                }
 
-                        if (logger.isTraceEnabled()) {
-                            e.printStackTrace();
-                        }
+                Collection<ConfigurableAttributeProvider> aps = attributeProviderService
+                        .listProviders(realm.getSlug());
+                for (ConfigurableAttributeProvider ap : aps) {
+                    if (ap.isEnabled()) {
+                        AttributeAuthority aa = aas.get(ap.getAuthority());
+                        Activation activation = new Activation(ap, () -> {
+                            // register directly with authority
+                            if (aa == null) {
+                                throw new IllegalArgumentException(
+                                        "no authority for " + String.valueOf(ap.getAuthority()));
+                            }
+
+                            aa.registerAttributeProvider(ap);
+                        }, () -> aa.unregisterAttributeProvider(ap.getProvider()));
+                        activations.put(executor.submit(() -> activateProvider(registrar, activation)),
+                                activation);
                     }
                 }
             }
-        });
-    }
 
-    private void bootstrapAttributeProviders() {
-        Map<String, AttributeAuthority> ias = authorityManager.listAttributeAuthorities().stream()
-                .collect(Collectors.toMap(a -> a.getAuthorityId(), a -> a));
+            providersTotal = activations.size();
+            logger.info("activating " + providersTotal + " providers for " + realms.size() + " realms");
 
-        // load all realm providers from storage
-        Collection<Realm> realms = realmManager.listRealms();
+            // wait for completion, every task enforces its own timeout once started
+            long start = System.currentTimeMillis();
+            for (Future<Long> f : activations.keySet()) {
+                try {
+                    Long elapsed = f.get();
+                    if (elapsed != null) {
+                        providersActive.incrementAndGet();
+                    } else {
+                        providersFailed.incrementAndGet();
+                    }
+                } catch (ExecutionException | CancellationException e) {
+                    providersFailed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
 
-        // we iterate by realm to load consistently each realm
-        // we use parallel to leverage default threadpool, loading should be thread-safe
-        realms.parallelStream().forEach(realm -> {
-            Collection<ConfigurableAttributeProvider> providers = attributeProviderService
-                    .listProviders(realm.getSlug());
-
-            for (ConfigurableAttributeProvider provider : providers) {
-                // try register
-                if (provider.isEnabled()) {
-                    try {
-                        // register via authorityManager
-//                        authorityManager.registerAttributeProvider(idp);
-
-                        // register directly with authority
-                        AttributeAuthority ia = ias.get(provider.getAuthority());
-                        if (ia == null) {
-                            throw new IllegalArgumentException(
-                                    "no authority for " + String.valueOf(provider.getAuthority()));
-                        }
+            logger.info("providers activated: " + providersActive.get() + " active, " + providersFailed.get()
+                    + " failed in " + (System.currentTimeMillis() - start) + "ms");
+        } finally {
+            executor.shutdownNow();
+            // let stuck registrations finish and roll back
+            registrar.shutdown();
+        }
+    }
 
-                        ia.registerAttributeProvider(provider);
-                    } catch (Exception e) {
-                        logger.error("error registering provider " + provider.getProvider() + " for realm "
-                                + provider.getRealm() + ": " + e.getMessage());
+    /*
+     * Register a provider within the timeout, measured from when this worker picks
+     * it up. A registration completing after the timeout is rolled back by its own
+     * thread.
+     */
+    private Long activateProvider(ExecutorService registrar, Activation activation) {
+        ConfigurableProvider cp = activation.provider;
+        long start = System.currentTimeMillis();
+        Future<?> registration = registrar.submit(() -> {
+            try {
+                activation.activate.activate();
 
-                        if (logger.isTraceEnabled()) {
-                            e.printStackTrace();
-                        }
-                    }
+                if (!activation.complete()) {
+                    // timed out while registering, roll back
+                    logger.error("late registration for provider " + cp.getProvider() + " for realm "
+                            + cp.getRealm() + ", unregister");
+                    activation.deactivate.activate();
                 }
+            } finally {
+                // (un)registered bypassing the manager, invalidate cached listings
+                authorityManager.touchProviders(cp.getRealm());
             }
+
+            return null;
         });
+
+        try {
+            registration.get(providersTimeout, TimeUnit.SECONDS);
+
+            long elapsed = System.currentTimeMillis() - start;
+            logger.info("registered provider " + cp.getProvider() + " for realm " + cp.getRealm() + " in "
+                    + elapsed + "ms");
+            return elapsed;
+        } catch (TimeoutException e) {
+            if (!activation.expire()) {
+                // completed in the meantime
+                long elapsed = System.currentTimeMillis() - start;
+                logger.info("registered provider " + cp.getProvider() + " for realm " + cp.getRealm() + " in "
+                        + elapsed + "ms");
+                return elapsed;
+            }
+
+            // late completion will be unregistered by the registration
+            registration.cancel(true);
+            logger.error("timeout registering provider " + cp.getProvider() + " for realm "
+                    + cp.getRealm());
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            logger.error("error registering provider " + cp.getProvider() + " for realm "
+                    + cp.getRealm() + ": " + cause.getMessage());
+
+            if (logger.isTraceEnabled()) {
+                cause.printStackTrace();
+            }
+
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            registration.cancel(true);
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ProviderActivation {
+        void activate() throws Exception;
+    }
+
+    /*
+     * Activation of a single provider, either completed by the worker or expired
+     * by the waiting thread, whichever comes first
+     */
+    private static class Activation {
+        private static final int PENDING = 0;
+        private static final int COMPLETED = 1;
+        private static final int EXPIRED = 2;
+
+        private final ConfigurableProvider provider;
+        private final ProviderActivation activate;
+        private final ProviderActivation deactivate;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        public Activation(ConfigurableProvider provider, ProviderActivation activate,
+                ProviderActivation deactivate) {
+            this.provider = provider;
+            this.activate = activate;
+            this.deactivate = deactivate;
+        }
+
+        public boolean complete() {
+            return state.compareAndSet(PENDING, COMPLETED);
+        }
+
+        public boolean expire() {
+            return state.compareAndSet(PENDING, EXPIRED);
+        }
+    }
+
+    /*
+     * Bootstrap status
+     */
+    public boolean isCoreReady() {
+        return coreReady;
+    }
+
+    public boolean isProvidersReady() {
+        return providersReady;
+    }
+
+    public int getProvidersTotal() {
+        return providersTotal;
+    }
+
+    public int getProvidersActive() {
+        return providersActive.get();
+    }
+
+    public int getProvidersFailed() {
+        return providersFailed.get();
     }
 
     // @Transactional(propagation = Propagation.REQUIRES_NEW)
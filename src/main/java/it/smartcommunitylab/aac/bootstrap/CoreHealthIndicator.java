@@ -0,0 +1,26 @@
+package it.smartcommunitylab.aac.bootstrap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health.Builder;
+import org.springframework.stereotype.Component;
+
+/*
+ * Readiness of core services: system realm and its providers are active
+ */
+@Component
+public class CoreHealthIndicator extends AbstractHealthIndicator {
+
+    @Autowired
+    private AACBootstrap bootstrap;
+
+    @Override
+    protected void doHealthCheck(Builder builder) throws Exception {
+        if (bootstrap.isCoreReady()) {
+            builder.up();
+        } else {
+            builder.outOfService();
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package it.smartcommunitylab.aac.bootstrap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health.Builder;
+import org.springframework.stereotype.Component;
+
+/*
+ * Activation status of realm providers: out of service while activating, down
+ * when some enabled provider failed to register, up once all are active
+ */
+@Component
+public class ProvidersHealthIndicator extends AbstractHealthIndicator {
+
+    @Autowired
+    private AACBootstrap bootstrap;
+
+    @Override
+    protected void doHealthCheck(Builder builder) throws Exception {
+        if (!bootstrap.isProvidersReady()) {
+            builder.outOfService();
+        } else if (bootstrap.getProvidersFailed() > 0
+                || bootstrap.getProvidersActive() < bootstrap.getProvidersTotal()) {
+            builder.down();
+        } else {
+            builder.up();
+        }
+
+        builder.withDetail("ready", bootstrap.isProvidersReady())
+                .withDetail("total", bootstrap.getProvidersTotal())
+                .withDetail("active", bootstrap.getProvidersActive())
+                .withDetail("failed", bootstrap.getProvidersFailed());
+    }
+
+}
@@ -121,6 +121,12 @@ public class DefaultClaimsService implements ClaimsService, InitializingBean {
         // base information, could be overwritten by converters
         claims.put("sub", userDetails.getSubjectId());
 
+        // build users once per realm, already narrowed to the attribute sets
+        // matching scopes, with roles only when requested
+        Collection<String> attributeSets = scopes.contains(Config.SCOPE_FULL_PROFILE) ? null : scopes;
+        boolean roles = scopes.contains(Config.SCOPE_USER_ROLE);
+        Map<String, User> users = new HashMap<>();
+
         if (scopes.contains(Config.SCOPE_PROFILE)) {
             // realm should stay behind scope "profile", if client doesn't match the realm
             // it should ask for this info and be approved
@@ -137,18 +143,8 @@ public class DefaultClaimsService implements ClaimsService, InitializingBean {
             Collection<ScopeClaimsExtractor> exts = extractorsRegistry.getScopeExtractors(scope);
             for (ScopeClaimsExtractor ce : exts) {
                 // each extractor can respond, we keep only userClaims
-                User user = userService.getUser(userDetails, ce.getRealm());
-
-                // filter attribute sets according to scopes
-                if (!ce.getResourceId().startsWith("aac.") && !scopes.contains(Config.SCOPE_FULL_PROFILE)) {
-                    user.setAttributes(narrowUserAttributes(user.getAttributes(), scopes));
-                }
-
-                if (!scopes.contains(Config.SCOPE_USER_ROLE)) {
-                    user.setAuthorities(null);
-                    user.setRealmRoles(null);
-                    user.setSpaceRoles(null);
-                }
+                User user = users.computeIfAbsent(ce.getRealm(),
+                        r -> buildUser(userDetails, r, attributeSets, roles));
 
                 ClaimsSet cs = ce.extractUserClaims(scope, user, client, scopes, extensions);
                 if (cs != null && cs.isUser()) {
@@ -164,18 +160,8 @@ public class DefaultClaimsService implements ClaimsService, InitializingBean {
             Collection<ResourceClaimsExtractor> exts = extractorsRegistry.getResourceExtractors(resourceId);
             for (ResourceClaimsExtractor ce : exts) {
                 // each extractor can respond, we keep only userClaims
-                User user = userService.getUser(userDetails, ce.getRealm());
-
-                // filter attribute sets according to scopes
-                if (!ce.getResourceId().startsWith("aac.") && !scopes.contains(Config.SCOPE_FULL_PROFILE)) {
-                    user.setAttributes(narrowUserAttributes(user.getAttributes(), scopes));
-                }
-
-                if (!scopes.contains(Config.SCOPE_USER_ROLE)) {
-                    user.setAuthorities(null);
-                    user.setRealmRoles(null);
-                    user.setSpaceRoles(null);
-                }
+                User user = users.computeIfAbsent(ce.getRealm(),
+                        r -> buildUser(userDetails, r, attributeSets, roles));
 
                 ClaimsSet cs = ce.extractUserClaims(resourceId, user, client, scopes, extensions);
                 if (cs != null && cs.isUser()) {
@@ -461,6 +447,18 @@ public class DefaultClaimsService implements ClaimsService, InitializingBean {
         contents.get(key).add(value);
     }
 
+    private User buildUser(UserDetails userDetails, String realm, Collection<String> attributeSets,
+            boolean roles) {
+        User user = userService.getUser(userDetails, realm, attributeSets, roles);
+        if (!roles) {
+            user.setAuthorities(null);
+            user.setRealmRoles(null);
+            user.setSpaceRoles(null);
+        }
+
+        return user;
+    }
+
     public List<UserAttributes> narrowUserAttributes(Collection<UserAttributes> attributes,
             Collection<String> scopes) {
         return attributes.stream()
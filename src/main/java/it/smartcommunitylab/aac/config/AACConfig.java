@@ -4,14 +4,18 @@ import java.io.IOException;
 import java.io.Writer;
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.ServletListenerRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.annotation.Order;
+import org.springframework.security.web.session.HttpSessionEventPublisher;
+import org.springframework.session.FindByIndexNameSessionRepository;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.DumperOptions.FlowStyle;
 import org.yaml.snakeyaml.DumperOptions.ScalarStyle;
@@ -23,6 +27,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.smartcommunitylab.aac.SystemKeys;
 import it.smartcommunitylab.aac.attributes.provider.MapperAttributeProviderConfig;
 import it.smartcommunitylab.aac.attributes.provider.ScriptAttributeProviderConfig;
@@ -43,6 +48,9 @@ import it.smartcommunitylab.aac.core.service.InMemoryProviderRepository;
 import it.smartcommunitylab.aac.core.service.SubjectService;
 import it.smartcommunitylab.aac.core.service.UserEntityService;
 import it.smartcommunitylab.aac.core.service.UserService;
+import it.smartcommunitylab.aac.core.session.AutoJdbcSessionIndex;
+import it.smartcommunitylab.aac.core.session.IndexedSessionRegistry;
+import it.smartcommunitylab.aac.crypto.PasswordHashService;
 import it.smartcommunitylab.aac.internal.provider.InternalAttributeProviderConfig;
 import it.smartcommunitylab.aac.internal.provider.InternalIdentityProviderConfig;
 import it.smartcommunitylab.aac.openid.auth.OIDCClientRegistrationRepository;
@@ -61,6 +69,27 @@ public class AACConfig {
     @Value("${application.url}")
     private String applicationUrl;
 
+    @Value("${security.password.iterations}")
+    private int passwordHashIterations;
+
+    @Value("${security.password.threads}")
+    private int passwordHashThreads;
+
+    @Value("${security.password.queue}")
+    private int passwordHashQueue;
+
+    @Value("${security.password.realmConcurrency}")
+    private int passwordHashRealmConcurrency;
+
+    @Value("${security.password.timeout}")
+    private long passwordHashTimeout;
+
+    @Value("${session.registry.sweep}")
+    private int sessionRegistrySweep;
+
+    @Value("${session.registry.idle}")
+    private int sessionRegistryIdle;
+
     /*
      * Core aac should be bootstrapped before services, security etc
      */
@@ -284,6 +313,42 @@ public class AACConfig {
         return new RealmAwarePathUriBuilder(applicationUrl);
     }
 
+    /*
+     * Password hashing, on a dedicated pool sized to cpu
+     */
+    @Bean(destroyMethod = "destroy")
+    public PasswordHashService passwordHashService(ObjectProvider<MeterRegistry> meterRegistry) {
+        int threads = passwordHashThreads > 0 ? passwordHashThreads : Runtime.getRuntime().availableProcessors();
+        PasswordHashService service = new PasswordHashService(threads, passwordHashQueue,
+                passwordHashRealmConcurrency);
+        service.setIterations(passwordHashIterations);
+        service.setTimeout(passwordHashTimeout);
+        service.setMeterRegistry(meterRegistry.getIfAvailable());
+        return service;
+    }
+
+    /*
+     * Active sessions, indexed for lookup and bulk invalidation
+     */
+    @Bean(destroyMethod = "destroy")
+    public IndexedSessionRegistry sessionRegistry(
+            ObjectProvider<FindByIndexNameSessionRepository<?>> sessionRepository,
+            ObjectProvider<AutoJdbcSessionIndex> sessionIndex,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        IndexedSessionRegistry registry = new IndexedSessionRegistry();
+        registry.setSessionRepository(sessionRepository.getIfAvailable());
+        registry.setSessionIndex(sessionIndex.getIfAvailable());
+        registry.setMeterRegistry(meterRegistry.getIfAvailable());
+        registry.setSweepInterval(sessionRegistrySweep, sessionRegistryIdle);
+        return registry;
+    }
+
+    // publish container session events to the registry
+    @Bean
+    public ServletListenerRegistrationBean<HttpSessionEventPublisher> httpSessionEventPublisher() {
+        return new ServletListenerRegistrationBean<>(new HttpSessionEventPublisher());
+    }
+
 //    @Autowired
 //    private UserRepository userRepository;
 //
@@ -1,14 +1,18 @@
 package it.smartcommunitylab.aac.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.web.context.SecurityContextPersistenceFilter;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import org.springframework.security.web.util.matcher.RequestMatcher;
 
 import it.smartcommunitylab.aac.core.auth.Http401UnauthorizedEntryPoint;
+import it.smartcommunitylab.aac.core.session.IndexedSessionRegistry;
+import it.smartcommunitylab.aac.core.session.SessionRegistryFilter;
 
 /*
  * Security context for console endpoints
@@ -20,6 +24,9 @@ import it.smartcommunitylab.aac.core.auth.Http401UnauthorizedEntryPoint;
 @Order(15)
 public class ConsoleSecurityConfig extends WebSecurityConfigurerAdapter {
 
+    @Autowired
+    private IndexedSessionRegistry sessionRegistry;
+
     /*
      * Configure a separated security context for API
      */
@@ -42,6 +49,9 @@ public class ConsoleSecurityConfig extends WebSecurityConfigurerAdapter {
         // we want a session for console
         http.sessionManagement()
                 .sessionCreationPolicy(SessionCreationPolicy.IF_REQUIRED);
+
+        // track sessions and terminate those destroyed via registry
+        http.addFilterAfter(new SessionRegistryFilter(sessionRegistry), SecurityContextPersistenceFilter.class);
     }
 
     public RequestMatcher getRequestMatcher() {
@@ -19,8 +19,12 @@ package it.smartcommunitylab.aac.config;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
@@ -30,6 +34,9 @@ import com.nimbusds.jose.JWEAlgorithm;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.KeyUse;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import it.smartcommunitylab.aac.jose.AutoJdbcJWKStore;
+import it.smartcommunitylab.aac.jose.JWKRotationManager;
 import it.smartcommunitylab.aac.jose.JWKSetKeyStore;
 import it.smartcommunitylab.aac.jwt.DefaultJWTEncryptionAndDecryptionService;
 import it.smartcommunitylab.aac.jwt.DefaultJWTSigningAndValidationService;
@@ -50,9 +57,24 @@ public class JWTConfig {
     @Value("${jwt.kid.enc}")
     private String encKid;
 
+    @Value("${jwt.rotation.period}")
+    private int rotationPeriod;
+
+    @Value("${jwt.rotation.prepublish}")
+    private int rotationPrepublish;
+
+    @Value("${jwt.rotation.overlap}")
+    private int rotationOverlap;
+
+    @Value("${jwt.rotation.secret}")
+    private String rotationSecret;
+
     @Autowired
     private JWKSetKeyStore jwtKeyStore;
 
+    @Autowired
+    private DataSource dataSource;
+
     @Bean
     public JWTSigningAndValidationService getJWTSigningAndValidationService()
             throws NoSuchAlgorithmException, InvalidKeySpecException {
@@ -96,6 +118,20 @@ public class JWTConfig {
         return service;
     }
 
+    /*
+     * Scheduled rotation of sign keys, replaces the default signer
+     */
+    @Bean(destroyMethod = "destroy")
+    @ConditionalOnProperty(prefix = "jwt.rotation", name = "enabled", havingValue = "true")
+    public JWKRotationManager jwkRotationManager(JWTSigningAndValidationService signService,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        JWKRotationManager manager = new JWKRotationManager(new AutoJdbcJWKStore(dataSource, rotationSecret),
+                (DefaultJWTSigningAndValidationService) signService, jwtKeyStore,
+                rotationPeriod, rotationPrepublish, rotationOverlap);
+        manager.setMeterRegistry(meterRegistry.getIfAvailable());
+        return manager;
+    }
+
     @Bean
     public JWTEncryptionAndDecryptionService getJWTEncryptionAndDecryptionService()
             throws JOSEException, NoSuchAlgorithmException, InvalidKeySpecException {
@@ -5,8 +5,10 @@ import java.util.ArrayList;
 import java.util.List;
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
@@ -24,6 +26,7 @@ import org.springframework.security.oauth2.provider.token.AuthorizationServerTok
 import org.springframework.web.bind.support.DefaultSessionAttributeStore;
 import org.springframework.web.bind.support.SessionAttributeStore;
 import org.springframework.web.context.WebApplicationContext;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.smartcommunitylab.aac.audit.OAuth2EventListener;
 import it.smartcommunitylab.aac.claims.ClaimsService;
 import it.smartcommunitylab.aac.core.auth.DefaultSecurityContextAuthenticationHelper;
@@ -32,6 +35,7 @@ import it.smartcommunitylab.aac.core.service.IdentityProviderService;
 import it.smartcommunitylab.aac.core.service.SubjectService;
 import it.smartcommunitylab.aac.core.service.UserService;
 import it.smartcommunitylab.aac.jwt.JWTService;
+import it.smartcommunitylab.aac.jwt.JWTSigningAndValidationService;
 import it.smartcommunitylab.aac.oauth.AACApprovalHandler;
 import it.smartcommunitylab.aac.oauth.OAuth2TokenServices;
 import it.smartcommunitylab.aac.oauth.approval.ApprovalStoreUserApprovalHandler;
@@ -41,8 +45,10 @@ import it.smartcommunitylab.aac.oauth.auth.InternalOpaqueTokenIntrospector;
 import it.smartcommunitylab.aac.oauth.event.OAuth2EventPublisher;
 import it.smartcommunitylab.aac.oauth.flow.FlowExtensionsService;
 import it.smartcommunitylab.aac.oauth.flow.OAuthFlowExtensionsHandler;
+import it.smartcommunitylab.aac.oauth.model.TokenReusePolicy;
 import it.smartcommunitylab.aac.oauth.persistence.OAuth2ClientEntityRepository;
 import it.smartcommunitylab.aac.oauth.provider.ClientRegistrationServices;
+import it.smartcommunitylab.aac.oauth.provider.PeekableAuthorizationCodeServices;
 import it.smartcommunitylab.aac.oauth.request.ExtRedirectResolver;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientDetailsService;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientRegistrationServices;
@@ -50,8 +56,12 @@ import it.smartcommunitylab.aac.oauth.service.OAuth2ClientService;
 import it.smartcommunitylab.aac.oauth.store.ExtTokenStore;
 import it.smartcommunitylab.aac.oauth.store.InMemoryAuthorizationRequestStore;
 import it.smartcommunitylab.aac.oauth.store.AuthorizationRequestStore;
+import it.smartcommunitylab.aac.oauth.store.CachingApprovalStore;
+import it.smartcommunitylab.aac.oauth.store.InMemoryAuthorizationCodeServices;
+import it.smartcommunitylab.aac.oauth.store.RevokedTokenDenylist;
 import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcApprovalStore;
 import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcAuthorizationCodeServices;
+import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcRevokedTokenStore;
 import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcTokenStore;
 import it.smartcommunitylab.aac.oauth.token.AACTokenEnhancer;
 import it.smartcommunitylab.aac.oauth.token.AbstractTokenGranter;
@@ -61,6 +71,7 @@ import it.smartcommunitylab.aac.oauth.token.ClientCredentialsTokenGranter;
 import it.smartcommunitylab.aac.oauth.token.DCRTokenEnhancer;
 import it.smartcommunitylab.aac.oauth.token.ImplicitTokenGranter;
 import it.smartcommunitylab.aac.oauth.token.JwtTokenConverter;
+import it.smartcommunitylab.aac.oauth.token.JwtTokenValidator;
 import it.smartcommunitylab.aac.oauth.token.PKCEAwareTokenGranter;
 import it.smartcommunitylab.aac.oauth.token.RefreshTokenGranter;
 import it.smartcommunitylab.aac.oauth.token.ResourceOwnerPasswordTokenGranter;
@@ -88,9 +99,27 @@ public class OAuth2Config {
     @Value("${oauth2.authcode.validity}")
     private int authCodeValidity;
 
+    @Value("${oauth2.authcode.store}")
+    private String authCodeStore;
+
+    @Value("${oauth2.authcode.purge}")
+    private int authCodePurgeInterval;
+
     @Value("${oauth2.accesstoken.validity}")
     private int accessTokenValidity;
 
+    @Value("${oauth2.accesstoken.reuse}")
+    private String accessTokenReuse;
+
+    @Value("${oauth2.accesstoken.reuseMinValidity}")
+    private int accessTokenReuseMinValidity;
+
+    @Value("${oauth2.accesstoken.stateless}")
+    private boolean accessTokenStateless;
+
+    @Value("${oauth2.accesstoken.revocationSync}")
+    private int accessTokenRevocationSync;
+
     @Value("${oauth2.refreshtoken.validity}")
     private int refreshTokenValidity;
 
@@ -109,6 +138,12 @@ public class OAuth2Config {
     @Value("${oauth2.resourceOwnerPassword.allowRefresh}")
     private boolean oauth2ResourceOwnerPasswordAllowRefresh;
 
+    @Value("${oauth2.approvals.cache}")
+    private int approvalsCacheValidity;
+
+    @Value("${oauth2.approvals.sweep}")
+    private int approvalsSweepInterval;
+
     @Autowired
     private DataSource dataSource;
 
@@ -150,9 +185,19 @@ public class OAuth2Config {
         return redirectResolver;
     }
 
-    @Bean
-    public AutoJdbcAuthorizationCodeServices getAuthorizationCodeServices() throws PropertyVetoException {
-        return new AutoJdbcAuthorizationCodeServices(dataSource, authCodeValidity);
+    @Bean(destroyMethod = "destroy")
+    public PeekableAuthorizationCodeServices getAuthorizationCodeServices() throws PropertyVetoException {
+        // in memory store is viable only for single node deployments
+        if ("memory".equals(authCodeStore)) {
+            InMemoryAuthorizationCodeServices codeServices = new InMemoryAuthorizationCodeServices(authCodeValidity);
+            codeServices.setPurgeInterval(authCodePurgeInterval);
+            return codeServices;
+        }
+
+        AutoJdbcAuthorizationCodeServices codeServices = new AutoJdbcAuthorizationCodeServices(dataSource,
+                authCodeValidity);
+        codeServices.setPurgeInterval(authCodePurgeInterval);
+        return codeServices;
     }
 
     @Bean
@@ -168,13 +213,20 @@ public class OAuth2Config {
     }
 
     @Bean
-    public ExtTokenStore getJDBCTokenStore() throws PropertyVetoException {
-        return new AutoJdbcTokenStore(dataSource);
+    public ExtTokenStore getJDBCTokenStore(ObjectProvider<RevokedTokenDenylist> revokedTokenDenylist)
+            throws PropertyVetoException {
+        AutoJdbcTokenStore tokenStore = new AutoJdbcTokenStore(dataSource);
+        tokenStore.setRevokedTokenDenylist(revokedTokenDenylist.getIfAvailable());
+        return tokenStore;
     }
 
-    @Bean
-    public AutoJdbcApprovalStore getApprovalStore() throws PropertyVetoException {
-        return new AutoJdbcApprovalStore(dataSource);
+    @Bean(destroyMethod = "destroy")
+    public CachingApprovalStore getApprovalStore() throws PropertyVetoException {
+        // cache per subject+client lookups in front of db
+        CachingApprovalStore approvalStore = new CachingApprovalStore(new AutoJdbcApprovalStore(dataSource),
+                approvalsCacheValidity);
+        approvalStore.setSweepInterval(approvalsSweepInterval);
+        return approvalStore;
     }
 
     public ApprovalStoreUserApprovalHandler userApprovalHandler(
@@ -241,9 +293,33 @@ public class OAuth2Config {
 
         JwtTokenConverter converter = new JwtTokenConverter(issuer, jwtService, oauth2ClientDetailsService);
         converter.setUseJwtByDefault(oauth2UseJwt);
+        converter.setStateless(accessTokenStateless);
         return converter;
     }
 
+    /*
+     * Revocations for stateless jwt, kept in memory and synced from db. Local
+     * validation exists only when tokens are stateless, persisted tokens are
+     * validated via store only.
+     */
+    @Bean(destroyMethod = "destroy")
+    @ConditionalOnProperty(prefix = "oauth2.accesstoken", name = "stateless", havingValue = "true")
+    public RevokedTokenDenylist revokedTokenDenylist(ObjectProvider<MeterRegistry> meterRegistry) {
+        RevokedTokenDenylist denylist = new RevokedTokenDenylist(new AutoJdbcRevokedTokenStore(dataSource),
+                accessTokenRevocationSync);
+        // subject and client cutoffs must cover tokens with the default validity
+        denylist.setCutoffRetention(Math.max(accessTokenValidity, RevokedTokenDenylist.DEFAULT_CUTOFF_RETENTION));
+        denylist.setMeterRegistry(meterRegistry.getIfAvailable());
+        return denylist;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "oauth2.accesstoken", name = "stateless", havingValue = "true")
+    public JwtTokenValidator jwtTokenValidator(JWTSigningAndValidationService signService,
+            RevokedTokenDenylist revokedTokenDenylist) {
+        return new JwtTokenValidator(issuer, signService, revokedTokenDenylist);
+    }
+
     @Bean
     public DCRTokenEnhancer dcrTokenEnhancer() {
         return new DCRTokenEnhancer();
@@ -267,7 +343,8 @@ public class OAuth2Config {
     public OAuth2TokenServices getTokenServices(
             OAuth2ClientDetailsService clientDetailsService,
             ExtTokenStore tokenStore, ApprovalStore approvalStore,
-            AACTokenEnhancer tokenEnhancer) throws PropertyVetoException {
+            AACTokenEnhancer tokenEnhancer, ObjectProvider<JwtTokenValidator> jwtTokenValidator,
+            ObjectProvider<MeterRegistry> meterRegistry) throws PropertyVetoException {
         OAuth2TokenServices tokenServices = new OAuth2TokenServices(tokenStore);
         tokenServices.setClientDetailsService(clientDetailsService);
         tokenServices.setApprovalStore(approvalStore);
@@ -275,6 +352,15 @@ public class OAuth2Config {
         tokenServices.setAccessTokenValiditySeconds(accessTokenValidity);
         tokenServices.setRefreshTokenValiditySeconds(refreshTokenValidity);
         tokenServices.setRemoveExpired(true);
+
+        TokenReusePolicy reusePolicy = TokenReusePolicy.parse(accessTokenReuse);
+        if (reusePolicy != null) {
+            tokenServices.setTokenReusePolicy(reusePolicy);
+        }
+        tokenServices.setTokenReuseMinValiditySeconds(accessTokenReuseMinValidity);
+        tokenServices.setStatelessJwt(accessTokenStateless);
+        tokenServices.setJwtTokenValidator(jwtTokenValidator.getIfAvailable());
+        tokenServices.setMeterRegistry(meterRegistry.getIfAvailable());
         return tokenServices;
     }
 
@@ -392,9 +478,10 @@ public class OAuth2Config {
 
     @Bean
     public InternalOpaqueTokenIntrospector tokenIntrospector(ExtTokenStore tokenStore,
-            SubjectService subjectService) {
+            SubjectService subjectService, ObjectProvider<JwtTokenValidator> jwtTokenValidator) {
         InternalOpaqueTokenIntrospector introspector = new InternalOpaqueTokenIntrospector(tokenStore);
         introspector.setSubjectService(subjectService);
+        introspector.setJwtTokenValidator(jwtTokenValidator.getIfAvailable());
 
         return introspector;
     }
@@ -0,0 +1,38 @@
+package it.smartcommunitylab.aac.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.smartcommunitylab.aac.openid.service.OIDCUpstreamManager;
+
+/*
+ * OpenId upstream services configuration
+ */
+@Configuration
+@Order(7)
+public class OpenIdConfig {
+
+    @Value("${openid.upstream.refresh}")
+    private int discoveryRefreshInterval;
+
+    @Value("${openid.upstream.maxConnections}")
+    private int maxConnections;
+
+    @Value("${openid.upstream.timeout}")
+    private int timeout;
+
+    /*
+     * Shared issuer discovery and http clients, used by all oidc providers
+     */
+    @Bean(destroyMethod = "destroy")
+    public OIDCUpstreamManager oidcUpstreamManager(ObjectProvider<MeterRegistry> meterRegistry) {
+        OIDCUpstreamManager manager = new OIDCUpstreamManager(discoveryRefreshInterval, maxConnections, timeout);
+        manager.setMeterRegistry(meterRegistry.getIfAvailable());
+        return manager;
+    }
+
+}
@@ -3,16 +3,20 @@ package it.smartcommunitylab.aac.config;
 import java.util.Collection;
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.smartcommunitylab.aac.attributes.store.AutoJdbcAttributeStore;
 import it.smartcommunitylab.aac.claims.ExtractorsRegistry;
 import it.smartcommunitylab.aac.claims.InMemoryExtractorsRegistry;
 import it.smartcommunitylab.aac.claims.ResourceClaimsExtractorProvider;
 import it.smartcommunitylab.aac.claims.ScopeClaimsExtractorProvider;
+import it.smartcommunitylab.aac.core.persistence.AutoJdbcUserSearchIndex;
 import it.smartcommunitylab.aac.scope.InMemoryScopeRegistry;
 import it.smartcommunitylab.aac.scope.ScopeProvider;
 
@@ -23,13 +27,24 @@ public class PersistenceConfig {
     @Autowired
     private DataSource dataSource;
 
+    @Value("${jdbc.attributes.compact}")
+    private boolean attributesCompact;
+
     /*
      * Wire persistence services bound to dataSource
      */
 
     @Bean
-    public AutoJdbcAttributeStore attributeStore() {
-        return new AutoJdbcAttributeStore(dataSource);
+    public AutoJdbcAttributeStore attributeStore(ObjectProvider<MeterRegistry> meterRegistry) {
+        AutoJdbcAttributeStore store = new AutoJdbcAttributeStore(dataSource);
+        store.setCompactEncoding(attributesCompact);
+        store.setMeterRegistry(meterRegistry.getIfAvailable());
+        return store;
+    }
+
+    @Bean
+    public AutoJdbcUserSearchIndex userSearchIndex() {
+        return new AutoJdbcUserSearchIndex(dataSource);
     }
 
     @Bean(name = "scopeRegistry")
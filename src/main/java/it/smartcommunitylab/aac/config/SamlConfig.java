@@ -1,8 +1,14 @@
 package it.smartcommunitylab.aac.config;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import it.smartcommunitylab.aac.saml.service.SamlMetadataManager;
+
 /*
  * Saml services configuration
  */
@@ -10,4 +16,17 @@ import org.springframework.core.annotation.Order;
 @Order(7)
 public class SamlConfig {
 
+    @Value("${saml.metadata.refresh}")
+    private int metadataRefreshInterval;
+
+    /*
+     * Shared idp metadata, used by both saml and spid authorities
+     */
+    @Bean(destroyMethod = "destroy")
+    public SamlMetadataManager samlMetadataManager(ObjectProvider<MeterRegistry> meterRegistry) {
+        SamlMetadataManager manager = new SamlMetadataManager(metadataRefreshInterval);
+        manager.setMeterRegistry(meterRegistry.getIfAvailable());
+        return manager;
+    }
+
 }
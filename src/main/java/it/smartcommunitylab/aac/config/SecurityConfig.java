@@ -19,6 +19,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.servlet.Filter;
+import javax.servlet.http.HttpSession;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
@@ -43,6 +45,7 @@ import org.springframework.security.web.authentication.logout.LogoutHandler;
 import org.springframework.security.web.authentication.logout.LogoutSuccessHandler;
 import org.springframework.security.web.authentication.logout.SecurityContextLogoutHandler;
 import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+import org.springframework.security.web.context.SecurityContextPersistenceFilter;
 import org.springframework.security.web.header.writers.ClearSiteDataHeaderWriter;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import org.springframework.web.filter.CompositeFilter;
@@ -52,6 +55,8 @@ import it.smartcommunitylab.aac.core.auth.RealmAwareAuthenticationEntryPoint;
 import it.smartcommunitylab.aac.core.auth.RequestAwareAuthenticationSuccessHandler;
 import it.smartcommunitylab.aac.core.entrypoint.RealmAwarePathUriBuilder;
 import it.smartcommunitylab.aac.core.provider.ProviderRepository;
+import it.smartcommunitylab.aac.core.session.IndexedSessionRegistry;
+import it.smartcommunitylab.aac.core.session.SessionRegistryFilter;
 import it.smartcommunitylab.aac.crypto.InternalPasswordEncoder;
 import it.smartcommunitylab.aac.internal.InternalConfirmKeyAuthenticationFilter;
 import it.smartcommunitylab.aac.internal.InternalLoginAuthenticationFilter;
@@ -118,6 +123,9 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     @Autowired
     private OAuth2ClientService oauth2ClientService;
 
+    @Autowired
+    private IndexedSessionRegistry sessionRegistry;
+
     @Autowired
     private InternalUserAccountService internalUserAccountService;
 
@@ -331,6 +339,9 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         http.sessionManagement()
                 .sessionCreationPolicy(SessionCreationPolicy.IF_REQUIRED);
 
+        // track sessions and terminate those destroyed via registry
+        http.addFilterAfter(new SessionRegistryFilter(sessionRegistry), SecurityContextPersistenceFilter.class);
+
 //        http
 ////		.anonymous().disable()
 //                .authorizeRequests()
@@ -366,6 +377,15 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     @Bean
     public CompositeLogoutHandler logoutHandler() {
         List<LogoutHandler> handlers = new ArrayList<>();
+
+        // drop from registry before invalidation
+        handlers.add((request, response, authentication) -> {
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                sessionRegistry.removeSessionInformation(session.getId());
+            }
+        });
+
         SecurityContextLogoutHandler contextLogoutHandler = new SecurityContextLogoutHandler();
         contextLogoutHandler.setClearAuthentication(true);
         contextLogoutHandler.setInvalidateHttpSession(true);
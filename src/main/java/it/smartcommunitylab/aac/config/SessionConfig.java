@@ -0,0 +1,82 @@
+package it.smartcommunitylab.aac.config;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.GenericConversionService;
+import org.springframework.session.jdbc.JdbcIndexedSessionRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.smartcommunitylab.aac.core.session.AutoJdbcSessionIndex;
+import it.smartcommunitylab.aac.core.session.MeteredSessionRepository;
+import it.smartcommunitylab.aac.core.session.SessionAttributeCodec;
+
+/*
+ * Shared http session store
+ *
+ * When enabled sessions are persisted via spring session jdbc, so that login
+ * state and in-flight oauth2/saml requests survive restarts and are visible
+ * to every node. Otherwise container sessions are used.
+ */
+@Configuration
+@Order(3)
+@ConditionalOnProperty(prefix = "spring.session", name = "store-type", havingValue = "jdbc")
+public class SessionConfig implements BeanClassLoaderAware {
+
+    @Value("${session.compressThreshold}")
+    private int compressThreshold;
+
+    @Value("${spring.session.jdbc.table-name:" + AutoJdbcSessionIndex.DEFAULT_SESSION_TABLE_NAME + "}")
+    private String sessionTableName;
+
+    private ClassLoader classLoader;
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Bean
+    public SessionAttributeCodec sessionAttributeCodec(ObjectProvider<MeterRegistry> meterRegistry) {
+        SessionAttributeCodec codec = new SessionAttributeCodec(classLoader);
+        codec.setCompressThreshold(compressThreshold);
+        codec.setMeterRegistry(meterRegistry.getIfAvailable());
+        return codec;
+    }
+
+    /*
+     * Attribute conversion picked up by the jdbc session repository
+     */
+    @Bean(name = "springSessionConversionService")
+    public ConversionService springSessionConversionService(SessionAttributeCodec codec) {
+        GenericConversionService conversionService = new GenericConversionService();
+        conversionService.addConverter(Object.class, byte[].class, codec::serialize);
+        conversionService.addConverter(byte[].class, Object.class, codec::deserialize);
+        return conversionService;
+    }
+
+    @Bean
+    @Primary
+    public MeteredSessionRepository<?> meteredSessionRepository(JdbcIndexedSessionRepository sessionRepository,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        MeteredSessionRepository<?> repository = new MeteredSessionRepository<>(sessionRepository);
+        repository.setMeterRegistry(meterRegistry.getIfAvailable());
+        return repository;
+    }
+
+    /*
+     * Realm, provider and client index shared by all nodes
+     */
+    @Bean
+    public AutoJdbcSessionIndex sessionIndex(DataSource dataSource) {
+        return new AutoJdbcSessionIndex(dataSource, sessionTableName);
+    }
+}
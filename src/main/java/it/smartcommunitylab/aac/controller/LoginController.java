@@ -8,6 +8,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
@@ -28,8 +29,12 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import it.smartcommunitylab.aac.SystemKeys;
 import it.smartcommunitylab.aac.common.LoginException;
+import it.smartcommunitylab.aac.common.NoSuchRealmException;
 import it.smartcommunitylab.aac.core.AuthorityManager;
 import it.smartcommunitylab.aac.core.ClientDetails;
 import it.smartcommunitylab.aac.core.RealmManager;
@@ -56,6 +61,13 @@ public class LoginController {
     @Autowired
     private ClientDetailsService clientDetailsService;
 
+    // realm login views, valid while realm and providers versions match.
+    // Expiration bounds staleness for changes made by other nodes
+    private final Cache<String, LoginView> views = CacheBuilder.newBuilder()
+            .expireAfterWrite(60, TimeUnit.SECONDS)
+            .maximumSize(1000)
+            .build();
+
     // TODO handle COMMON realm
     @RequestMapping(value = {
             "/login"
@@ -133,32 +145,22 @@ public class LoginController {
 
         model.addAttribute("realm", realm);
 
-        String displayName = applicationName;
-        Realm re = null;
-        Map<String, String> resources = new HashMap<>();
-        if (!realm.equals(SystemKeys.REALM_COMMON)) {
-            re = realmManager.getRealm(realm);
-            displayName = re.getName();
-            CustomizationBean gcb = re.getCustomization("global");
-            if (gcb != null) {
-                resources.putAll(gcb.getResources());
-            }
-            CustomizationBean lcb = re.getCustomization("login");
-            if (lcb != null) {
-                resources.putAll(lcb.getResources());
-            }
-        }
+        // realm view, shared by all requests until realm or providers change
+        LoginView view = loadView(realm);
 
-        model.addAttribute("displayName", displayName);
-        model.addAttribute("customization", resources);
+        model.addAttribute("displayName", view.displayName);
+        model.addAttribute("customization", view.customization);
 
-        // fetch providers for given realm
-        Collection<IdentityProvider> providers = authorityManager.getIdentityProviders(realm);
+        // fetch providers for given realm, already in display order
+        List<LoginAuthorityBean> loginAuthorities = view.authorities;
 
         if (StringUtils.hasText(providerId)) {
             IdentityProvider idp = authorityManager.getIdentityProvider(providerId);
             if (idp.getRealm().equals(realm)) {
-                providers = Collections.singleton(idp);
+                String id = idp.getProvider();
+                loginAuthorities = loginAuthorities.stream()
+                        .filter(a -> id.equals(a.getProvider()))
+                        .collect(Collectors.toList());
             }
         }
 
@@ -170,22 +172,16 @@ public class LoginController {
             // check realm and providers
             // TODO evaluate enforcing realm (or common) match
             if (clientDetails.getRealm().equals(realm)) {
-                providers = providers.stream().filter(p -> clientDetails.getProviders().contains(p.getProvider()))
+                loginAuthorities = loginAuthorities.stream()
+                        .filter(a -> clientDetails.getProviders().contains(a.getProvider()))
                         .collect(Collectors.toList());
             }
         }
 
-        // fetch as authorities model
-        List<LoginAuthorityBean> authorities = new ArrayList<>();
-        for (IdentityProvider idp : providers) {
-            LoginAuthorityBean a = LoginAuthorityBean.from(idp);
-            authorities.add(a);
-        }
-
         // bypass idp selection when only 1 is available
 
-        if (authorities.size() == 1) {
-            LoginAuthorityBean lab = authorities.get(0);
+        if (loginAuthorities.size() == 1) {
+            LoginAuthorityBean lab = loginAuthorities.get(0);
             // note: we can bypass only providers which expose a button,
             // anything else requires user interaction
             if (SystemKeys.DISPLAY_MODE_BUTTON.equals(lab.getDisplayMode())) {
@@ -196,21 +192,6 @@ public class LoginController {
 
         }
 
-        // sort by name
-        Collections.sort(authorities);
-
-        // build a display list respecting display mode for ordering: form, spid, button
-        List<LoginAuthorityBean> loginAuthorities = new ArrayList<>();
-        loginAuthorities.addAll(authorities.stream()
-                .filter(a -> SystemKeys.DISPLAY_MODE_FORM.equals(a.getDisplayMode()))
-                .collect(Collectors.toList()));
-        loginAuthorities.addAll(authorities.stream()
-                .filter(a -> SystemKeys.DISPLAY_MODE_SPID.equals(a.getDisplayMode()))
-                .collect(Collectors.toList()));
-        loginAuthorities.addAll(authorities.stream()
-                .filter(a -> SystemKeys.DISPLAY_MODE_BUTTON.equals(a.getDisplayMode()))
-                .collect(Collectors.toList()));
-
         model.addAttribute("authorities", loginAuthorities);
 
         // check errors
@@ -243,4 +224,78 @@ public class LoginController {
         return "redirect:/";
     }
 
+    /*
+     * Login view
+     */
+
+    private LoginView loadView(String realm) throws NoSuchRealmException {
+        // read versions before loading, a concurrent change will invalidate
+        long realmVersion = realmManager.getRealmVersion(realm);
+        long providersVersion = authorityManager.getProvidersVersion(realm);
+        LoginView view = views.getIfPresent(realm);
+        if (view != null && view.realmVersion == realmVersion && view.providersVersion == providersVersion) {
+            return view;
+        }
+
+        String displayName = applicationName;
+        Map<String, String> resources = new HashMap<>();
+        if (!realm.equals(SystemKeys.REALM_COMMON)) {
+            Realm re = realmManager.getRealm(realm);
+            displayName = re.getName();
+            CustomizationBean gcb = re.getCustomization("global");
+            if (gcb != null) {
+                resources.putAll(gcb.getResources());
+            }
+            CustomizationBean lcb = re.getCustomization("login");
+            if (lcb != null) {
+                resources.putAll(lcb.getResources());
+            }
+        }
+
+        // fetch as authorities model
+        Collection<IdentityProvider> providers = authorityManager.getIdentityProviders(realm);
+        List<LoginAuthorityBean> authorities = new ArrayList<>();
+        for (IdentityProvider idp : providers) {
+            LoginAuthorityBean a = LoginAuthorityBean.from(idp);
+            authorities.add(a);
+        }
+
+        // sort by name
+        Collections.sort(authorities);
+
+        // build a display list respecting display mode for ordering: form, spid, button
+        List<LoginAuthorityBean> loginAuthorities = new ArrayList<>();
+        loginAuthorities.addAll(authorities.stream()
+                .filter(a -> SystemKeys.DISPLAY_MODE_FORM.equals(a.getDisplayMode()))
+                .collect(Collectors.toList()));
+        loginAuthorities.addAll(authorities.stream()
+                .filter(a -> SystemKeys.DISPLAY_MODE_SPID.equals(a.getDisplayMode()))
+                .collect(Collectors.toList()));
+        loginAuthorities.addAll(authorities.stream()
+                .filter(a -> SystemKeys.DISPLAY_MODE_BUTTON.equals(a.getDisplayMode()))
+                .collect(Collectors.toList()));
+
+        view = new LoginView(realmVersion, providersVersion, displayName,
+                Collections.unmodifiableMap(resources), Collections.unmodifiableList(loginAuthorities));
+        views.put(realm, view);
+        return view;
+    }
+
+    private static class LoginView {
+        private final long realmVersion;
+        private final long providersVersion;
+        private final String displayName;
+        private final Map<String, String> customization;
+        private final List<LoginAuthorityBean> authorities;
+
+        public LoginView(long realmVersion, long providersVersion, String displayName,
+                Map<String, String> customization, List<LoginAuthorityBean> authorities) {
+            this.realmVersion = realmVersion;
+            this.providersVersion = providersVersion;
+            this.displayName = displayName;
+            this.customization = customization;
+            this.authorities = authorities;
+        }
+    }
+
 }
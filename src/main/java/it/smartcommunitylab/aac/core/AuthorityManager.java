@@ -4,6 +4,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import it.smartcommunitylab.aac.SystemKeys;
@@ -39,6 +43,9 @@ public class AuthorityManager {
     @Autowired
     private SessionManager sessionManager;
 
+    // per realm version of providers, bumped on every change
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
     /*
      * Identity
      */
@@ -214,25 +221,9 @@ public class AuthorityManager {
     }
 
     public Collection<IdentityProvider> getIdentityProviders(String realm) throws NoSuchRealmException {
-        Collection<? extends ConfigurableProvider> providers = listProviders(TYPE_IDENTITY, realm);
-
-        // fetch each active provider from authority
-        List<IdentityProvider> idps = new ArrayList<>();
-        for (ConfigurableProvider provider : providers) {
-            // lookup in authority
-            IdentityAuthority ia = getIdentityAuthority(provider.getAuthority());
-            try {
-                IdentityProvider idp = ia.getIdentityProvider(provider.getProvider());
-                if (idp != null) {
-                    idps.add(idp);
-                }
-            } catch (NoSuchProviderException e) {
-                // skip
-            }
-
-        }
-
-        return idps;
+        // active providers are those registered, served from authorities
+        // without db lookup
+        return fetchIdentityProviders(realm);
     }
 
     // fast load, skips db lookup
@@ -370,7 +361,11 @@ public class AuthorityManager {
         }
 
         IdentityAuthority a = getIdentityAuthority(provider.getAuthority());
-        return a.registerIdentityProvider(provider);
+        try {
+            return a.registerIdentityProvider(provider);
+        } finally {
+            touchProviders(provider.getRealm());
+        }
     }
 
     public void unregisterIdentityProvider(ConfigurableIdentityProvider provider) throws SystemException {
@@ -380,6 +375,7 @@ public class AuthorityManager {
         // terminate sessions
         sessionManager.destroyProviderSessions(providerId);
         a.unregisterIdentityProvider(providerId);
+        touchProviders(provider.getRealm());
     }
 
     /*
@@ -430,25 +426,9 @@ public class AuthorityManager {
     }
 
     public Collection<AttributeProvider> getAttributeProviders(String realm) throws NoSuchRealmException {
-        Collection<? extends ConfigurableProvider> providers = listProviders(TYPE_ATTRIBUTES, realm);
-
-        // fetch each active provider from authority
-        List<AttributeProvider> idps = new ArrayList<>();
-        for (ConfigurableProvider provider : providers) {
-            // lookup in authority
-            AttributeAuthority ia = getAttributeAuthority(provider.getAuthority());
-            try {
-                AttributeProvider idp = ia.getAttributeProvider(provider.getProvider());
-                if (idp != null) {
-                    idps.add(idp);
-                }
-            } catch (NoSuchProviderException e) {
-                // skip
-            }
-
-        }
-
-        return idps;
+        // active providers are those registered, served from authorities
+        // without db lookup
+        return fetchAttributeProviders(realm);
     }
 
     // fast load, skips db lookup
@@ -572,7 +552,11 @@ public class AuthorityManager {
         }
 
         AttributeAuthority a = getAttributeAuthority(provider.getAuthority());
-        return a.registerAttributeProvider(provider);
+        try {
+            return a.registerAttributeProvider(provider);
+        } finally {
+            touchProviders(provider.getRealm());
+        }
     }
 
     public void unregisterAttributeProvider(ConfigurableAttributeProvider provider) throws SystemException {
@@ -580,6 +564,25 @@ public class AuthorityManager {
         String providerId = provider.getProvider();
 
         a.unregisterAttributeProvider(providerId);
+        touchProviders(provider.getRealm());
+    }
+
+    /*
+     * Providers version
+     * 
+     * changes on every registration change in the realm, consumers can cache
+     * listings while the version stays the same
+     */
+
+    public long getProvidersVersion(String realm) {
+        AtomicLong v = versions.get(realm);
+        return v != null ? v.get() : 0;
+    }
+
+    public void touchProviders(String realm) {
+        if (realm != null) {
+            versions.computeIfAbsent(realm, r -> new AtomicLong()).incrementAndGet();
+        }
     }
 
 }
@@ -21,7 +21,6 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.approval.Approval;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -47,6 +46,7 @@ import it.smartcommunitylab.aac.model.RealmRole;
 import it.smartcommunitylab.aac.oauth.model.ClientSecret;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientAppService;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientService;
+import it.smartcommunitylab.aac.oauth.model.TokenMetadata;
 import it.smartcommunitylab.aac.oauth.store.ExtTokenStore;
 import it.smartcommunitylab.aac.oauth.store.SearchableApprovalStore;
 import it.smartcommunitylab.aac.roles.service.SpaceRoleService;
@@ -560,14 +560,48 @@ public class ClientManager {
         return approvals;
     }
 
-    public Collection<OAuth2AccessToken> getAccessTokens(String realm, String clientId) throws NoSuchClientException {
+    public List<TokenMetadata> listAccessTokens(String realm, String clientId, String after, int size)
+            throws NoSuchClientException {
+        ClientEntity entity = findClient(clientId);
+        if (entity == null) {
+            throw new NoSuchClientException();
+        }
+
+        // check realm match
+        if (!entity.getRealm().equals(realm)) {
+            throw new AccessDeniedException("realm mismatch");
+        }
+
+        return tokenStore.listTokensByClientId(clientId, after, size);
+    }
+
+    public int revokeAccessTokens(String realm, String clientId) throws NoSuchClientException {
         ClientEntity entity = findClient(clientId);
         if (entity == null) {
             throw new NoSuchClientException();
         }
 
-        Collection<OAuth2AccessToken> tokens = tokenStore.findTokensByClientId(clientId);
-        return tokens;
+        // check realm match
+        if (!entity.getRealm().equals(realm)) {
+            throw new AccessDeniedException("realm mismatch");
+        }
+
+        int count = tokenStore.revokeTokensByClientId(clientId);
+        logger.debug("revoked " + count + " tokens for client " + clientId);
+        return count;
+    }
+
+    public int revokeRealmAccessTokens(String realm) throws NoSuchRealmException {
+        // one indexed delete per client, realm is not stored along tokens
+        int count = 0;
+        for (Client client : listClients(realm)) {
+            if (client.getRealm().equals(realm)) {
+                count += tokenStore.revokeTokensByClientId(client.getClientId());
+            }
+        }
+
+        logger.debug("revoked " + count + " tokens for realm " + realm);
+        return count;
     }
 
     public Collection<AuditEvent> getAudit(String realm, String clientId, Date after, Date before)
@@ -699,7 +733,10 @@ public class ClientManager {
         // session invalidation
         sessionManager.destroyClientSessions(clientId);
 
-        // TODO token revoke, cleanups etc
+        // token revoke, set based
+        tokenStore.revokeTokensByClientId(clientId);
+
+        // TODO cleanups etc
         // most things should be handled by the downstream service
 
         // remove approvals
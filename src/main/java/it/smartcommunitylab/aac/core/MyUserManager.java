@@ -225,10 +225,7 @@ public class MyUserManager {
 //        }
 
         // remove approvals
-        Collection<Approval> approvals = approvalStore.getApprovals(subjectId, clientId);
-        if (!approvals.isEmpty()) {
-            approvalStore.revokeApprovals(approvals);
-        }
+        approvalStore.revokeApprovals(subjectId, clientId);
 
     }
 
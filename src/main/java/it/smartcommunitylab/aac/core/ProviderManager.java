@@ -1,9 +1,14 @@
 package it.smartcommunitylab.aac.core;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -11,6 +16,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.fasterxml.jackson.module.jsonSchema.JsonSchema;
 
 import it.smartcommunitylab.aac.Config;
@@ -50,6 +58,13 @@ public class ProviderManager {
     @Autowired
     private AuthorityManager authorityManager;
 
+    // realm listings with registration status, valid while the realm version
+    // matches. Expiration bounds staleness for changes made by other nodes
+    private final Cache<String, ProviderListing> listings = CacheBuilder.newBuilder()
+            .expireAfterWrite(60, TimeUnit.SECONDS)
+            .maximumSize(1000)
+            .build();
+
     /*
      * Public API: realm providers only.
      * 
@@ -58,25 +73,15 @@ public class ProviderManager {
      * TODO add permissions
      */
     public Collection<ConfigurableProvider> listProviders(String realm) throws NoSuchRealmException {
-        List<ConfigurableProvider> providers = new ArrayList<>();
-
-        if (SystemKeys.REALM_GLOBAL.equals(realm) || SystemKeys.REALM_SYSTEM.equals(realm)) {
-            // idps only
-            Collection<ConfigurableIdentityProvider> idps = identityProviderService.listProviders(realm);
-            providers.addAll(idps);
-            return providers;
-        }
-
-        Realm re = realmService.getRealm(realm);
-
-        // identity providers
-        Collection<ConfigurableIdentityProvider> idps = identityProviderService.listProviders(re.getSlug());
-        providers.addAll(idps);
-        // attribute providers
-        Collection<ConfigurableAttributeProvider> aps = attributeProviderService.listProviders(re.getSlug());
-        providers.addAll(aps);
+        return loadProviders(realm);
+    }
 
-        return providers;
+    /*
+     * Version of the providers listing for the given realm, changes whenever
+     * providers are modified or (un)registered on this node
+     */
+    public long getProvidersVersion(String realm) {
+        return authorityManager.getProvidersVersion(realm);
     }
 
     public Collection<? extends ConfigurableProvider> listProviders(String realm, String type)
@@ -175,12 +180,10 @@ public class ProviderManager {
      */
 
     public Collection<ConfigurableIdentityProvider> listIdentityProviders(String realm) throws NoSuchRealmException {
-        if (SystemKeys.REALM_GLOBAL.equals(realm) || SystemKeys.REALM_SYSTEM.equals(realm)) {
-            return identityProviderService.listProviders(realm);
-        }
-
-        Realm re = realmService.getRealm(realm);
-        return identityProviderService.listProviders(re.getSlug());
+        return loadProviders(realm).stream()
+                .filter(p -> p instanceof ConfigurableIdentityProvider)
+                .map(p -> (ConfigurableIdentityProvider) p)
+                .collect(Collectors.toList());
     }
 
     public ConfigurableIdentityProvider findIdentityProvider(String realm, String providerId) {
@@ -217,7 +220,11 @@ public class ProviderManager {
         }
 
         Realm re = realmService.getRealm(realm);
-        return identityProviderService.addProvider(re.getSlug(), provider);
+        try {
+            return identityProviderService.addProvider(re.getSlug(), provider);
+        } finally {
+            authorityManager.touchProviders(re.getSlug());
+        }
 
     }
 
@@ -231,7 +238,11 @@ public class ProviderManager {
             throw new IllegalArgumentException("realm does not match provider");
         }
 
-        return identityProviderService.updateProvider(providerId, provider);
+        try {
+            return identityProviderService.updateProvider(providerId, provider);
+        } finally {
+            authorityManager.touchProviders(re.getSlug());
+        }
 
     }
 
@@ -252,6 +263,7 @@ public class ProviderManager {
         }
 
         identityProviderService.deleteProvider(providerId);
+        authorityManager.touchProviders(re.getSlug());
     }
 
     //
@@ -329,12 +341,10 @@ public class ProviderManager {
      */
 
     public Collection<ConfigurableAttributeProvider> listAttributeProviders(String realm) throws NoSuchRealmException {
-        if (SystemKeys.REALM_GLOBAL.equals(realm) || SystemKeys.REALM_SYSTEM.equals(realm)) {
-            return attributeProviderService.listProviders(realm);
-        }
-
-        Realm re = realmService.getRealm(realm);
-        return attributeProviderService.listProviders(re.getSlug());
+        return loadProviders(realm).stream()
+                .filter(p -> p instanceof ConfigurableAttributeProvider)
+                .map(p -> (ConfigurableAttributeProvider) p)
+                .collect(Collectors.toList());
     }
 
     public ConfigurableAttributeProvider findAttributeProvider(String realm, String providerId) {
@@ -372,7 +382,11 @@ public class ProviderManager {
         }
 
         Realm re = realmService.getRealm(realm);
-        return attributeProviderService.addProvider(re.getSlug(), provider);
+        try {
+            return attributeProviderService.addProvider(re.getSlug(), provider);
+        } finally {
+            authorityManager.touchProviders(re.getSlug());
+        }
 
     }
 
@@ -386,7 +400,11 @@ public class ProviderManager {
             throw new IllegalArgumentException("realm does not match provider");
         }
 
-        return attributeProviderService.updateProvider(providerId, provider);
+        try {
+            return attributeProviderService.updateProvider(providerId, provider);
+        } finally {
+            authorityManager.touchProviders(re.getSlug());
+        }
 
     }
 
@@ -407,6 +425,7 @@ public class ProviderManager {
         }
 
         attributeProviderService.deleteProvider(providerId);
+        authorityManager.touchProviders(re.getSlug());
     }
 
     //
@@ -569,4 +588,102 @@ public class ProviderManager {
      * Helpers
      */
 
+    /*
+     * Providers with registration status, as copies of the cached listing so that
+     * callers can not alter it
+     */
+    private List<ConfigurableProvider> loadProviders(String realm) throws NoSuchRealmException {
+        // read version before loading, a concurrent change will invalidate
+        long version = authorityManager.getProvidersVersion(realm);
+        ProviderListing listing = listings.getIfPresent(realm);
+        if (listing == null || listing.version != version) {
+            listing = new ProviderListing(version, fetchProviders(realm));
+            listings.put(realm, listing);
+        }
+
+        return listing.providers.stream().map(p -> copyOf(p)).collect(Collectors.toList());
+    }
+
+    private List<ConfigurableProvider> fetchProviders(String realm) throws NoSuchRealmException {
+        List<ConfigurableProvider> providers = new ArrayList<>();
+        if (SystemKeys.REALM_GLOBAL.equals(realm) || SystemKeys.REALM_SYSTEM.equals(realm)) {
+            // idps only
+            providers.addAll(identityProviderService.listProviders(realm));
+        } else {
+            Realm re = realmService.getRealm(realm);
+            providers.addAll(identityProviderService.listProviders(re.getSlug()));
+            providers.addAll(attributeProviderService.listProviders(re.getSlug()));
+        }
+
+        for (ConfigurableProvider cp : providers) {
+            cp.setRegistered(isProviderRegistered(realm, cp));
+        }
+
+        return Collections.unmodifiableList(providers);
+    }
+
+    private static ConfigurableProvider copyOf(ConfigurableProvider cp) {
+        ConfigurableProvider p;
+        if (cp instanceof ConfigurableIdentityProvider) {
+            ConfigurableIdentityProvider ip = (ConfigurableIdentityProvider) cp;
+            ConfigurableIdentityProvider c = new ConfigurableIdentityProvider(ip.getAuthority(), ip.getProvider(),
+                    ip.getRealm());
+            c.setLinkable(ip.isLinkable());
+            c.setPersistence(ip.getPersistence());
+            c.setEvents(ip.getEvents());
+            c.setIcon(ip.getIcon());
+            c.setDisplayMode(ip.getDisplayMode());
+            c.setActionUrls(ip.getActionUrls() != null ? new HashMap<>(ip.getActionUrls()) : null);
+            c.setHookFunctions(ip.getHookFunctions() != null ? new HashMap<>(ip.getHookFunctions()) : null);
+            p = c;
+        } else if (cp instanceof ConfigurableAttributeProvider) {
+            ConfigurableAttributeProvider ap = (ConfigurableAttributeProvider) cp;
+            ConfigurableAttributeProvider c = new ConfigurableAttributeProvider(ap.getAuthority(), ap.getProvider(),
+                    ap.getRealm());
+            c.setAttributeSets(ap.getAttributeSets() != null ? new HashSet<>(ap.getAttributeSets()) : null);
+            c.setPersistence(ap.getPersistence());
+            c.setEvents(ap.getEvents());
+            p = c;
+        } else {
+            p = new ConfigurableProvider(cp.getAuthority(), cp.getProvider(), cp.getRealm(), cp.getType());
+        }
+
+        p.setEnabled(cp.isEnabled());
+        p.setRegistered(cp.getRegistered());
+        p.setName(cp.getName());
+        p.setDescription(cp.getDescription());
+        if (cp.getConfiguration() != null) {
+            Map<String, Serializable> configuration = new HashMap<>();
+            cp.getConfiguration().forEach((k, v) -> configuration.put(k, copyValue(v)));
+            p.setConfiguration(configuration);
+        }
+        p.setSchema(cp.getSchema());
+        return p;
+    }
+
+    // configurations are json trees, copy nested maps and lists
+    private static Serializable copyValue(Serializable value) {
+        if (value instanceof Map) {
+            HashMap<Object, Object> map = new HashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> map.put(k, v instanceof Serializable ? copyValue((Serializable) v) : v));
+            return map;
+        }
+        if (value instanceof List) {
+            ArrayList<Object> list = new ArrayList<>();
+            ((List<?>) value).forEach(v -> list.add(v instanceof Serializable ? copyValue((Serializable) v) : v));
+            return list;
+        }
+        return value;
+    }
+
+    private static class ProviderListing {
+        private final long version;
+        private final List<ConfigurableProvider> providers;
+
+        public ProviderListing(long version, List<ConfigurableProvider> providers) {
+            this.version = version;
+            this.providers = providers;
+        }
+    }
+
 }
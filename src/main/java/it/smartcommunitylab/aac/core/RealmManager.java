@@ -1,12 +1,15 @@
 package it.smartcommunitylab.aac.core;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -35,6 +38,8 @@ import it.smartcommunitylab.aac.common.NoSuchUserException;
 import it.smartcommunitylab.aac.common.RegistrationException;
 import it.smartcommunitylab.aac.core.base.ConfigurableProvider;
 import it.smartcommunitylab.aac.core.model.Client;
+import it.smartcommunitylab.aac.core.service.AttributeProviderService;
+import it.smartcommunitylab.aac.core.service.IdentityProviderService;
 import it.smartcommunitylab.aac.core.service.RealmService;
 import it.smartcommunitylab.aac.core.service.UserService;
 import it.smartcommunitylab.aac.dto.CustomizationBean;
@@ -50,6 +55,9 @@ public class RealmManager {
 
     private int minLength = 3;
 
+    // realm versions, bumped on local updates
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
     @Autowired
     private RealmService realmService;
 
@@ -62,6 +70,12 @@ public class RealmManager {
     @Autowired
     private ProviderManager providerManager;
 
+    @Autowired
+    private IdentityProviderService identityProviderService;
+
+    @Autowired
+    private AttributeProviderService attributeProviderService;
+
     @Autowired
     private ServicesManager servicesManager;
 
@@ -172,6 +186,7 @@ public class RealmManager {
 
         Realm realm = realmService.updateRealm(slug, name, r.isEditable(), r.isPublic(), oauth2ConfigMap,
                 customizationMap);
+        touchRealm(slug);
 
         return realm;
     }
@@ -225,7 +240,10 @@ public class RealmManager {
 
         if (realm != null && cleanup) {
             // remove all providers, will also invalidate sessions for idps
-            Collection<ConfigurableProvider> providers = providerManager.listProviders(slug);
+            // read from services, cached listings may miss recent additions
+            Collection<ConfigurableProvider> providers = new ArrayList<>();
+            providers.addAll(identityProviderService.listProviders(slug));
+            providers.addAll(attributeProviderService.listProviders(slug));
             for (ConfigurableProvider provider : providers) {
                 try {
                     String providerId = provider.getProvider();
@@ -296,6 +314,7 @@ public class RealmManager {
 
         // remove realm
         realmService.deleteRealm(slug);
+        touchRealm(slug);
 
     }
 
@@ -376,4 +395,20 @@ public class RealmManager {
         return updateDeveloper(realm, user.getSubjectId(), Collections.singleton(Config.R_DEVELOPER));
 
     }
+
+    /*
+     * Realm version
+     * 
+     * changes whenever the realm definition is updated on this node, consumers
+     * can cache views derived from the realm while the version stays the same
+     */
+    public long getRealmVersion(String slug) {
+        AtomicLong v = versions.get(slug);
+        return v != null ? v.get() : 0;
+    }
+
+    private void touchRealm(String slug) {
+        versions.computeIfAbsent(slug, r -> new AtomicLong()).incrementAndGet();
+    }
+
 }
@@ -1,70 +1,87 @@
 package it.smartcommunitylab.aac.core;
 
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.session.SessionInformation;
 import org.springframework.stereotype.Service;
 
+import it.smartcommunitylab.aac.core.session.IndexedSessionRegistry;
+
 @Service
 public class SessionManager {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
 
     @Autowired
     private AuthenticationHelper authHelper;
 
-    // TODO track active sessions via SessionRegistry
+    @Autowired
+    private IndexedSessionRegistry sessionRegistry;
 
     /*
      * User sessions
      */
-    public void listUserSessions() {
-
+    public List<SessionInformation> listUserSessions() {
+        return sessionRegistry.getSessions(false);
     }
 
-    public void listUserSessions(String userId) {
-
+    public List<SessionInformation> listUserSessions(String userId) {
+        return sessionRegistry.getSubjectSessions(userId, false);
     }
 
     public void destroyUserSessions(String userId) {
         // destroy sessions for users
         // we revoke session but not tokens, those should be handled eslewhere
+        int count = sessionRegistry.destroySubjectSessions(userId);
+        logger.debug("destroyed " + count + " sessions for user " + userId);
     }
 
     /*
      * Client sessions
      */
-    public void listClientSessions() {
-
+    public List<SessionInformation> listClientSessions() {
+        return sessionRegistry.getSessions(false);
     }
 
-    public void listClientSessions(String clientId) {
-
+    public List<SessionInformation> listClientSessions(String clientId) {
+        return sessionRegistry.getClientSessions(clientId, false);
     }
 
     public void destroyClientSessions(String clientId) {
         // destroy sessions for clients
         // we revoke session but not tokens
+        int count = sessionRegistry.destroyClientSessions(clientId);
+        logger.debug("destroyed " + count + " sessions for client " + clientId);
     }
 
     /*
      * Realm sessions
      */
 
-    public void listRealmSessions(String realm) {
-
+    public List<SessionInformation> listRealmSessions(String realm) {
+        return sessionRegistry.getRealmSessions(realm, false);
     }
 
     public void destroyRealmSessions(String realm) {
-        // destroy sessions from the given provider
+        // destroy sessions from the given realm
+        int count = sessionRegistry.destroyRealmSessions(realm);
+        logger.debug("destroyed " + count + " sessions for realm " + realm);
     }
 
     /*
      * Provider sessions
      */
 
-    public void listProviderSessions(String providerId) {
-
+    public List<SessionInformation> listProviderSessions(String providerId) {
+        return sessionRegistry.getProviderSessions(providerId, false);
     }
 
     public void destroyProviderSessions(String providerId) {
         // destroy sessions from the given provider
+        int count = sessionRegistry.destroyProviderSessions(providerId);
+        logger.debug("destroyed " + count + " sessions for provider " + providerId);
     }
 
 }
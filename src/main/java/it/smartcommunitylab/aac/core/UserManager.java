@@ -21,7 +21,6 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.approval.Approval;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -57,6 +56,7 @@ import it.smartcommunitylab.aac.dto.ConnectedAppProfile;
 import it.smartcommunitylab.aac.internal.persistence.InternalUserAccount;
 import it.smartcommunitylab.aac.model.Realm;
 import it.smartcommunitylab.aac.model.User;
+import it.smartcommunitylab.aac.oauth.model.TokenMetadata;
 import it.smartcommunitylab.aac.oauth.store.ExtTokenStore;
 import it.smartcommunitylab.aac.oauth.store.SearchableApprovalStore;
 import it.smartcommunitylab.aac.scope.Scope;
@@ -222,6 +222,15 @@ public class UserManager {
         return userService.searchUsers(r.getSlug(), keywords, pageRequest);
     }
 
+    @Transactional(readOnly = true)
+    public List<User> searchUsers(String realm, String keywords, String after, int size)
+            throws NoSuchRealmException {
+        logger.debug("search users for realm " + realm + " with keywords " + String.valueOf(keywords)
+                + " after " + String.valueOf(after));
+        Realm r = realmService.getRealm(realm);
+        return userService.searchUsers(r.getSlug(), keywords, after, size);
+    }
+
     /*
      * Authorities
      */
@@ -285,7 +294,9 @@ public class UserManager {
         } catch (Exception e) {
         }
 
-        // TODO tokens
+        // tokens, set based
+        tokenStore.revokeTokensByUserName(subjectId);
+
         // TODO proxy for different realms?
 
         // let userService handle account, registrations etc
@@ -535,10 +546,7 @@ public class UserManager {
 //        }
 
         // remove approvals
-        Collection<Approval> approvals = approvalStore.getApprovals(subjectId, clientId);
-        if (!approvals.isEmpty()) {
-            approvalStore.revokeApprovals(approvals);
-        }
+        approvalStore.revokeApprovals(subjectId, clientId);
 
     }
 
@@ -552,14 +560,27 @@ public class UserManager {
         return approvals;
     }
 
-    public Collection<OAuth2AccessToken> getAccessTokens(String realm, String subjectId) throws NoSuchUserException {
-        User user = userService.findUser(subjectId);
-        if (user == null) {
-            throw new NoSuchUserException();
+    public List<TokenMetadata> listAccessTokens(String realm, String subjectId, String after, int size)
+            throws NoSuchUserException {
+        // check realm match, source realm only
+        String source = userService.getUserRealm(subjectId);
+        if (!source.equals(realm)) {
+            throw new NoSuchUserException("realm mismatch");
+        }
+
+        return tokenStore.listTokensByUserName(subjectId, after, size);
+    }
+
+    public int revokeAccessTokens(String realm, String subjectId) throws NoSuchUserException {
+        // check realm match, source realm only
+        String source = userService.getUserRealm(subjectId);
+        if (!source.equals(realm)) {
+            throw new NoSuchUserException("realm mismatch");
         }
 
-        Collection<OAuth2AccessToken> tokens = tokenStore.findTokensByUserName(subjectId);
-        return tokens;
+        int count = tokenStore.revokeTokensByUserName(subjectId);
+        logger.debug("revoked " + count + " tokens for user " + subjectId);
+        return count;
     }
 
     public Collection<AuditEvent> getAudit(String realm, String subjectId, Date after, Date before)
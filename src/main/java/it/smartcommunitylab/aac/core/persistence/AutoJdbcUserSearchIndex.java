@@ -0,0 +1,184 @@
+package it.smartcommunitylab.aac.core.persistence;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import it.smartcommunitylab.aac.utils.JdbcSchemaUtils;
+
+/*
+ * Search index for users, with DB table creation on startup
+ *
+ * Holds lower-case copies of the searchable fields, indexed per realm, so that
+ * lookups are prefix matches served by indexes instead of wildcard scans over
+ * users. The index is kept in sync by the user entity service and backfilled
+ * at startup for users created before it existed.
+ */
+public class AutoJdbcUserSearchIndex {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS user_search ("
+            + "uuid VARCHAR(255) NOT NULL PRIMARY KEY, realm VARCHAR(255) NOT NULL, "
+            + "username VARCHAR(255), email VARCHAR(255));";
+    private static final String DEFAULT_CREATE_USERNAME_INDEX_STATEMENT = "CREATE INDEX user_search_username ON user_search (realm, username, uuid)";
+    private static final String DEFAULT_CREATE_EMAIL_INDEX_STATEMENT = "CREATE INDEX user_search_email ON user_search (realm, email)";
+    private static final String DEFAULT_CREATE_UUID_INDEX_STATEMENT = "CREATE INDEX user_search_uuid ON user_search (realm, uuid)";
+
+    private static final String DEFAULT_BACKFILL_STATEMENT = "insert into user_search (uuid, realm, username, email) "
+            + "select u.uuid, u.realm, lower(u.username), lower(u.email_address) from users u "
+            + "where not exists (select 1 from user_search s where s.uuid = u.uuid)";
+
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into user_search (uuid, realm, username, email) values (?, ?, ?, ?)";
+    private static final String DEFAULT_UPDATE_STATEMENT = "update user_search set realm = ?, username = ?, email = ? where uuid = ?";
+    private static final String DEFAULT_DELETE_STATEMENT = "delete from user_search where uuid = ?";
+
+    private static final String DEFAULT_MATCH_CLAUSE = "realm = ? and (username like ? escape '!' or email like ? escape '!' or uuid like ? escape '!')";
+    private static final String DEFAULT_SEARCH_STATEMENT = "select uuid from user_search where "
+            + DEFAULT_MATCH_CLAUSE + " order by username, uuid";
+    private static final String DEFAULT_SEARCH_AFTER_STATEMENT = "select uuid from user_search where "
+            + DEFAULT_MATCH_CLAUSE
+            + " and (coalesce(username, '') > ? or (coalesce(username, '') = ? and uuid > ?)) order by username, uuid";
+    private static final String DEFAULT_SELECT_USERNAME_STATEMENT = "select coalesce(username, '') from user_search where uuid = ?";
+    private static final String DEFAULT_COUNT_STATEMENT = "select count(*) from user_search where "
+            + DEFAULT_MATCH_CLAUSE;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AutoJdbcUserSearchIndex(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        initSchema(dataSource);
+    }
+
+    protected void initSchema(DataSource dataSource) {
+        jdbcTemplate.execute(DEFAULT_CREATE_TABLE_STATEMENT);
+
+        Set<String> indexes = JdbcSchemaUtils.readIndexNames(dataSource, "user_search");
+        if (!indexes.contains("user_search_username")) {
+            execute(DEFAULT_CREATE_USERNAME_INDEX_STATEMENT);
+        }
+        if (!indexes.contains("user_search_email")) {
+            execute(DEFAULT_CREATE_EMAIL_INDEX_STATEMENT);
+        }
+        if (!indexes.contains("user_search_uuid")) {
+            execute(DEFAULT_CREATE_UUID_INDEX_STATEMENT);
+        }
+
+        // users created before the index, or by nodes without it
+        try {
+            int count = jdbcTemplate.update(DEFAULT_BACKFILL_STATEMENT);
+            if (count > 0) {
+                logger.info("indexed " + count + " users for search");
+            }
+        } catch (DataAccessException e) {
+            logger.warn("error indexing users for search: " + e.getMessage());
+        }
+    }
+
+    public void put(String uuid, String realm, String username, String email) {
+        Assert.hasText(uuid, "uuid can not be null or empty");
+        Assert.hasText(realm, "realm can not be null or empty");
+
+        String u = username != null ? username.toLowerCase() : null;
+        String e = email != null ? email.toLowerCase() : null;
+        int count = jdbcTemplate.update(DEFAULT_UPDATE_STATEMENT, realm, u, e, uuid);
+        if (count == 0) {
+            jdbcTemplate.update(DEFAULT_INSERT_STATEMENT, uuid, realm, u, e);
+        }
+    }
+
+    public void remove(String uuid) {
+        jdbcTemplate.update(DEFAULT_DELETE_STATEMENT, uuid);
+    }
+
+    /*
+     * Ids of users matching the query as prefix of username, email or uuid,
+     * ordered by username. Offset rows are skipped client side, deep pages
+     * should use keyset search instead.
+     */
+    public List<String> search(String realm, String q, int offset, int size) {
+        String prefix = toPrefix(q);
+        List<String> result = jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(DEFAULT_SEARCH_STATEMENT);
+            ps.setMaxRows(offset + size);
+            setMatch(ps, realm, prefix);
+            return ps;
+        }, (rs, i) -> rs.getString("uuid"));
+
+        return offset < result.size() ? result.subList(offset, result.size()) : result.subList(0, 0);
+    }
+
+    /*
+     * Ids of users matching the query, keyset paginated over (username, uuid) as
+     * the offset search. The cursor is the last uuid returned, its username is
+     * resolved here.
+     */
+    public List<String> searchAfter(String realm, String q, String after, int size) {
+        String prefix = toPrefix(q);
+        String uuid = after != null ? after : "";
+        String username = "";
+        if (StringUtils.hasText(after)) {
+            List<String> usernames = jdbcTemplate.queryForList(DEFAULT_SELECT_USERNAME_STATEMENT, String.class,
+                    after);
+            if (usernames.isEmpty()) {
+                // cursor user is gone, restart from the top
+                uuid = "";
+            } else {
+                username = usernames.get(0);
+            }
+        }
+
+        String cursorUsername = username;
+        String cursorUuid = uuid;
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(DEFAULT_SEARCH_AFTER_STATEMENT);
+            ps.setMaxRows(size);
+            setMatch(ps, realm, prefix);
+            ps.setString(5, cursorUsername);
+            ps.setString(6, cursorUsername);
+            ps.setString(7, cursorUuid);
+            return ps;
+        }, (rs, i) -> rs.getString("uuid"));
+    }
+
+    public long count(String realm, String q) {
+        String prefix = toPrefix(q);
+        Long count = jdbcTemplate.queryForObject(DEFAULT_COUNT_STATEMENT, Long.class, realm, prefix, prefix,
+                prefix);
+        return count != null ? count : 0;
+    }
+
+    private void setMatch(PreparedStatement ps, String realm, String prefix) throws SQLException {
+        ps.setString(1, realm);
+        ps.setString(2, prefix);
+        ps.setString(3, prefix);
+        ps.setString(4, prefix);
+    }
+
+    private String toPrefix(String q) {
+        // escape wildcards, match as prefix
+        String s = q.trim().toLowerCase()
+                .replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_");
+        return s + "%";
+    }
+
+    private void execute(String statement) {
+        try {
+            jdbcTemplate.execute(statement);
+        } catch (DataAccessException e) {
+            logger.warn("error creating user search index: " + e.getMessage());
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import it.smartcommunitylab.aac.repository.CustomJpaRepository;
@@ -29,4 +30,7 @@ public interface ClientEntityRepository extends CustomJpaRepository<ClientEntity
 
     long countByRealm(String realm);
 
+    @Query("select c.realm, count(c) from ClientEntity c group by c.realm")
+    List<Object[]> countGroupByRealm();
+
 }
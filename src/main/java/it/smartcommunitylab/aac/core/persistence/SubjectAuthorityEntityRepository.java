@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.core.persistence;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.stereotype.Repository;
@@ -12,6 +13,8 @@ public interface SubjectAuthorityEntityRepository extends CustomJpaRepository<Su
     List<SubjectAuthorityEntity> findBySubject(String subject);
 
     List<SubjectAuthorityEntity> findBySubjectAndRealm(String subject, String realm);
+
+    List<SubjectAuthorityEntity> findBySubjectIn(Collection<String> subjects);
     
     List<SubjectAuthorityEntity> findByRealm(String realm);
 
@@ -1,9 +1,11 @@
 package it.smartcommunitylab.aac.core.persistence;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import it.smartcommunitylab.aac.repository.CustomJpaRepository;
@@ -13,6 +15,8 @@ public interface UserEntityRepository extends CustomJpaRepository<UserEntity, Lo
 
     UserEntity findByUuid(String uuid);
 
+    List<UserEntity> findByUuidIn(Collection<String> uuids);
+
     List<UserEntity> findByRealm(String realm);
 
     List<UserEntity> findByRealmAndUsername(String realm, String username);
@@ -37,4 +41,7 @@ public interface UserEntityRepository extends CustomJpaRepository<UserEntity, Lo
 
     long countByRealm(String realm);
 
+    @Query("select u.realm, count(u) from UserEntity u group by u.realm")
+    List<Object[]> countGroupByRealm();
+
 }
@@ -1,6 +1,9 @@
 package it.smartcommunitylab.aac.core.provider;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
 import it.smartcommunitylab.aac.core.auth.UserAuthenticatedPrincipal;
 import it.smartcommunitylab.aac.core.base.ConfigurableProperties;
 import it.smartcommunitylab.aac.core.model.UserAttributes;
@@ -102,6 +105,18 @@ public interface AttributeProvider extends ResourceProvider {
     // supported, if available
     public Collection<UserAttributes> getAttributes(String subjectId);
 
+    // only the given sets, providers should avoid loading the others
+    public default Collection<UserAttributes> getAttributes(String subjectId, Collection<String> setIds) {
+        Collection<UserAttributes> attributes = getAttributes(subjectId);
+        if (attributes == null) {
+            return Collections.emptyList();
+        }
+
+        return attributes.stream()
+                .filter(a -> setIds.contains(a.getIdentifier()))
+                .collect(Collectors.toList());
+    }
+
 //    public UserAttributes getUserAttributes(String userId, String setId) throws NoSuchUserException;
 
     public void deleteAttributes(String subjectId);
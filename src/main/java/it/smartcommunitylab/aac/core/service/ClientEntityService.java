@@ -114,6 +114,13 @@ public class ClientEntityService {
         return clientRepository.countByRealm(realm);
     }
 
+    // counts for all realms at once
+    @Transactional(readOnly = true)
+    public Map<String, Long> countClientsByRealm() {
+        return clientRepository.countGroupByRealm().stream()
+                .collect(Collectors.toMap(r -> (String) r[0], r -> (Long) r[1]));
+    }
+
     @Transactional(readOnly = true)
     public Collection<ClientEntity> listClients() {
         return clientRepository.findAll();
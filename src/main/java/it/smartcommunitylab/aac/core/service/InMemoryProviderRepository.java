@@ -1,9 +1,10 @@
 package it.smartcommunitylab.aac.core.service;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 import org.springframework.util.Assert;
 
@@ -14,8 +15,12 @@ public class InMemoryProviderRepository<U extends ResourceProvider> implements P
 
     private final Map<String, U> registrations;
 
+    // realm index, maintained on writes so that realm lookups don't scan
+    private final Map<String, Map<String, U>> realms;
+
     public InMemoryProviderRepository() {
         this.registrations = new ConcurrentHashMap<>();
+        this.realms = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -25,18 +30,27 @@ public class InMemoryProviderRepository<U extends ResourceProvider> implements P
     }
 
     @Override
-    public void addRegistration(U registration) {
-        registrations.put(registration.getProvider(), registration);
+    public synchronized void addRegistration(U registration) {
+        U old = registrations.put(registration.getProvider(), registration);
+        if (old != null) {
+            unindex(old);
+        }
+
+        realms.computeIfAbsent(registration.getRealm(), r -> new ConcurrentHashMap<>())
+                .put(registration.getProvider(), registration);
     }
 
     @Override
-    public void removeRegistration(String providerId) {
-        registrations.remove(providerId);
+    public synchronized void removeRegistration(String providerId) {
+        U old = registrations.remove(providerId);
+        if (old != null) {
+            unindex(old);
+        }
     }
 
     @Override
     public void removeRegistration(U registration) {
-        registrations.remove(registration.getProvider());
+        removeRegistration(registration.getProvider());
     }
 
     @Override
@@ -46,7 +60,22 @@ public class InMemoryProviderRepository<U extends ResourceProvider> implements P
 
     @Override
     public Collection<U> findByRealm(String realm) {
-        return registrations.values().stream().filter(p -> p.getRealm().equals(realm)).collect(Collectors.toList());
+        Map<String, U> providers = realms.get(realm);
+        if (providers == null) {
+            return Collections.emptyList();
+        }
+
+        return new ArrayList<>(providers.values());
+    }
+
+    private void unindex(U registration) {
+        Map<String, U> providers = realms.get(registration.getRealm());
+        if (providers != null) {
+            providers.remove(registration.getProvider());
+            if (providers.isEmpty()) {
+                realms.remove(registration.getRealm());
+            }
+        }
     }
 
 }
@@ -1,6 +1,7 @@
 package it.smartcommunitylab.aac.core.service;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -204,6 +205,20 @@ public class SubjectService {
                 .collect(Collectors.toList());
     }
 
+    /*
+     * Authorities for many subjects in a single query, keyed by subject
+     */
+    @Transactional(readOnly = true)
+    public Map<String, List<GrantedAuthority>> getAuthorities(Collection<String> subjectIds) {
+        if (subjectIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return authorityRepository.findBySubjectIn(subjectIds).stream()
+                .collect(Collectors.groupingBy(a -> a.getSubject(),
+                        Collectors.mapping(a -> toAuthority(a), Collectors.toList())));
+    }
+
     @Transactional(readOnly = true)
     public List<GrantedAuthority> getAuthorities(String subjectId, String realm) {
         return authorityRepository.findBySubjectAndRealm(subjectId, realm).stream().map(a -> toAuthority(a))
@@ -1,9 +1,15 @@
 package it.smartcommunitylab.aac.core.service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
@@ -13,6 +19,7 @@ import it.smartcommunitylab.aac.SystemKeys;
 import it.smartcommunitylab.aac.common.AlreadyRegisteredException;
 import it.smartcommunitylab.aac.common.NoSuchSubjectException;
 import it.smartcommunitylab.aac.common.NoSuchUserException;
+import it.smartcommunitylab.aac.core.persistence.AutoJdbcUserSearchIndex;
 import it.smartcommunitylab.aac.core.persistence.UserEntity;
 import it.smartcommunitylab.aac.core.persistence.UserEntityRepository;
 import it.smartcommunitylab.aac.model.Subject;
@@ -29,13 +36,17 @@ public class UserEntityService {
     // TODO move to userService when possible
     private final SubjectService subjectService;
 
+    private final AutoJdbcUserSearchIndex searchIndex;
+
     public UserEntityService(UserEntityRepository userRepository,
-            SubjectService subjectService) {
+            SubjectService subjectService, AutoJdbcUserSearchIndex searchIndex) {
         Assert.notNull(userRepository, "user repository is mandatory");
         Assert.notNull(subjectService, "subject service is mandatory");
+        Assert.notNull(searchIndex, "search index is mandatory");
 
         this.userRepository = userRepository;
         this.subjectService = subjectService;
+        this.searchIndex = searchIndex;
     }
 
     public UserEntity createUser(String realm) {
@@ -66,6 +77,7 @@ public class UserEntityService {
         u.setBlocked(false);
 
         u = userRepository.save(u);
+        searchIndex.put(uuid, realm, username, emailAddress);
         return u;
     }
 
@@ -89,6 +101,13 @@ public class UserEntityService {
         return userRepository.countByRealm(realm);
     }
 
+    // counts for all realms at once
+    @Transactional(readOnly = true)
+    public Map<String, Long> countUsersByRealm() {
+        return userRepository.countGroupByRealm().stream()
+                .collect(Collectors.toMap(r -> (String) r[0], r -> (Long) r[1]));
+    }
+
     @Transactional(readOnly = true)
     public List<UserEntity> listUsers() {
         return userRepository.findAll();
@@ -109,16 +128,47 @@ public class UserEntityService {
         return userRepository.findByRealmAndEmailAddress(realm, emailAddress);
     }
 
+    @Transactional(readOnly = true)
+    public List<UserEntity> findUsers(Collection<String> uuids) {
+        return userRepository.findByUuidIn(uuids);
+    }
+
+    /*
+     * Search matches keywords as prefix of username, email or uuid via the search
+     * index, results are ordered by username
+     */
     @Transactional(readOnly = true)
     public Page<UserEntity> searchUsers(String realm, String q, Pageable pageRequest) {
-        Page<UserEntity> page = StringUtils.hasText(q) ? userRepository
-                .findByRealmAndUsernameContainingIgnoreCaseOrRealmAndUuidContainingIgnoreCaseOrRealmAndEmailAddressContainingIgnoreCase(
-                        realm, q,
-                        realm, q,
-                        realm, q,
-                        pageRequest)
-                : userRepository.findByRealm(realm.toLowerCase(), pageRequest);
-        return page;
+        if (!StringUtils.hasText(q)) {
+            return userRepository.findByRealm(realm.toLowerCase(), pageRequest);
+        }
+
+        List<String> uuids = searchIndex.search(realm, q, (int) pageRequest.getOffset(),
+                pageRequest.getPageSize());
+        return PageableExecutionUtils.getPage(
+                loadInOrder(uuids),
+                pageRequest,
+                () -> searchIndex.count(realm, q));
+    }
+
+    /*
+     * Keyset search, results are ordered by username as the paged search and
+     * follow the user with the given id
+     */
+    @Transactional(readOnly = true)
+    public List<UserEntity> searchUsers(String realm, String q, String after, int size) {
+        return loadInOrder(searchIndex.searchAfter(realm, q != null ? q : "", after, size));
+    }
+
+    private List<UserEntity> loadInOrder(List<String> uuids) {
+        if (uuids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // single fetch, then restore index order
+        Map<String, UserEntity> users = userRepository.findByUuidIn(uuids).stream()
+                .collect(Collectors.toMap(u -> u.getUuid(), u -> u));
+        return uuids.stream().map(users::get).filter(u -> u != null).collect(Collectors.toList());
     }
 
     public UserEntity updateUser(String uuid, String username, String emailAddress) throws NoSuchUserException {
@@ -130,6 +180,7 @@ public class UserEntityService {
         u.setUsername(username);
         u.setEmailAddress(emailAddress);
         u = userRepository.save(u);
+        searchIndex.put(uuid, u.getRealm(), username, emailAddress);
 
         // check if subject exists and update name
         Subject s = subjectService.findSubject(uuid);
@@ -283,6 +334,7 @@ public class UserEntityService {
 
             // remove entity
             userRepository.delete(u);
+            searchIndex.remove(uuid);
 
             // remove subject if exists
             subjectService.deleteSubject(uuid);
@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -83,52 +84,31 @@ public class UserService {
      * User translation
      */
     public User getUser(UserDetails userDetails) {
-        String subjectId = userDetails.getSubjectId();
-        String realm = userDetails.getRealm();
-
-        User u = new User(userDetails);
-
-        try {
-            UserEntity ue = userService.getUser(subjectId);
-            // refresh attributes
-            u.setExpirationDate(ue.getExpirationDate());
-            u.setCreateDate(ue.getCreateDate());
-            u.setModifiedDate(ue.getModifiedDate());
-            u.setLoginDate(ue.getLoginDate());
-            u.setLoginIp(ue.getLoginIp());
-            u.setLoginProvider(ue.getLoginProvider());
-
-            // refresh authorities
-            u.setAuthorities(fetchUserAuthorities(subjectId, realm));
-
-            // refresh user attributes
-            u.setAttributes(fetchUserAttributes(subjectId, realm));
-
-            // refresh realm roles
-            u.setRealmRoles(fetchUserRealmRoles(subjectId, realm));
-
-            // refresh space roles
-            u.setSpaceRoles(fetchUserSpaceRoles(subjectId, realm));
-
-        } catch (NoSuchUserException e) {
-            // something wrong with refresh, ignore
-        }
-
-        return u;
+        return getUser(userDetails, null, null, true);
     }
 
     public User getUser(UserDetails userDetails, String realm) {
+        return getUser(userDetails, realm, null, true);
+    }
+
+    /*
+     * Translate and refresh, loading only the given attribute sets (null for
+     * all) and roles only when requested
+     */
+    public User getUser(UserDetails userDetails, String realm, Collection<String> attributeSets, boolean roles) {
         String subjectId = userDetails.getSubjectId();
 
+        User u;
         if (realm == null || userDetails.getRealm().equals(realm)) {
             // no translation needed, just refresh
-            return getUser(userDetails);
+            realm = userDetails.getRealm();
+            u = new User(userDetails);
+        } else {
+            // translate details via translator
+            // this will support per-realm translators and fine-grained policies
+            u = translator.translate(userDetails, realm);
         }
 
-        // translate details via translator
-        // this will support per-realm translators and fine-grained policies
-        User u = translator.translate(userDetails, realm);
-
         try {
             UserEntity ue = userService.getUser(subjectId);
             // refresh attributes
@@ -139,17 +119,19 @@ public class UserService {
             u.setLoginIp(ue.getLoginIp());
             u.setLoginProvider(ue.getLoginProvider());
 
-            // refresh authorities
-            u.setAuthorities(fetchUserAuthorities(subjectId, realm));
-
             // refresh user attributes
-            u.setAttributes(fetchUserAttributes(subjectId, realm));
+            u.setAttributes(fetchUserAttributes(subjectId, realm, attributeSets));
 
-            // refresh realm roles
-            u.setRealmRoles(fetchUserRealmRoles(subjectId, realm));
+            if (roles) {
+                // refresh authorities
+                u.setAuthorities(fetchUserAuthorities(subjectId, realm));
 
-            // refresh space roles
-            u.setSpaceRoles(fetchUserSpaceRoles(subjectId, realm));
+                // refresh realm roles
+                u.setRealmRoles(fetchUserRealmRoles(subjectId, realm));
+
+                // refresh space roles
+                u.setSpaceRoles(fetchUserSpaceRoles(subjectId, realm));
+            }
         } catch (NoSuchUserException e) {
             // something wrong with refresh, ignore
         }
@@ -284,25 +266,18 @@ public class UserService {
     public User getUser(String subjectId, String realm) throws NoSuchUserException {
         // resolve subject
         UserEntity ue = userService.getUser(subjectId);
-        String source = ue.getRealm();
-
-        User u = new User(subjectId, ue.getRealm());
-        u.setUsername(ue.getUsername());
-        u.setEmail(ue.getEmailAddress());
+        return buildUser(ue, realm, true);
+    }
 
-        // status
-        boolean locked = ue.getLocked() != null ? ue.getLocked().booleanValue() : false;
-        boolean blocked = ue.getBlocked() != null ? ue.getBlocked().booleanValue() : false;
-        u.setLocked(locked);
-        u.setBlocked(blocked);
+    /*
+     * Build the model from the entity, list views skip attributes and space roles
+     * which are fetched from providers and are not displayed
+     */
+    private User buildUser(UserEntity ue, String realm, boolean full) throws NoSuchUserException {
+        String subjectId = ue.getUuid();
+        String source = ue.getRealm();
 
-        // fetch attributes
-        u.setExpirationDate(ue.getExpirationDate());
-        u.setCreateDate(ue.getCreateDate());
-        u.setModifiedDate(ue.getModifiedDate());
-        u.setLoginDate(ue.getLoginDate());
-        u.setLoginIp(ue.getLoginIp());
-        u.setLoginProvider(ue.getLoginProvider());
+        User u = toUser(ue);
 
         Set<UserIdentity> identities = new HashSet<>();
 
@@ -339,19 +314,46 @@ public class UserService {
         // add authorities
         u.setAuthorities(fetchUserAuthorities(subjectId, realm));
 
-        // add user attributes
-        u.setAttributes(fetchUserAttributes(subjectId, realm));
-
         // add realm roles
         u.setRealmRoles(fetchUserRealmRoles(subjectId, realm));
 
-        // add space roles
-        u.setSpaceRoles(fetchUserSpaceRoles(subjectId, realm));
+        if (full) {
+            // add user attributes
+            u.setAttributes(fetchUserAttributes(subjectId, realm));
+
+            // add space roles
+            u.setSpaceRoles(fetchUserSpaceRoles(subjectId, realm));
+        }
 
         return u;
 
     }
 
+    /*
+     * Model from the entity columns only
+     */
+    private User toUser(UserEntity ue) {
+        User u = new User(ue.getUuid(), ue.getRealm());
+        u.setUsername(ue.getUsername());
+        u.setEmail(ue.getEmailAddress());
+
+        // status
+        boolean locked = ue.getLocked() != null ? ue.getLocked().booleanValue() : false;
+        boolean blocked = ue.getBlocked() != null ? ue.getBlocked().booleanValue() : false;
+        u.setLocked(locked);
+        u.setBlocked(blocked);
+
+        // fetch attributes
+        u.setExpirationDate(ue.getExpirationDate());
+        u.setCreateDate(ue.getCreateDate());
+        u.setModifiedDate(ue.getModifiedDate());
+        u.setLoginDate(ue.getLoginDate());
+        u.setLoginIp(ue.getLoginIp());
+        u.setLoginProvider(ue.getLoginProvider());
+
+        return u;
+    }
+
     /*
      * Lists users under the given realm
      * 
@@ -374,11 +376,55 @@ public class UserService {
     public Page<User> searchUsers(String realm, String q, Pageable pageRequest) {
         Page<UserEntity> page = userService.searchUsers(realm, q, pageRequest);
         return PageableExecutionUtils.getPage(
-                convertUsers(realm, page.getContent()),
+                summarizeUsers(realm, page.getContent()),
                 pageRequest,
                 () -> page.getTotalElements());
     }
 
+    public List<User> searchUsers(String realm, String q, String after, int size) {
+        return summarizeUsers(realm, userService.searchUsers(realm, q, after, size));
+    }
+
+    /*
+     * List rows are built from the entity columns, with authorities and realm
+     * roles batch loaded for the whole page. Identities, attributes and space
+     * roles are not listed, use getUser for the full model.
+     */
+    protected List<User> summarizeUsers(String realm, List<UserEntity> users) {
+        if (users.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> subjectIds = users.stream().map(u -> u.getUuid()).collect(Collectors.toList());
+        Map<String, List<GrantedAuthority>> authorities = subjectService.getAuthorities(subjectIds);
+        Map<String, List<RealmRole>> realmRoles = roleService.getRoles(subjectIds, realm);
+
+        List<User> result = new ArrayList<>();
+        for (UserEntity ue : users) {
+            if (!ue.getRealm().equals(realm)) {
+                // cross realm rows go through the translator
+                try {
+                    result.add(buildUser(ue, realm, false));
+                } catch (NoSuchUserException e) {
+                    // skip
+                }
+                continue;
+            }
+
+            User u = toUser(ue);
+
+            Set<GrantedAuthority> userAuthorities = new HashSet<>();
+            userAuthorities.add(new SimpleGrantedAuthority(Config.R_USER));
+            userAuthorities.addAll(authorities.getOrDefault(ue.getUuid(), Collections.emptyList()));
+            u.setAuthorities(userAuthorities);
+            u.setRealmRoles(realmRoles.getOrDefault(ue.getUuid(), Collections.emptyList()));
+
+            result.add(u);
+        }
+
+        return result;
+    }
+
     protected List<User> convertUsers(String realm, List<UserEntity> users) {
         List<User> realmUsers = users.stream()
                 .map(u -> {
@@ -604,6 +650,28 @@ public class UserService {
         return attributes;
     }
 
+    private Collection<UserAttributes> fetchUserAttributes(String subjectId, String realm,
+            Collection<String> setIds) throws NoSuchUserException {
+        if (setIds == null) {
+            return fetchUserAttributes(subjectId, realm);
+        }
+
+        List<UserAttributes> attributes = new ArrayList<>();
+        if (setIds.isEmpty()) {
+            return attributes;
+        }
+
+        // fetch matching sets from providers
+        for (AttributeAuthority aa : authorityManager.listAttributeAuthorities()) {
+            List<AttributeProvider> aps = aa.getAttributeProviders(realm);
+            for (AttributeProvider ap : aps) {
+                attributes.addAll(ap.getAttributes(subjectId, setIds));
+            }
+        }
+
+        return attributes;
+    }
+
     private Collection<GrantedAuthority> fetchUserAuthorities(String subjectId, String realm)
             throws NoSuchUserException {
         Set<GrantedAuthority> authorities = new HashSet<>();
@@ -0,0 +1,129 @@
+package it.smartcommunitylab.aac.core.session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import it.smartcommunitylab.aac.utils.JdbcSchemaUtils;
+
+/*
+ * Shared index of sessions by realm, provider and client, with DB table
+ * creation on startup
+ *
+ * Sits next to the jdbc session store, which indexes only the principal name,
+ * so that bulk invalidation reaches sessions created on any node. Rows are
+ * written when a node registers a session, and purged once the session is
+ * gone from the store.
+ */
+public class AutoJdbcSessionIndex {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final String TYPE_REALM = "realm";
+    public static final String TYPE_PROVIDER = "provider";
+    public static final String TYPE_CLIENT = "client";
+
+    public static final String DEFAULT_SESSION_TABLE_NAME = "SPRING_SESSION";
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS session_index ("
+            + "session_id VARCHAR(255) NOT NULL, key_type VARCHAR(32) NOT NULL, key_value VARCHAR(255) NOT NULL, "
+            + "indexed_at BIGINT NOT NULL, PRIMARY KEY (session_id, key_type, key_value));";
+    private static final String DEFAULT_CREATE_KEY_INDEX_STATEMENT = "CREATE INDEX session_index_key ON session_index (key_type, key_value)";
+
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into session_index (session_id, key_type, key_value, indexed_at) values (?, ?, ?, ?)";
+    private static final String DEFAULT_DELETE_STATEMENT = "delete from session_index where session_id = ?";
+    private static final String DEFAULT_SELECT_STATEMENT = "select session_id from session_index where key_type = ? and key_value = ?";
+    private static final String DEFAULT_PURGE_STATEMENT = "delete from session_index where indexed_at < ? and not exists "
+            + "(select 1 from %TABLE_NAME% s where s.SESSION_ID = session_index.session_id)";
+
+    // sessions are saved to the store at the end of the request
+    private static final long PURGE_GRACE = 300 * 1000L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String purgeStatement;
+
+    public AutoJdbcSessionIndex(DataSource dataSource) {
+        this(dataSource, DEFAULT_SESSION_TABLE_NAME);
+    }
+
+    public AutoJdbcSessionIndex(DataSource dataSource, String sessionTableName) {
+        Assert.notNull(dataSource, "DataSource required");
+        Assert.hasText(sessionTableName, "session table name required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.purgeStatement = StringUtils.replace(DEFAULT_PURGE_STATEMENT, "%TABLE_NAME%", sessionTableName);
+        initSchema(dataSource);
+    }
+
+    protected void initSchema(DataSource dataSource) {
+        jdbcTemplate.execute(DEFAULT_CREATE_TABLE_STATEMENT);
+
+        Set<String> indexes = JdbcSchemaUtils.readIndexNames(dataSource, "session_index");
+        if (!indexes.contains("session_index_key")) {
+            try {
+                jdbcTemplate.execute(DEFAULT_CREATE_KEY_INDEX_STATEMENT);
+            } catch (DataAccessException e) {
+                // another node may have created it concurrently
+                logger.warn("error creating index: " + e.getMessage());
+            }
+        }
+    }
+
+    /*
+     * Replace the keys of a session
+     */
+    public void put(String sessionId, String realm, Collection<String> providers, Collection<String> clients) {
+        Assert.hasText(sessionId, "sessionId can not be null or empty");
+
+        long now = System.currentTimeMillis();
+        List<Object[]> rows = new ArrayList<>();
+        if (StringUtils.hasText(realm)) {
+            rows.add(new Object[] { sessionId, TYPE_REALM, realm, now });
+        }
+        providers.forEach(p -> rows.add(new Object[] { sessionId, TYPE_PROVIDER, p, now }));
+        clients.forEach(c -> rows.add(new Object[] { sessionId, TYPE_CLIENT, c, now }));
+
+        jdbcTemplate.update(DEFAULT_DELETE_STATEMENT, sessionId);
+        try {
+            jdbcTemplate.batchUpdate(DEFAULT_INSERT_STATEMENT, rows);
+        } catch (DuplicateKeyException e) {
+            // concurrent registration on another node wrote the same keys
+            logger.debug("session " + sessionId + " already indexed");
+        }
+    }
+
+    public void addClient(String sessionId, String clientId) {
+        try {
+            jdbcTemplate.update(DEFAULT_INSERT_STATEMENT, sessionId, TYPE_CLIENT, clientId,
+                    System.currentTimeMillis());
+        } catch (DuplicateKeyException e) {
+            // already indexed by another node
+        }
+    }
+
+    public void remove(String sessionId) {
+        jdbcTemplate.update(DEFAULT_DELETE_STATEMENT, sessionId);
+    }
+
+    public List<String> findSessions(String type, String key) {
+        return jdbcTemplate.queryForList(DEFAULT_SELECT_STATEMENT, String.class, type, key);
+    }
+
+    /*
+     * Drop rows for sessions no longer in the store, either expired, logged
+     * out or replaced on id change. Recent rows are kept, their session may
+     * not be saved yet.
+     */
+    public int purge() {
+        return jdbcTemplate.update(purgeStatement, System.currentTimeMillis() - PURGE_GRACE);
+    }
+}
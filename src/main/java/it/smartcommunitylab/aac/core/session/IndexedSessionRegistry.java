@@ -0,0 +1,462 @@
+package it.smartcommunitylab.aac.core.session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.session.AbstractSessionEvent;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.core.session.SessionIdChangedEvent;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.core.session.SessionRegistry;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.smartcommunitylab.aac.core.auth.ExtendedAuthenticationToken;
+import it.smartcommunitylab.aac.core.auth.UserAuthentication;
+
+/*
+ * Session registry indexed by subject, realm, provider and client
+ *
+ * Each index maps a key to the set of session ids, so lookups and bulk
+ * invalidation cost O(k) in the number of matching sessions and entries exist
+ * only for live sessions. Destroyed sessions are marked as expired, and are
+ * terminated at their next request by the registry filter. When sessions are
+ * kept in a shared store they are also deleted there, so that no node can
+ * resume them, and realm, provider and client keys are mirrored to a shared
+ * index so that sessions registered on other nodes are found as well.
+ */
+public class IndexedSessionRegistry implements SessionRegistry, ApplicationListener<AbstractSessionEvent>,
+        DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_IDLE_TIMEOUT = 1800;
+
+    // sessionId -> info
+    private final Map<String, SessionInformation> sessions = new ConcurrentHashMap<>();
+    // sessionId -> keys
+    private final Map<String, SessionKeys> keys = new ConcurrentHashMap<>();
+
+    // indexes
+    private final Map<String, Set<String>> subjectSessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> realmSessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> providerSessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> clientSessions = new ConcurrentHashMap<>();
+
+    // optional shared store
+    private FindByIndexNameSessionRepository<?> sessionRepository;
+    private AutoJdbcSessionIndex sessionIndex;
+
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT * 1000L;
+    private ScheduledExecutorService sweeper;
+
+    private MeterRegistry meterRegistry;
+
+    public void setSessionRepository(FindByIndexNameSessionRepository<?> sessionRepository) {
+        this.sessionRepository = sessionRepository;
+    }
+
+    public void setSessionIndex(AutoJdbcSessionIndex sessionIndex) {
+        this.sessionIndex = sessionIndex;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        if (meterRegistry != null) {
+            Gauge.builder("aac.session.active", sessions, s -> s.size()).register(meterRegistry);
+        }
+    }
+
+    /*
+     * Idle sessions sweep, in seconds, 0 disables
+     *
+     * Shared stores don't publish destroy events, so entries not seen in idle
+     * timeout are dropped
+     */
+    public void setSweepInterval(int sweepInterval, int idleTimeout) {
+        Assert.isTrue(idleTimeout > 0, "idle timeout must be a positive number");
+        this.idleTimeout = idleTimeout * 1000L;
+
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+
+        if (sweepInterval > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sessions-sweep-");
+            threadFactory.setDaemon(true);
+            sweeper = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            sweeper.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    private void sweep() {
+        try {
+            long deadline = System.currentTimeMillis() - idleTimeout;
+            List<String> idle = sessions.values().stream()
+                    .filter(s -> s.getLastRequest().getTime() < deadline)
+                    .map(s -> s.getSessionId())
+                    .collect(Collectors.toList());
+            idle.forEach(this::removeSessionInformation);
+            if (!idle.isEmpty()) {
+                logger.debug("purged " + idle.size() + " idle sessions");
+            }
+
+            // shared index rows follow the store, not this node
+            if (sessionIndex != null) {
+                int count = sessionIndex.purge();
+                if (count > 0) {
+                    logger.debug("purged " + count + " shared index entries");
+                }
+            }
+        } catch (RuntimeException e) {
+            // keep schedule alive
+            logger.error("error purging idle sessions: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Session registry
+     */
+
+    @Override
+    public List<Object> getAllPrincipals() {
+        return sessions.values().stream().map(s -> s.getPrincipal()).distinct().collect(Collectors.toList());
+    }
+
+    @Override
+    public List<SessionInformation> getAllSessions(Object principal, boolean includeExpiredSessions) {
+        if (!(principal instanceof UserAuthentication)) {
+            return Collections.emptyList();
+        }
+
+        return filter(lookup(subjectSessions, ((UserAuthentication) principal).getSubjectId()),
+                includeExpiredSessions);
+    }
+
+    @Override
+    public SessionInformation getSessionInformation(String sessionId) {
+        Assert.hasText(sessionId, "sessionId required");
+        return sessions.get(sessionId);
+    }
+
+    @Override
+    public void refreshLastRequest(String sessionId) {
+        SessionInformation info = getSessionInformation(sessionId);
+        if (info != null) {
+            info.refreshLastRequest();
+        }
+    }
+
+    @Override
+    public void registerNewSession(String sessionId, Object principal) {
+        Assert.hasText(sessionId, "sessionId required");
+        Assert.notNull(principal, "principal required");
+
+        if (!(principal instanceof UserAuthentication)) {
+            // only user sessions are tracked
+            return;
+        }
+
+        UserAuthentication auth = (UserAuthentication) principal;
+        SessionKeys k = new SessionKeys(auth);
+
+        // replace any previous registration, expired sessions stay expired
+        SessionInformation info = new SessionInformation(auth, sessionId, new Date());
+        SessionInformation previous = sessions.put(sessionId, info);
+        if (previous != null && previous.isExpired()) {
+            info.expireNow();
+        }
+
+        SessionKeys prev = keys.put(sessionId, k);
+        if (prev != null) {
+            unindex(sessionId, prev);
+            // keep clients authorized in this session
+            k.clients.addAll(prev.clients);
+        }
+
+        index(sessionId, k);
+        if (previous == null) {
+            logger.trace("registered session " + sessionId + " for " + auth.getSubjectId());
+        }
+    }
+
+    @Override
+    public void removeSessionInformation(String sessionId) {
+        Assert.hasText(sessionId, "sessionId required");
+        sessions.remove(sessionId);
+        SessionKeys k = keys.remove(sessionId);
+        if (k != null) {
+            unindex(sessionId, k);
+        }
+    }
+
+    /*
+     * Register or refresh a session seen with the given authentication
+     *
+     * Re-indexes only when the authentication changed, since shared stores
+     * hand out a new instance at every request
+     */
+    public void touchSession(String sessionId, UserAuthentication auth) {
+        SessionInformation info = sessions.get(sessionId);
+        SessionKeys k = keys.get(sessionId);
+        if (info != null && k != null && k.matches(auth)) {
+            info.refreshLastRequest();
+        } else {
+            registerNewSession(sessionId, auth);
+        }
+    }
+
+    /*
+     * Client usage, tracked when a session authorizes a client
+     */
+    public void registerClient(String sessionId, String clientId) {
+        SessionKeys k = keys.get(sessionId);
+        if (k != null && k.clients.add(clientId)) {
+            add(clientSessions, clientId, sessionId);
+            if (sessionIndex != null) {
+                sessionIndex.addClient(sessionId, clientId);
+            }
+        }
+    }
+
+    /*
+     * Indexed lookup
+     */
+
+    public List<SessionInformation> getSessions(boolean includeExpiredSessions) {
+        return filter(sessions.keySet(), includeExpiredSessions);
+    }
+
+    public List<SessionInformation> getSubjectSessions(String subjectId, boolean includeExpiredSessions) {
+        return filter(lookup(subjectSessions, subjectId), includeExpiredSessions);
+    }
+
+    public List<SessionInformation> getRealmSessions(String realm, boolean includeExpiredSessions) {
+        return filter(lookup(realmSessions, realm), includeExpiredSessions);
+    }
+
+    public List<SessionInformation> getProviderSessions(String providerId, boolean includeExpiredSessions) {
+        return filter(lookup(providerSessions, providerId), includeExpiredSessions);
+    }
+
+    public List<SessionInformation> getClientSessions(String clientId, boolean includeExpiredSessions) {
+        return filter(lookup(clientSessions, clientId), includeExpiredSessions);
+    }
+
+    public int countRealmSessions(String realm) {
+        return lookup(realmSessions, realm).size();
+    }
+
+    /*
+     * Bulk invalidation
+     */
+
+    public int destroySubjectSessions(String subjectId) {
+        int count = expire(lookup(subjectSessions, subjectId));
+
+        // sessions created on other nodes are found via the store principal index
+        if (sessionRepository != null) {
+            Set<String> ids = new HashSet<>(sessionRepository.findByPrincipalName(subjectId).keySet());
+            ids.removeAll(sessions.keySet());
+            ids.forEach(sessionRepository::deleteById);
+            count += ids.size();
+        }
+
+        return count;
+    }
+
+    public int destroyRealmSessions(String realm) {
+        return destroy(realmSessions, AutoJdbcSessionIndex.TYPE_REALM, realm);
+    }
+
+    public int destroyProviderSessions(String providerId) {
+        return destroy(providerSessions, AutoJdbcSessionIndex.TYPE_PROVIDER, providerId);
+    }
+
+    public int destroyClientSessions(String clientId) {
+        return destroy(clientSessions, AutoJdbcSessionIndex.TYPE_CLIENT, clientId);
+    }
+
+    private int destroy(Map<String, Set<String>> index, String type, String key) {
+        int count = expire(lookup(index, key));
+
+        // sessions created on other nodes are found via the shared index
+        if (sessionRepository != null && sessionIndex != null && key != null) {
+            Set<String> ids = new HashSet<>(sessionIndex.findSessions(type, key));
+            ids.removeAll(sessions.keySet());
+            for (String sessionId : ids) {
+                sessionRepository.deleteById(sessionId);
+                sessionIndex.remove(sessionId);
+            }
+            count += ids.size();
+        }
+
+        return count;
+    }
+
+    private int expire(Collection<String> sessionIds) {
+        int count = 0;
+        for (String sessionId : sessionIds) {
+            SessionInformation info = sessions.get(sessionId);
+            if (info != null && !info.isExpired()) {
+                info.expireNow();
+                count++;
+            }
+
+            if (sessionRepository != null) {
+                sessionRepository.deleteById(sessionId);
+                if (sessionIndex != null) {
+                    sessionIndex.remove(sessionId);
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /*
+     * Session events
+     */
+
+    @Override
+    public void onApplicationEvent(AbstractSessionEvent event) {
+        if (event instanceof SessionDestroyedEvent) {
+            removeSessionInformation(((SessionDestroyedEvent) event).getId());
+        } else if (event instanceof SessionIdChangedEvent) {
+            SessionIdChangedEvent e = (SessionIdChangedEvent) event;
+            SessionInformation info = sessions.get(e.getOldSessionId());
+            SessionKeys k = keys.get(e.getOldSessionId());
+            if (info != null && k != null) {
+                removeSessionInformation(e.getOldSessionId());
+                registerNewSession(e.getNewSessionId(), info.getPrincipal());
+                k.clients.forEach(c -> registerClient(e.getNewSessionId(), c));
+            }
+        }
+    }
+
+    /*
+     * Indexes
+     */
+
+    private void index(String sessionId, SessionKeys k) {
+        add(subjectSessions, k.subjectId, sessionId);
+        if (add(realmSessions, k.realm, sessionId)) {
+            registerRealmGauge(k.realm);
+        }
+        k.providers.forEach(p -> add(providerSessions, p, sessionId));
+        k.clients.forEach(c -> add(clientSessions, c, sessionId));
+
+        // shared rows are dropped by the purge once the store removes the
+        // session, since other nodes may still serve it
+        if (sessionIndex != null) {
+            sessionIndex.put(sessionId, k.realm, k.providers, k.clients);
+        }
+    }
+
+    private void unindex(String sessionId, SessionKeys k) {
+        remove(subjectSessions, k.subjectId, sessionId);
+        remove(realmSessions, k.realm, sessionId);
+        k.providers.forEach(p -> remove(providerSessions, p, sessionId));
+        k.clients.forEach(c -> remove(clientSessions, c, sessionId));
+    }
+
+    // returns true when the key is new to the index
+    private boolean add(Map<String, Set<String>> index, String key, String sessionId) {
+        boolean[] created = { false };
+        index.compute(key, (kk, set) -> {
+            if (set == null) {
+                set = ConcurrentHashMap.newKeySet();
+                created[0] = true;
+            }
+            set.add(sessionId);
+            return set;
+        });
+
+        return created[0];
+    }
+
+    private void remove(Map<String, Set<String>> index, String key, String sessionId) {
+        // drop empty sets, memory follows active sessions
+        index.computeIfPresent(key, (kk, set) -> {
+            set.remove(sessionId);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private Set<String> lookup(Map<String, Set<String>> index, String key) {
+        if (key == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> set = index.get(key);
+        return set == null ? Collections.emptySet() : new HashSet<>(set);
+    }
+
+    private List<SessionInformation> filter(Collection<String> sessionIds, boolean includeExpiredSessions) {
+        List<SessionInformation> list = new ArrayList<>(sessionIds.size());
+        for (String sessionId : sessionIds) {
+            SessionInformation info = sessions.get(sessionId);
+            if (info != null && (includeExpiredSessions || !info.isExpired())) {
+                list.add(info);
+            }
+        }
+
+        return list;
+    }
+
+    private void registerRealmGauge(String realm) {
+        if (meterRegistry != null) {
+            // registry dedups on name and tags
+            Gauge.builder("aac.session.active.realm", realmSessions, m -> countRealmSessions(realm))
+                    .tag("realm", realm)
+                    .register(meterRegistry);
+        }
+    }
+
+    private static class SessionKeys {
+        private final String subjectId;
+        private final String realm;
+        private final Set<String> providers;
+        private final Set<String> clients;
+
+        public SessionKeys(UserAuthentication auth) {
+            this.subjectId = auth.getSubjectId();
+            this.realm = auth.getRealm();
+            this.providers = auth.getAuthentications().stream()
+                    .map(ExtendedAuthenticationToken::getProvider)
+                    .collect(Collectors.toSet());
+            this.clients = ConcurrentHashMap.newKeySet();
+        }
+
+        public boolean matches(UserAuthentication auth) {
+            return subjectId.equals(auth.getSubjectId()) && realm.equals(auth.getRealm())
+                    && providers.equals(new SessionKeys(auth).providers);
+        }
+    }
+
+}
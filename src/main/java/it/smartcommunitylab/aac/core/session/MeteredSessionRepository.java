@@ -0,0 +1,84 @@
+package it.smartcommunitylab.aac.core.session;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.Session;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/*
+ * Session repository wrapper recording store latency
+ */
+public class MeteredSessionRepository<S extends Session> implements FindByIndexNameSessionRepository<S> {
+
+    private final FindByIndexNameSessionRepository<S> sessionRepository;
+
+    private Timer findTimer;
+    private Timer saveTimer;
+    private Timer deleteTimer;
+    private Timer indexTimer;
+
+    public MeteredSessionRepository(FindByIndexNameSessionRepository<S> sessionRepository) {
+        Assert.notNull(sessionRepository, "session repository is required");
+        this.sessionRepository = sessionRepository;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            findTimer = Timer.builder("aac.session.store").tag("operation", "find").register(meterRegistry);
+            saveTimer = Timer.builder("aac.session.store").tag("operation", "save").register(meterRegistry);
+            deleteTimer = Timer.builder("aac.session.store").tag("operation", "delete").register(meterRegistry);
+            indexTimer = Timer.builder("aac.session.store").tag("operation", "index").register(meterRegistry);
+        }
+    }
+
+    @Override
+    public S createSession() {
+        // not persisted until save
+        return sessionRepository.createSession();
+    }
+
+    @Override
+    public void save(S session) {
+        record(saveTimer, () -> {
+            sessionRepository.save(session);
+            return null;
+        });
+    }
+
+    @Override
+    public S findById(String id) {
+        return record(findTimer, () -> sessionRepository.findById(id));
+    }
+
+    @Override
+    public void deleteById(String id) {
+        record(deleteTimer, () -> {
+            sessionRepository.deleteById(id);
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, S> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+        return record(indexTimer, () -> sessionRepository.findByIndexNameAndIndexValue(indexName, indexValue));
+    }
+
+    private <T> T record(Timer timer, Supplier<T> operation) {
+        if (timer == null) {
+            return operation.get();
+        }
+
+        long start = System.nanoTime();
+        try {
+            return operation.get();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package it.smartcommunitylab.aac.core.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.core.serializer.support.SerializationFailedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.jackson2.SecurityJackson2Modules;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.smartcommunitylab.aac.core.UserDetails;
+import it.smartcommunitylab.aac.core.auth.ExtendedAuthenticationToken;
+import it.smartcommunitylab.aac.core.auth.UserAuthentication;
+import it.smartcommunitylab.aac.core.model.UserIdentity;
+
+/*
+ * Compact encoding for session attributes
+ *
+ * Values which survive a json round trip with spring security modules (security
+ * contexts with standard tokens, oauth2 authorization requests, strings) are
+ * stored as json, compressed when large. Our own authentication tokens, bare or
+ * in a security context, are stored as deflated json via a field mapping.
+ * Everything else falls back to deflated java serialization. The first byte of
+ * every value records the encoding.
+ *
+ * Every json value is read back before being stored, so that a nested type
+ * json can't restore falls back to java serialization instead of losing the
+ * session on read. Shapes of values (their type, and for authentications the
+ * types of tokens and identities) which failed once skip json altogether.
+ */
+public class SessionAttributeCodec {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 256;
+
+    private static final byte JSON = 'J';
+    private static final byte JSON_DEFLATED = 'Z';
+    private static final byte SERIALIZED_DEFLATED = 'S';
+    private static final byte AUTHENTICATION_DEFLATED = 'A';
+
+    private final ObjectMapper mapper;
+    private final UserAuthenticationMapper authenticationMapper;
+    private final ClassLoader classLoader;
+
+    // value shapes which failed a json round trip
+    private final Set<String> unsupportedShapes = ConcurrentHashMap.newKeySet();
+
+    private int compressThreshold = DEFAULT_COMPRESS_THRESHOLD;
+
+    // metrics
+    private DistributionSummary jsonSize;
+    private DistributionSummary serializedSize;
+
+    public SessionAttributeCodec(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        this.mapper = new ObjectMapper();
+        this.mapper.registerModules(SecurityJackson2Modules.getModules(classLoader));
+        this.authenticationMapper = new UserAuthenticationMapper();
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            jsonSize = DistributionSummary.builder("aac.session.attribute.size").baseUnit("bytes")
+                    .tag("encoding", "json")
+                    .register(meterRegistry);
+            serializedSize = DistributionSummary.builder("aac.session.attribute.size").baseUnit("bytes")
+                    .tag("encoding", "serialized")
+                    .register(meterRegistry);
+        }
+    }
+
+    public byte[] serialize(Object value) {
+        if (value == null) {
+            return null;
+        }
+
+        byte[] bytes = null;
+        if (UserAuthenticationMapper.supports(value)) {
+            bytes = toAuthenticationJson(value);
+        } else if (isJsonCandidate(value)) {
+            bytes = toJson(value);
+        }
+
+        if (bytes == null) {
+            bytes = toSerialized(value);
+            if (serializedSize != null) {
+                serializedSize.record(bytes.length);
+            }
+        } else if (jsonSize != null) {
+            jsonSize.record(bytes.length);
+        }
+
+        return bytes;
+    }
+
+    public Object deserialize(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        try {
+            byte encoding = bytes[0];
+            switch (encoding) {
+            case JSON:
+                return mapper.readValue(bytes, 1, bytes.length - 1, Object.class);
+            case JSON_DEFLATED:
+                return mapper.readValue(inflate(bytes), Object.class);
+            case AUTHENTICATION_DEFLATED:
+                byte[] json = inflate(bytes);
+                return authenticationMapper.read(json, 0, json.length);
+            case SERIALIZED_DEFLATED:
+                try (ObjectInputStream ois = new ConfigurableObjectInputStream(
+                        new InflaterInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1)),
+                        classLoader)) {
+                    return ois.readObject();
+                }
+            default:
+                throw new SerializationFailedException("unknown session attribute encoding " + encoding);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SerializationFailedException("error reading session attribute", e);
+        }
+    }
+
+    /*
+     * Json, only for shapes which read back as the same type
+     */
+
+    // numbers and untyped containers don't keep their java types in json
+    private boolean isJsonCandidate(Object value) {
+        return !(value instanceof Number || value instanceof Collection || value instanceof Map
+                || value.getClass().isArray());
+    }
+
+    private byte[] toJson(Object value) {
+        String shape = shapeOf(value);
+        if (unsupportedShapes.contains(shape)) {
+            return null;
+        }
+
+        try {
+            byte[] json = mapper.writeValueAsBytes(value);
+
+            // never store something we can't read back (ie types outside the
+            // allowlist)
+            Object check = mapper.readValue(json, Object.class);
+            if (check == null || check.getClass() != value.getClass()) {
+                unsupportedShapes.add(shape);
+                return null;
+            }
+
+            if (json.length > compressThreshold) {
+                return deflate(JSON_DEFLATED, out -> out.write(json));
+            }
+
+            byte[] bytes = new byte[json.length + 1];
+            bytes[0] = JSON;
+            System.arraycopy(json, 0, bytes, 1, json.length);
+            return bytes;
+        } catch (IOException | RuntimeException e) {
+            logger.trace("json not supported for " + shape + ": " + e.getMessage());
+            unsupportedShapes.add(shape);
+            return null;
+        }
+    }
+
+    private byte[] toAuthenticationJson(Object value) {
+        String shape = shapeOf(value);
+        if (unsupportedShapes.contains(shape)) {
+            return null;
+        }
+
+        try {
+            byte[] json = authenticationMapper.write(value);
+
+            // nested values (attributes, provider tokens) vary within a shape
+            Object check = authenticationMapper.read(json, 0, json.length);
+            if (check == null || check.getClass() != value.getClass()) {
+                unsupportedShapes.add(shape);
+                return null;
+            }
+
+            return deflate(AUTHENTICATION_DEFLATED, out -> out.write(json));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("json not supported for " + shape + ": " + e.getMessage());
+            unsupportedShapes.add(shape);
+            return null;
+        }
+    }
+
+    /*
+     * Shape of a value: its type, for security contexts the authentication and
+     * principal types, for our authentications also the types of provider tokens
+     * and identities
+     */
+    private String shapeOf(Object value) {
+        Object auth = value;
+        StringBuilder sb = new StringBuilder(value.getClass().getName());
+        if (value instanceof SecurityContext) {
+            Authentication authentication = ((SecurityContext) value).getAuthentication();
+            if (authentication != null) {
+                sb.append(':').append(authentication.getClass().getName());
+                if (authentication.getPrincipal() != null) {
+                    sb.append(':').append(authentication.getPrincipal().getClass().getName());
+                }
+            }
+            auth = authentication;
+        }
+
+        if (auth instanceof UserAuthentication) {
+            Set<String> types = new TreeSet<>();
+            UserAuthentication userAuth = (UserAuthentication) auth;
+            for (ExtendedAuthenticationToken token : userAuth.getAuthentications()) {
+                types.add(token.getClass().getName());
+                if (token.getToken() != null) {
+                    types.add(token.getToken().getClass().getName());
+                }
+                if (token.getPrincipal() != null) {
+                    types.add(token.getPrincipal().getClass().getName());
+                }
+            }
+
+            UserDetails user = userAuth.getUser();
+            if (user != null) {
+                for (UserIdentity identity : user.getIdentities()) {
+                    types.add(identity.getClass().getName());
+                }
+            }
+
+            sb.append(types);
+        }
+
+        return sb.toString();
+    }
+
+    /*
+     * Java serialization fallback
+     */
+
+    private byte[] toSerialized(Object value) {
+        if (!(value instanceof Serializable)) {
+            throw new SerializationFailedException(
+                    "session attribute is not serializable: " + value.getClass().getName());
+        }
+
+        try {
+            return deflate(SERIALIZED_DEFLATED, out -> {
+                ObjectOutputStream oos = new ObjectOutputStream(out);
+                oos.writeObject(value);
+                oos.flush();
+            });
+        } catch (IOException e) {
+            throw new SerializationFailedException("error writing session attribute", e);
+        }
+    }
+
+    private byte[] deflate(byte encoding, StreamWriter writer) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(encoding);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(bos, deflater)) {
+            writer.write(dos);
+        } finally {
+            deflater.end();
+        }
+
+        return bos.toByteArray();
+    }
+
+    private byte[] inflate(byte[] bytes) throws IOException {
+        try (InflaterInputStream iis = new InflaterInputStream(
+                new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = iis.read(buffer)) > 0) {
+                bos.write(buffer, 0, n);
+            }
+
+            return bos.toByteArray();
+        }
+    }
+
+    @FunctionalInterface
+    private interface StreamWriter {
+        void write(DeflaterOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,77 @@
+package it.smartcommunitylab.aac.core.session;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import it.smartcommunitylab.aac.core.auth.UserAuthentication;
+
+/*
+ * Keeps the session registry in sync with authenticated sessions
+ *
+ * Sessions are registered when first seen with a user authentication, and
+ * sessions expired via the registry are terminated here, at their next request.
+ */
+public class SessionRegistryFilter extends OncePerRequestFilter {
+
+    public static final String DEFAULT_AUTHORIZE_URI = "/oauth/authorize";
+
+    private final IndexedSessionRegistry sessionRegistry;
+    private final RequestMatcher authorizeRequestMatcher;
+
+    public SessionRegistryFilter(IndexedSessionRegistry sessionRegistry) {
+        this(sessionRegistry, DEFAULT_AUTHORIZE_URI);
+    }
+
+    public SessionRegistryFilter(IndexedSessionRegistry sessionRegistry, String authorizeUrl) {
+        Assert.notNull(sessionRegistry, "session registry is required");
+        Assert.hasText(authorizeUrl, "authorize url can not be null or empty");
+        this.sessionRegistry = sessionRegistry;
+        this.authorizeRequestMatcher = new AntPathRequestMatcher(authorizeUrl);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            String sessionId = session.getId();
+            SessionInformation info = sessionRegistry.getSessionInformation(sessionId);
+
+            if (info != null && info.isExpired()) {
+                // terminate, request continues as anonymous
+                logger.debug("session " + sessionId + " expired via registry, invalidate");
+                sessionRegistry.removeSessionInformation(sessionId);
+                SecurityContextHolder.clearContext();
+                session.invalidate();
+            } else {
+                Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+                if (auth instanceof UserAuthentication) {
+                    sessionRegistry.touchSession(sessionId, (UserAuthentication) auth);
+
+                    String clientId = request.getParameter("client_id");
+                    if (StringUtils.hasText(clientId) && authorizeRequestMatcher.matches(request)) {
+                        sessionRegistry.registerClient(sessionId, clientId);
+                    }
+                }
+            }
+        }
+
+        chain.doFilter(request, response);
+    }
+
+}
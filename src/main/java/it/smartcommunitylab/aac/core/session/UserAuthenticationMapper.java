@@ -0,0 +1,279 @@
+package it.smartcommunitylab.aac.core.session;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.objenesis.Objenesis;
+import org.springframework.objenesis.ObjenesisStd;
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.deser.ValueInstantiator;
+import com.fasterxml.jackson.databind.deser.ValueInstantiators;
+import com.fasterxml.jackson.databind.deser.std.StdValueInstantiator;
+import com.fasterxml.jackson.databind.introspect.NopAnnotationIntrospector;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import it.smartcommunitylab.aac.core.UserDetails;
+import it.smartcommunitylab.aac.core.auth.UserAuthentication;
+import it.smartcommunitylab.aac.core.model.Attribute;
+import it.smartcommunitylab.aac.core.model.AttributeSet;
+import it.smartcommunitylab.aac.core.model.UserAccount;
+import it.smartcommunitylab.aac.core.model.UserAttributes;
+import it.smartcommunitylab.aac.core.model.UserIdentity;
+
+/*
+ * Json mapping for user authentications
+ *
+ * Our authentication tokens carry user details, identities, attributes and the
+ * provider tokens, none of which have a json mapping. Here they are mapped by
+ * fields, with the concrete type recorded for every non final value, and
+ * created without calling constructors. Reading accepts only an explicit list
+ * of concrete library types, and our own types implementing one of the model
+ * interfaces: anything else fails, and the codec falls back to java
+ * serialization for that value.
+ */
+public class UserAuthenticationMapper {
+
+    private static final String AAC_PACKAGE = "it.smartcommunitylab.aac.";
+
+    // concrete library types accepted when reading
+    private static final Set<String> ALLOWED_TYPES = new HashSet<>(Arrays.asList(
+            "java.util.ArrayList",
+            "java.util.LinkedList",
+            "java.util.HashMap",
+            "java.util.LinkedHashMap",
+            "java.util.TreeMap",
+            "java.util.HashSet",
+            "java.util.LinkedHashSet",
+            "java.util.TreeSet",
+            "java.util.Arrays$ArrayList",
+            "java.util.Collections$EmptyList",
+            "java.util.Collections$EmptySet",
+            "java.util.Collections$EmptyMap",
+            "java.util.Collections$SingletonList",
+            "java.util.Collections$SingletonSet",
+            "java.util.Collections$SingletonMap",
+            "java.util.Collections$UnmodifiableCollection",
+            "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableRandomAccessList",
+            "java.util.Collections$UnmodifiableSet",
+            "java.util.Collections$UnmodifiableSortedSet",
+            "java.util.Collections$UnmodifiableMap",
+            "java.util.Date",
+            "org.springframework.security.authentication.UsernamePasswordAuthenticationToken",
+            "org.springframework.security.core.authority.SimpleGrantedAuthority",
+            "org.springframework.security.web.authentication.WebAuthenticationDetails",
+            "org.springframework.security.oauth2.client.authentication.OAuth2LoginAuthenticationToken",
+            "org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken",
+            "org.springframework.security.oauth2.core.OAuth2AccessToken",
+            "org.springframework.security.oauth2.core.OAuth2AccessToken$TokenType",
+            "org.springframework.security.oauth2.core.OAuth2RefreshToken",
+            "org.springframework.security.oauth2.core.oidc.OidcIdToken",
+            "org.springframework.security.oauth2.core.oidc.OidcUserInfo",
+            "org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser",
+            "org.springframework.security.oauth2.core.user.DefaultOAuth2User",
+            "org.springframework.security.saml2.provider.service.authentication.Saml2Authentication",
+            "org.springframework.security.saml2.provider.service.authentication.DefaultSaml2AuthenticatedPrincipal"));
+
+    // our types are accepted when implementing one of these
+    private static final Class<?>[] ALLOWED_ROOTS = {
+            Authentication.class,
+            AuthenticatedPrincipal.class,
+            GrantedAuthority.class,
+            UserDetails.class,
+            UserIdentity.class,
+            UserAccount.class,
+            UserAttributes.class,
+            AttributeSet.class,
+            Attribute.class,
+            org.springframework.security.web.authentication.WebAuthenticationDetails.class,
+            Comparator.class,
+            ContextHolder.class
+    };
+
+    private final ObjectMapper mapper;
+
+    public UserAuthenticationMapper() {
+        PolymorphicTypeValidator typeValidator = new AllowedTypesValidator();
+
+        mapper = new ObjectMapper();
+        // model annotations shape api responses, ignore them here
+        mapper.setAnnotationIntrospector(NopAnnotationIntrospector.instance);
+        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(Visibility.ANY)
+                .withGetterVisibility(Visibility.NONE)
+                .withIsGetterVisibility(Visibility.NONE)
+                .withSetterVisibility(Visibility.NONE)
+                .withCreatorVisibility(Visibility.NONE));
+        mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        mapper.activateDefaultTyping(typeValidator, ObjectMapper.DefaultTyping.NON_FINAL,
+                JsonTypeInfo.As.PROPERTY);
+        mapper.registerModule(new JavaTimeModule());
+
+        // types without a default constructor are created as with java
+        // serialization
+        SimpleModule module = new SimpleModule("aac-session") {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void setupModule(SetupContext context) {
+                super.setupModule(context);
+                context.addValueInstantiators(new ObjenesisValueInstantiators());
+            }
+        };
+        mapper.registerModule(module);
+    }
+
+    /*
+     * Values handled here: our authentications, either bare or in a context
+     */
+    public static boolean supports(Object value) {
+        if (value instanceof UserAuthentication) {
+            return true;
+        }
+
+        return value instanceof SecurityContext
+                && ((SecurityContext) value).getAuthentication() instanceof UserAuthentication;
+    }
+
+    public byte[] write(Object value) throws IOException {
+        if (value instanceof SecurityContext) {
+            // store only the authentication, context is rebuilt on read
+            value = new ContextHolder((UserAuthentication) ((SecurityContext) value).getAuthentication());
+        }
+
+        // root as object, so that the type is always recorded
+        return mapper.writerFor(Object.class).writeValueAsBytes(value);
+    }
+
+    public Object read(byte[] bytes, int offset, int length) throws IOException {
+        Object value = mapper.readValue(bytes, offset, length, Object.class);
+        if (value instanceof ContextHolder) {
+            return new SecurityContextImpl(((ContextHolder) value).authentication);
+        }
+
+        return value;
+    }
+
+    /*
+     * Allowed types, by exact name for library types and by model interface for
+     * ours
+     */
+    private static boolean isAllowed(Class<?> clazz) {
+        if (clazz.isArray()) {
+            return isAllowed(clazz.getComponentType()) || clazz.getComponentType().isPrimitive();
+        }
+
+        String name = clazz.getName();
+        if (ALLOWED_TYPES.contains(name)) {
+            return true;
+        }
+
+        if (name.startsWith(AAC_PACKAGE)) {
+            for (Class<?> root : ALLOWED_ROOTS) {
+                if (root.isAssignableFrom(clazz)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static class AllowedTypesValidator extends PolymorphicTypeValidator.Base {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Validity validateBaseType(MapperConfig<?> config, JavaType baseType) {
+            return Validity.INDETERMINATE;
+        }
+
+        @Override
+        public Validity validateSubClassName(MapperConfig<?> config, JavaType baseType, String subClassName) {
+            // decide by name when possible, so that other classes are never loaded
+            if (ALLOWED_TYPES.contains(subClassName)) {
+                return Validity.ALLOWED;
+            }
+
+            // ours and arrays are checked once resolved
+            if (subClassName.startsWith(AAC_PACKAGE) || subClassName.startsWith("[")) {
+                return Validity.INDETERMINATE;
+            }
+
+            return Validity.DENIED;
+        }
+
+        @Override
+        public Validity validateSubType(MapperConfig<?> config, JavaType baseType, JavaType subType) {
+            return isAllowed(subType.getRawClass()) ? Validity.ALLOWED : Validity.DENIED;
+        }
+    }
+
+    private static class ContextHolder {
+        private UserAuthentication authentication;
+
+        public ContextHolder(UserAuthentication authentication) {
+            this.authentication = authentication;
+        }
+    }
+
+    private static class ObjenesisValueInstantiators extends ValueInstantiators.Base {
+        private final Objenesis objenesis = new ObjenesisStd(true);
+
+        @Override
+        public ValueInstantiator findValueInstantiator(DeserializationConfig config, BeanDescription beanDesc,
+                ValueInstantiator defaultInstantiator) {
+            Class<?> clazz = beanDesc.getBeanClass();
+            if (defaultInstantiator.canCreateUsingDefault() || clazz.isInterface()
+                    || Modifier.isAbstract(clazz.getModifiers()) || !isInstantiable(clazz)) {
+                return defaultInstantiator;
+            }
+
+            return new StdValueInstantiator(config, beanDesc.getType()) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public boolean canCreateUsingDefault() {
+                    return true;
+                }
+
+                @Override
+                public boolean canInstantiate() {
+                    return true;
+                }
+
+                @Override
+                public Object createUsingDefault(DeserializationContext ctxt) throws IOException {
+                    return objenesis.newInstance(clazz);
+                }
+            };
+        }
+
+        // only allowed types outside the jdk
+        private boolean isInstantiable(Class<?> clazz) {
+            return !clazz.getName().startsWith("java.") && isAllowed(clazz);
+        }
+    }
+}
@@ -16,6 +16,9 @@
 
 package it.smartcommunitylab.aac.crypto;
 
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 /**
@@ -24,13 +27,47 @@ import org.springframework.security.crypto.password.PasswordEncoder;
  */
 public class InternalPasswordEncoder implements PasswordEncoder {
 
+    // optional hashing pool, when missing we hash on the caller thread
+    private final PasswordHashService hashService;
+    private final String realm;
+
+    public InternalPasswordEncoder() {
+        this(null, null);
+    }
+
+    public InternalPasswordEncoder(PasswordHashService hashService, String realm) {
+        this.hashService = hashService;
+        this.realm = realm;
+    }
+
     @Override
     public String encode(CharSequence rawPassword) {
-        return rawPassword.toString();
+        if (hashService == null) {
+            return rawPassword.toString();
+        }
+
+        try {
+            return hashService.createHash(realm, rawPassword.toString());
+        } catch (RejectedExecutionException e) {
+            throw new AuthenticationServiceException("service unavailable", e);
+        } catch (Exception e) {
+            throw new AuthenticationServiceException(e.getMessage(), e);
+        }
     }
 
     @Override
     public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (hashService != null) {
+            try {
+                return hashService.validatePassword(realm, rawPassword.toString(), encodedPassword);
+            } catch (RejectedExecutionException e) {
+                // overloaded, do not report as bad credentials
+                throw new AuthenticationServiceException("service unavailable", e);
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
         try {
             return PasswordHash.validatePassword(rawPassword.toString(), encodedPassword);
         } catch (Exception e) {
@@ -38,4 +75,10 @@ public class InternalPasswordEncoder implements PasswordEncoder {
         }
     }
 
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        // rehash on login when cost changed
+        return hashService != null && hashService.needsRehash(encodedPassword);
+    }
+
 }
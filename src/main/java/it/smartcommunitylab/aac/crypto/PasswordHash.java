@@ -29,6 +29,19 @@ public class PasswordHash {
      */
     public static String createHash(String passwordString)
         throws NoSuchAlgorithmException, InvalidKeySpecException
+    {
+        return createHash(passwordString, PBKDF2_ITERATIONS);
+    }
+
+    /**
+     * Returns a salted PBKDF2 hash of the password, with the given cost.
+     *
+     * @param   password    the password to hash
+     * @param   iterations  the iteration count (slowness factor)
+     * @return              a salted PBKDF2 hash of the password
+     */
+    public static String createHash(String passwordString, int iterations)
+        throws NoSuchAlgorithmException, InvalidKeySpecException
     {
     	char[] password = passwordString.toCharArray();
         // Generate a random salt
@@ -37,9 +50,33 @@ public class PasswordHash {
         random.nextBytes(salt);
 
         // Hash the password
-        byte[] hash = pbkdf2(password, salt, PBKDF2_ITERATIONS, HASH_BYTE_SIZE);
+        byte[] hash = pbkdf2(password, salt, iterations, HASH_BYTE_SIZE);
         // format iterations:salt:hash
-        return PBKDF2_ITERATIONS + ":" + toHex(salt) + ":" +  toHex(hash);
+        return iterations + ":" + toHex(salt) + ":" +  toHex(hash);
+    }
+
+    /**
+     * Reads the iteration count used to build a hash.
+     *
+     * @param   correctHash     the hash of the valid password
+     * @return                  the iteration count, or -1 if the hash is malformed
+     */
+    public static int getIterations(String correctHash)
+    {
+        if (correctHash == null) {
+            return -1;
+        }
+
+        String[] params = correctHash.split(":");
+        if (params.length != 3) {
+            return -1;
+        }
+
+        try {
+            return Integer.parseInt(params[ITERATION_INDEX]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     /**
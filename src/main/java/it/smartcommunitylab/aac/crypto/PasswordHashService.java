@@ -0,0 +1,218 @@
+package it.smartcommunitylab.aac.crypto;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/*
+ * Password hashing on a dedicated, bounded worker pool
+ *
+ * PBKDF2 is cpu bound: running it on servlet threads lets a burst of logins
+ * starve every other request. Here work is queued on a fixed pool with a
+ * bounded queue, and requests are rejected fast when the pool is saturated or
+ * when a realm exceeds its concurrency cap.
+ */
+public class PasswordHashService implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 100;
+    public static final long DEFAULT_TIMEOUT = 10000;
+
+    private final ThreadPoolExecutor executor;
+
+    // per realm concurrency cap, 0 disables
+    private final int realmConcurrency;
+    private final ConcurrentHashMap<String, Semaphore> realmPermits = new ConcurrentHashMap<>();
+
+    // hashing parameters
+    private int iterations = PasswordHash.PBKDF2_ITERATIONS;
+    private long timeout = DEFAULT_TIMEOUT;
+
+    // metrics
+    private Timer validateTimer;
+    private Timer createTimer;
+    private Counter rejectedCounter;
+
+    public PasswordHashService(int threads) {
+        this(threads, DEFAULT_QUEUE_CAPACITY, 0);
+    }
+
+    public PasswordHashService(int threads, int queueCapacity, int realmConcurrency) {
+        Assert.isTrue(threads > 0, "threads must be a positive number");
+        Assert.isTrue(queueCapacity > 0, "queue capacity must be a positive number");
+        Assert.isTrue(realmConcurrency >= 0, "realm concurrency can not be negative");
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("password-hash-");
+        threadFactory.setDaemon(true);
+
+        // fixed pool, bounded queue, abort when full
+        this.executor = new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        this.realmConcurrency = realmConcurrency;
+    }
+
+    public void setIterations(int iterations) {
+        Assert.isTrue(iterations > 0, "iterations must be a positive number");
+        this.iterations = iterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public void setTimeout(long timeout) {
+        Assert.isTrue(timeout > 0, "timeout must be a positive number");
+        this.timeout = timeout;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            validateTimer = Timer.builder("aac.password.hash").tag("operation", "validate")
+                    .register(meterRegistry);
+            createTimer = Timer.builder("aac.password.hash").tag("operation", "create")
+                    .register(meterRegistry);
+            rejectedCounter = Counter.builder("aac.password.hash.rejected")
+                    .register(meterRegistry);
+            Gauge.builder("aac.password.hash.queue", executor, e -> e.getQueue().size())
+                    .register(meterRegistry);
+            Gauge.builder("aac.password.hash.active", executor, e -> e.getActiveCount())
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /*
+     * Hashing
+     */
+
+    public boolean validatePassword(String realm, String password, String correctHash)
+            throws NoSuchAlgorithmException, InvalidKeySpecException, RejectedExecutionException {
+        return execute(realm, validateTimer, () -> PasswordHash.validatePassword(password, correctHash));
+    }
+
+    public String createHash(String realm, String password)
+            throws NoSuchAlgorithmException, InvalidKeySpecException, RejectedExecutionException {
+        int cost = iterations;
+        return execute(realm, createTimer, () -> PasswordHash.createHash(password, cost));
+    }
+
+    // check if a hash was built with parameters different from the current ones
+    public boolean needsRehash(String correctHash) {
+        int i = PasswordHash.getIterations(correctHash);
+        return i > 0 && i != iterations;
+    }
+
+    private <T> T execute(String realm, Timer timer, Callable<T> task)
+            throws NoSuchAlgorithmException, InvalidKeySpecException, RejectedExecutionException {
+        Semaphore permits = null;
+        if (realmConcurrency > 0 && realm != null) {
+            permits = realmPermits.computeIfAbsent(realm, r -> new Semaphore(realmConcurrency));
+            if (!permits.tryAcquire()) {
+                reject("concurrency limit exceeded for realm " + realm);
+            }
+        }
+
+        // the permit is held while hashing runs: a started task releases it when
+        // done, since hashing can not be interrupted. Whoever claims the task
+        // first decides, so a task abandoned while queued never starts
+        Semaphore p = permits;
+        AtomicBoolean claimed = new AtomicBoolean(false);
+        Runnable release = () -> {
+            if (p != null) {
+                p.release();
+            }
+        };
+
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    // abandoned while queued, permit already released
+                    return null;
+                }
+
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    if (timer != null) {
+                        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                    release.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release.run();
+            reject("hashing queue is full");
+            return null;
+        }
+
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            abandon(future, claimed, release);
+            reject("timeout waiting for hashing");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(future, claimed, release);
+            throw new RejectedExecutionException("interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof NoSuchAlgorithmException) {
+                throw (NoSuchAlgorithmException) cause;
+            } else if (cause instanceof InvalidKeySpecException) {
+                throw (InvalidKeySpecException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void abandon(Future<?> future, AtomicBoolean claimed, Runnable release) {
+        future.cancel(true);
+        if (claimed.compareAndSet(false, true)) {
+            // never started, release here
+            release.run();
+        }
+    }
+
+    private void reject(String message) {
+        logger.warn("password hashing rejected: " + message);
+        if (rejectedCounter != null) {
+            rejectedCounter.increment();
+        }
+
+        throw new RejectedExecutionException(message);
+    }
+}
@@ -83,14 +83,8 @@ public class DevAttributeProviderController {
             @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm)
             throws NoSuchRealmException {
 
-        List<ConfigurableAttributeProvider> providers = providerManager
-                .listAttributeProviders(realm)
-                .stream()
-                .map(cp -> {
-                    cp.setRegistered(providerManager.isProviderRegistered(realm, cp));
-                    return cp;
-                }).collect(Collectors.toList());
-
+        // registration status is filled by the manager
+        Collection<ConfigurableAttributeProvider> providers = providerManager.listAttributeProviders(realm);
         return ResponseEntity.ok(providers);
     }
 
@@ -61,6 +61,7 @@ import it.smartcommunitylab.aac.dto.FunctionValidationBean;
 import it.smartcommunitylab.aac.model.ClientApp;
 import it.smartcommunitylab.aac.model.RealmRole;
 import it.smartcommunitylab.aac.model.SpaceRole;
+import it.smartcommunitylab.aac.oauth.model.TokenMetadata;
 import it.smartcommunitylab.aac.roles.RealmRoleManager;
 import it.smartcommunitylab.aac.roles.SpaceRoleManager;
 import springfox.documentation.annotations.ApiIgnore;
@@ -436,6 +437,30 @@ public class DevClientAppController {
         return ResponseEntity.ok(approvals);
     }
 
+    /*
+     * Tokens
+     */
+    @GetMapping("/realms/{realm}/apps/{clientId}/tokens")
+    public ResponseEntity<List<TokenMetadata>> getRealmClientAppTokens(
+            @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm,
+            @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String clientId,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false, defaultValue = "100") int size)
+            throws NoSuchRealmException, NoSuchClientException {
+        List<TokenMetadata> result = clientManager.listAccessTokens(realm, clientId, after,
+                Math.max(1, Math.min(size, 1000)));
+        return ResponseEntity.ok(result);
+    }
+
+    @DeleteMapping("/realms/{realm}/apps/{clientId}/tokens")
+    public ResponseEntity<Integer> revokeRealmClientAppTokens(
+            @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm,
+            @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String clientId)
+            throws NoSuchRealmException, NoSuchClientException {
+        int count = clientManager.revokeAccessTokens(realm, clientId);
+        return ResponseEntity.ok(count);
+    }
+
     /*
      * Audit
      */
@@ -2,11 +2,8 @@ package it.smartcommunitylab.aac.dev;
 
 import java.io.IOException;
 import java.net.URI;
-import java.util.Calendar;
 import java.util.Collection;
-import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -41,26 +38,19 @@ import org.thymeleaf.context.WebContext;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import it.smartcommunitylab.aac.Config;
 import it.smartcommunitylab.aac.SystemKeys;
-import it.smartcommunitylab.aac.audit.AuditManager;
-import it.smartcommunitylab.aac.audit.RealmAuditEvent;
 import it.smartcommunitylab.aac.common.NoSuchRealmException;
 import it.smartcommunitylab.aac.common.NoSuchResourceException;
 import it.smartcommunitylab.aac.common.NoSuchScopeException;
 import it.smartcommunitylab.aac.common.NoSuchSubjectException;
 import it.smartcommunitylab.aac.common.NoSuchUserException;
 import it.smartcommunitylab.aac.common.SystemException;
-import it.smartcommunitylab.aac.core.ClientManager;
 import it.smartcommunitylab.aac.core.MyUserManager;
-import it.smartcommunitylab.aac.core.ProviderManager;
 import it.smartcommunitylab.aac.core.RealmManager;
 import it.smartcommunitylab.aac.core.ScopeManager;
 import it.smartcommunitylab.aac.core.UserDetails;
-import it.smartcommunitylab.aac.core.UserManager;
-import it.smartcommunitylab.aac.core.base.ConfigurableProvider;
 import it.smartcommunitylab.aac.core.service.SubjectService;
 import it.smartcommunitylab.aac.dto.CustomizationBean;
 import it.smartcommunitylab.aac.dto.RealmStatsBean;
-import it.smartcommunitylab.aac.model.ClientApp;
 import it.smartcommunitylab.aac.model.Realm;
 import it.smartcommunitylab.aac.model.SpaceRole;
 import it.smartcommunitylab.aac.model.SpaceRoles;
@@ -69,7 +59,6 @@ import it.smartcommunitylab.aac.oauth.endpoint.OAuth2MetadataEndpoint;
 import it.smartcommunitylab.aac.roles.SpaceRoleManager;
 import it.smartcommunitylab.aac.scope.Resource;
 import it.smartcommunitylab.aac.scope.Scope;
-import it.smartcommunitylab.aac.services.ServicesManager;
 import springfox.documentation.annotations.ApiIgnore;
 
 @RestController
@@ -86,19 +75,11 @@ public class DevController {
     @Autowired
     private RealmManager realmManager;
     @Autowired
-    private UserManager userManager;
-    @Autowired
-    private ProviderManager providerManager;
-    @Autowired
-    private ClientManager clientManager;
-    @Autowired
     private ScopeManager scopeManager;
     @Autowired
     private DevManager devManager;
     @Autowired
-    private ServicesManager serviceManager;
-    @Autowired
-    private AuditManager auditManager;
+    private RealmStatsService realmStatsService;
     @Autowired
     private SpaceRoleManager roleManager;
 
@@ -166,60 +147,11 @@ public class DevController {
             + "') or hasAuthority(#realm+':ROLE_ADMIN') or hasAuthority(#realm+':ROLE_DEVELOPER')")
     public ResponseEntity<RealmStatsBean> getRealmStats(
             @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm) throws NoSuchRealmException {
-        RealmStatsBean bean = new RealmStatsBean();
-
         Realm realmObj = realmManager.getRealm(realm);
-        bean.setRealm(realmObj);
-
-        Long userCount = userManager.countUsers(realm);
-        bean.setUsers(userCount);
-
-        Collection<ConfigurableProvider> providers = providerManager.listProviders(realm);
-        bean.setProviders(providers.size());
-
-        int activeProviders = (int) providers.stream().filter(p -> providerManager.isProviderRegistered(realm, p))
-                .count();
-        bean.setProvidersActive(activeProviders);
-
-        Collection<ClientApp> apps = clientManager.listClientApps(realm);
-        bean.setApps(apps.size());
 
-        bean.setServices(serviceManager.listServices(realm).size());
-
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.DAY_OF_MONTH, -7);
-        Date after = cal.getTime();
-
-        bean.setEvents(auditManager.countRealmEvents(realm, null, after, null));
-
-        bean.setLoginCount(auditManager.countRealmEvents(realm, "USER_AUTHENTICATION_SUCCESS", after, null));
-        List<RealmAuditEvent> loginEvents = auditManager
-                .findRealmEvents(realm, "USER_AUTHENTICATION_SUCCESS", after, null).stream()
-                .limit(5)
-                .map(e -> {
-                    // clear event details
-                    Map<String, Object> d = new HashMap<>(e.getData());
-                    d.remove("details");
-
-                    return new RealmAuditEvent(e.getRealm(), e.getTimestamp(), e.getPrincipal(), e.getType(), d);
-                })
-                .collect(Collectors.toList());
-
-        bean.setLoginEvents(loginEvents);
-
-        bean.setRegistrationCount(auditManager.countRealmEvents(realm, "USER_REGISTRATION", after, null));
-        List<RealmAuditEvent> registrationEvents = auditManager
-                .findRealmEvents(realm, "USER_REGISTRATION", after, null).stream()
-                .limit(5)
-                .map(e -> {
-                    // clear event details
-                    Map<String, Object> d = new HashMap<>(e.getData());
-                    d.remove("details");
-
-                    return new RealmAuditEvent(e.getRealm(), e.getTimestamp(), e.getPrincipal(), e.getType(), d);
-                })
-                .collect(Collectors.toList());
-        bean.setRegistrationEvents(registrationEvents);
+        // materialized, doesn't scan realm content
+        RealmStatsBean bean = realmStatsService.getRealmStats(realm);
+        bean.setRealm(realmObj);
 
         return ResponseEntity.ok(bean);
     }
@@ -79,14 +79,8 @@ public class DevIdentityProviderController {
             @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm)
             throws NoSuchRealmException {
 
-        List<ConfigurableIdentityProvider> providers = providerManager
-                .listIdentityProviders(realm)
-                .stream()
-                .map(cp -> {
-                    cp.setRegistered(providerManager.isProviderRegistered(realm, cp));
-                    return cp;
-                }).collect(Collectors.toList());
-
+        // registration status is filled by the manager
+        Collection<ConfigurableIdentityProvider> providers = providerManager.listIdentityProviders(realm);
         return ResponseEntity.ok(providers);
     }
 
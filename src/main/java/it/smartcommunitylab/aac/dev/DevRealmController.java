@@ -127,6 +127,13 @@ public class DevRealmController {
         return ResponseEntity.ok(null);
     }
 
+    @DeleteMapping("/realms/{realm}/tokens")
+    @PreAuthorize("hasAuthority('" + Config.R_ADMIN + "') or hasAuthority(#realm+':ROLE_ADMIN')")
+    public ResponseEntity<Integer> revokeRealmTokens(
+            @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm) throws NoSuchRealmException {
+        return ResponseEntity.ok(clientManager.revokeRealmAccessTokens(realm));
+    }
+
     @GetMapping("/realms/{realm}/export")
     @PreAuthorize("hasAuthority('" + Config.R_ADMIN + "') or hasAuthority(#realm+':ROLE_ADMIN')")
     public void exportRealm(
@@ -22,7 +22,6 @@ import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.approval.Approval;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -49,6 +48,7 @@ import it.smartcommunitylab.aac.dto.ConnectedAppProfile;
 import it.smartcommunitylab.aac.model.RealmRole;
 import it.smartcommunitylab.aac.model.SpaceRole;
 import it.smartcommunitylab.aac.model.User;
+import it.smartcommunitylab.aac.oauth.model.TokenMetadata;
 import it.smartcommunitylab.aac.roles.RealmRoleManager;
 import it.smartcommunitylab.aac.roles.SpaceRoleManager;
 import springfox.documentation.annotations.ApiIgnore;
@@ -78,6 +78,15 @@ public class DevUsersController {
         return ResponseEntity.ok(userManager.searchUsers(realm, q, pageRequest));
     }
 
+    @GetMapping("/realms/{realm}/users/search")
+    public ResponseEntity<List<User>> searchRealmUsers(
+            @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm,
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false, defaultValue = "100") int size) throws NoSuchRealmException {
+        return ResponseEntity.ok(userManager.searchUsers(realm, q, after, Math.max(1, Math.min(size, 1000))));
+    }
+
     @GetMapping("/realms/{realm}/users/{subjectId}")
     public ResponseEntity<User> getRealmUser(
             @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm,
@@ -346,14 +355,26 @@ public class DevUsersController {
      * Tokens
      */
     @GetMapping("/realms/{realm}/users/{subjectId}/tokens")
-    public ResponseEntity<Collection<OAuth2AccessToken>> getRealmUserTokens(
+    public ResponseEntity<List<TokenMetadata>> getRealmUserTokens(
             @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm,
-            @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String subjectId)
+            @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String subjectId,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false, defaultValue = "100") int size)
             throws NoSuchRealmException, NoSuchUserException {
-        Collection<OAuth2AccessToken> result = userManager.getAccessTokens(realm, subjectId);
+        List<TokenMetadata> result = userManager.listAccessTokens(realm, subjectId, after,
+                Math.max(1, Math.min(size, 1000)));
         return ResponseEntity.ok(result);
     }
 
+    @DeleteMapping("/realms/{realm}/users/{subjectId}/tokens")
+    public ResponseEntity<Integer> revokeRealmUserTokens(
+            @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm,
+            @PathVariable @Valid @Pattern(regexp = SystemKeys.SLUG_PATTERN) String subjectId)
+            throws NoSuchRealmException, NoSuchUserException {
+        int count = userManager.revokeAccessTokens(realm, subjectId);
+        return ResponseEntity.ok(count);
+    }
+
     /*
      * DTO
      * 
@@ -0,0 +1,281 @@
+package it.smartcommunitylab.aac.dev;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.boot.actuate.audit.listener.AuditApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+import it.smartcommunitylab.aac.audit.RealmAuditEvent;
+import it.smartcommunitylab.aac.audit.store.AuditEventStore;
+import it.smartcommunitylab.aac.common.NoSuchRealmException;
+import it.smartcommunitylab.aac.core.ProviderManager;
+import it.smartcommunitylab.aac.core.base.ConfigurableProvider;
+import it.smartcommunitylab.aac.core.service.ClientEntityService;
+import it.smartcommunitylab.aac.core.service.UserEntityService;
+import it.smartcommunitylab.aac.dto.RealmStatsBean;
+import it.smartcommunitylab.aac.services.ServicesService;
+
+/*
+ * Materialized realm statistics for the dashboard
+ *
+ * Activity is kept per realm in daily buckets plus a short buffer of recent
+ * events, seeded from the audit store and then updated from local audit events.
+ * Events audited by other nodes are picked up when activity is periodically
+ * reseeded from the store, with a single aggregate query for all realms.
+ * Entity counts come from one aggregate query per table, grouped by realm and
+ * cached for a short period, since entities don't publish lifecycle events.
+ * Reading stats is O(1) in realm size.
+ */
+@Service
+public class RealmStatsService implements ApplicationListener<AuditApplicationEvent>, InitializingBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final String LOGIN_EVENT = "USER_AUTHENTICATION_SUCCESS";
+    public static final String REGISTRATION_EVENT = "USER_REGISTRATION";
+
+    // days of activity
+    public static final int WINDOW = 7;
+    public static final int RECENT_EVENTS = 5;
+
+    @Value("${dev.stats.cache}")
+    private int cacheValidity;
+
+    @Value("${dev.stats.activity}")
+    private int activityValidity;
+
+    @Autowired
+    private UserEntityService userService;
+
+    @Autowired
+    private ClientEntityService clientService;
+
+    @Autowired
+    private ServicesService servicesService;
+
+    @Autowired
+    private ProviderManager providerManager;
+
+    @Autowired
+    private AuditEventStore auditStore;
+
+    // snapshots for all realms
+    private Supplier<RealmCounts> counts;
+
+    private Supplier<Map<String, RealmActivity>> activity;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        counts = Suppliers.memoizeWithExpiration(this::loadCounts, cacheValidity, TimeUnit.SECONDS);
+
+        // reseed from store to include events audited by other nodes
+        activity = Suppliers.memoizeWithExpiration(this::loadActivity, activityValidity, TimeUnit.SECONDS);
+    }
+
+    public RealmStatsBean getRealmStats(String realm) throws NoSuchRealmException {
+        RealmStatsBean bean = new RealmStatsBean();
+
+        // providers are cached by the manager, throws for missing realms
+        Collection<ConfigurableProvider> providers = providerManager.listProviders(realm);
+        bean.setProviders(providers.size());
+        bean.setProvidersActive((int) providers.stream()
+                .filter(p -> Boolean.TRUE.equals(p.getRegistered()))
+                .count());
+
+        RealmCounts c = counts.get();
+        bean.setUsers(c.users.getOrDefault(realm, 0L));
+        bean.setApps(c.apps.getOrDefault(realm, 0L).intValue());
+        bean.setServices(c.services.getOrDefault(realm, 0L).intValue());
+
+        RealmActivity a = activity.get().computeIfAbsent(realm, r -> new RealmActivity());
+        synchronized (a) {
+            if (!a.seeded) {
+                loadRecentEvents(realm, a);
+            }
+
+            long today = today();
+            bean.setEvents(a.events.count(today));
+            bean.setLoginCount(a.logins.count(today));
+            bean.setLoginEvents(new ArrayList<>(a.recentLogins));
+            bean.setRegistrationCount(a.registrations.count(today));
+            bean.setRegistrationEvents(new ArrayList<>(a.recentRegistrations));
+        }
+
+        return bean;
+    }
+
+    /*
+     * Audit events
+     */
+    @Override
+    public void onApplicationEvent(AuditApplicationEvent event) {
+        AuditEvent e = event.getAuditEvent();
+        if (!(e instanceof RealmAuditEvent)) {
+            return;
+        }
+
+        // recent events not seeded yet will be read from store
+        RealmAuditEvent re = (RealmAuditEvent) e;
+        RealmActivity a = activity.get().computeIfAbsent(re.getRealm(), r -> new RealmActivity());
+        long day = toDay(re.getTimestamp());
+        synchronized (a) {
+            a.events.add(day, 1);
+            if (LOGIN_EVENT.equals(re.getType())) {
+                a.logins.add(day, 1);
+                if (a.seeded) {
+                    push(a.recentLogins, clear(re));
+                }
+            } else if (REGISTRATION_EVENT.equals(re.getType())) {
+                a.registrations.add(day, 1);
+                if (a.seeded) {
+                    push(a.recentRegistrations, clear(re));
+                }
+            }
+        }
+    }
+
+    /*
+     * Loaders
+     */
+    private RealmCounts loadCounts() {
+        logger.debug("load counts");
+        RealmCounts c = new RealmCounts();
+        c.users = userService.countUsersByRealm();
+        c.apps = clientService.countClientsByRealm();
+        c.services = servicesService.countServicesByRealm();
+
+        return c;
+    }
+
+    private Map<String, RealmActivity> loadActivity() {
+        logger.debug("load activity");
+        Map<String, RealmActivity> result = new ConcurrentHashMap<>();
+        long first = today() - WINDOW + 1;
+
+        // count per realm, type and day in a single aggregate query
+        Map<String, Map<String, long[]>> counts = auditStore.countByRealmAndType(
+                Instant.ofEpochSecond(first * 86400), Duration.ofDays(1), WINDOW);
+        counts.forEach((realm, types) -> {
+            RealmActivity a = new RealmActivity();
+            types.forEach((type, days) -> {
+                for (int i = 0; i < days.length; i++) {
+                    a.events.add(first + i, days[i]);
+                    if (LOGIN_EVENT.equals(type)) {
+                        a.logins.add(first + i, days[i]);
+                    } else if (REGISTRATION_EVENT.equals(type)) {
+                        a.registrations.add(first + i, days[i]);
+                    }
+                }
+            });
+            result.put(realm, a);
+        });
+
+        return result;
+    }
+
+    // recent events, newest first, read once per snapshot when the realm is
+    // viewed
+    private void loadRecentEvents(String realm, RealmActivity a) {
+        logger.debug("load recent events for realm " + realm);
+        Instant after = Instant.ofEpochSecond((today() - WINDOW + 1) * 86400);
+        auditStore.findByRealm(realm, after, null, LOGIN_EVENT, RECENT_EVENTS)
+                .forEach(e -> a.recentLogins.addLast(clear(e)));
+        auditStore.findByRealm(realm, after, null, REGISTRATION_EVENT, RECENT_EVENTS)
+                .forEach(e -> a.recentRegistrations.addLast(clear(e)));
+        a.seeded = true;
+    }
+
+    private void push(Deque<RealmAuditEvent> events, RealmAuditEvent event) {
+        events.addFirst(event);
+        while (events.size() > RECENT_EVENTS) {
+            events.removeLast();
+        }
+    }
+
+    // clear event details
+    private RealmAuditEvent clear(RealmAuditEvent e) {
+        Map<String, Object> d = new HashMap<>(e.getData());
+        d.remove("details");
+
+        return new RealmAuditEvent(e.getRealm(), e.getTimestamp(), e.getPrincipal(), e.getType(), d);
+    }
+
+    private static long today() {
+        return toDay(Instant.now());
+    }
+
+    private static long toDay(Instant instant) {
+        return instant.getEpochSecond() / 86400;
+    }
+
+    /*
+     * Stats holders
+     */
+    private static class RealmCounts {
+        private Map<String, Long> users = Collections.emptyMap();
+        private Map<String, Long> apps = Collections.emptyMap();
+        private Map<String, Long> services = Collections.emptyMap();
+    }
+
+    private static class RealmActivity {
+        private final DailyCounter events = new DailyCounter();
+        private final DailyCounter logins = new DailyCounter();
+        private final DailyCounter registrations = new DailyCounter();
+
+        private final Deque<RealmAuditEvent> recentLogins = new ArrayDeque<>(RECENT_EVENTS);
+        private final Deque<RealmAuditEvent> recentRegistrations = new ArrayDeque<>(RECENT_EVENTS);
+
+        private boolean seeded = false;
+    }
+
+    // ring of daily buckets, slots are reused as days roll over
+    private static class DailyCounter {
+        private final long[] days = new long[WINDOW];
+        private final long[] counts = new long[WINDOW];
+
+        public void add(long day, long count) {
+            int slot = (int) (day % WINDOW);
+            if (days[slot] != day) {
+                if (days[slot] > day) {
+                    // too old for the window
+                    return;
+                }
+
+                days[slot] = day;
+                counts[slot] = 0;
+            }
+
+            counts[slot] += count;
+        }
+
+        public long count(long today) {
+            long sum = 0;
+            for (int i = 0; i < WINDOW; i++) {
+                if (days[i] > today - WINDOW) {
+                    sum += counts[i];
+                }
+            }
+
+            return sum;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
 import it.smartcommunitylab.aac.SystemKeys;
 import it.smartcommunitylab.aac.common.NoSuchProviderException;
 import it.smartcommunitylab.aac.common.RegistrationException;
+import it.smartcommunitylab.aac.crypto.PasswordHashService;
 import it.smartcommunitylab.aac.core.authorities.IdentityAuthority;
 import it.smartcommunitylab.aac.core.base.ConfigurableIdentityProvider;
 import it.smartcommunitylab.aac.core.entrypoint.RealmAwareUriBuilder;
@@ -79,6 +80,7 @@ public class InternalIdentityAuthority implements IdentityAuthority, Initializin
     // services
     private MailService mailService;
     private RealmAwareUriBuilder uriBuilder;
+    private PasswordHashService hashService;
 
     // identity providers by id
 //    private Map<String, InternalIdentityProvider> providers = new HashMap<>();
@@ -106,6 +108,7 @@ public class InternalIdentityAuthority implements IdentityAuthority, Initializin
                     // set services
                     idp.setMailService(mailService);
                     idp.setUriBuilder(uriBuilder);
+                    idp.setPasswordHashService(hashService);
 
                     return idp;
 
@@ -135,6 +138,11 @@ public class InternalIdentityAuthority implements IdentityAuthority, Initializin
         this.uriBuilder = uriBuilder;
     }
 
+    @Autowired
+    public void setPasswordHashService(PasswordHashService hashService) {
+        this.hashService = hashService;
+    }
+
     public void setDefaultProviderConfig(InternalIdentityProviderConfigMap defaultProviderConfig) {
         this.defaultProviderConfig = defaultProviderConfig;
     }
@@ -22,6 +22,7 @@ import it.smartcommunitylab.aac.common.AlreadyRegisteredException;
 import it.smartcommunitylab.aac.common.InvalidInputException;
 import it.smartcommunitylab.aac.common.NoSuchUserException;
 import it.smartcommunitylab.aac.common.RegistrationException;
+import it.smartcommunitylab.aac.crypto.PasswordHashService;
 import it.smartcommunitylab.aac.core.base.AbstractProvider;
 import it.smartcommunitylab.aac.core.entrypoint.RealmAwareUriBuilder;
 import it.smartcommunitylab.aac.core.model.UserAccount;
@@ -76,6 +77,11 @@ public class InternalAccountService extends AbstractProvider implements AccountS
         this.passwordService.setUriBuilder(uriBuilder);
     }
 
+    public void setPasswordHashService(PasswordHashService hashService) {
+        // only passwordService handles hashes
+        this.passwordService.setPasswordHashService(hashService);
+    }
+
     @Override
     public String getType() {
         return SystemKeys.RESOURCE_ACCOUNT;
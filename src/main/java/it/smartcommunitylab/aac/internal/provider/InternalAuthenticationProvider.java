@@ -14,6 +14,7 @@ import it.smartcommunitylab.aac.SystemKeys;
 import it.smartcommunitylab.aac.core.auth.ExtendedAuthenticationProvider;
 import it.smartcommunitylab.aac.core.auth.UserAuthenticatedPrincipal;
 import it.smartcommunitylab.aac.crypto.InternalPasswordEncoder;
+import it.smartcommunitylab.aac.crypto.PasswordHashService;
 import it.smartcommunitylab.aac.internal.auth.ConfirmKeyAuthenticationToken;
 import it.smartcommunitylab.aac.internal.auth.InternalAuthenticationException;
 import it.smartcommunitylab.aac.internal.auth.ConfirmKeyAuthenticationProvider;
@@ -64,6 +65,14 @@ public class InternalAuthenticationProvider extends ExtendedAuthenticationProvid
 
     }
 
+    public void setPasswordHashService(PasswordHashService hashService) {
+        if (hashService != null) {
+            // hash on dedicated pool, and rehash on login when cost changes
+            authProvider.setPasswordEncoder(new InternalPasswordEncoder(hashService, getRealm()));
+            authProvider.setUserDetailsPasswordService(this.userDetailsService);
+        }
+    }
+
     @Override
     public Authentication doAuthenticate(Authentication authentication) throws AuthenticationException {
         // just delegate to provider
@@ -16,6 +16,7 @@ import org.springframework.util.StringUtils;
 import it.smartcommunitylab.aac.SystemKeys;
 import it.smartcommunitylab.aac.common.NoSuchUserException;
 import it.smartcommunitylab.aac.common.RegistrationException;
+import it.smartcommunitylab.aac.crypto.PasswordHashService;
 import it.smartcommunitylab.aac.core.auth.ExtendedAuthenticationProvider;
 import it.smartcommunitylab.aac.core.auth.UserAuthenticatedPrincipal;
 import it.smartcommunitylab.aac.core.base.AbstractProvider;
@@ -90,6 +91,13 @@ public class InternalIdentityService extends AbstractProvider implements Identit
         this.passwordService.setUriBuilder(uriBuilder);
     }
 
+    public void setPasswordHashService(PasswordHashService hashService) {
+        // assign to services
+        this.accountService.setPasswordHashService(hashService);
+        this.passwordService.setPasswordHashService(hashService);
+        this.authenticationProvider.setPasswordHashService(hashService);
+    }
+
     @Override
     public String getType() {
         return SystemKeys.RESOURCE_IDENTITY;
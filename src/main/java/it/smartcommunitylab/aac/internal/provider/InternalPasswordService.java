@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.mail.MessagingException;
 
@@ -26,6 +27,7 @@ import it.smartcommunitylab.aac.core.entrypoint.RealmAwareUriBuilder;
 import it.smartcommunitylab.aac.core.model.UserCredentials;
 import it.smartcommunitylab.aac.core.provider.CredentialsService;
 import it.smartcommunitylab.aac.crypto.PasswordHash;
+import it.smartcommunitylab.aac.crypto.PasswordHashService;
 import it.smartcommunitylab.aac.internal.InternalIdentityAuthority;
 import it.smartcommunitylab.aac.internal.dto.PasswordPolicy;
 import it.smartcommunitylab.aac.internal.model.UserPasswordCredentials;
@@ -44,6 +46,7 @@ public class InternalPasswordService extends AbstractProvider implements Credent
 
     private MailService mailService;
     private RealmAwareUriBuilder uriBuilder;
+    private PasswordHashService hashService;
 
     public InternalPasswordService(String providerId, InternalUserAccountService userAccountService,
             InternalIdentityProviderConfig providerConfig,
@@ -64,6 +67,10 @@ public class InternalPasswordService extends AbstractProvider implements Credent
         this.uriBuilder = uriBuilder;
     }
 
+    public void setPasswordHashService(PasswordHashService hashService) {
+        this.hashService = hashService;
+    }
+
     @Override
     public String getType() {
         return SystemKeys.RESOURCE_CREDENTIALS;
@@ -202,9 +209,9 @@ public class InternalPasswordService extends AbstractProvider implements Credent
 
         try {
             // verify match
-            return PasswordHash.validatePassword(password, account.getPassword());
+            return validatePasswordHash(password, account.getPassword());
 
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException | RejectedExecutionException e) {
             throw new SystemException(e.getMessage());
         }
 
@@ -225,7 +232,7 @@ public class InternalPasswordService extends AbstractProvider implements Credent
 
         try {
             // encode password
-            String hash = PasswordHash.createHash(password);
+            String hash = createPasswordHash(password);
 
             // set password already hashed
             account.setPassword(hash);
@@ -233,7 +240,7 @@ public class InternalPasswordService extends AbstractProvider implements Credent
 
             return userAccountService.updateAccount(account.getId(), account);
 
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException | RejectedExecutionException e) {
             throw new SystemException(e.getMessage());
         }
 
@@ -330,8 +337,8 @@ public class InternalPasswordService extends AbstractProvider implements Credent
         // we want to lock login with old password from now on
         String password = null;
         try {
-            password = PasswordHash.createHash(generatePassword());
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            password = createPasswordHash(generatePassword());
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException | RejectedExecutionException e) {
             logger.error(e.getMessage());
         }
 
@@ -398,6 +405,26 @@ public class InternalPasswordService extends AbstractProvider implements Credent
 
     }
 
+    /*
+     * Hashing, via dedicated pool when available
+     */
+    private boolean validatePasswordHash(String password, String hash)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+        if (hashService != null) {
+            return hashService.validatePassword(getRealm(), password, hash);
+        }
+
+        return PasswordHash.validatePassword(password, hash);
+    }
+
+    private String createPasswordHash(String password) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        if (hashService != null) {
+            return hashService.createHash(getRealm(), password);
+        }
+
+        return PasswordHash.createHash(password);
+    }
+
     /*
      * Keys
      */
@@ -8,14 +8,16 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.util.Assert;
 
 import it.smartcommunitylab.aac.Config;
+import it.smartcommunitylab.aac.common.NoSuchUserException;
 import it.smartcommunitylab.aac.internal.persistence.InternalUserAccount;
 
-public class InternalUserDetailsService implements UserDetailsService {
+public class InternalUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final String realm;
@@ -54,4 +56,23 @@ public class InternalUserDetailsService implements UserDetailsService {
                 authorities);
     }
 
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        // invoked after a successful login to store a rehashed password
+        InternalUserAccount account = userAccountService.findAccountByUsername(realm, user.getUsername());
+        if (account == null) {
+            return user;
+        }
+
+        try {
+            logger.debug("update password hash for user " + account.getUsername());
+            account.setPassword(newPassword);
+            userAccountService.updateAccount(account.getId(), account);
+        } catch (NoSuchUserException e) {
+            return user;
+        }
+
+        return User.withUserDetails(user).password(newPassword).build();
+    }
+
 }
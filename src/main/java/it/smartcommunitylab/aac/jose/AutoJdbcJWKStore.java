@@ -0,0 +1,160 @@
+package it.smartcommunitylab.aac.jose;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.keygen.BytesKeyGenerator;
+import org.springframework.security.crypto.keygen.KeyGenerators;
+import org.springframework.util.Assert;
+
+import com.nimbusds.jose.jwk.JWK;
+
+/*
+ * Shared storage for rotated keys, with DB table creation on startup
+ *
+ * Keys are stored as serialized JWK, private part included, encrypted with
+ * AES-GCM under a key derived from the configured secret and a per key salt.
+ * Along with the key we store the time window in which it is used for signing.
+ * Key ids are unique, so concurrent inserts of the same key by more nodes
+ * result in a single record.
+ */
+public class AutoJdbcJWKStore {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS jwk_keys ("
+            + "kid VARCHAR(256) NOT NULL PRIMARY KEY, jwk BLOB NOT NULL, "
+            + "activates_at TIMESTAMP NOT NULL, expires_at TIMESTAMP NOT NULL, created_at TIMESTAMP NOT NULL);";
+
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into jwk_keys (kid, jwk, activates_at, expires_at, created_at) values (?, ?, ?, ?, ?)";
+    private static final String DEFAULT_SELECT_VALID_STATEMENT = "select kid, jwk, activates_at, expires_at from jwk_keys where expires_at > ? order by activates_at";
+    private static final String DEFAULT_DELETE_EXPIRED_STATEMENT = "delete from jwk_keys where expires_at <= ?";
+
+    // encrypted values start with a tag, plain json with '{'
+    private static final byte ENCRYPTED = 'E';
+    private static final int SALT_LENGTH = 8;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String secret;
+    private final BytesKeyGenerator saltGenerator = KeyGenerators.secureRandom(SALT_LENGTH);
+
+    public AutoJdbcJWKStore(DataSource dataSource, String secret) {
+        Assert.notNull(dataSource, "DataSource required");
+        Assert.hasText(secret, "a secret is required to encrypt stored keys");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.secret = secret;
+        jdbcTemplate.execute(DEFAULT_CREATE_TABLE_STATEMENT);
+    }
+
+    /*
+     * Add a key, returns false when a key with the same id already exists
+     */
+    public boolean add(JWK jwk, Date activatesAt, Date expiresAt) {
+        Assert.notNull(jwk, "key can not be null");
+        Assert.hasText(jwk.getKeyID(), "key id is required");
+        Assert.notNull(activatesAt, "activation is required");
+        Assert.notNull(expiresAt, "expiration is required");
+
+        try {
+            jdbcTemplate.update(DEFAULT_INSERT_STATEMENT,
+                    new Object[] { jwk.getKeyID(),
+                            new SqlLobValue(encrypt(jwk.toJSONString().getBytes(StandardCharsets.UTF_8))),
+                            new Timestamp(activatesAt.getTime()), new Timestamp(expiresAt.getTime()),
+                            new Timestamp(System.currentTimeMillis()) },
+                    new int[] { Types.VARCHAR, Types.BLOB, Types.TIMESTAMP, Types.TIMESTAMP, Types.TIMESTAMP });
+            return true;
+        } catch (DuplicateKeyException e) {
+            // created by another node
+            return false;
+        }
+    }
+
+    /*
+     * Keys not yet expired, ordered by activation
+     */
+    public List<StoredKey> findValid() {
+        List<StoredKey> result = new ArrayList<>();
+        jdbcTemplate.query(DEFAULT_SELECT_VALID_STATEMENT,
+                rs -> {
+                    String kid = rs.getString("kid");
+                    try {
+                        JWK jwk = JWK.parse(new String(decrypt(rs.getBytes("jwk")), StandardCharsets.UTF_8));
+                        result.add(new StoredKey(jwk, rs.getTimestamp("activates_at").getTime(),
+                                rs.getTimestamp("expires_at").getTime()));
+                    } catch (ParseException | IllegalStateException e) {
+                        // skip, can't be used anyway
+                        logger.error("error reading stored key " + kid + ": " + e.getMessage());
+                    }
+                },
+                new Timestamp(System.currentTimeMillis()));
+        return result;
+    }
+
+    public int removeExpired() {
+        return jdbcTemplate.update(DEFAULT_DELETE_EXPIRED_STATEMENT, new Timestamp(System.currentTimeMillis()));
+    }
+
+    private byte[] encrypt(byte[] value) {
+        byte[] salt = saltGenerator.generateKey();
+        byte[] encrypted = Encryptors.stronger(secret, new String(Hex.encode(salt))).encrypt(value);
+        return ByteBuffer.allocate(1 + SALT_LENGTH + encrypted.length)
+                .put(ENCRYPTED).put(salt).put(encrypted).array();
+    }
+
+    private byte[] decrypt(byte[] value) {
+        if (value.length == 0 || value[0] != ENCRYPTED) {
+            // plain keys written before encryption, readable until they expire
+            return value;
+        }
+
+        if (value.length <= 1 + SALT_LENGTH) {
+            throw new IllegalStateException("invalid encrypted key");
+        }
+
+        byte[] salt = new byte[SALT_LENGTH];
+        System.arraycopy(value, 1, salt, 0, SALT_LENGTH);
+        byte[] encrypted = new byte[value.length - 1 - SALT_LENGTH];
+        System.arraycopy(value, 1 + SALT_LENGTH, encrypted, 0, encrypted.length);
+
+        // wrong secret or tampered data fail the gcm tag check
+        return Encryptors.stronger(secret, new String(Hex.encode(salt))).decrypt(encrypted);
+    }
+
+    public static class StoredKey {
+        private final JWK jwk;
+        private final long activatesAt;
+        private final long expiresAt;
+
+        public StoredKey(JWK jwk, long activatesAt, long expiresAt) {
+            this.jwk = jwk;
+            this.activatesAt = activatesAt;
+            this.expiresAt = expiresAt;
+        }
+
+        public JWK getJwk() {
+            return jwk;
+        }
+
+        public long getActivatesAt() {
+            return activatesAt;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package it.smartcommunitylab.aac.jose;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.KeyUse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.smartcommunitylab.aac.jose.AutoJdbcJWKStore.StoredKey;
+import it.smartcommunitylab.aac.jwt.DefaultJWTSigningAndValidationService;
+import it.smartcommunitylab.aac.jwt.JWKUtils;
+
+/*
+ * Scheduled rotation of signing keys, shared via DB
+ *
+ * Time is split in periods, each with its own key: the key id is derived from
+ * the period so that nodes racing to create the same key end up with a single
+ * record. Next key is created and published ahead of its activation, and
+ * retired keys are kept for validation for an additional overlap. Keys from the
+ * static keystore are always kept for validation, but are not used for default
+ * signing.
+ */
+public class JWKRotationManager implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final String KID_PREFIX = "aac-";
+    public static final String DEFAULT_ALGORITHM = "RS256";
+    public static final int DEFAULT_KEY_LENGTH = 2048;
+    public static final int DEFAULT_CHECK_INTERVAL = 60;
+
+    private final AutoJdbcJWKStore store;
+    private final DefaultJWTSigningAndValidationService signService;
+    private final Map<String, JWK> staticKeys;
+
+    private final long periodMillis;
+    private final long prepublishMillis;
+    private final long overlapMillis;
+
+    private volatile String activeKeyId;
+    private volatile Set<String> keyIds = Collections.emptySet();
+
+    private ScheduledExecutorService scheduler;
+
+    // metrics
+    private Counter rotationCounter;
+
+    public JWKRotationManager(AutoJdbcJWKStore store, DefaultJWTSigningAndValidationService signService,
+            JWKSetKeyStore keyStore, int period, int prepublish, int overlap) {
+        Assert.notNull(store, "key store is required");
+        Assert.notNull(signService, "sign service is required");
+        Assert.isTrue(period > 0, "rotation period must be a positive number");
+        Assert.isTrue(prepublish > DEFAULT_CHECK_INTERVAL,
+                "prepublish must be greater than " + DEFAULT_CHECK_INTERVAL + " seconds");
+        Assert.isTrue(prepublish < period, "prepublish must be shorter than the rotation period");
+        Assert.isTrue(overlap >= 0, "overlap can not be negative");
+
+        this.store = store;
+        this.signService = signService;
+        this.periodMillis = period * 1000L;
+        this.prepublishMillis = prepublish * 1000L;
+        this.overlapMillis = overlap * 1000L;
+
+        // static sign keys, as loaded by the service
+        this.staticKeys = new HashMap<>();
+        if (keyStore != null && keyStore.getJwkSet() != null) {
+            for (JWK key : keyStore.getKeys()) {
+                if ((key.getKeyUse() == null || key.getKeyUse().equals(KeyUse.SIGNATURE))
+                        && StringUtils.hasText(key.getKeyID())) {
+                    staticKeys.put(key.getKeyID(), key);
+                }
+            }
+        }
+
+        // run synchronously, we need an active key before signing
+        rotate();
+        Assert.notNull(activeKeyId, "no active signing key available");
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("jwk-rotation-");
+        threadFactory.setDaemon(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        scheduler.scheduleWithFixedDelay(this::rotate, DEFAULT_CHECK_INTERVAL, DEFAULT_CHECK_INTERVAL,
+                TimeUnit.SECONDS);
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            rotationCounter = Counter.builder("aac.jwt.rotation").register(meterRegistry);
+            Gauge.builder("aac.jwt.keys", this, m -> m.keyIds.size()).register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public String getActiveKeyId() {
+        return activeKeyId;
+    }
+
+    private synchronized void rotate() {
+        try {
+            long now = System.currentTimeMillis();
+            long epoch = now / periodMillis;
+
+            store.removeExpired();
+            List<StoredKey> stored = store.findValid();
+
+            // current key is needed only on first start, afterwards it has been
+            // created ahead as the next one
+            boolean created = ensureKey(stored, epoch);
+            if (now >= (epoch + 1) * periodMillis - prepublishMillis) {
+                created = ensureKey(stored, epoch + 1) || created;
+            }
+            if (created) {
+                // reload, another node may have won the race
+                stored = store.findValid();
+            }
+
+            // active is the latest key already activated
+            Map<String, JWK> keys = new HashMap<>(staticKeys);
+            String active = null;
+            for (StoredKey sk : stored) {
+                keys.put(sk.getJwk().getKeyID(), sk.getJwk());
+                if (sk.getActivatesAt() <= now) {
+                    active = sk.getJwk().getKeyID();
+                }
+            }
+
+            if (active == null) {
+                logger.error("no active signing key found");
+                return;
+            }
+
+            if (!active.equals(activeKeyId) || !keys.keySet().equals(keyIds)) {
+                signService.setKeys(keys, active);
+
+                if (activeKeyId != null && !active.equals(activeKeyId)) {
+                    logger.info("rotated signing key from " + activeKeyId + " to " + active);
+                    if (rotationCounter != null) {
+                        rotationCounter.increment();
+                    }
+                }
+
+                activeKeyId = active;
+                keyIds = new HashSet<>(keys.keySet());
+            }
+        } catch (RuntimeException | NoSuchAlgorithmException | InvalidKeySpecException e) {
+            // keep schedule alive, current keys stay in use
+            logger.error("error rotating signing keys: " + e.getMessage());
+        }
+    }
+
+    private boolean ensureKey(List<StoredKey> stored, long epoch) {
+        String kid = KID_PREFIX + epoch;
+
+        // look for an existing record before generating, keys are expensive
+        for (StoredKey sk : stored) {
+            if (kid.equals(sk.getJwk().getKeyID())) {
+                return false;
+            }
+        }
+
+        Date activatesAt = new Date(epoch * periodMillis);
+        Date expiresAt = new Date((epoch + 1) * periodMillis + overlapMillis);
+
+        try {
+            JWK jwk = JWKUtils.generateRsaJWK(kid, "sig", DEFAULT_ALGORITHM, DEFAULT_KEY_LENGTH);
+            if (store.add(jwk, activatesAt, expiresAt)) {
+                logger.debug("created signing key " + kid + " active from " + activatesAt);
+            }
+            return true;
+        } catch (JOSEException e) {
+            logger.error("error generating signing key " + kid + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
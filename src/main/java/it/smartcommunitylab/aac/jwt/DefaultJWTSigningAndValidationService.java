@@ -3,6 +3,7 @@ package it.smartcommunitylab.aac.jwt;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -35,18 +36,9 @@ import it.smartcommunitylab.aac.jose.JWKSetKeyStore;
 public class DefaultJWTSigningAndValidationService implements JWTSigningAndValidationService {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    // map of identifier to signer
-    private Map<String, JWSSigner> signers = new HashMap<>();
-
-    // map of identifier to verifier
-    private Map<String, JWSVerifier> verifiers = new HashMap<>();
-
-    private String defaultSignerKeyId;
-
-    private JWSAlgorithm defaultAlgorithm;
-
-    // map of identifier to key
-    private Map<String, JWK> keys = new HashMap<>();
+    // current keys with signers and verifiers, replaced as a whole on rotation
+    // so that the signing path reads a consistent snapshot without locking
+    private volatile KeySet current = new KeySet(Collections.emptyMap(), null, null);
 
     /**
      * Build this service based on the keys given. All public keys will be used to
@@ -60,8 +52,7 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
      */
     public DefaultJWTSigningAndValidationService(Map<String, JWK> keys)
             throws NoSuchAlgorithmException, InvalidKeySpecException {
-        this.keys = keys;
-        buildSignersAndVerifiers();
+        this.current = buildSignersAndVerifiers(keys, null, null);
     }
 
     /**
@@ -77,22 +68,48 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
     public DefaultJWTSigningAndValidationService(JWKSetKeyStore keyStore)
             throws NoSuchAlgorithmException, InvalidKeySpecException {
         // convert all keys in the keystore to a map based on key id
+        Map<String, JWK> keys = new HashMap<>();
         if (keyStore != null && keyStore.getJwkSet() != null) {
             for (JWK key : keyStore.getKeys()) {
                 // check if key is for sign
                 if (key.getKeyUse() == null || key.getKeyUse().equals(KeyUse.SIGNATURE)) {
                     if (StringUtils.hasText(key.getKeyID())) {
                         // use the key ID that's built into the key itself
-                        this.keys.put(key.getKeyID(), key);
+                        keys.put(key.getKeyID(), key);
                     } else {
                         // create a random key id
                         String fakeKid = UUID.randomUUID().toString();
-                        this.keys.put(fakeKid, key);
+                        keys.put(fakeKid, key);
                     }
                 }
             }
         }
-        buildSignersAndVerifiers();
+        this.current = buildSignersAndVerifiers(keys, null, null);
+    }
+
+    /**
+     * Replace the whole key set, for example on key rotation. Signers and verifiers
+     * are built before the swap, operations in progress complete with the previous
+     * set.
+     *
+     * @param keys               A map of key identifier to key
+     * @param defaultSignerKeyId the key to use for default signing, or null to keep
+     *                           the current one when still available
+     */
+    public synchronized void setKeys(Map<String, JWK> keys, String defaultSignerKeyId)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+        KeySet ks = current;
+        String kid = defaultSignerKeyId;
+        JWSAlgorithm alg = null;
+        if (kid == null && ks.defaultSignerKeyId != null && keys.containsKey(ks.defaultSignerKeyId)) {
+            kid = ks.defaultSignerKeyId;
+            alg = ks.defaultAlgorithm;
+        }
+        if (kid != null && alg == null && keys.containsKey(kid) && keys.get(kid).getAlgorithm() != null) {
+            alg = JWSAlgorithm.parse(keys.get(kid).getAlgorithm().getName());
+        }
+
+        this.current = buildSignersAndVerifiers(keys, kid, alg);
     }
 
     /**
@@ -100,11 +117,12 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
      */
     @Override
     public String getDefaultSignerKeyId() {
-        if (defaultSignerKeyId != null) {
-            return defaultSignerKeyId;
-        } else if (keys.size() == 1) {
+        KeySet ks = current;
+        if (ks.defaultSignerKeyId != null) {
+            return ks.defaultSignerKeyId;
+        } else if (ks.keys.size() == 1) {
             // if there's only one key in the map, it's the default
-            return keys.keySet().iterator().next();
+            return ks.keys.keySet().iterator().next();
         } else {
             return null;
         }
@@ -113,8 +131,9 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
     /**
      * @param defaultSignerKeyId the defaultSignerKeyId to set
      */
-    public void setDefaultSignerKeyId(String defaultSignerId) {
-        this.defaultSignerKeyId = defaultSignerId;
+    public synchronized void setDefaultSignerKeyId(String defaultSignerId) {
+        KeySet ks = current;
+        this.current = new KeySet(ks, defaultSignerId, ks.defaultAlgorithm);
     }
 
     /**
@@ -122,14 +141,16 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
      */
     @Override
     public JWSAlgorithm getDefaultSigningAlgorithm() {
-        return defaultAlgorithm;
+        return current.defaultAlgorithm;
     }
 
-    public void setDefaultSigningAlgorithmName(String algName) {
-        defaultAlgorithm = JWSAlgorithm.parse(algName);
+    public synchronized void setDefaultSigningAlgorithmName(String algName) {
+        KeySet ks = current;
+        this.current = new KeySet(ks, ks.defaultSignerKeyId, JWSAlgorithm.parse(algName));
     }
 
     public String getDefaultSigningAlgorithmName() {
+        JWSAlgorithm defaultAlgorithm = current.defaultAlgorithm;
         if (defaultAlgorithm != null) {
             return defaultAlgorithm.getName();
         } else {
@@ -144,7 +165,11 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
      * @throws NoSuchAlgorithmException If there is no appropriate algorithm to tie
      *                                  the keys to.
      */
-    private void buildSignersAndVerifiers() throws NoSuchAlgorithmException, InvalidKeySpecException {
+    private KeySet buildSignersAndVerifiers(Map<String, JWK> keys, String defaultSignerKeyId,
+            JWSAlgorithm defaultAlgorithm) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        Map<String, JWSSigner> signers = new HashMap<>();
+        Map<String, JWSVerifier> verifiers = new HashMap<>();
+
         for (Map.Entry<String, JWK> jwkEntry : keys.entrySet()) {
 
             String id = jwkEntry.getKey();
@@ -195,10 +220,12 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
         if (defaultSignerKeyId == null && keys.size() == 1) {
             // if there's only one key, it's the default
             Map.Entry<String, JWK> jwk = keys.entrySet().iterator().next();
-            setDefaultSignerKeyId(jwk.getKey());
+            defaultSignerKeyId = jwk.getKey();
             // also the algorithm is the only available
-            setDefaultSigningAlgorithmName(jwk.getValue().getAlgorithm().getName());
+            defaultAlgorithm = JWSAlgorithm.parse(jwk.getValue().getAlgorithm().getName());
         }
+
+        return new KeySet(keys, signers, verifiers, defaultSignerKeyId, defaultAlgorithm);
     }
 
     /**
@@ -206,11 +233,29 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
      */
     @Override
     public void signJwt(SignedJWT jwt) {
-        if (getDefaultSignerKeyId() == null) {
-            throw new IllegalStateException("Tried to call default signing with no default signer ID set");
-        }
+        KeySet ks = current;
+
+        // honor the key id already set in header, it may have been read before a
+        // rotation. An unknown key id is an error, the header would not match the
+        // signature
+        String kid = jwt.getHeader().getKeyID();
+        JWSSigner signer = null;
+        if (kid != null) {
+            signer = ks.signers.get(kid);
+            if (signer == null) {
+                throw new IllegalStateException("No signer for key id " + kid);
+            }
+        } else {
+            String defaultKid = ks.defaultSignerKeyId;
+            if (defaultKid == null && ks.keys.size() == 1) {
+                defaultKid = ks.keys.keySet().iterator().next();
+            }
+            if (defaultKid == null) {
+                throw new IllegalStateException("Tried to call default signing with no default signer ID set");
+            }
 
-        JWSSigner signer = signers.get(getDefaultSignerKeyId());
+            signer = ks.signers.get(defaultKid);
+        }
 
         try {
             jwt.sign(signer);
@@ -226,7 +271,7 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
 
         JWSSigner signer = null;
 
-        for (JWSSigner s : signers.values()) {
+        for (JWSSigner s : current.signers.values()) {
             if (s.supportedJWSAlgorithms().contains(alg)) {
                 signer = s;
                 break;
@@ -250,8 +295,26 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
 
     @Override
     public boolean validateSignature(SignedJWT jwt) {
+        KeySet ks = current;
+
+        // try the matching key first, then fallback to all
+        String kid = jwt.getHeader().getKeyID();
+        JWSVerifier match = kid != null ? ks.verifiers.get(kid) : null;
+        if (match != null) {
+            try {
+                if (jwt.verify(match)) {
+                    return true;
+                }
+            } catch (JOSEException e) {
+                logger.error("Failed to validate signature with " + match + " error message: " + e.getMessage());
+            }
+        }
+
+        for (JWSVerifier verifier : ks.verifiers.values()) {
+            if (verifier == match) {
+                continue;
+            }
 
-        for (JWSVerifier verifier : verifiers.values()) {
             try {
                 if (jwt.verify(verifier)) {
                     return true;
@@ -266,18 +329,8 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
 
     @Override
     public Map<String, JWK> getAllPublicKeys() {
-        Map<String, JWK> pubKeys = new HashMap<>();
-
-        // pull all keys out of the verifiers if we know how
-        for (String keyId : keys.keySet()) {
-            JWK key = keys.get(keyId);
-            JWK pub = key.toPublicJWK();
-            if (pub != null) {
-                pubKeys.put(keyId, pub);
-            }
-        }
-
-        return pubKeys;
+        // same instance until keys change
+        return current.publicKeys;
     }
 
     /*
@@ -291,11 +344,12 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
 
         Set<JWSAlgorithm> algs = new HashSet<>();
 
-        for (JWSSigner signer : signers.values()) {
+        KeySet ks = current;
+        for (JWSSigner signer : ks.signers.values()) {
             algs.addAll(signer.supportedJWSAlgorithms());
         }
 
-        for (JWSVerifier verifier : verifiers.values()) {
+        for (JWSVerifier verifier : ks.verifiers.values()) {
             algs.addAll(verifier.supportedJWSAlgorithms());
         }
 
@@ -303,4 +357,49 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
 
     }
 
+
+    /*
+     * Immutable snapshot of keys
+     */
+    private static class KeySet {
+        private final Map<String, JWK> keys;
+        private final Map<String, JWK> publicKeys;
+        private final Map<String, JWSSigner> signers;
+        private final Map<String, JWSVerifier> verifiers;
+        private final String defaultSignerKeyId;
+        private final JWSAlgorithm defaultAlgorithm;
+
+        public KeySet(Map<String, JWK> keys, String defaultSignerKeyId, JWSAlgorithm defaultAlgorithm) {
+            this(keys, Collections.emptyMap(), Collections.emptyMap(), defaultSignerKeyId, defaultAlgorithm);
+        }
+
+        public KeySet(KeySet ks, String defaultSignerKeyId, JWSAlgorithm defaultAlgorithm) {
+            this.keys = ks.keys;
+            this.publicKeys = ks.publicKeys;
+            this.signers = ks.signers;
+            this.verifiers = ks.verifiers;
+            this.defaultSignerKeyId = defaultSignerKeyId;
+            this.defaultAlgorithm = defaultAlgorithm;
+        }
+
+        public KeySet(Map<String, JWK> keys, Map<String, JWSSigner> signers, Map<String, JWSVerifier> verifiers,
+                String defaultSignerKeyId, JWSAlgorithm defaultAlgorithm) {
+            this.keys = Collections.unmodifiableMap(new HashMap<>(keys));
+            this.signers = Collections.unmodifiableMap(signers);
+            this.verifiers = Collections.unmodifiableMap(verifiers);
+            this.defaultSignerKeyId = defaultSignerKeyId;
+            this.defaultAlgorithm = defaultAlgorithm;
+
+            // pull all keys out of the verifiers if we know how
+            Map<String, JWK> pubKeys = new HashMap<>();
+            for (Map.Entry<String, JWK> e : keys.entrySet()) {
+                JWK pub = e.getValue().toPublicJWK();
+                if (pub != null) {
+                    pubKeys.put(e.getKey(), pub);
+                }
+            }
+            this.publicKeys = Collections.unmodifiableMap(pubKeys);
+        }
+    }
+
 }
\ No newline at end of file
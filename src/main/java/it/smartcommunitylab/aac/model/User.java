@@ -129,6 +129,32 @@ public class User {
 
     }
 
+    /*
+     * Shallow copy, collections are copied so that the new user can be narrowed
+     * without affecting the source
+     */
+    public User(User user) {
+        Assert.notNull(user, "user can not be null");
+        this.subjectId = user.subjectId;
+        this.source = user.source;
+        this.realm = user.realm;
+        this.username = user.username;
+        this.email = user.email;
+        this.blocked = user.blocked;
+        this.locked = user.locked;
+        this.expirationDate = user.expirationDate;
+        this.createDate = user.createDate;
+        this.modifiedDate = user.modifiedDate;
+        this.loginDate = user.loginDate;
+        this.loginIp = user.loginIp;
+        this.loginProvider = user.loginProvider;
+        this.authorities = user.authorities == null ? null : new HashSet<>(user.authorities);
+        this.identities = user.identities == null ? null : new HashSet<>(user.identities);
+        this.attributes = user.attributes == null ? null : new ArrayList<>(user.attributes);
+        this.realmRoles = user.realmRoles == null ? null : new HashSet<>(user.realmRoles);
+        this.spaceRoles = user.spaceRoles == null ? null : new HashSet<>(user.spaceRoles);
+    }
+
     public String getSubjectId() {
         return subjectId;
     }
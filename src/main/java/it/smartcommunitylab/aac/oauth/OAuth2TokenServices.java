@@ -39,19 +39,28 @@ import org.springframework.util.StringUtils;
 import com.nimbusds.oauth2.sdk.GrantType;
 import com.nimbusds.oauth2.sdk.ParseException;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
 import it.smartcommunitylab.aac.Config;
 import it.smartcommunitylab.aac.core.auth.UserAuthentication;
 import it.smartcommunitylab.aac.oauth.common.SecureStringKeyGenerator;
 import it.smartcommunitylab.aac.oauth.model.AuthorizationGrantType;
 import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+import it.smartcommunitylab.aac.oauth.model.TokenReusePolicy;
+import it.smartcommunitylab.aac.oauth.model.TokenType;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientDetailsService;
 import it.smartcommunitylab.aac.oauth.store.ExtTokenStore;
 import it.smartcommunitylab.aac.oauth.token.AACTokenEnhancer;
+import it.smartcommunitylab.aac.oauth.token.JwtTokenValidator;
+import it.smartcommunitylab.aac.oauth.token.TokenIssuanceContext;
+import it.smartcommunitylab.aac.oauth.token.TokenIssuanceContextHolder;
 
 /*
  * A complete tokenServices implementation.
  * 
- * Each request will result in a new token
+ * Each request will result in a new token, unless the client reuse policy
+ * allows returning a valid token issued for the same authentication key
  */
 
 public class OAuth2TokenServices
@@ -83,6 +92,16 @@ public class OAuth2TokenServices
     private int accessTokenValiditySeconds;
     private int refreshTokenRenewalWindowSeconds;
     private boolean removeExpired = true;
+    private TokenReusePolicy tokenReusePolicy = TokenReusePolicy.NONE;
+    private int tokenReuseMinValiditySeconds = 0;
+
+    // stateless jwt, not persisted and validated locally
+    private boolean statelessJwt = false;
+    private JwtTokenValidator jwtTokenValidator;
+
+    // metrics
+    private Counter reuseHitCounter;
+    private Counter reuseMissCounter;
 
     private Object refreshLock = new Object();
 
@@ -117,8 +136,10 @@ public class OAuth2TokenServices
         OAuth2Request request = authentication.getOAuth2Request();
         String clientId = request.getClientId();
 
-        // fetch client
-        OAuth2ClientDetails clientDetails = clientDetailsService.loadClientByClientId(clientId);
+        // fetch client, via context when available
+        TokenIssuanceContext context = TokenIssuanceContextHolder.getContext(clientId);
+        OAuth2ClientDetails clientDetails = TokenIssuanceContextHolder.getOAuth2ClientDetails(clientId,
+                () -> clientDetailsService.loadClientByClientId(clientId));
 
         // validity interval for tokens
         int accessValiditySeconds = clientDetails.getAccessTokenValiditySeconds() != null
@@ -128,6 +149,14 @@ public class OAuth2TokenServices
                 ? clientDetails.getRefreshTokenValiditySeconds()
                 : refreshTokenValiditySeconds;
 
+        // return a valid token for the same authentication when allowed
+        OAuth2AccessToken existingToken = findReusableAccessToken(authentication, clientDetails);
+        if (existingToken != null) {
+            traceUserLogger.info(String.format("'type':'reuse','user':'%s','scope':'%s','token':'%s'",
+                    authentication.getName(), String.join(" ", existingToken.getScope()), existingToken.getValue()));
+            return existingToken;
+        }
+
         AACOAuth2AccessToken accessToken = createAccessToken(authentication, accessValiditySeconds);
         if (accessToken == null || !StringUtils.hasText(accessToken.getValue())) {
             throw new OAuth2Exception("token error");
@@ -152,7 +181,13 @@ public class OAuth2TokenServices
             accessToken = tokenEnhancer.enhance(accessToken, authentication);
         }
 
-        tokenStore.storeAccessToken(accessToken, authentication);
+        if (!isStateless(accessToken, clientDetails)) {
+            long start = System.nanoTime();
+            tokenStore.storeAccessToken(accessToken, authentication);
+            if (context != null) {
+                context.record("store", start);
+            }
+        }
 
         traceUserLogger.info(String.format("'type':'new','user':'%s','scope':'%s','token':'%s'",
                 authentication.getName(), String.join(" ", accessToken.getScope()), accessToken.getValue()));
@@ -186,8 +221,10 @@ public class OAuth2TokenServices
             throw new InvalidGrantException("Wrong client for this refresh token: " + refreshTokenValue);
         }
 
-        // fetch client
-        OAuth2ClientDetails clientDetails = clientDetailsService.loadClientByClientId(clientId);
+        // fetch client, via context when available
+        TokenIssuanceContext context = TokenIssuanceContextHolder.getContext(clientId);
+        OAuth2ClientDetails clientDetails = TokenIssuanceContextHolder.getOAuth2ClientDetails(clientId,
+                () -> clientDetailsService.loadClientByClientId(clientId));
 
         // validity interval for tokens
         int accessValiditySeconds = clientDetails.getAccessTokenValiditySeconds() != null
@@ -269,7 +306,13 @@ public class OAuth2TokenServices
                 accessToken = tokenEnhancer.enhance(accessToken, refreshedAuthentication);
             }
 
-            tokenStore.storeAccessToken(accessToken, refreshedAuthentication);
+            if (!isStateless(accessToken, clientDetails)) {
+                long start = System.nanoTime();
+                tokenStore.storeAccessToken(accessToken, refreshedAuthentication);
+                if (context != null) {
+                    context.record("store", start);
+                }
+            }
         }
 
         traceUserLogger.info(String.format("'type':'new','user':'%s','scope':'%s','token':'%s'",
@@ -318,6 +361,11 @@ public class OAuth2TokenServices
 
         }
 
+        if (!removedAccessToken && !removedRefreshToken && jwtTokenValidator != null) {
+            // not persisted, record revocation for local validation
+            removedAccessToken = jwtTokenValidator.revokeToken(tokenValue);
+        }
+
         return removedAccessToken || removedRefreshToken;
     }
 
@@ -354,6 +402,10 @@ public class OAuth2TokenServices
     @Override
     public OAuth2AccessToken readAccessToken(String accessTokenValue) {
         OAuth2AccessToken accessToken = tokenStore.readAccessToken(accessTokenValue);
+        if (accessToken == null && jwtTokenValidator != null) {
+            accessToken = jwtTokenValidator.readAccessToken(accessTokenValue);
+        }
+
         if (accessToken == null) {
             throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
         }
@@ -369,6 +421,57 @@ public class OAuth2TokenServices
         return null;
     }
 
+    private OAuth2AccessToken findReusableAccessToken(OAuth2Authentication authentication,
+            OAuth2ClientDetails clientDetails) {
+        TokenReusePolicy policy = tokenReusePolicy;
+        if (clientDetails.getTokenReuse() != null) {
+            TokenReusePolicy p = TokenReusePolicy.parse(clientDetails.getTokenReuse());
+            if (p != null) {
+                policy = p;
+            }
+        }
+
+        OAuth2Request request = authentication.getOAuth2Request();
+        if (policy == TokenReusePolicy.NONE
+                || (policy == TokenReusePolicy.CLIENT_CREDENTIALS
+                        && !AuthorizationGrantType.CLIENT_CREDENTIALS.getValue().equals(request.getGrantType()))) {
+            return null;
+        }
+
+        // id tokens are bound to a single request (nonce, auth time), never reuse
+        if (request.getScope() != null && request.getScope().contains(Config.SCOPE_OPENID)) {
+            return null;
+        }
+
+        int minValiditySeconds = clientDetails.getTokenReuseMinValiditySeconds() != null
+                ? clientDetails.getTokenReuseMinValiditySeconds()
+                : tokenReuseMinValiditySeconds;
+
+        OAuth2AccessToken accessToken = tokenStore.findReusableAccessToken(authentication);
+        if (accessToken != null && accessToken.getExpiresIn() < minValiditySeconds) {
+            accessToken = null;
+        }
+
+        if (accessToken != null) {
+            logger.debug("reuse access token for client " + request.getClientId());
+            if (reuseHitCounter != null) {
+                reuseHitCounter.increment();
+            }
+        } else if (reuseMissCounter != null) {
+            reuseMissCounter.increment();
+        }
+
+        return accessToken;
+    }
+
+    private boolean isStateless(AACOAuth2AccessToken accessToken, OAuth2ClientDetails clientDetails) {
+        // only tokens signed with our keys can be validated locally, same check
+        // as the converter when marking tokens
+        return statelessJwt && jwtTokenValidator != null
+                && TokenType.JWT.getValue().equals(accessToken.getResponseType())
+                && JwtTokenValidator.supports(clientDetails);
+    }
+
     private ExpiringOAuth2RefreshToken createRefreshToken(OAuth2Authentication authentication, int validitySeconds) {
         OAuth2Request request = authentication.getOAuth2Request();
         String clientId = request.getClientId();
@@ -504,25 +607,17 @@ public class OAuth2TokenServices
 
         // fetch previously approved from store
         Collection<Approval> userApprovals = approvalStore.getApprovals(subjectId, clientId);
-        Set<Approval> expiredApprovals = new HashSet<>();
 
-        // add those not expired to list and remove others
+        // add those not expired to list, expired are left to the store sweep
         for (Approval approval : userApprovals) {
             if (approval.isCurrentlyActive()) {
                 // check if approved or denied, we'll let user decide again on denied
                 if (approval.getStatus().equals(ApprovalStatus.APPROVED)) {
                     userApprovedScopes.add(approval.getScope());
                 }
-            } else {
-                // inactive means expired, cleanup
-                expiredApprovals.add(approval);
             }
         }
 
-        // cleanup expired
-        if (!expiredApprovals.isEmpty()) {
-            approvalStore.revokeApprovals(expiredApprovals);
-        }
         return userApprovedScopes;
     }
 
@@ -557,6 +652,30 @@ public class OAuth2TokenServices
         this.removeExpired = removeExpired;
     }
 
+    public void setTokenReusePolicy(TokenReusePolicy tokenReusePolicy) {
+        Assert.notNull(tokenReusePolicy, "token reuse policy can not be null");
+        this.tokenReusePolicy = tokenReusePolicy;
+    }
+
+    public void setTokenReuseMinValiditySeconds(int tokenReuseMinValiditySeconds) {
+        this.tokenReuseMinValiditySeconds = tokenReuseMinValiditySeconds;
+    }
+
+    public void setStatelessJwt(boolean statelessJwt) {
+        this.statelessJwt = statelessJwt;
+    }
+
+    public void setJwtTokenValidator(JwtTokenValidator jwtTokenValidator) {
+        this.jwtTokenValidator = jwtTokenValidator;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            reuseHitCounter = Counter.builder("aac.token.reuse").tag("outcome", "hit").register(meterRegistry);
+            reuseMissCounter = Counter.builder("aac.token.reuse").tag("outcome", "miss").register(meterRegistry);
+        }
+    }
+
     public void setApprovalStore(ApprovalStore approvalStore) {
         this.approvalStore = approvalStore;
     }
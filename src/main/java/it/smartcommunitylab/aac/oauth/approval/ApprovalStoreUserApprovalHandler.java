@@ -489,25 +489,17 @@ public class ApprovalStoreUserApprovalHandler implements UserApprovalHandler, In
         // fetch previously approved from store
         Collection<Approval> userApprovals = approvalStore.getApprovals(userDetails.getSubjectId(),
                 clientDetails.getClientId());
-        Set<Approval> expiredApprovals = new HashSet<>();
 
-        // add those not expired to list and remove others
+        // add those not expired to list, expired are left to the store sweep
         for (Approval approval : userApprovals) {
             if (approval.isCurrentlyActive()) {
                 // check if approved or denied, we'll let user decide again on denied
                 if (approval.getStatus().equals(ApprovalStatus.APPROVED)) {
                     userApprovedScopes.add(approval.getScope());
                 }
-            } else {
-                // inactive means expired, cleanup
-                expiredApprovals.add(approval);
             }
         }
 
-        // cleanup expired
-        if (!expiredApprovals.isEmpty()) {
-            approvalStore.revokeApprovals(expiredApprovals);
-        }
         return userApprovedScopes;
     }
 //
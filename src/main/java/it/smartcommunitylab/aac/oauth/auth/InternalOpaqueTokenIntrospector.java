@@ -22,10 +22,12 @@ import it.smartcommunitylab.aac.common.NoSuchSubjectException;
 import it.smartcommunitylab.aac.core.service.SubjectService;
 import it.smartcommunitylab.aac.model.Subject;
 import it.smartcommunitylab.aac.oauth.AACOAuth2AccessToken;
+import it.smartcommunitylab.aac.oauth.token.JwtTokenValidator;
 
 /*
  * A token inspector which resolves by looking via tokenStore.
  * By leveraging subject service the resulting principal will have up-to-date authorities.
+ * Stateless JWT tokens, which are not in store, are validated locally when a validator is set.
  */
 
 public class InternalOpaqueTokenIntrospector implements OpaqueTokenIntrospector {
@@ -34,6 +36,8 @@ public class InternalOpaqueTokenIntrospector implements OpaqueTokenIntrospector
 
     private SubjectService subjectService;
 
+    private JwtTokenValidator jwtTokenValidator;
+
     private ApiScopeProvider apiProvider = new ApiScopeProvider();
 
     public InternalOpaqueTokenIntrospector(
@@ -50,9 +54,19 @@ public class InternalOpaqueTokenIntrospector implements OpaqueTokenIntrospector
         this.subjectService = subjectService;
     }
 
+    public void setJwtTokenValidator(JwtTokenValidator jwtTokenValidator) {
+        this.jwtTokenValidator = jwtTokenValidator;
+    }
+
     public OAuth2AuthenticatedPrincipal introspect(String tokenValue) {
 
         OAuth2AccessToken token = tokenStore.readAccessToken(tokenValue);
+        boolean stateless = false;
+        if (token == null && jwtTokenValidator != null) {
+            token = jwtTokenValidator.readAccessToken(tokenValue);
+            stateless = (token != null);
+        }
+
         if (token == null) {
             throw new BadOpaqueTokenException("Provided token isn't active");
         }
@@ -69,9 +83,12 @@ public class InternalOpaqueTokenIntrospector implements OpaqueTokenIntrospector
         AACOAuth2AccessToken accessToken = (AACOAuth2AccessToken) token;
         String realm = accessToken.getRealm();
 
-        OAuth2Authentication auth = tokenStore.readAuthentication(tokenValue);
-        if (auth == null) {
-            throw new BadOpaqueTokenException("Provided token isn't active");
+        // stateless tokens carry no stored authentication
+        if (!stateless) {
+            OAuth2Authentication auth = tokenStore.readAuthentication(tokenValue);
+            if (auth == null) {
+                throw new BadOpaqueTokenException("Provided token isn't active");
+            }
         }
 
         try {
@@ -79,6 +96,9 @@ public class InternalOpaqueTokenIntrospector implements OpaqueTokenIntrospector
 
             // make sure subject is valid
             Subject subject = subjectService.getSubject(subjectId);
+            if (realm == null) {
+                realm = subject.getRealm();
+            }
 
             // principal is the subject, which is the entity issuing the token
             String principal = subjectId;
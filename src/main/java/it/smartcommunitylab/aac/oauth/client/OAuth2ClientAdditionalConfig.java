@@ -16,6 +16,7 @@ import it.smartcommunitylab.aac.oauth.model.EncryptionMethod;
 import it.smartcommunitylab.aac.oauth.model.JWEAlgorithm;
 import it.smartcommunitylab.aac.oauth.model.JWSAlgorithm;
 import it.smartcommunitylab.aac.oauth.model.ResponseType;
+import it.smartcommunitylab.aac.oauth.model.TokenReusePolicy;
 
 /*
  * Additional configuration holder
@@ -66,6 +67,12 @@ public class OAuth2ClientAdditionalConfig {
     @JsonProperty("token_endpoint_auth_signing_alg")
     private JWSAlgorithm tokenEndpointAuthSignAlgorithm;
 
+    // access token reuse policy
+    @JsonProperty("token_reuse")
+    private TokenReusePolicy tokenReuse;
+    @JsonProperty("token_reuse_min_validity")
+    private Integer tokenReuseMinValidity;
+
     @JsonProperty("default_max_age")
     private Integer defaultMaxAge;
 
@@ -210,6 +217,22 @@ public class OAuth2ClientAdditionalConfig {
         this.tokenEndpointAuthSignAlgorithm = tokenEndpointAuthSignAlgorithm;
     }
 
+    public TokenReusePolicy getTokenReuse() {
+        return tokenReuse;
+    }
+
+    public void setTokenReuse(TokenReusePolicy tokenReuse) {
+        this.tokenReuse = tokenReuse;
+    }
+
+    public Integer getTokenReuseMinValidity() {
+        return tokenReuseMinValidity;
+    }
+
+    public void setTokenReuseMinValidity(Integer tokenReuseMinValidity) {
+        this.tokenReuseMinValidity = tokenReuseMinValidity;
+    }
+
     public Integer getDefaultMaxAge() {
         return defaultMaxAge;
     }
@@ -4,7 +4,6 @@ import java.nio.charset.Charset;
 import java.util.Base64;
 
 import org.springframework.security.crypto.keygen.BytesKeyGenerator;
-import org.springframework.security.crypto.keygen.KeyGenerators;
 import org.springframework.security.crypto.keygen.StringKeyGenerator;
 
 public class SecureStringKeyGenerator implements StringKeyGenerator {
@@ -14,25 +13,34 @@ public class SecureStringKeyGenerator implements StringKeyGenerator {
     private final Charset charset;
     private final BytesKeyGenerator generator;
 
+    // optional prefix for structured keys, ie to identify the key type
+    private final String prefix;
+
     public SecureStringKeyGenerator() {
         this(DEFAULT_KEY_LENGTH);
 
     }
 
     public SecureStringKeyGenerator(int keyLength) {
-        this(DEFAULT_KEY_LENGTH, DEFAULT_ENCODE_CHARSET);
+        this(keyLength, DEFAULT_ENCODE_CHARSET);
     }
 
     public SecureStringKeyGenerator(int keyLength, Charset charset) {
-        this.generator = KeyGenerators.secureRandom(keyLength);
+        this(keyLength, charset, null);
+    }
+
+    public SecureStringKeyGenerator(int keyLength, Charset charset, String prefix) {
+        this.generator = new ThreadLocalBytesKeyGenerator(keyLength);
         this.charset = charset;
+        this.prefix = prefix;
     }
 
     @Override
     public String generateKey() {
         byte[] key = generator.generateKey();
         byte[] encoded = Base64.getUrlEncoder().withoutPadding().encode(key);
-        return new String(encoded, charset);
+        String value = new String(encoded, charset);
+        return prefix != null ? prefix + value : value;
     }
 
 }
@@ -0,0 +1,95 @@
+package it.smartcommunitylab.aac.oauth.common;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import org.springframework.security.crypto.keygen.BytesKeyGenerator;
+import org.springframework.util.Assert;
+
+/*
+ * Random keys from per-thread generators
+ *
+ * A single shared SecureRandom serializes every caller, and the default native
+ * implementation also locks globally on reads. Here each thread owns a DRBG
+ * instance, fully seeded from a shared strong source on first use and reseeded
+ * after a number of keys or an amount of time, so that the seed source is hit
+ * rarely and key generation never contends between threads.
+ */
+public class ThreadLocalBytesKeyGenerator implements BytesKeyGenerator {
+
+    // NIST DRBG where available (java 9+), SHA1PRNG otherwise
+    public static final String DRBG_ALGORITHM = "DRBG";
+    public static final String FALLBACK_ALGORITHM = "SHA1PRNG";
+    public static final int SEED_LENGTH = 32;
+    public static final int RESEED_KEYS = 100000;
+    public static final long RESEED_INTERVAL = 10 * 60 * 1000L;
+
+    // shared seed source, non blocking
+    private static final SecureRandom SEED_SOURCE = new SecureRandom();
+
+    private static final ThreadLocal<Drbg> DRBG = ThreadLocal.withInitial(Drbg::new);
+
+    private final int keyLength;
+
+    public ThreadLocalBytesKeyGenerator(int keyLength) {
+        Assert.isTrue(keyLength > 0, "key length must be a positive number");
+        this.keyLength = keyLength;
+    }
+
+    @Override
+    public int getKeyLength() {
+        return keyLength;
+    }
+
+    @Override
+    public byte[] generateKey() {
+        byte[] key = new byte[keyLength];
+        DRBG.get().nextBytes(key);
+        return key;
+    }
+
+    private static byte[] seed() {
+        byte[] seed = new byte[SEED_LENGTH];
+        SEED_SOURCE.nextBytes(seed);
+        return seed;
+    }
+
+    private static class Drbg {
+        private final SecureRandom random;
+        private int count;
+        private long seededAt;
+
+        public Drbg() {
+            this.random = newInstance();
+            this.seededAt = System.currentTimeMillis();
+        }
+
+        private static SecureRandom newInstance() {
+            for (String algorithm : new String[] { DRBG_ALGORITHM, FALLBACK_ALGORITHM }) {
+                try {
+                    // DRBG mixes the seed into its own entropy, SHA1PRNG seeded
+                    // before first use replaces self seeding entirely
+                    SecureRandom r = SecureRandom.getInstance(algorithm);
+                    r.setSeed(seed());
+                    return r;
+                } catch (NoSuchAlgorithmException e) {
+                    // try next
+                }
+            }
+
+            // platform default, still per thread
+            return new SecureRandom(seed());
+        }
+
+        public void nextBytes(byte[] bytes) {
+            if (++count >= RESEED_KEYS || System.currentTimeMillis() - seededAt > RESEED_INTERVAL) {
+                // mix in fresh entropy, state is not replaced
+                random.setSeed(seed());
+                count = 0;
+                seededAt = System.currentTimeMillis();
+            }
+
+            random.nextBytes(bytes);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +37,8 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import it.smartcommunitylab.aac.Config;
 import it.smartcommunitylab.aac.SystemKeys;
 import it.smartcommunitylab.aac.common.SystemException;
@@ -46,6 +49,8 @@ import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
 import it.smartcommunitylab.aac.oauth.model.TokenResponse;
 import it.smartcommunitylab.aac.oauth.request.OAuth2TokenRequestFactory;
 import it.smartcommunitylab.aac.oauth.request.OAuth2TokenRequestValidator;
+import it.smartcommunitylab.aac.oauth.token.TokenIssuanceContext;
+import it.smartcommunitylab.aac.oauth.token.TokenIssuanceContextHolder;
 import it.smartcommunitylab.aac.openid.common.IdToken;
 import it.smartcommunitylab.aac.openid.token.IdTokenServices;
 
@@ -71,6 +76,8 @@ public class TokenEndpoint implements InitializingBean {
     @Autowired
     private ResourceServerTokenServices tokenServices;
 
+    private MeterRegistry meterRegistry;
+
     @Override
     public void afterPropertiesSet() throws Exception {
         Assert.notNull(tokenGranter, "token granter is required");
@@ -141,11 +148,26 @@ public class TokenEndpoint implements InitializingBean {
         // validate request via validator
         oauth2RequestValidator.validate(tokenRequest, clientDetails);
 
+        // open issuance context, shared by all stages for this request
+        TokenIssuanceContext context = TokenIssuanceContextHolder.createContext(clientId);
+        context.setOAuth2ClientDetails(clientDetails);
+        try {
+            return issueToken(grantType, authorizationGrantType, tokenRequest, context);
+        } finally {
+            TokenIssuanceContextHolder.clearContext();
+            recordTimings(grantType, context);
+        }
+    }
+
+    private ResponseEntity<TokenResponse> issueToken(String grantType, AuthorizationGrantType authorizationGrantType,
+            TokenRequest tokenRequest, TokenIssuanceContext context) {
         // get token from granter, if flow is unsupported result will be null
+        long start = System.nanoTime();
         OAuth2AccessToken token = tokenGranter.grant(grantType, tokenRequest);
         if (token == null) {
             throw new UnsupportedGrantTypeException("Grant type not supported: " + grantType);
         }
+        context.record("grant", start);
 
         IdToken idToken = null;
         // TODO check scopes in tokenrequest, but we need to fetch authorizationRequest
@@ -162,9 +184,11 @@ public class TokenEndpoint implements InitializingBean {
             // read back authentication used for token
             // TODO rewrite from scratch tokenGranter interfaces, tokenServices should call
             // them not the other way around..
+            start = System.nanoTime();
             OAuth2Authentication oauth2Authentication = tokenServices.loadAuthentication(token.getValue());
 
             idToken = idTokenServices.createIdToken(oauth2Authentication, token);
+            context.record("id_token", start);
 
         }
 
@@ -176,6 +200,29 @@ public class TokenEndpoint implements InitializingBean {
         return buildResponse(token, idToken);
     }
 
+    private void recordTimings(String grantType, TokenIssuanceContext context) {
+        long total = System.nanoTime() - context.getStartedAt();
+        if (logger.isTraceEnabled()) {
+            logger.trace("token issuance for " + context.getClientId() + " took " + total + "ns: "
+                    + context.getTimings().toString());
+        }
+
+        if (meterRegistry != null) {
+            // stages are nested: grant includes enhancers and store
+            context.getTimings().forEach((stage, nanos) -> Timer.builder("aac.token.issuance")
+                    .tag("stage", stage).tag("grant_type", grantType)
+                    .register(meterRegistry).record(nanos, TimeUnit.NANOSECONDS));
+            Timer.builder("aac.token.issuance")
+                    .tag("stage", "total").tag("grant_type", grantType)
+                    .register(meterRegistry).record(total, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     private ResponseEntity<TokenResponse> buildResponse(OAuth2AccessToken accessToken, IdToken idToken) {
         // build a proper response, as per rfc6749
         HttpHeaders headers = new HttpHeaders();
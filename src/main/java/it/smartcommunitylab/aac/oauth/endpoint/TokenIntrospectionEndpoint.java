@@ -52,11 +52,13 @@ import org.springframework.web.bind.annotation.RequestParam;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import it.smartcommunitylab.aac.core.service.SubjectService;
 import it.smartcommunitylab.aac.oauth.AACOAuth2AccessToken;
 import it.smartcommunitylab.aac.oauth.auth.OAuth2ClientAuthenticationToken;
 import it.smartcommunitylab.aac.oauth.common.ServerErrorException;
 import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
 import it.smartcommunitylab.aac.oauth.model.TokenIntrospection;
+import it.smartcommunitylab.aac.oauth.token.JwtTokenValidator;
 
 /**
  * OAuth2.0 Token introspection controller as of RFC7662:
@@ -82,6 +84,12 @@ public class TokenIntrospectionEndpoint {
     @Autowired
     private TokenStore tokenStore;
 
+    @Autowired(required = false)
+    private JwtTokenValidator jwtTokenValidator;
+
+    @Autowired
+    private SubjectService subjectService;
+
     /*
      * client_id should match audience, as per security considerations
      * https://tools.ietf.org/html/rfc7662#section-4
@@ -147,6 +155,28 @@ public class TokenIntrospectionEndpoint {
             return ResponseEntity.ok(result);
         }
 
+        // stateless jwt are not in store, validate locally
+        if (jwtTokenValidator != null) {
+            AACOAuth2AccessToken jwtToken = jwtTokenValidator.readAccessToken(tokenValue);
+            if (jwtToken != null) {
+                // no stored authentication to tie the token to, check that both
+                // subject and client still exist
+                if (subjectService.findSubject(jwtToken.getSubject()) == null
+                        || !StringUtils.hasText(jwtToken.getAuthorizedParty())
+                        || subjectService.findSubject(jwtToken.getAuthorizedParty()) == null) {
+                    return ResponseEntity.ok(new TokenIntrospection(false));
+                }
+
+                // rebuild the request from token claims
+                OAuth2Request request = new OAuth2Request(null, jwtToken.getAuthorizedParty(), null, true,
+                        jwtToken.getScope(), null, null, null, null);
+
+                TokenIntrospection result = introspectAccessToken(introspectClientId,
+                        new OAuth2Authentication(request, null), jwtToken);
+                return ResponseEntity.ok(result);
+            }
+        }
+
         // no token found
         // as per spec return a response with active=false
         return ResponseEntity.ok(new TokenIntrospection(false));
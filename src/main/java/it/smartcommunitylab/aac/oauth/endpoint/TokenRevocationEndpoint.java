@@ -26,9 +26,11 @@ import org.springframework.web.bind.annotation.RequestParam;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import it.smartcommunitylab.aac.oauth.AACOAuth2AccessToken;
 import it.smartcommunitylab.aac.oauth.auth.OAuth2ClientAuthenticationToken;
 import it.smartcommunitylab.aac.oauth.common.ServerErrorException;
 import it.smartcommunitylab.aac.oauth.store.ExtTokenStore;
+import it.smartcommunitylab.aac.oauth.token.JwtTokenValidator;
 
 /**
  * OAuth2.0 Token Revocation controller as of RFC7009:
@@ -46,6 +48,9 @@ public class TokenRevocationEndpoint {
     @Autowired
     private ExtTokenStore tokenStore;
 
+    @Autowired(required = false)
+    private JwtTokenValidator jwtTokenValidator;
+
     /**
      * Revoke the access token and the associated refresh token.
      * 
@@ -97,6 +102,20 @@ public class TokenRevocationEndpoint {
 
         }
 
+        if (auth == null && jwtTokenValidator != null) {
+            // stateless jwt are not in store, record revocation
+            AACOAuth2AccessToken jwtToken = jwtTokenValidator.readAccessToken(token);
+            if (jwtToken != null) {
+                if (!clientAuth.getClientId().equals(jwtToken.getAuthorizedParty())) {
+                    throw new UnauthorizedClientException("client is not the owner of the token");
+                }
+
+                logger.trace("revoke stateless access token " + jwtToken.getToken());
+                jwtTokenValidator.revokeToken(token);
+                return ResponseEntity.ok("");
+            }
+        }
+
         if (auth == null) {
             // not token found
             // as per spec, return 200 since the token is invalid
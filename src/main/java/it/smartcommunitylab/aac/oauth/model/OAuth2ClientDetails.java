@@ -64,6 +64,12 @@ public class OAuth2ClientDetails implements ClientDetails {
     @JsonProperty("id_token_validity")
     private Integer idTokenValiditySeconds;
 
+    @JsonProperty("token_reuse")
+    private String tokenReuse;
+
+    @JsonProperty("token_reuse_min_validity")
+    private Integer tokenReuseMinValiditySeconds;
+
     @JsonProperty("jwks")
     private String jwks;
 
@@ -238,6 +244,22 @@ public class OAuth2ClientDetails implements ClientDetails {
         this.idTokenValiditySeconds = idTokenValiditySeconds;
     }
 
+    public String getTokenReuse() {
+        return tokenReuse;
+    }
+
+    public void setTokenReuse(String tokenReuse) {
+        this.tokenReuse = tokenReuse;
+    }
+
+    public Integer getTokenReuseMinValiditySeconds() {
+        return tokenReuseMinValiditySeconds;
+    }
+
+    public void setTokenReuseMinValiditySeconds(Integer tokenReuseMinValiditySeconds) {
+        this.tokenReuseMinValiditySeconds = tokenReuseMinValiditySeconds;
+    }
+
     public String getJwks() {
         return jwks;
     }
@@ -0,0 +1,60 @@
+package it.smartcommunitylab.aac.oauth.model;
+
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/*
+ * Lightweight view of a stored access token, read from indexed columns only
+ * 
+ * The id is the store key, not the token value
+ */
+@JsonInclude(Include.NON_NULL)
+public class TokenMetadata {
+
+    @JsonProperty("token_id")
+    private String tokenId;
+
+    @JsonProperty("client_id")
+    private String clientId;
+
+    @JsonProperty("sub")
+    private String subject;
+
+    @JsonProperty("exp")
+    private Date expiration;
+
+    @JsonProperty("refresh")
+    private boolean refresh;
+
+    public TokenMetadata(String tokenId, String clientId, String subject, Date expiration, boolean refresh) {
+        this.tokenId = tokenId;
+        this.clientId = clientId;
+        this.subject = subject;
+        this.expiration = expiration;
+        this.refresh = refresh;
+    }
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public Date getExpiration() {
+        return expiration;
+    }
+
+    public boolean isRefresh() {
+        return refresh;
+    }
+
+}
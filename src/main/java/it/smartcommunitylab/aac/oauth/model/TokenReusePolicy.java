@@ -0,0 +1,41 @@
+package it.smartcommunitylab.aac.oauth.model;
+
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/*
+ * Reuse of valid access tokens on repeated requests with the same
+ * authentication key
+ */
+public enum TokenReusePolicy {
+    NONE("none"),
+    CLIENT_CREDENTIALS("client_credentials"),
+    ALWAYS("always");
+
+    private final String value;
+
+    TokenReusePolicy(String value) {
+        Assert.hasText(value, "value cannot be empty");
+        this.value = value;
+    }
+
+    @JsonValue
+    public String getValue() {
+        return value;
+    }
+
+    public String toString() {
+        return value;
+    }
+
+    public static TokenReusePolicy parse(String value) {
+        for (TokenReusePolicy t : TokenReusePolicy.values()) {
+            if (t.value.equalsIgnoreCase(value)) {
+                return t;
+            }
+        }
+
+        return null;
+    }
+}
@@ -1,8 +1,9 @@
 package it.smartcommunitylab.aac.oauth.provider;
 
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.AuthorizationCodeServices;
 
-public interface PeekableAuthorizationCodeServices {
+public interface PeekableAuthorizationCodeServices extends AuthorizationCodeServices {
 
     OAuth2Authentication peekAuthorizationCode(String code);
 }
@@ -99,6 +99,11 @@ public class OAuth2ClientDetailsService implements ClientDetailsService {
                     clientDetails.setJwtEncAlgorithm(config.getJwtEncMethod().getValue());
                 }
 
+                if (config.getTokenReuse() != null) {
+                    clientDetails.setTokenReuse(config.getTokenReuse().getValue());
+                }
+                clientDetails.setTokenReuseMinValiditySeconds(config.getTokenReuseMinValidity());
+
             } catch (Exception e) {
                 // ignore additional config
             }
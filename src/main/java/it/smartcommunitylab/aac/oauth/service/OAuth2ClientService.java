@@ -17,7 +17,6 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.security.crypto.keygen.BytesKeyGenerator;
-import org.springframework.security.crypto.keygen.KeyGenerators;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
@@ -35,6 +34,7 @@ import it.smartcommunitylab.aac.core.service.ClientService;
 import it.smartcommunitylab.aac.oauth.client.OAuth2Client;
 import it.smartcommunitylab.aac.oauth.client.OAuth2ClientAdditionalConfig;
 import it.smartcommunitylab.aac.oauth.client.OAuth2ClientInfo;
+import it.smartcommunitylab.aac.oauth.common.ThreadLocalBytesKeyGenerator;
 import it.smartcommunitylab.aac.oauth.model.ApplicationType;
 import it.smartcommunitylab.aac.oauth.model.AuthenticationMethod;
 import it.smartcommunitylab.aac.oauth.model.AuthorizationGrantType;
@@ -603,11 +603,11 @@ public class OAuth2ClientService implements ClientService {
      * 
      * @return
      */
-    private synchronized String generateClientSecret() {
+    private String generateClientSecret() {
         return new String(Base64.getUrlEncoder().encode(tokenGenerator.generateKey()), ENCODE_CHARSET);
     }
 
-    private static final BytesKeyGenerator tokenGenerator = KeyGenerators.secureRandom(20);
+    private static final BytesKeyGenerator tokenGenerator = new ThreadLocalBytesKeyGenerator(20);
     private static final Charset ENCODE_CHARSET = Charset.forName("UTF-8");
 
 }
@@ -0,0 +1,244 @@
+package it.smartcommunitylab.aac.oauth.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.oauth2.provider.approval.Approval;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/*
+ * Write-through cache in front of an approval store
+ *
+ * Approvals are cached per (subject, client) since that is the lookup done at
+ * every authorization and token request. Only non-empty lookups are cached, for
+ * a short validity: writes through this store invalidate the affected entries
+ * locally once committed, while changes made on other nodes are observed once
+ * entries expire. Entries may hold expired approvals, callers filter them and
+ * the sweeper deletes them.
+ */
+public class CachingApprovalStore implements SearchableApprovalStore, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_CACHE_VALIDITY = 30;
+    public static final int DEFAULT_SWEEP_INTERVAL = 3600;
+
+    private final SearchableApprovalStore approvalStore;
+
+    // approvals by subject+client
+    private final Cache<String, Collection<Approval>> approvals;
+
+    // bumped on every invalidation, loads started before a write are not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private ScheduledExecutorService sweeper;
+
+    public CachingApprovalStore(SearchableApprovalStore approvalStore) {
+        this(approvalStore, DEFAULT_CACHE_VALIDITY);
+    }
+
+    public CachingApprovalStore(SearchableApprovalStore approvalStore, int cacheValidity) {
+        Assert.notNull(approvalStore, "approval store is required");
+        Assert.isTrue(cacheValidity > 0, "cache validity must be a positive number");
+        this.approvalStore = approvalStore;
+
+        this.approvals = CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheValidity, TimeUnit.SECONDS)
+                .maximumSize(10000)
+                .build();
+    }
+
+    /*
+     * Expired approvals sweep, interval in seconds, 0 disables
+     */
+    public void setSweepInterval(int sweepInterval) {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+
+        if (sweepInterval > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("approvals-sweep-");
+            threadFactory.setDaemon(true);
+            sweeper = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            sweeper.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    private void sweep() {
+        try {
+            if (purgeExpiredApprovals()) {
+                logger.debug("purged expired approvals");
+            }
+        } catch (RuntimeException e) {
+            // keep schedule alive
+            logger.error("error purging expired approvals: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Cached lookup
+     */
+
+    @Override
+    public Collection<Approval> getApprovals(String userId, String clientId) {
+        if (userId == null || clientId == null) {
+            return approvalStore.getApprovals(userId, clientId);
+        }
+
+        String key = extractKey(userId, clientId);
+        Collection<Approval> list = approvals.getIfPresent(key);
+        if (list != null) {
+            return list;
+        }
+
+        long gen = generation.get();
+        list = approvalStore.getApprovals(userId, clientId);
+        if (list != null && !list.isEmpty()) {
+            list = Collections.unmodifiableList(new ArrayList<>(list));
+            if (generation.get() == gen) {
+                // no write since load started
+                approvals.put(key, list);
+            }
+        }
+
+        return list;
+    }
+
+    /*
+     * Write-through
+     */
+
+    @Override
+    public boolean addApprovals(Collection<Approval> list) {
+        try {
+            return approvalStore.addApprovals(list);
+        } finally {
+            invalidate(list);
+        }
+    }
+
+    @Override
+    public boolean revokeApprovals(Collection<Approval> list) {
+        try {
+            return approvalStore.revokeApprovals(list);
+        } finally {
+            invalidate(list);
+        }
+    }
+
+    @Override
+    public boolean revokeApprovals(String userId, String clientId) {
+        try {
+            return approvalStore.revokeApprovals(userId, clientId);
+        } finally {
+            invalidate(Collections.singleton(extractKey(userId, clientId)));
+        }
+    }
+
+    @Override
+    public boolean purgeExpiredApprovals() {
+        boolean result = approvalStore.purgeExpiredApprovals();
+        if (result) {
+            // we don't know which entries were affected
+            invalidate((Set<String>) null);
+        }
+
+        return result;
+    }
+
+    private void invalidate(Collection<Approval> list) {
+        if (list == null) {
+            return;
+        }
+
+        Set<String> keys = new HashSet<>();
+        for (Approval approval : list) {
+            if (approval.getUserId() != null && approval.getClientId() != null) {
+                keys.add(extractKey(approval.getUserId(), approval.getClientId()));
+            }
+        }
+
+        invalidate(keys);
+    }
+
+    // invalidate now and again after commit, null keys means all
+    private void invalidate(Set<String> keys) {
+        doInvalidate(keys);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // a load before commit can still read the old rows
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    doInvalidate(keys);
+                }
+            });
+        }
+    }
+
+    private void doInvalidate(Set<String> keys) {
+        generation.incrementAndGet();
+        if (keys == null) {
+            approvals.invalidateAll();
+        } else {
+            approvals.invalidateAll(keys);
+        }
+    }
+
+    private String extractKey(String userId, String clientId) {
+        return userId + "|" + clientId;
+    }
+
+    /*
+     * Search, not cached
+     */
+
+    @Override
+    public Approval findApproval(String userId, String clientId, String scope) {
+        return approvalStore.findApproval(userId, clientId, scope);
+    }
+
+    @Override
+    public Collection<Approval> findUserApprovals(String userId) {
+        return approvalStore.findUserApprovals(userId);
+    }
+
+    @Override
+    public Collection<Approval> findClientApprovals(String clientId) {
+        return approvalStore.findClientApprovals(clientId);
+    }
+
+    @Override
+    public Collection<Approval> findScopeApprovals(String scope) {
+        return approvalStore.findScopeApprovals(scope);
+    }
+
+    @Override
+    public Collection<Approval> findUserScopeApprovals(String userId, String scope) {
+        return approvalStore.findUserScopeApprovals(userId, scope);
+    }
+
+}
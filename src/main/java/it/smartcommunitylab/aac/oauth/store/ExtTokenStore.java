@@ -17,9 +17,13 @@
 package it.smartcommunitylab.aac.oauth.store;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import it.smartcommunitylab.aac.oauth.model.TokenMetadata;
 import org.springframework.security.oauth2.provider.token.TokenStore;
 
 /**
@@ -50,4 +54,49 @@ public interface ExtTokenStore extends TokenStore {
      */
     Collection<OAuth2AccessToken> findTokensByUserName(String userName);
 
+    /**
+     * Find a valid access token issued for the same authentication key, for
+     * reuse
+     * 
+     * @param authentication the authentication to match
+     * @return the matching token with the longest remaining validity, or null
+     */
+    public OAuth2AccessToken findReusableAccessToken(OAuth2Authentication authentication);
+
+    /**
+     * List access tokens issued to a client, ordered by id
+     * 
+     * @param clientId the client id to search
+     * @param after    the last id of the previous page, or null
+     * @param size     the page size
+     * @return a page of token metadata
+     */
+    public List<TokenMetadata> listTokensByClientId(String clientId, String after, int size);
+
+    /**
+     * List access tokens issued to a user, ordered by id
+     * 
+     * @param userName the subject to search
+     * @param after    the last id of the previous page, or null
+     * @param size     the page size
+     * @return a page of token metadata
+     */
+    public List<TokenMetadata> listTokensByUserName(String userName, String after, int size);
+
+    /**
+     * Revoke all access and refresh tokens issued to a client
+     * 
+     * @param clientId the client id
+     * @return the number of tokens removed
+     */
+    public int revokeTokensByClientId(String clientId);
+
+    /**
+     * Revoke all access and refresh tokens issued to a user
+     * 
+     * @param userName the subject
+     * @return the number of tokens removed
+     */
+    public int revokeTokensByUserName(String userName);
+
 }
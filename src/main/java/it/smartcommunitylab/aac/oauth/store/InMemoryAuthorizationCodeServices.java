@@ -0,0 +1,113 @@
+package it.smartcommunitylab.aac.oauth.store;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.util.Pair;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.keygen.StringKeyGenerator;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+
+import it.smartcommunitylab.aac.oauth.common.SecureStringKeyGenerator;
+import it.smartcommunitylab.aac.oauth.provider.PeekableAuthorizationCodeServices;
+
+/*
+ * Authorization codes kept in memory, for single node deployments
+ *
+ * Codes never leave the jvm so there is no serialization, consume is an
+ * atomic remove from the map.
+ */
+public class InMemoryAuthorizationCodeServices implements PeekableAuthorizationCodeServices, DisposableBean {
+
+    private static final StringKeyGenerator TOKEN_GENERATOR = new SecureStringKeyGenerator(20);
+
+    private static final int DEFAULT_CODE_VALIDITY_SECONDS = 10 * 60;
+
+    // code -> authentication, expiresAt
+    private final Map<String, Pair<OAuth2Authentication, Long>> codes = new ConcurrentHashMap<>();
+
+    private StringKeyGenerator tokenGenerator = TOKEN_GENERATOR;
+    private int codeValidityMillis = DEFAULT_CODE_VALIDITY_SECONDS * 1000;
+
+    private ScheduledExecutorService sweeper;
+
+    public InMemoryAuthorizationCodeServices() {
+    }
+
+    public InMemoryAuthorizationCodeServices(int codeValidity) {
+        Assert.isTrue(codeValidity > 0, "code validity must be a positive number");
+        this.codeValidityMillis = codeValidity * 1000;
+    }
+
+    @Override
+    public String createAuthorizationCode(OAuth2Authentication authentication) {
+        // build a secure random code and store
+        String code = tokenGenerator.generateKey();
+        codes.put(code, Pair.of(authentication, System.currentTimeMillis() + codeValidityMillis));
+
+        return code;
+    }
+
+    @Override
+    public OAuth2Authentication consumeAuthorizationCode(String code) throws InvalidGrantException {
+        // atomic, only one caller gets the value
+        Pair<OAuth2Authentication, Long> authentication = codes.remove(code);
+        if (authentication == null || System.currentTimeMillis() >= authentication.getSecond().longValue()) {
+            throw new InvalidGrantException("Invalid authorization code: " + code);
+        }
+
+        return authentication.getFirst();
+    }
+
+    @Override
+    public OAuth2Authentication peekAuthorizationCode(String code) {
+        Pair<OAuth2Authentication, Long> authentication = codes.get(code);
+        if (authentication == null || System.currentTimeMillis() >= authentication.getSecond().longValue()) {
+            return null;
+        }
+
+        return authentication.getFirst();
+    }
+
+    public int purgeExpiredCodes() {
+        long now = System.currentTimeMillis();
+        int size = codes.size();
+        codes.values().removeIf(a -> now >= a.getSecond().longValue());
+        return size - codes.size();
+    }
+
+    public void setTokenGenerator(StringKeyGenerator tokenGenerator) {
+        this.tokenGenerator = tokenGenerator;
+    }
+
+    /*
+     * Expired codes sweep, interval in seconds, 0 disables
+     */
+    public void setPurgeInterval(int purgeInterval) {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+
+        if (purgeInterval > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("authcode-sweep-");
+            threadFactory.setDaemon(true);
+            sweeper = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            sweeper.scheduleWithFixedDelay(this::purgeExpiredCodes, purgeInterval, purgeInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+}
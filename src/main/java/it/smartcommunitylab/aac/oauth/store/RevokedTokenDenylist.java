@@ -0,0 +1,247 @@
+package it.smartcommunitylab.aac.oauth.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcRevokedTokenStore;
+
+/*
+ * In-memory denylist for revoked, non persisted tokens
+ *
+ * Revoked ids are kept in a bloom filter synchronized from the revocation
+ * store: a miss means the token is not revoked, while a hit is confirmed
+ * against the store since the filter admits false positives. New revocations
+ * are pulled incrementally, and the filter is periodically rebuilt to drop
+ * expired entries. Revocations made on other nodes become visible within one
+ * sync interval.
+ * Bulk revocations for a subject or client are kept as cutoffs on the issue
+ * time. They are few, so they are held in full and reloaded at every sync.
+ */
+public class RevokedTokenDenylist implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_SYNC_INTERVAL = 30;
+    public static final int DEFAULT_REBUILD_INTERVAL = 3600;
+    public static final int MIN_EXPECTED_INSERTIONS = 10000;
+    public static final double FALSE_POSITIVE_PROBABILITY = 0.001;
+    // cutoffs must outlive every token issued before them
+    public static final int DEFAULT_CUTOFF_RETENTION = 30 * 24 * 3600;
+
+    private static final String SUBJECT_PREFIX = "sub:";
+    private static final String CLIENT_PREFIX = "client:";
+
+    private final AutoJdbcRevokedTokenStore store;
+
+    // filter writes are serialized on this instance, readers see them via the
+    // volatile reference which is re-published after each write
+    private volatile BloomFilter<CharSequence> filter;
+    private volatile int entries;
+    private volatile long lastSync;
+    private final int syncInterval;
+    private long lastRebuild;
+
+    // principal -> cutoff, replaced on write
+    private volatile Map<String, Long> cutoffs = Collections.emptyMap();
+    private int cutoffRetention = DEFAULT_CUTOFF_RETENTION;
+
+    // confirmed lookups, avoids a query per request for revoked tokens in use
+    private final Cache<String, Boolean> confirmed = CacheBuilder.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .maximumSize(10000)
+            .build();
+
+    private ScheduledExecutorService syncer;
+
+    // metrics
+    private Counter hitCounter;
+    private Counter falsePositiveCounter;
+
+    public RevokedTokenDenylist(AutoJdbcRevokedTokenStore store) {
+        this(store, DEFAULT_SYNC_INTERVAL);
+    }
+
+    public RevokedTokenDenylist(AutoJdbcRevokedTokenStore store, int syncInterval) {
+        Assert.notNull(store, "revoked token store is required");
+        Assert.isTrue(syncInterval > 0, "sync interval must be a positive number");
+        this.store = store;
+        this.syncInterval = syncInterval;
+
+        // load synchronously, we need a complete filter before validating
+        rebuild();
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("token-denylist-");
+        threadFactory.setDaemon(true);
+        syncer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        syncer.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.SECONDS);
+    }
+
+    public void setCutoffRetention(int cutoffRetention) {
+        Assert.isTrue(cutoffRetention > 0, "cutoff retention must be a positive number");
+        this.cutoffRetention = cutoffRetention;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            hitCounter = Counter.builder("aac.token.denylist").tag("outcome", "revoked").register(meterRegistry);
+            falsePositiveCounter = Counter.builder("aac.token.denylist").tag("outcome", "false_positive")
+                    .register(meterRegistry);
+            Gauge.builder("aac.token.denylist.size", this, d -> d.entries)
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (syncer != null) {
+            syncer.shutdownNow();
+            syncer = null;
+        }
+    }
+
+    public void revoke(String jti, Date expiresAt) {
+        Assert.hasText(jti, "jti can not be null or empty");
+        if (expiresAt == null || expiresAt.getTime() <= System.currentTimeMillis()) {
+            // expired tokens are already rejected
+            return;
+        }
+
+        store.add(jti, expiresAt);
+        synchronized (this) {
+            put(filter, jti);
+        }
+        confirmed.put(jti, Boolean.TRUE);
+    }
+
+    /*
+     * Revoke every token issued so far to the subject, or to the client
+     */
+    public void revokeSubject(String subjectId) {
+        Assert.hasText(subjectId, "subject can not be null or empty");
+        revokeBefore(SUBJECT_PREFIX + subjectId);
+    }
+
+    public void revokeClient(String clientId) {
+        Assert.hasText(clientId, "client can not be null or empty");
+        revokeBefore(CLIENT_PREFIX + clientId);
+    }
+
+    private void revokeBefore(String principal) {
+        long now = System.currentTimeMillis();
+        store.addCutoff(principal, new Date(now), new Date(now + cutoffRetention * 1000L));
+        synchronized (this) {
+            Map<String, Long> map = new HashMap<>(cutoffs);
+            map.put(principal, now);
+            cutoffs = map;
+        }
+    }
+
+    /*
+     * Tokens issued at or before a cutoff are revoked, tokens without issue time
+     * are treated as older than any cutoff
+     */
+    public boolean isRevoked(String subjectId, String clientId, Date issuedAt) {
+        long iat = issuedAt != null ? issuedAt.getTime() : 0;
+        return isBefore(SUBJECT_PREFIX + subjectId, iat) || isBefore(CLIENT_PREFIX + clientId, iat);
+    }
+
+    private boolean isBefore(String principal, long iat) {
+        Long cutoff = cutoffs.get(principal);
+        return cutoff != null && iat <= cutoff;
+    }
+
+    public boolean isRevoked(String jti) {
+        if (jti == null || !filter.mightContain(jti)) {
+            return false;
+        }
+
+        try {
+            boolean revoked = confirmed.get(jti, () -> store.isRevoked(jti));
+            if (revoked && hitCounter != null) {
+                hitCounter.increment();
+            } else if (!revoked && falsePositiveCounter != null) {
+                falsePositiveCounter.increment();
+            }
+
+            return revoked;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // fail closed, we can't tell
+            logger.error("error checking revocation for " + jti + ": " + e.getMessage());
+            return true;
+        }
+    }
+
+    private synchronized void rebuild() {
+        long now = System.currentTimeMillis();
+        Map<String, Long> revoked = store.findValid();
+
+        BloomFilter<CharSequence> f = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8),
+                Math.max(MIN_EXPECTED_INSERTIONS, revoked.size() * 2), FALSE_POSITIVE_PROBABILITY);
+        revoked.keySet().forEach(f::put);
+
+        entries = revoked.size();
+        filter = f;
+        cutoffs = store.findCutoffs();
+        lastSync = now;
+        lastRebuild = now;
+        confirmed.invalidateAll();
+
+        logger.debug("rebuilt token denylist with " + revoked.size() + " entries");
+    }
+
+    private synchronized void sync() {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - lastRebuild > DEFAULT_REBUILD_INTERVAL * 1000L
+                    || filter.expectedFpp() > FALSE_POSITIVE_PROBABILITY * 10) {
+                // drop expired entries and resize
+                store.removeExpired();
+                rebuild();
+                return;
+            }
+
+            // overlap with the previous round to tolerate clock skew between nodes
+            Date since = new Date(lastSync - syncInterval * 1000L);
+            Map<String, Long> revoked = store.findRevokedSince(since);
+            BloomFilter<CharSequence> f = filter;
+            revoked.keySet().forEach(jti -> put(f, jti));
+            // cached negatives may be stale now
+            revoked.keySet().forEach(confirmed::invalidate);
+            cutoffs = store.findCutoffs();
+            lastSync = now;
+        } catch (RuntimeException e) {
+            // keep schedule alive
+            logger.error("error syncing token denylist: " + e.getMessage());
+        }
+    }
+
+    private void put(BloomFilter<CharSequence> f, String jti) {
+        if (f.put(jti)) {
+            entries++;
+        }
+
+        // publish
+        filter = f;
+    }
+}
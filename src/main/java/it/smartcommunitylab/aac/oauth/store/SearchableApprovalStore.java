@@ -17,5 +17,11 @@ public interface SearchableApprovalStore extends ApprovalStore {
     
     public Collection<Approval> findUserScopeApprovals(String userId, String scope);
 
+    // remove all approvals for a user+client pair
+    public boolean revokeApprovals(String userId, String clientId);
+
+    // remove all approvals past their expiry
+    public boolean purgeExpiredApprovals();
+
 
 }
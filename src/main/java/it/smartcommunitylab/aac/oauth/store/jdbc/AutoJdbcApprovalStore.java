@@ -2,38 +2,74 @@ package it.smartcommunitylab.aac.oauth.store.jdbc;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.oauth2.provider.approval.Approval;
 import org.springframework.security.oauth2.provider.approval.JdbcApprovalStore;
 import org.springframework.security.oauth2.provider.approval.Approval.ApprovalStatus;
+import org.springframework.util.StringUtils;
 
 import it.smartcommunitylab.aac.oauth.store.SearchableApprovalStore;
+import it.smartcommunitylab.aac.utils.JdbcSchemaUtils;
 
 public class AutoJdbcApprovalStore extends JdbcApprovalStore implements SearchableApprovalStore {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private JdbcTemplate jdbcTemplate;
     private final RowMapper<Approval> rowMapper = new AuthorizationRowMapper();
 
+    private static final String TABLE_NAME = "oauth_approvals";
+
     private static final String DEFAULT_CREATE_TABLE_STATEMENT = " CREATE TABLE IF NOT EXISTS `oauth_approvals` (" +
-            "  `clientId` varchar(255) DEFAULT NULL," +
+            "  `clientId` varchar(255) NOT NULL," +
             "  `expiresAt` datetime DEFAULT NULL," +
             "  `lastModifiedAt` datetime DEFAULT NULL," +
-            "  `scope` varchar(255) DEFAULT NULL," +
+            "  `scope` varchar(255) NOT NULL," +
             "  `status` varchar(255) DEFAULT NULL," +
-            "  `userId` varchar(255) DEFAULT NULL) ";
+            "  `userId` varchar(255) NOT NULL," +
+            "  PRIMARY KEY (`userId`, `clientId`, `scope`)) ";
+
+    // legacy tables have no key, add a unique index to get the same guarantees
+    private static final String DEFAULT_CREATE_KEY_STATEMENT = "CREATE UNIQUE INDEX `oauth_approvals_key` ON `oauth_approvals` (`userId`, `clientId`, `scope`)";
+    private static final String DEFAULT_CREATE_CLIENT_INDEX_STATEMENT = "CREATE INDEX `oauth_approvals_client` ON `oauth_approvals` (`clientId`)";
+    private static final String DEFAULT_CREATE_SCOPE_INDEX_STATEMENT = "CREATE INDEX `oauth_approvals_scope` ON `oauth_approvals` (`scope`)";
+    private static final String DEFAULT_CREATE_EXPIRES_INDEX_STATEMENT = "CREATE INDEX `oauth_approvals_expires` ON `oauth_approvals` (`expiresAt`)";
 
     private static final String DEFAULT_FIND_SINGLE_APPROVAL_SQL = "SELECT expiresAt,status,lastModifiedAt,userId,clientId,scope FROM `oauth_approvals` WHERE userId=? AND clientId=? AND scope=?";
     private static final String DEFAULT_GET_USER_APPROVAL_SQL = "SELECT expiresAt,status,lastModifiedAt,userId,clientId,scope FROM `oauth_approvals` WHERE userId=?";
     private static final String DEFAULT_GET_CLIENT_APPROVAL_SQL = "SELECT expiresAt,status,lastModifiedAt,userId,clientId,scope FROM `oauth_approvals` WHERE clientId=?";
     private static final String DEFAULT_GET_SCOPE_APPROVAL_SQL = "SELECT expiresAt,status,lastModifiedAt,userId,clientId,scope FROM `oauth_approvals` WHERE scope=?";
     private static final String DEFAULT_GET_USER_SCOPE_APPROVAL_SQL = "SELECT expiresAt,status,lastModifiedAt,userId,clientId,scope FROM `oauth_approvals` WHERE userId=? and scope=?";
+    private static final String DEFAULT_DELETE_EXPIRED_APPROVAL_SQL = "DELETE FROM `oauth_approvals` WHERE expiresAt <= ?";
+    private static final String DEFAULT_DELETE_APPROVAL_SQL = "DELETE FROM `oauth_approvals` WHERE userId=? AND clientId=? AND scope=?";
+    private static final String DEFAULT_DELETE_USER_CLIENT_APPROVAL_SQL = "DELETE FROM `oauth_approvals` WHERE userId=? AND clientId=?";
+
+    // upsert, dialect specific: a single statement with one row per scope
+    private static final String MYSQL_UPSERT_APPROVAL_SQL = "INSERT INTO `oauth_approvals` (expiresAt,status,lastModifiedAt,userId,clientId,scope) VALUES %s ON DUPLICATE KEY UPDATE expiresAt=VALUES(expiresAt),status=VALUES(status),lastModifiedAt=VALUES(lastModifiedAt)";
+    private static final String H2_UPSERT_APPROVAL_SQL = "MERGE INTO `oauth_approvals` (expiresAt,status,lastModifiedAt,userId,clientId,scope) KEY (userId,clientId,scope) VALUES %s";
+    private static final String UPSERT_VALUES = "(?,?,?,?,?,?)";
+
+    // generic fallback, batched update then insert missing
+    private static final String DEFAULT_UPDATE_APPROVAL_SQL = "UPDATE `oauth_approvals` SET expiresAt=?,status=?,lastModifiedAt=? WHERE userId=? AND clientId=? AND scope=?";
+    private static final String DEFAULT_INSERT_APPROVAL_SQL = "INSERT INTO `oauth_approvals` (expiresAt,status,lastModifiedAt,userId,clientId,scope) VALUES (?,?,?,?,?,?)";
 
     private String createTableStatement = DEFAULT_CREATE_TABLE_STATEMENT;
     private String findSingleApprovalStatement = DEFAULT_FIND_SINGLE_APPROVAL_SQL;
@@ -41,6 +77,14 @@ public class AutoJdbcApprovalStore extends JdbcApprovalStore implements Searchab
     private String findClientApprovalStatement = DEFAULT_GET_CLIENT_APPROVAL_SQL;
     private String findScopeApprovalStatement = DEFAULT_GET_SCOPE_APPROVAL_SQL;
     private String findUserScopeApprovalStatement = DEFAULT_GET_USER_SCOPE_APPROVAL_SQL;
+    private String deleteExpiredApprovalStatement = DEFAULT_DELETE_EXPIRED_APPROVAL_SQL;
+    private String deleteApprovalStatement = DEFAULT_DELETE_APPROVAL_SQL;
+    private String deleteUserClientApprovalStatement = DEFAULT_DELETE_USER_CLIENT_APPROVAL_SQL;
+    private String updateApprovalStatement = DEFAULT_UPDATE_APPROVAL_SQL;
+    private String insertApprovalStatement = DEFAULT_INSERT_APPROVAL_SQL;
+
+    // single statement upsert, only when table is keyed
+    private String upsertApprovalStatement;
 
     public AutoJdbcApprovalStore(DataSource dataSource) {
         super(dataSource);
@@ -51,8 +95,141 @@ public class AutoJdbcApprovalStore extends JdbcApprovalStore implements Searchab
     protected void initSchema(DataSource dataSource) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
         jdbcTemplate.execute(createTableStatement);
+
+        // add key and indexes where missing
+        Map<String, Set<String>> indexes = JdbcSchemaUtils.readIndexes(dataSource, TABLE_NAME);
+        if (!hasKey(indexes)) {
+            createIndex(DEFAULT_CREATE_KEY_STATEMENT);
+            indexes = JdbcSchemaUtils.readIndexes(dataSource, TABLE_NAME);
+        }
+        if (!indexes.containsKey("oauth_approvals_client")) {
+            createIndex(DEFAULT_CREATE_CLIENT_INDEX_STATEMENT);
+        }
+        if (!indexes.containsKey("oauth_approvals_scope")) {
+            createIndex(DEFAULT_CREATE_SCOPE_INDEX_STATEMENT);
+        }
+        if (!indexes.containsKey("oauth_approvals_expires")) {
+            createIndex(DEFAULT_CREATE_EXPIRES_INDEX_STATEMENT);
+        }
+
+        // use native upsert only when rows are unique by key
+        if (hasKey(indexes)) {
+            String product = JdbcSchemaUtils.readProductName(dataSource);
+            if ("MySQL".equals(product) || "MariaDB".equals(product)) {
+                upsertApprovalStatement = MYSQL_UPSERT_APPROVAL_SQL;
+            } else if ("H2".equals(product)) {
+                upsertApprovalStatement = H2_UPSERT_APPROVAL_SQL;
+            }
+        } else {
+            logger.warn("missing unique key on " + TABLE_NAME + ", duplicated rows should be removed");
+        }
+    }
+
+    private void createIndex(String statement) {
+        try {
+            jdbcTemplate.execute(statement);
+        } catch (DataAccessException e) {
+            logger.warn("error creating index on " + TABLE_NAME + ": " + e.getMessage());
+        }
     }
 
+    private boolean hasKey(Map<String, Set<String>> indexes) {
+        Set<String> key = new HashSet<>();
+        key.add("userid");
+        key.add("clientid");
+        key.add("scope");
+
+        return indexes.entrySet().stream()
+                .anyMatch(e -> e.getKey().startsWith(JdbcSchemaUtils.UNIQUE_PREFIX) && e.getValue().equals(key));
+    }
+
+    /*
+     * Bulk write
+     */
+
+    @Override
+    public boolean addApprovals(final Collection<Approval> approvals) {
+        if (approvals == null || approvals.isEmpty()) {
+            return true;
+        }
+
+        // dedup by key, last wins
+        Map<String, Approval> rows = new LinkedHashMap<>();
+        for (Approval approval : approvals) {
+            rows.put(approval.getUserId() + "|" + approval.getClientId() + "|" + approval.getScope(), approval);
+        }
+        List<Object[]> values = new ArrayList<>();
+        for (Approval approval : rows.values()) {
+            values.add(toRow(approval));
+        }
+
+        if (upsertApprovalStatement != null) {
+            // single statement for all scopes
+            String placeholders = StringUtils.collectionToDelimitedString(
+                    Collections.nCopies(values.size(), UPSERT_VALUES), ",");
+            Object[] args = values.stream().flatMap(Arrays::stream).toArray();
+            jdbcTemplate.update(String.format(upsertApprovalStatement, placeholders), args);
+            return true;
+        }
+
+        // batch update, then batch insert what was missing
+        int[] counts = jdbcTemplate.batchUpdate(updateApprovalStatement, values);
+        List<Object[]> missing = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                missing.add(values.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            jdbcTemplate.batchUpdate(insertApprovalStatement, missing);
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean revokeApprovals(Collection<Approval> approvals) {
+        if (approvals == null || approvals.isEmpty()) {
+            return true;
+        }
+
+        List<Object[]> keys = new ArrayList<>();
+        for (Approval approval : approvals) {
+            keys.add(new Object[] { approval.getUserId(), approval.getClientId(), approval.getScope() });
+        }
+
+        int[] counts = jdbcTemplate.batchUpdate(deleteApprovalStatement, keys);
+        for (int count : counts) {
+            if (count == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean revokeApprovals(String userId, String clientId) {
+        return jdbcTemplate.update(deleteUserClientApprovalStatement, userId, clientId) > 0;
+    }
+
+    private Object[] toRow(Approval approval) {
+        ApprovalStatus status = approval.getStatus() != null ? approval.getStatus() : ApprovalStatus.APPROVED;
+        Date lastUpdatedAt = approval.getLastUpdatedAt() != null ? approval.getLastUpdatedAt() : new Date();
+        return new Object[] {
+                new Timestamp(approval.getExpiresAt().getTime()),
+                status.toString(),
+                new Timestamp(lastUpdatedAt.getTime()),
+                approval.getUserId(),
+                approval.getClientId(),
+                approval.getScope()
+        };
+    }
+
+    /*
+     * Search
+     */
+
     @Override
     public Collection<Approval> findUserApprovals(String userName) {
         return jdbcTemplate.query(findUserApprovalStatement, rowMapper, userName);
@@ -76,12 +253,17 @@ public class AutoJdbcApprovalStore extends JdbcApprovalStore implements Searchab
             return null;
         }
     }
-    
+
     @Override
     public Collection<Approval> findUserScopeApprovals(String userName, String scope) {
         return jdbcTemplate.query(findUserScopeApprovalStatement, rowMapper, userName, scope);
     }
 
+    @Override
+    public boolean purgeExpiredApprovals() {
+        int count = jdbcTemplate.update(deleteExpiredApprovalStatement, new Timestamp(System.currentTimeMillis()));
+        return count > 0;
+    }
 
     private static class AuthorizationRowMapper implements RowMapper<Approval> {
 
@@ -1,210 +1,321 @@
-/**
- *    Copyright 2015-2019 Smart Community Lab, FBK
- *
- *    Licensed under the Apache License, Version 2.0 (the "License");
- *    you may not use this file except in compliance with the License.
- *    You may obtain a copy of the License at
- *
- *        http://www.apache.org/licenses/LICENSE-2.0
- *
- *    Unless required by applicable law or agreed to in writing, software
- *    distributed under the License is distributed on an "AS IS" BASIS,
- *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *    See the License for the specific language governing permissions and
- *    limitations under the License.
- */
-
-package it.smartcommunitylab.aac.oauth.store.jdbc;
-
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Types;
-
-import javax.sql.DataSource;
-
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.data.util.Pair;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.core.support.SqlLobValue;
-import org.springframework.security.crypto.keygen.StringKeyGenerator;
-import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
-import org.springframework.security.oauth2.provider.OAuth2Authentication;
-import org.springframework.security.oauth2.provider.code.AuthorizationCodeServices;
-import org.springframework.security.oauth2.provider.code.JdbcAuthorizationCodeServices;
-import org.springframework.util.Assert;
-
-import it.smartcommunitylab.aac.oauth.common.SecureStringKeyGenerator;
-import it.smartcommunitylab.aac.oauth.provider.PeekableAuthorizationCodeServices;
-
-/**
- * Authorization code services with DB table creation on startup. Also supports
- * lifetime limit as per RFC6749
- * https://tools.ietf.org/html/rfc6749#section-4.1.1
- * 
- * @see {@link JdbcAuthorizationCodeServices}
- * @author raman
- *
- */
-public class AutoJdbcAuthorizationCodeServices
-        implements AuthorizationCodeServices, PeekableAuthorizationCodeServices {
-
-//    private static final StringKeyGenerator TOKEN_GENERATOR = new HumanStringKeyGenerator(6);
-    private static final StringKeyGenerator TOKEN_GENERATOR = new SecureStringKeyGenerator(16);
-
-    private static final int DEFAULT_CODE_VALIDITY_SECONDS = 10 * 60;
-
-    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_code (code VARCHAR(256), client_id VARCHAR(256), expiresAt TIMESTAMP, authentication BLOB);";
-    private static final String DEFAULT_SELECT_STATEMENT = "select code, client_id, expiresAt, authentication from oauth_code where code = ?";
-    private static final String DEFAULT_INSERT_STATEMENT = "insert into oauth_code (code, client_id, expiresAt, authentication) values (?, ?, ?, ?)";
-    private static final String DEFAULT_DELETE_STATEMENT = "delete from oauth_code where code = ?";
-
-    private String createAuthenticationSql = DEFAULT_CREATE_TABLE_STATEMENT;
-    private String selectAuthenticationSql = DEFAULT_SELECT_STATEMENT;
-    private String insertAuthenticationSql = DEFAULT_INSERT_STATEMENT;
-    private String deleteAuthenticationSql = DEFAULT_DELETE_STATEMENT;
-
-    private JdbcTemplate jdbcTemplate;
-    private StringKeyGenerator tokenGenerator;
-    private int codeValidityMillis = DEFAULT_CODE_VALIDITY_SECONDS * 1000;
-
-    /**
-     * @param dataSource
-     */
-    public AutoJdbcAuthorizationCodeServices(DataSource dataSource) {
-        Assert.notNull(dataSource, "DataSource required");
-        this.jdbcTemplate = new JdbcTemplate(dataSource);
-        initSchema();
-    }
-
-    /**
-     * @param dataSource
-     * @param code       validity
-     */
-    public AutoJdbcAuthorizationCodeServices(DataSource dataSource, int codeValidity) {
-        this(dataSource);
-        this.codeValidityMillis = codeValidity * 1000;
-        this.tokenGenerator = TOKEN_GENERATOR;
-    }
-
-    public String createAuthorizationCode(OAuth2Authentication authentication) {
-        // build a secure random code and store
-        String code = tokenGenerator.generateKey();
-        store(code, authentication);
-
-        return code;
-    }
-
-    public OAuth2Authentication consumeAuthorizationCode(String code)
-            throws InvalidGrantException {
-        OAuth2Authentication auth = remove(code);
-        if (auth == null) {
-            throw new InvalidGrantException("Invalid authorization code: " + code);
-        }
-
-        return auth;
-    }
-
-    public OAuth2Authentication peekAuthorizationCode(String code)
-            throws InvalidGrantException {
-        OAuth2Authentication auth = this.load(code);
-        // we can return null if missing
-        return auth;
-    }
-
-    protected void store(String code, OAuth2Authentication authentication) {
-        // extract clientId
-        String clientId = authentication.getOAuth2Request().getClientId();
-
-        jdbcTemplate.update(insertAuthenticationSql,
-                new Object[] {
-                        code, clientId,
-                        new java.sql.Timestamp(System.currentTimeMillis() + codeValidityMillis),
-                        new SqlLobValue(SerializationUtils.serialize(authentication))
-                }, new int[] { Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.BLOB });
-    }
-
-    public OAuth2Authentication load(String code) {
-        Pair<OAuth2Authentication, Long> authentication;
-        try {
-            authentication = jdbcTemplate.queryForObject(selectAuthenticationSql,
-                    new RowMapper<Pair<OAuth2Authentication, Long>>() {
-                        public Pair<OAuth2Authentication, Long> mapRow(ResultSet rs, int rowNum) throws SQLException {
-                            OAuth2Authentication a = SerializationUtils.deserialize(rs.getBytes("authentication"));
-                            Long e = rs.getTimestamp("expiresAt").getTime();
-                            return Pair.of(a, e);
-                        }
-                    }, code);
-        } catch (EmptyResultDataAccessException e) {
-            return null;
-        }
-
-        if (authentication != null) {
-            long expiresAt = authentication.getSecond().longValue();
-            OAuth2Authentication oauth = authentication.getFirst();
-
-            // validate expire
-            if (System.currentTimeMillis() < expiresAt) {
-                return oauth;
-            }
-        }
-
-        return null;
-    }
-
-    public OAuth2Authentication remove(String code) {
-        Pair<OAuth2Authentication, Long> authentication;
-        try {
-            authentication = jdbcTemplate.queryForObject(selectAuthenticationSql,
-                    new RowMapper<Pair<OAuth2Authentication, Long>>() {
-                        public Pair<OAuth2Authentication, Long> mapRow(ResultSet rs, int rowNum) throws SQLException {
-                            OAuth2Authentication a = SerializationUtils.deserialize(rs.getBytes("authentication"));
-                            Long e = rs.getTimestamp("expiresAt").getTime();
-                            return Pair.of(a, e);
-                        }
-                    }, code);
-        } catch (EmptyResultDataAccessException e) {
-            return null;
-        }
-
-        if (authentication != null) {
-            // remove
-            jdbcTemplate.update(deleteAuthenticationSql, code);
-
-            long expiresAt = authentication.getSecond().longValue();
-            OAuth2Authentication oauth = authentication.getFirst();
-
-            // validate expire
-            if (System.currentTimeMillis() < expiresAt) {
-                return oauth;
-            }
-        }
-
-        return null;
-    }
-
-    public void setCreateAuthenticationSql(String createAuthenticationSql) {
-        this.createAuthenticationSql = createAuthenticationSql;
-    }
-
-    public void setSelectAuthenticationSql(String selectAuthenticationSql) {
-        this.selectAuthenticationSql = selectAuthenticationSql;
-    }
-
-    public void setInsertAuthenticationSql(String insertAuthenticationSql) {
-        this.insertAuthenticationSql = insertAuthenticationSql;
-    }
-
-    public void setDeleteAuthenticationSql(String deleteAuthenticationSql) {
-        this.deleteAuthenticationSql = deleteAuthenticationSql;
-    }
-
-    public void setTokenGenerator(StringKeyGenerator tokenGenerator) {
-        this.tokenGenerator = tokenGenerator;
-    }
-
-    protected void initSchema() {
-        jdbcTemplate.execute(createAuthenticationSql);
-    }
-}
+/**
+ *    Copyright 2015-2019 Smart Community Lab, FBK
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.smartcommunitylab.aac.oauth.store.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.util.Pair;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.keygen.StringKeyGenerator;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.JdbcAuthorizationCodeServices;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+import it.smartcommunitylab.aac.oauth.common.SecureStringKeyGenerator;
+import it.smartcommunitylab.aac.oauth.provider.PeekableAuthorizationCodeServices;
+import it.smartcommunitylab.aac.utils.JdbcSchemaUtils;
+
+/**
+ * Authorization code services with DB table creation on startup. Also supports
+ * lifetime limit as per RFC6749
+ * https://tools.ietf.org/html/rfc6749#section-4.1.1
+ * 
+ * Codes are keyed, consumed with a conditional delete so that only one caller
+ * across nodes can redeem them, and stored as compressed serialized
+ * authentications. Compression only reduces size, the stored form is still
+ * java serialization and bound to class compatibility across versions. Expired
+ * codes are purged in background.
+ * 
+ * @see {@link JdbcAuthorizationCodeServices}
+ * @author raman
+ *
+ */
+public class AutoJdbcAuthorizationCodeServices
+        implements PeekableAuthorizationCodeServices, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+//    private static final StringKeyGenerator TOKEN_GENERATOR = new HumanStringKeyGenerator(6);
+    private static final StringKeyGenerator TOKEN_GENERATOR = new SecureStringKeyGenerator(20);
+
+    private static final int DEFAULT_CODE_VALIDITY_SECONDS = 10 * 60;
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_code (code VARCHAR(256) NOT NULL PRIMARY KEY, client_id VARCHAR(256), expiresAt TIMESTAMP, authentication BLOB);";
+    // legacy tables have no key
+    private static final String DEFAULT_CREATE_KEY_STATEMENT = "CREATE UNIQUE INDEX oauth_code_key ON oauth_code (code)";
+    private static final String DEFAULT_CREATE_EXPIRES_INDEX_STATEMENT = "CREATE INDEX oauth_code_expires ON oauth_code (expiresAt)";
+    private static final String DEFAULT_SELECT_STATEMENT = "select code, client_id, expiresAt, authentication from oauth_code where code = ?";
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into oauth_code (code, client_id, expiresAt, authentication) values (?, ?, ?, ?)";
+    private static final String DEFAULT_DELETE_STATEMENT = "delete from oauth_code where code = ?";
+    private static final String DEFAULT_DELETE_EXPIRED_STATEMENT = "delete from oauth_code where expiresAt <= ?";
+
+    private String createAuthenticationSql = DEFAULT_CREATE_TABLE_STATEMENT;
+    private String selectAuthenticationSql = DEFAULT_SELECT_STATEMENT;
+    private String insertAuthenticationSql = DEFAULT_INSERT_STATEMENT;
+    private String deleteAuthenticationSql = DEFAULT_DELETE_STATEMENT;
+    private String deleteExpiredAuthenticationSql = DEFAULT_DELETE_EXPIRED_STATEMENT;
+
+    private JdbcTemplate jdbcTemplate;
+    private StringKeyGenerator tokenGenerator;
+    private int codeValidityMillis = DEFAULT_CODE_VALIDITY_SECONDS * 1000;
+
+    private final RowMapper<Pair<OAuth2Authentication, Long>> rowMapper = new RowMapper<Pair<OAuth2Authentication, Long>>() {
+        public Pair<OAuth2Authentication, Long> mapRow(ResultSet rs, int rowNum) throws SQLException {
+            OAuth2Authentication a = decode(rs.getBytes("authentication"));
+            Long e = rs.getTimestamp("expiresAt").getTime();
+            return Pair.of(a, e);
+        }
+    };
+
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * @param dataSource
+     */
+    public AutoJdbcAuthorizationCodeServices(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        initSchema();
+    }
+
+    /**
+     * @param dataSource
+     * @param code       validity
+     */
+    public AutoJdbcAuthorizationCodeServices(DataSource dataSource, int codeValidity) {
+        this(dataSource);
+        this.codeValidityMillis = codeValidity * 1000;
+        this.tokenGenerator = TOKEN_GENERATOR;
+    }
+
+    public String createAuthorizationCode(OAuth2Authentication authentication) {
+        // build a secure random code and store
+        String code = tokenGenerator.generateKey();
+        store(code, authentication);
+
+        return code;
+    }
+
+    public OAuth2Authentication consumeAuthorizationCode(String code)
+            throws InvalidGrantException {
+        OAuth2Authentication auth = remove(code);
+        if (auth == null) {
+            throw new InvalidGrantException("Invalid authorization code: " + code);
+        }
+
+        return auth;
+    }
+
+    public OAuth2Authentication peekAuthorizationCode(String code)
+            throws InvalidGrantException {
+        OAuth2Authentication auth = this.load(code);
+        // we can return null if missing
+        return auth;
+    }
+
+    protected void store(String code, OAuth2Authentication authentication) {
+        // extract clientId
+        String clientId = authentication.getOAuth2Request().getClientId();
+
+        jdbcTemplate.update(insertAuthenticationSql,
+                new Object[] {
+                        code, clientId,
+                        new java.sql.Timestamp(System.currentTimeMillis() + codeValidityMillis),
+                        new SqlLobValue(encode(authentication))
+                }, new int[] { Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.BLOB });
+    }
+
+    public OAuth2Authentication load(String code) {
+        Pair<OAuth2Authentication, Long> authentication;
+        try {
+            authentication = jdbcTemplate.queryForObject(selectAuthenticationSql, rowMapper, code);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+
+        if (authentication != null) {
+            long expiresAt = authentication.getSecond().longValue();
+            OAuth2Authentication oauth = authentication.getFirst();
+
+            // validate expire
+            if (System.currentTimeMillis() < expiresAt) {
+                return oauth;
+            }
+        }
+
+        return null;
+    }
+
+    public OAuth2Authentication remove(String code) {
+        Pair<OAuth2Authentication, Long> authentication;
+        try {
+            authentication = jdbcTemplate.queryForObject(selectAuthenticationSql, rowMapper, code);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+
+        if (authentication != null) {
+            // remove, only the caller which deletes the row owns the code
+            int count = jdbcTemplate.update(deleteAuthenticationSql, code);
+            if (count != 1) {
+                return null;
+            }
+
+            long expiresAt = authentication.getSecond().longValue();
+            OAuth2Authentication oauth = authentication.getFirst();
+
+            // validate expire
+            if (System.currentTimeMillis() < expiresAt) {
+                return oauth;
+            }
+        }
+
+        return null;
+    }
+
+    public int purgeExpiredCodes() {
+        return jdbcTemplate.update(deleteExpiredAuthenticationSql, new Timestamp(System.currentTimeMillis()));
+    }
+
+    /*
+     * Expired codes sweep, interval in seconds, 0 disables
+     */
+    public void setPurgeInterval(int purgeInterval) {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+
+        if (purgeInterval > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("authcode-sweep-");
+            threadFactory.setDaemon(true);
+            sweeper = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            sweeper.scheduleWithFixedDelay(() -> {
+                try {
+                    int count = purgeExpiredCodes();
+                    logger.trace("purged " + count + " expired codes");
+                } catch (RuntimeException e) {
+                    // keep schedule alive
+                    logger.error("error purging expired codes: " + e.getMessage());
+                }
+            }, purgeInterval, purgeInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /*
+     * Encoding: serialized authentication, deflated
+     */
+    private byte[] encode(OAuth2Authentication authentication) {
+        byte[] bytes = SerializationUtils.serialize(authentication);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length / 2);
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(bos, new Deflater(Deflater.BEST_SPEED))) {
+            dos.write(bytes);
+        } catch (IOException e) {
+            // can not happen on memory streams
+            throw new IllegalStateException(e);
+        }
+
+        return bos.toByteArray();
+    }
+
+    private OAuth2Authentication decode(byte[] bytes) {
+        // plain java serialization header, stored before compression
+        if (bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED) {
+            return SerializationUtils.deserialize(bytes);
+        }
+
+        try (InputStream is = new InflaterInputStream(new ByteArrayInputStream(bytes))) {
+            return SerializationUtils.deserialize(StreamUtils.copyToByteArray(is));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid authentication");
+        }
+    }
+
+    public void setCreateAuthenticationSql(String createAuthenticationSql) {
+        this.createAuthenticationSql = createAuthenticationSql;
+    }
+
+    public void setSelectAuthenticationSql(String selectAuthenticationSql) {
+        this.selectAuthenticationSql = selectAuthenticationSql;
+    }
+
+    public void setInsertAuthenticationSql(String insertAuthenticationSql) {
+        this.insertAuthenticationSql = insertAuthenticationSql;
+    }
+
+    public void setDeleteAuthenticationSql(String deleteAuthenticationSql) {
+        this.deleteAuthenticationSql = deleteAuthenticationSql;
+    }
+
+    public void setTokenGenerator(StringKeyGenerator tokenGenerator) {
+        this.tokenGenerator = tokenGenerator;
+    }
+
+    protected void initSchema() {
+        jdbcTemplate.execute(createAuthenticationSql);
+
+        // add key and indexes to legacy tables
+        Set<String> columns = JdbcSchemaUtils.readIndexedColumns(jdbcTemplate.getDataSource(), "oauth_code");
+        if (!columns.contains("code")) {
+            createIndex(DEFAULT_CREATE_KEY_STATEMENT);
+        }
+        if (!columns.contains("expiresat")) {
+            createIndex(DEFAULT_CREATE_EXPIRES_INDEX_STATEMENT);
+        }
+    }
+
+    private void createIndex(String statement) {
+        try {
+            jdbcTemplate.execute(statement);
+        } catch (DataAccessException e) {
+            logger.warn("error creating index on oauth_code: " + e.getMessage());
+        }
+    }
+}
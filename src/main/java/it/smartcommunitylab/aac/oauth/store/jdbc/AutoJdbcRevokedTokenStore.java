@@ -0,0 +1,151 @@
+package it.smartcommunitylab.aac.oauth.store.jdbc;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import it.smartcommunitylab.aac.utils.JdbcSchemaUtils;
+
+/*
+ * Revocation records for tokens which are not persisted, with DB table creation
+ * on startup
+ *
+ * Each record holds only the token id and its expiration, so that records can
+ * be dropped as soon as the token would be expired anyway. Bulk revocations for
+ * a subject or a client are kept as a cutoff: every token issued up to that
+ * time is revoked, until tokens issued before it would be expired.
+ */
+public class AutoJdbcRevokedTokenStore {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_revoked_token ("
+            + "jti VARCHAR(256) NOT NULL PRIMARY KEY, expires_at TIMESTAMP NOT NULL, revoked_at TIMESTAMP NOT NULL);";
+    private static final String DEFAULT_CREATE_REVOKED_INDEX_STATEMENT = "CREATE INDEX oauth_revoked_token_revoked ON oauth_revoked_token (revoked_at)";
+
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into oauth_revoked_token (jti, expires_at, revoked_at) values (?, ?, ?)";
+    private static final String DEFAULT_COUNT_STATEMENT = "select count(*) from oauth_revoked_token where jti = ?";
+    private static final String DEFAULT_SELECT_VALID_STATEMENT = "select jti, expires_at from oauth_revoked_token where expires_at > ?";
+    private static final String DEFAULT_SELECT_RECENT_STATEMENT = "select jti, expires_at from oauth_revoked_token where revoked_at >= ? and expires_at > ?";
+    private static final String DEFAULT_DELETE_EXPIRED_STATEMENT = "delete from oauth_revoked_token where expires_at <= ?";
+
+    private static final String DEFAULT_CREATE_CUTOFF_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_revoked_principal ("
+            + "principal VARCHAR(256) NOT NULL PRIMARY KEY, revoked_at TIMESTAMP NOT NULL, expires_at TIMESTAMP NOT NULL);";
+    private static final String DEFAULT_INSERT_CUTOFF_STATEMENT = "insert into oauth_revoked_principal (principal, revoked_at, expires_at) values (?, ?, ?)";
+    private static final String DEFAULT_UPDATE_CUTOFF_STATEMENT = "update oauth_revoked_principal set revoked_at = ?, expires_at = ? where principal = ?";
+    private static final String DEFAULT_SELECT_VALID_CUTOFF_STATEMENT = "select principal, revoked_at from oauth_revoked_principal where expires_at > ?";
+    private static final String DEFAULT_DELETE_EXPIRED_CUTOFF_STATEMENT = "delete from oauth_revoked_principal where expires_at <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AutoJdbcRevokedTokenStore(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        initSchema(dataSource);
+    }
+
+    protected void initSchema(DataSource dataSource) {
+        jdbcTemplate.execute(DEFAULT_CREATE_TABLE_STATEMENT);
+        jdbcTemplate.execute(DEFAULT_CREATE_CUTOFF_TABLE_STATEMENT);
+
+        // incremental sync reads by revocation time
+        Set<String> indexes = JdbcSchemaUtils.readIndexNames(dataSource, "oauth_revoked_token");
+        if (!indexes.contains("oauth_revoked_token_revoked")) {
+            try {
+                jdbcTemplate.execute(DEFAULT_CREATE_REVOKED_INDEX_STATEMENT);
+            } catch (DataAccessException e) {
+                logger.warn("error creating revoked tokens index: " + e.getMessage());
+            }
+        }
+    }
+
+    public void add(String jti, Date expiresAt) {
+        Assert.hasText(jti, "jti can not be null or empty");
+        Assert.notNull(expiresAt, "expiration is required");
+
+        try {
+            jdbcTemplate.update(DEFAULT_INSERT_STATEMENT, jti, new Timestamp(expiresAt.getTime()),
+                    new Timestamp(System.currentTimeMillis()));
+        } catch (DuplicateKeyException e) {
+            // already revoked
+        }
+    }
+
+    public boolean isRevoked(String jti) {
+        Integer count = jdbcTemplate.queryForObject(DEFAULT_COUNT_STATEMENT, Integer.class, jti);
+        return count != null && count > 0;
+    }
+
+    /*
+     * Revocations for tokens not yet expired, as jti to expiration in millis
+     */
+    public Map<String, Long> findValid() {
+        Map<String, Long> result = new HashMap<>();
+        jdbcTemplate.query(DEFAULT_SELECT_VALID_STATEMENT,
+                rs -> {
+                    result.put(rs.getString("jti"), rs.getTimestamp("expires_at").getTime());
+                },
+                new Timestamp(System.currentTimeMillis()));
+        return result;
+    }
+
+    public Map<String, Long> findRevokedSince(Date since) {
+        Map<String, Long> result = new HashMap<>();
+        jdbcTemplate.query(DEFAULT_SELECT_RECENT_STATEMENT,
+                rs -> {
+                    result.put(rs.getString("jti"), rs.getTimestamp("expires_at").getTime());
+                },
+                new Timestamp(since.getTime()), new Timestamp(System.currentTimeMillis()));
+        return result;
+    }
+
+    public int removeExpired() {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        return jdbcTemplate.update(DEFAULT_DELETE_EXPIRED_STATEMENT, now)
+                + jdbcTemplate.update(DEFAULT_DELETE_EXPIRED_CUTOFF_STATEMENT, now);
+    }
+
+    /*
+     * Cutoffs, a later revocation moves the cutoff forward
+     */
+    public void addCutoff(String principal, Date revokedAt, Date expiresAt) {
+        Assert.hasText(principal, "principal can not be null or empty");
+        Assert.notNull(revokedAt, "revocation time is required");
+        Assert.notNull(expiresAt, "expiration is required");
+
+        Timestamp r = new Timestamp(revokedAt.getTime());
+        Timestamp e = new Timestamp(expiresAt.getTime());
+        int count = jdbcTemplate.update(DEFAULT_UPDATE_CUTOFF_STATEMENT, r, e, principal);
+        if (count == 0) {
+            try {
+                jdbcTemplate.update(DEFAULT_INSERT_CUTOFF_STATEMENT, principal, r, e);
+            } catch (DuplicateKeyException ex) {
+                // concurrent revocation, keep the latest
+                jdbcTemplate.update(DEFAULT_UPDATE_CUTOFF_STATEMENT, r, e, principal);
+            }
+        }
+    }
+
+    /*
+     * Cutoffs still in effect, as principal to revocation time in millis
+     */
+    public Map<String, Long> findCutoffs() {
+        Map<String, Long> result = new HashMap<>();
+        jdbcTemplate.query(DEFAULT_SELECT_VALID_CUTOFF_STATEMENT,
+                rs -> {
+                    result.put(rs.getString("principal"), rs.getTimestamp("revoked_at").getTime());
+                },
+                new Timestamp(System.currentTimeMillis()));
+        return result;
+    }
+}
@@ -16,23 +16,34 @@
 
 package it.smartcommunitylab.aac.oauth.store.jdbc;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.SqlLobValue;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
 import org.springframework.security.oauth2.provider.token.store.JdbcTokenStore;
 
+import it.smartcommunitylab.aac.oauth.model.TokenMetadata;
 import it.smartcommunitylab.aac.oauth.store.ExtTokenStore;
 import it.smartcommunitylab.aac.oauth.store.ExtendedAuthenticationKeyGenerator;
+import it.smartcommunitylab.aac.oauth.store.RevokedTokenDenylist;
+import it.smartcommunitylab.aac.utils.JdbcSchemaUtils;
 
 /**
  * Token store with DB tables creation on startup.
@@ -49,12 +60,56 @@ public class AutoJdbcTokenStore extends JdbcTokenStore implements ExtTokenStore
     private static final String DEFAULT_CREATE_RT_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_refresh_token ( token_id VARCHAR(64) NOT NULL PRIMARY KEY, token BLOB NOT NULL, authentication BLOB NOT NULL);";
     private static final String DEFAULT_CREATE_AT_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_access_token (token_id VARCHAR(256),  token BLOB, authentication_id VARCHAR(256), user_name VARCHAR(256), client_id VARCHAR(256), authentication BLOB, refresh_token VARCHAR(256));";
 
+    private static final String DEFAULT_CREATE_AT_AUTHENTICATION_INDEX_STATEMENT = "CREATE INDEX oauth_access_token_authentication ON oauth_access_token (authentication_id)";
+    private static final String DEFAULT_CREATE_AT_ID_INDEX_STATEMENT = "CREATE INDEX oauth_access_token_id ON oauth_access_token (token_id)";
+    private static final String DEFAULT_CREATE_AT_CLIENT_INDEX_STATEMENT = "CREATE INDEX oauth_access_token_client ON oauth_access_token (client_id, token_id)";
+    private static final String DEFAULT_CREATE_AT_USER_INDEX_STATEMENT = "CREATE INDEX oauth_access_token_user ON oauth_access_token (user_name, token_id)";
+    private static final String DEFAULT_CREATE_AT_REFRESH_INDEX_STATEMENT = "CREATE INDEX oauth_access_token_refresh ON oauth_access_token (refresh_token)";
+    private static final String DEFAULT_CREATE_RT_CLIENT_INDEX_STATEMENT = "CREATE INDEX oauth_refresh_token_client ON oauth_refresh_token (client_id)";
+    private static final String DEFAULT_CREATE_RT_USER_INDEX_STATEMENT = "CREATE INDEX oauth_refresh_token_user ON oauth_refresh_token (user_name)";
+
+    // metadata columns, added to existing tables
+    private static final String DEFAULT_ALTER_AT_EXPIRES_STATEMENT = "ALTER TABLE oauth_access_token ADD COLUMN expires_at TIMESTAMP NULL";
+    private static final String DEFAULT_ALTER_RT_CLIENT_STATEMENT = "ALTER TABLE oauth_refresh_token ADD COLUMN client_id VARCHAR(256)";
+    private static final String DEFAULT_ALTER_RT_USER_STATEMENT = "ALTER TABLE oauth_refresh_token ADD COLUMN user_name VARCHAR(256)";
+
+    private static final String DEFAULT_INSERT_ACCESS_TOKEN_STATEMENT = "insert into oauth_access_token (token_id, token, authentication_id, user_name, client_id, authentication, refresh_token, expires_at) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String DEFAULT_INSERT_REFRESH_TOKEN_STATEMENT = "insert into oauth_refresh_token (token_id, token, authentication, client_id, user_name) values (?, ?, ?, ?, ?)";
+    private static final String DEFAULT_DELETE_ACCESS_TOKEN_STATEMENT = "delete from oauth_access_token where token_id = ?";
+
+    private static final String DEFAULT_LIST_CLIENT_TOKENS_STATEMENT = "select token_id, client_id, user_name, expires_at, refresh_token from oauth_access_token where client_id = ? and token_id > ? order by token_id";
+    private static final String DEFAULT_LIST_USER_TOKENS_STATEMENT = "select token_id, client_id, user_name, expires_at, refresh_token from oauth_access_token where user_name = ? and token_id > ? order by token_id";
+
+    // refresh tokens stored before metadata columns are matched via access tokens
+    private static final String DEFAULT_REVOKE_CLIENT_LINKED_REFRESH_STATEMENT = "delete from oauth_refresh_token where token_id in (select refresh_token from oauth_access_token where client_id = ?)";
+    private static final String DEFAULT_REVOKE_CLIENT_REFRESH_STATEMENT = "delete from oauth_refresh_token where client_id = ?";
+    private static final String DEFAULT_REVOKE_CLIENT_ACCESS_STATEMENT = "delete from oauth_access_token where client_id = ?";
+    private static final String DEFAULT_REVOKE_USER_LINKED_REFRESH_STATEMENT = "delete from oauth_refresh_token where token_id in (select refresh_token from oauth_access_token where user_name = ?)";
+    private static final String DEFAULT_REVOKE_USER_REFRESH_STATEMENT = "delete from oauth_refresh_token where user_name = ?";
+    private static final String DEFAULT_REVOKE_USER_ACCESS_STATEMENT = "delete from oauth_access_token where user_name = ?";
+
     private static final String DEFAULT_SELECT_ACCESS_TOKEN_FROM_REFRESH_TOKEN = "select token_id, token from oauth_access_token where refresh_token = ?";
+    private static final String DEFAULT_SELECT_ACCESS_TOKENS_FROM_AUTHENTICATION = "select token_id, token from oauth_access_token where authentication_id = ?";
 
     private String createRefreshTokenStatement = DEFAULT_CREATE_RT_TABLE_STATEMENT;
     private String createAccessTokenStatement = DEFAULT_CREATE_AT_TABLE_STATEMENT;
 
     private String selectAccessTokenFromRefreshTokenSql = DEFAULT_SELECT_ACCESS_TOKEN_FROM_REFRESH_TOKEN;
+    private String selectAccessTokensFromAuthenticationSql = DEFAULT_SELECT_ACCESS_TOKENS_FROM_AUTHENTICATION;
+
+    private AuthenticationKeyGenerator authenticationKeyGenerator;
+
+    // set when metadata columns are available
+    private boolean metadataColumns = false;
+
+    // set when access tokens are stateless
+    private RevokedTokenDenylist revokedTokenDenylist;
+
+    private final RowMapper<TokenMetadata> metadataRowMapper = (rs, rowNum) -> {
+        Timestamp expiresAt = rs.getTimestamp("expires_at");
+        return new TokenMetadata(rs.getString("token_id"), rs.getString("client_id"), rs.getString("user_name"),
+                expiresAt, rs.getString("refresh_token") != null);
+    };
 
     /**
      * @param dataSource
@@ -72,6 +127,73 @@ public class AutoJdbcTokenStore extends JdbcTokenStore implements ExtTokenStore
         this.jdbcTemplate = new JdbcTemplate(dataSource);
         jdbcTemplate.execute(createAccessTokenStatement);
         jdbcTemplate.execute(createRefreshTokenStatement);
+
+        // add metadata columns where missing
+        Set<String> atColumns = JdbcSchemaUtils.readColumns(dataSource, "oauth_access_token");
+        if (!atColumns.contains("expires_at")) {
+            execute(DEFAULT_ALTER_AT_EXPIRES_STATEMENT);
+        }
+        Set<String> rtColumns = JdbcSchemaUtils.readColumns(dataSource, "oauth_refresh_token");
+        if (!rtColumns.contains("client_id")) {
+            execute(DEFAULT_ALTER_RT_CLIENT_STATEMENT);
+        }
+        if (!rtColumns.contains("user_name")) {
+            execute(DEFAULT_ALTER_RT_USER_STATEMENT);
+        }
+
+        atColumns = JdbcSchemaUtils.readColumns(dataSource, "oauth_access_token");
+        rtColumns = JdbcSchemaUtils.readColumns(dataSource, "oauth_refresh_token");
+        metadataColumns = atColumns.contains("expires_at") && rtColumns.contains("client_id")
+                && rtColumns.contains("user_name");
+        if (!metadataColumns) {
+            logger.warn("missing metadata columns on token tables, listing and revocation will be partial");
+        }
+
+        // lookups by value, authentication key (reuse), owner and refresh
+        Set<String> atIndexes = JdbcSchemaUtils.readIndexNames(dataSource, "oauth_access_token");
+        if (!atIndexes.contains("oauth_access_token_id")) {
+            execute(DEFAULT_CREATE_AT_ID_INDEX_STATEMENT);
+        }
+        if (!atIndexes.contains("oauth_access_token_authentication")) {
+            execute(DEFAULT_CREATE_AT_AUTHENTICATION_INDEX_STATEMENT);
+        }
+        if (!atIndexes.contains("oauth_access_token_client")) {
+            execute(DEFAULT_CREATE_AT_CLIENT_INDEX_STATEMENT);
+        }
+        if (!atIndexes.contains("oauth_access_token_user")) {
+            execute(DEFAULT_CREATE_AT_USER_INDEX_STATEMENT);
+        }
+        if (!atIndexes.contains("oauth_access_token_refresh")) {
+            execute(DEFAULT_CREATE_AT_REFRESH_INDEX_STATEMENT);
+        }
+
+        if (metadataColumns) {
+            Set<String> rtIndexes = JdbcSchemaUtils.readIndexNames(dataSource, "oauth_refresh_token");
+            if (!rtIndexes.contains("oauth_refresh_token_client")) {
+                execute(DEFAULT_CREATE_RT_CLIENT_INDEX_STATEMENT);
+            }
+            if (!rtIndexes.contains("oauth_refresh_token_user")) {
+                execute(DEFAULT_CREATE_RT_USER_INDEX_STATEMENT);
+            }
+        }
+    }
+
+    private void execute(String statement) {
+        try {
+            jdbcTemplate.execute(statement);
+        } catch (DataAccessException e) {
+            logger.warn("error updating token schema: " + e.getMessage());
+        }
+    }
+
+    public void setRevokedTokenDenylist(RevokedTokenDenylist revokedTokenDenylist) {
+        this.revokedTokenDenylist = revokedTokenDenylist;
+    }
+
+    @Override
+    public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+        super.setAuthenticationKeyGenerator(authenticationKeyGenerator);
+        this.authenticationKeyGenerator = authenticationKeyGenerator;
     }
 
 //    /**
@@ -93,6 +215,137 @@ public class AutoJdbcTokenStore extends JdbcTokenStore implements ExtTokenStore
         return null;
     }
 
+    @Override
+    public OAuth2AccessToken findReusableAccessToken(OAuth2Authentication authentication) {
+        String key = authenticationKeyGenerator.extractKey(authentication);
+
+        // keys are not unique, pick the valid token lasting longer
+        List<OAuth2AccessToken> tokens = jdbcTemplate.query(selectAccessTokensFromAuthenticationSql,
+                (rs, rowNum) -> {
+                    try {
+                        return deserializeAccessToken(rs.getBytes(2));
+                    } catch (IllegalArgumentException e) {
+                        logger.error("Could not extract access token for authentication " + key);
+                        return null;
+                    }
+                }, key);
+
+        OAuth2AccessToken accessToken = null;
+        for (OAuth2AccessToken token : tokens) {
+            if (token == null || token.isExpired() || token.getExpiration() == null) {
+                continue;
+            }
+
+            if (accessToken == null || token.getExpiration().after(accessToken.getExpiration())) {
+                accessToken = token;
+            }
+        }
+
+        return accessToken;
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        if (!metadataColumns) {
+            super.storeAccessToken(token, authentication);
+            return;
+        }
+
+        String refreshToken = null;
+        if (token.getRefreshToken() != null) {
+            refreshToken = token.getRefreshToken().getValue();
+        }
+
+        // replace by key, no need to read back the previous token
+        String tokenId = extractTokenKey(token.getValue());
+        jdbcTemplate.update(DEFAULT_DELETE_ACCESS_TOKEN_STATEMENT, tokenId);
+
+        jdbcTemplate.update(DEFAULT_INSERT_ACCESS_TOKEN_STATEMENT,
+                new Object[] {
+                        tokenId, new SqlLobValue(serializeAccessToken(token)),
+                        authenticationKeyGenerator.extractKey(authentication),
+                        authentication.isClientOnly() ? null : authentication.getName(),
+                        authentication.getOAuth2Request().getClientId(),
+                        new SqlLobValue(serializeAuthentication(authentication)),
+                        extractTokenKey(refreshToken),
+                        token.getExpiration() != null ? new Timestamp(token.getExpiration().getTime()) : null
+                }, new int[] { Types.VARCHAR, Types.BLOB, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB,
+                        Types.VARCHAR, Types.TIMESTAMP });
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        if (!metadataColumns) {
+            super.storeRefreshToken(refreshToken, authentication);
+            return;
+        }
+
+        jdbcTemplate.update(DEFAULT_INSERT_REFRESH_TOKEN_STATEMENT,
+                new Object[] {
+                        extractTokenKey(refreshToken.getValue()),
+                        new SqlLobValue(serializeRefreshToken(refreshToken)),
+                        new SqlLobValue(serializeAuthentication(authentication)),
+                        authentication.getOAuth2Request().getClientId(),
+                        authentication.isClientOnly() ? null : authentication.getName()
+                }, new int[] { Types.VARCHAR, Types.BLOB, Types.BLOB, Types.VARCHAR, Types.VARCHAR });
+    }
+
+    @Override
+    public List<TokenMetadata> listTokensByClientId(String clientId, String after, int size) {
+        return listTokens(DEFAULT_LIST_CLIENT_TOKENS_STATEMENT, clientId, after, size);
+    }
+
+    @Override
+    public List<TokenMetadata> listTokensByUserName(String userName, String after, int size) {
+        return listTokens(DEFAULT_LIST_USER_TOKENS_STATEMENT, userName, after, size);
+    }
+
+    private List<TokenMetadata> listTokens(String sql, String owner, String after, int size) {
+        // keyset pagination over (owner, token_id) index, limit via max rows
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    metadataColumns ? sql : sql.replace("expires_at", "null as expires_at"));
+            ps.setMaxRows(size);
+            ps.setString(1, owner);
+            ps.setString(2, after != null ? after : "");
+            return ps;
+        }, metadataRowMapper);
+    }
+
+    @Override
+    public int revokeTokensByClientId(String clientId) {
+        // stateless tokens are not in store, revoke by issue time
+        if (revokedTokenDenylist != null) {
+            revokedTokenDenylist.revokeClient(clientId);
+        }
+
+        int count = jdbcTemplate.update(DEFAULT_REVOKE_CLIENT_LINKED_REFRESH_STATEMENT, clientId);
+        if (metadataColumns) {
+            count += jdbcTemplate.update(DEFAULT_REVOKE_CLIENT_REFRESH_STATEMENT, clientId);
+        }
+        count += jdbcTemplate.update(DEFAULT_REVOKE_CLIENT_ACCESS_STATEMENT, clientId);
+
+        logger.debug("revoked " + count + " tokens for client " + clientId);
+        return count;
+    }
+
+    @Override
+    public int revokeTokensByUserName(String userName) {
+        // stateless tokens are not in store, revoke by issue time
+        if (revokedTokenDenylist != null) {
+            revokedTokenDenylist.revokeSubject(userName);
+        }
+
+        int count = jdbcTemplate.update(DEFAULT_REVOKE_USER_LINKED_REFRESH_STATEMENT, userName);
+        if (metadataColumns) {
+            count += jdbcTemplate.update(DEFAULT_REVOKE_USER_REFRESH_STATEMENT, userName);
+        }
+        count += jdbcTemplate.update(DEFAULT_REVOKE_USER_ACCESS_STATEMENT, userName);
+
+        logger.debug("revoked " + count + " tokens for user " + userName);
+        return count;
+    }
+
     public OAuth2AccessToken readAccessTokenForRefreshToken(String tokenValue) {
         OAuth2AccessToken accessToken = null;
 
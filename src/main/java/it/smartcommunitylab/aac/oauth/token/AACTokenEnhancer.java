@@ -65,24 +65,37 @@ public class AACTokenEnhancer implements TokenEnhancer, InitializingBean {
 //            token.setRefreshToken(null);
 //        }
 
+        // stages share the issuance context when available
+        TokenIssuanceContext context = TokenIssuanceContextHolder
+                .getContext(authentication.getOAuth2Request().getClientId());
+        long start;
+
         // add claims
         if (claimsEnhancer != null) {
+            start = System.nanoTime();
             token = claimsEnhancer.enhance(token, authentication);
+            record(context, "claims", start);
         }
 
         // convert to JWT
         if (tokenConverter != null) {
+            start = System.nanoTime();
             token = tokenConverter.enhance(token, authentication);
+            record(context, "jwt", start);
         }
 
         // then build id_token to calculate correct at_hash
         if (accessToken.getScope().contains(Config.SCOPE_OPENID) && oidcEnhancer != null) {
+            start = System.nanoTime();
             token = oidcEnhancer.enhance(token, authentication);
+            record(context, "oidc", start);
         }
 
         // modify dcr tokens
         if (dcrTokenEnhancer != null) {
+            start = System.nanoTime();
             token = dcrTokenEnhancer.enhance(token, authentication);
+            record(context, "dcr", start);
         }
 
         // validate result
@@ -112,6 +125,12 @@ public class AACTokenEnhancer implements TokenEnhancer, InitializingBean {
         return token;
     }
 
+    private void record(TokenIssuanceContext context, String stage, long start) {
+        if (context != null) {
+            context.record(stage, start);
+        }
+    }
+
     public void setClaimsEnhancer(ClaimsTokenEnhancer claimsEnhancer) {
         this.claimsEnhancer = claimsEnhancer;
     }
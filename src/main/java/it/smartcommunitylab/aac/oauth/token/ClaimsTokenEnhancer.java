@@ -56,7 +56,9 @@ public class ClaimsTokenEnhancer implements TokenEnhancer {
             AACOAuth2AccessToken token = new AACOAuth2AccessToken(accessToken);
             Map<String, Serializable> claims = null;
 
-            ClientDetails clientDetails = clientDetailsService.loadClient(clientId);
+            // resolve via context when available
+            ClientDetails clientDetails = TokenIssuanceContextHolder.getClientDetails(clientId,
+                    () -> clientDetailsService.loadClient(clientId));
 
             // check if client or user
             if (isClientRequest(request)) {
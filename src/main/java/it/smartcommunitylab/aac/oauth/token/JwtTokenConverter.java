@@ -38,6 +38,7 @@ public class JwtTokenConverter implements TokenEnhancer {
     private final OAuth2ClientDetailsService oauth2ClientDetailsService;
 
     private boolean useJwtByDefault = true;
+    private boolean stateless = false;
 
     public JwtTokenConverter(String issuer, JWTService jwtService,
             OAuth2ClientDetailsService oauth2ClientDetailsService) {
@@ -54,6 +55,10 @@ public class JwtTokenConverter implements TokenEnhancer {
         this.useJwtByDefault = useJwtByDefault;
     }
 
+    public void setStateless(boolean stateless) {
+        this.stateless = stateless;
+    }
+
     @Override
     public AACOAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
         logger.debug("enhance access token " + accessToken.getTokenType() + " for " + authentication.getName()
@@ -65,7 +70,9 @@ public class JwtTokenConverter implements TokenEnhancer {
         try {
             AACOAuth2AccessToken token = new AACOAuth2AccessToken(accessToken);
 
-            OAuth2ClientDetails clientDetails = oauth2ClientDetailsService.loadClientByClientId(clientId);
+            // resolve via context when available
+            OAuth2ClientDetails clientDetails = TokenIssuanceContextHolder.getOAuth2ClientDetails(clientId,
+                    () -> oauth2ClientDetailsService.loadClientByClientId(clientId));
 
             // client requested JWT?
             TokenType tokenType = TokenType.parse(clientDetails.getTokenType());
@@ -134,7 +141,8 @@ public class JwtTokenConverter implements TokenEnhancer {
         Map<String, Serializable> claims = accessToken.getClaims();
         // add all claims, avoiding registered
         claims.entrySet().forEach(e -> {
-            if (!JWTClaimsSet.getRegisteredNames().contains(e.getKey())) {
+            if (!JWTClaimsSet.getRegisteredNames().contains(e.getKey())
+                    && !JwtTokenValidator.STATELESS_CLAIM.equals(e.getKey())) {
                 jwtClaims.claim(e.getKey(), e.getValue());
             }
         });
@@ -145,6 +153,11 @@ public class JwtTokenConverter implements TokenEnhancer {
         jwtClaims.subject(subjectId);
         // realm is provided only if produced by claimService
 
+        // mark tokens which won't be persisted, only those are validated locally
+        if (stateless && JwtTokenValidator.supports(clientDetails)) {
+            jwtClaims.claim(JwtTokenValidator.STATELESS_CLAIM, true);
+        }
+
         // audience: we map clientId + resourceIds if present
         Set<String> audiences = new HashSet<>();
         audiences.add(clientId);
@@ -0,0 +1,196 @@
+package it.smartcommunitylab.aac.oauth.token;
+
+import java.io.Serializable;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import it.smartcommunitylab.aac.jwt.JWTSigningAndValidationService;
+import it.smartcommunitylab.aac.oauth.AACOAuth2AccessToken;
+import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+import it.smartcommunitylab.aac.oauth.model.TokenType;
+import it.smartcommunitylab.aac.oauth.store.RevokedTokenDenylist;
+
+/*
+ * Local validation for JWT access tokens which are not persisted
+ *
+ * Only access tokens marked as stateless at issuance and signed with our own
+ * keys are accepted, the same keys published via JWKS. Every other JWT, such as
+ * persisted access tokens or id tokens, is rejected. Since the store is not
+ * consulted, revocation is checked against the denylist, both for the single
+ * token and for cutoffs on its subject and client.
+ */
+public class JwtTokenValidator {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // marker claim, set only by the converter
+    public static final String STATELESS_CLAIM = "stateless";
+
+    private final String issuer;
+    private final JWTSigningAndValidationService signService;
+    private final RevokedTokenDenylist denylist;
+
+    public JwtTokenValidator(String issuer, JWTSigningAndValidationService signService,
+            RevokedTokenDenylist denylist) {
+        Assert.hasText(issuer, "a valid issuer is required");
+        Assert.notNull(signService, "sign service is mandatory to validate tokens");
+        Assert.notNull(denylist, "denylist is mandatory");
+
+        this.issuer = issuer;
+        this.signService = signService;
+        this.denylist = denylist;
+    }
+
+    /*
+     * Tokens for this client can be validated locally, i.e. signed with our keys
+     */
+    public static boolean supports(OAuth2ClientDetails clientDetails) {
+        return !StringUtils.hasText(clientDetails.getJwtSignAlgorithm())
+                && !StringUtils.hasText(clientDetails.getJwtEncAlgorithm());
+    }
+
+    /*
+     * Read a valid token, or null when the value is not a valid token issued by
+     * us
+     */
+    public AACOAuth2AccessToken readAccessToken(String tokenValue) {
+        JWTClaimsSet claims = validate(tokenValue);
+        if (claims == null) {
+            return null;
+        }
+
+        if (denylist.isRevoked(claims.getJWTID())) {
+            logger.debug("token " + claims.getJWTID() + " is revoked");
+            return null;
+        }
+
+        // bulk revocation for subject or client, checked against issue time
+        if (denylist.isRevoked(claims.getSubject(), extractClientId(claims), claims.getIssueTime())) {
+            logger.debug("token " + claims.getJWTID() + " is revoked via subject or client");
+            return null;
+        }
+
+        return toAccessToken(tokenValue, claims);
+    }
+
+    /*
+     * Revoke a valid token, returns false when the value is not a valid token
+     * issued by us
+     */
+    public boolean revokeToken(String tokenValue) {
+        JWTClaimsSet claims = validate(tokenValue);
+        if (claims == null) {
+            return false;
+        }
+
+        denylist.revoke(claims.getJWTID(), claims.getExpirationTime());
+        return true;
+    }
+
+    private JWTClaimsSet validate(String tokenValue) {
+        if (!StringUtils.hasText(tokenValue) || StringUtils.countOccurrencesOf(tokenValue, ".") != 2) {
+            // not a jws
+            return null;
+        }
+
+        try {
+            SignedJWT jwt = SignedJWT.parse(tokenValue);
+            if (!signService.validateSignature(jwt)) {
+                return null;
+            }
+
+            JWTClaimsSet claims = jwt.getJWTClaimsSet();
+            if (!issuer.equals(claims.getIssuer()) || !StringUtils.hasText(claims.getJWTID())) {
+                return null;
+            }
+
+            // persisted tokens are validated only via store
+            if (!Boolean.TRUE.equals(claims.getClaim(STATELESS_CLAIM))) {
+                return null;
+            }
+
+            // tokens without expiration are always persisted
+            Date now = new Date();
+            if (claims.getExpirationTime() == null || !claims.getExpirationTime().after(now)) {
+                return null;
+            }
+
+            if (claims.getNotBeforeTime() != null && claims.getNotBeforeTime().after(now)) {
+                return null;
+            }
+
+            return claims;
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    // client is azp when set, otherwise the only audience
+    private String extractClientId(JWTClaimsSet claims) {
+        List<String> audience = claims.getAudience();
+        Object clientId = claims.getClaim("azp");
+        if (clientId == null && audience != null && !audience.isEmpty()) {
+            return audience.get(0);
+        }
+
+        return clientId != null ? clientId.toString() : null;
+    }
+
+    private AACOAuth2AccessToken toAccessToken(String tokenValue, JWTClaimsSet claims) {
+        AACOAuth2AccessToken token = new AACOAuth2AccessToken(tokenValue, claims.getJWTID());
+        token.setResponseType(TokenType.JWT.getValue());
+        token.setSubject(claims.getSubject());
+
+        List<String> audience = claims.getAudience();
+        token.setAuthorizedParty(extractClientId(claims));
+        if (audience != null) {
+            token.setAudience(audience.toArray(new String[0]));
+        }
+
+        Object scope = claims.getClaim("scope");
+        Set<String> scopes = new HashSet<>();
+        if (scope instanceof String && StringUtils.hasText((String) scope)) {
+            scopes.addAll(Arrays.asList(StringUtils.delimitedListToStringArray((String) scope, " ")));
+        }
+        token.setScope(scopes);
+
+        token.setExpiration(claims.getExpirationTime());
+        if (claims.getIssueTime() != null) {
+            token.setIssuedAt(claims.getIssueTime());
+        }
+        if (claims.getNotBeforeTime() != null) {
+            token.setNotBeforeTime(claims.getNotBeforeTime());
+        }
+
+        // custom claims, as added by the converter
+        Map<String, Serializable> custom = new HashMap<>();
+        claims.getClaims().entrySet().forEach(e -> {
+            if (!JWTClaimsSet.getRegisteredNames().contains(e.getKey())
+                    && !"azp".equals(e.getKey()) && !"scope".equals(e.getKey())
+                    && !STATELESS_CLAIM.equals(e.getKey())
+                    && e.getValue() instanceof Serializable) {
+                custom.put(e.getKey(), (Serializable) e.getValue());
+            }
+        });
+        token.setClaims(custom);
+
+        if (custom.get("realm") instanceof String) {
+            token.setRealm((String) custom.get("realm"));
+        }
+
+        return token;
+    }
+}
@@ -0,0 +1,92 @@
+package it.smartcommunitylab.aac.oauth.token;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import it.smartcommunitylab.aac.core.ClientDetails;
+import it.smartcommunitylab.aac.core.UserDetails;
+import it.smartcommunitylab.aac.model.User;
+import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+
+/*
+ * Per request state shared by token services, enhancers and id token services
+ *
+ * Resolved once for a token request: every stage reads from here before
+ * loading from services, and writes back what it had to load. Also collects
+ * the time spent in each stage.
+ */
+public class TokenIssuanceContext {
+
+    private final String clientId;
+    private final long startedAt;
+
+    private OAuth2ClientDetails oauth2ClientDetails;
+    private ClientDetails clientDetails;
+
+    private UserDetails userDetails;
+    private User user;
+
+    // stage -> nanos, in execution order
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+
+    public TokenIssuanceContext(String clientId) {
+        Assert.hasText(clientId, "clientId can not be null or empty");
+        this.clientId = clientId;
+        this.startedAt = System.nanoTime();
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public OAuth2ClientDetails getOAuth2ClientDetails() {
+        return oauth2ClientDetails;
+    }
+
+    public void setOAuth2ClientDetails(OAuth2ClientDetails oauth2ClientDetails) {
+        this.oauth2ClientDetails = oauth2ClientDetails;
+    }
+
+    public ClientDetails getClientDetails() {
+        return clientDetails;
+    }
+
+    public void setClientDetails(ClientDetails clientDetails) {
+        this.clientDetails = clientDetails;
+    }
+
+    // user snapshot, valid only for the given subject
+    public User getUser(UserDetails userDetails) {
+        if (userDetails == null) {
+            return null;
+        }
+
+        if (user == null || this.userDetails == null
+                || !this.userDetails.getSubjectId().equals(userDetails.getSubjectId())) {
+            this.userDetails = userDetails;
+            this.user = new User(userDetails);
+        }
+
+        return user;
+    }
+
+    /*
+     * Timings
+     */
+    public void record(String stage, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        timings.merge(stage, elapsed, Long::sum);
+    }
+
+    public Map<String, Long> getTimings() {
+        return Collections.unmodifiableMap(timings);
+    }
+
+}
@@ -0,0 +1,87 @@
+package it.smartcommunitylab.aac.oauth.token;
+
+import it.smartcommunitylab.aac.core.ClientDetails;
+import it.smartcommunitylab.aac.core.UserDetails;
+import it.smartcommunitylab.aac.model.User;
+import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+
+/*
+ * Thread bound holder for the issuance context
+ *
+ * Token endpoints open a context for the duration of the request, stages
+ * called outside a request (or for a different client) get no context and
+ * load everything on their own.
+ */
+public final class TokenIssuanceContextHolder {
+
+    private static final ThreadLocal<TokenIssuanceContext> contextHolder = new ThreadLocal<>();
+
+    public static TokenIssuanceContext createContext(String clientId) {
+        TokenIssuanceContext context = new TokenIssuanceContext(clientId);
+        contextHolder.set(context);
+        return context;
+    }
+
+    public static TokenIssuanceContext getContext() {
+        return contextHolder.get();
+    }
+
+    // return context only when bound to the same client
+    public static TokenIssuanceContext getContext(String clientId) {
+        TokenIssuanceContext context = contextHolder.get();
+        if (context != null && context.getClientId().equals(clientId)) {
+            return context;
+        }
+
+        return null;
+    }
+
+    public static void clearContext() {
+        contextHolder.remove();
+    }
+
+    /*
+     * Resolve from the context bound to the client when available, otherwise
+     * load and store into the context for the following stages
+     */
+    public static <E extends Exception> OAuth2ClientDetails getOAuth2ClientDetails(String clientId,
+            Loader<OAuth2ClientDetails, E> loader) throws E {
+        TokenIssuanceContext context = getContext(clientId);
+        OAuth2ClientDetails clientDetails = context != null ? context.getOAuth2ClientDetails() : null;
+        if (clientDetails == null) {
+            clientDetails = loader.load();
+            if (context != null) {
+                context.setOAuth2ClientDetails(clientDetails);
+            }
+        }
+
+        return clientDetails;
+    }
+
+    public static <E extends Exception> ClientDetails getClientDetails(String clientId,
+            Loader<ClientDetails, E> loader) throws E {
+        TokenIssuanceContext context = getContext(clientId);
+        ClientDetails clientDetails = context != null ? context.getClientDetails() : null;
+        if (clientDetails == null) {
+            clientDetails = loader.load();
+            if (context != null) {
+                context.setClientDetails(clientDetails);
+            }
+        }
+
+        return clientDetails;
+    }
+
+    public static User getUser(String clientId, UserDetails userDetails) {
+        TokenIssuanceContext context = getContext(clientId);
+        return context != null ? context.getUser(userDetails) : new User(userDetails);
+    }
+
+    @FunctionalInterface
+    public interface Loader<T, E extends Exception> {
+        T load() throws E;
+    }
+
+    private TokenIssuanceContextHolder() {
+    }
+}
@@ -42,6 +42,7 @@ import it.smartcommunitylab.aac.openid.persistence.OIDCUserAccountRepository;
 import it.smartcommunitylab.aac.openid.provider.OIDCIdentityProvider;
 import it.smartcommunitylab.aac.openid.provider.OIDCIdentityProviderConfig;
 import it.smartcommunitylab.aac.openid.provider.OIDCIdentityProviderConfigMap;
+import it.smartcommunitylab.aac.openid.service.OIDCUpstreamManager;
 
 @Service
 public class OIDCIdentityAuthority implements IdentityAuthority, InitializingBean {
@@ -100,6 +101,9 @@ public class OIDCIdentityAuthority implements IdentityAuthority, InitializingBea
     // execution service for custom attributes mapping
     private ScriptExecutionService executionService;
 
+    // shared upstream discovery and clients
+    private OIDCUpstreamManager upstreamManager;
+
     public OIDCIdentityAuthority(
             OIDCUserAccountRepository accountRepository,
             AutoJdbcAttributeStore jdbcAttributeStore,
@@ -141,6 +145,11 @@ public class OIDCIdentityAuthority implements IdentityAuthority, InitializingBea
         this.executionService = executionService;
     }
 
+    @Autowired
+    public void setUpstreamManager(OIDCUpstreamManager upstreamManager) {
+        this.upstreamManager = upstreamManager;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         // build templates
@@ -223,6 +232,7 @@ public class OIDCIdentityAuthority implements IdentityAuthority, InitializingBea
 
             try {
                 OIDCIdentityProviderConfig providerConfig = OIDCIdentityProviderConfig.fromConfigurableProvider(cp);
+                providerConfig.setUpstreamManager(upstreamManager);
 
                 // build registration, will ensure configuration is valid *before* registering
                 // the provider in repositories
@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.openid.endpoint;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Map;
 
@@ -12,6 +13,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 
@@ -21,7 +23,6 @@ import com.nimbusds.jose.jwk.JWKSet;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import it.smartcommunitylab.aac.jwt.JWTSigningAndValidationService;
-import net.minidev.json.JSONObject;
 
 @Controller
 @Api(tags = { "OpenID Connect Discovery" })
@@ -36,21 +37,48 @@ public class JWKSetPublishingEndpoint {
     @Autowired
     private JWTSigningAndValidationService jwtService;
 
+    // serialized set, rebuilt only when the service returns a different key map
+    private volatile CachedJwks cached;
+
     @ApiOperation(value = "JSON Web Key Set")
     @RequestMapping(method = RequestMethod.GET, value = JWKS_URL, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<JSONObject> getJwks() {
+    public ResponseEntity<String> getJwks() {
 
         // map from key id to key
         Map<String, JWK> keys = jwtService.getAllPublicKeys();
 
-        // build as set to leverage toJSONObject, will hide private keys
-        JWKSet jwkSet = new JWKSet(new ArrayList<>(keys.values()));
+        CachedJwks jwks = cached;
+        if (jwks == null || jwks.keys != keys) {
+            jwks = new CachedJwks(keys);
+            cached = jwks;
+            logger.debug("published jwks with " + keys.size() + " keys, etag " + jwks.etag);
+        }
 
         // return with 200 and set custom cache header
+        // conditional requests matching the etag get a 304 from spring
         return ResponseEntity.status(HttpStatus.OK)
                 .header(HttpHeaders.CACHE_CONTROL, cacheControl)
-                .body(jwkSet.toJSONObject(true));
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(jwks.etag)
+                .body(jwks.json);
+
+    }
+
+    private static class CachedJwks {
+        private final Map<String, JWK> keys;
+        private final String json;
+        private final String etag;
+
+        public CachedJwks(Map<String, JWK> keys) {
+            this.keys = keys;
+
+            // build as set to leverage toJSONObject, will hide private keys
+            JWKSet jwkSet = new JWKSet(new ArrayList<>(keys.values()));
+            this.json = jwkSet.toJSONObject(true).toJSONString();
 
+            // strong etag from content
+            this.etag = "\"" + DigestUtils.md5DigestAsHex(json.getBytes(StandardCharsets.UTF_8)) + "\"";
+        }
     }
 
     // TODO per-realm keys
@@ -16,13 +16,23 @@
 
 package it.smartcommunitylab.aac.openid.endpoint;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -37,8 +47,14 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
-import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.WebRequest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -46,15 +62,14 @@ import it.smartcommunitylab.aac.Config;
 import it.smartcommunitylab.aac.common.NoSuchClientException;
 import it.smartcommunitylab.aac.common.NoSuchRealmException;
 import it.smartcommunitylab.aac.common.NoSuchUserException;
-import it.smartcommunitylab.aac.core.ClientDetails;
-import it.smartcommunitylab.aac.core.service.ClientDetailsService;
-import it.smartcommunitylab.aac.core.service.UserService;
-import it.smartcommunitylab.aac.model.User;
+import it.smartcommunitylab.aac.core.persistence.UserEntity;
+import it.smartcommunitylab.aac.core.service.UserEntityService;
 import it.smartcommunitylab.aac.oauth.AACOAuth2AccessToken;
 import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientDetailsService;
 import it.smartcommunitylab.aac.oauth.store.ExtTokenStore;
 import it.smartcommunitylab.aac.oauth.token.ClaimsTokenEnhancer;
+import it.smartcommunitylab.aac.oauth.token.JwtTokenValidator;
 
 /**
  * @author raman
@@ -62,7 +77,7 @@ import it.smartcommunitylab.aac.oauth.token.ClaimsTokenEnhancer;
  */
 @Controller
 @Api(tags = { "OpenID Connect Core" })
-public class UserInfoEndpoint {
+public class UserInfoEndpoint implements InitializingBean {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     public static final String USERINFO_URL = "/userinfo";
@@ -70,11 +85,10 @@ public class UserInfoEndpoint {
     public static final String JOSE_MEDIA_TYPE_VALUE = "application/jwt";
     public static final MediaType JOSE_MEDIA_TYPE = new MediaType("application", "jwt");
 
-    @Autowired
-    private UserService userService;
+    public static final int DEFAULT_CACHE_VALIDITY = 60;
 
-    @Autowired
-    private ClientDetailsService clientService;
+    @Value("${openid.userinfo.cache}")
+    private int cacheValidity;
 
     @Autowired
     private OAuth2ClientDetailsService oauth2ClientService;
@@ -85,6 +99,27 @@ public class UserInfoEndpoint {
     @Autowired
     private ClaimsTokenEnhancer claimsEnhancer;
 
+    @Autowired(required = false)
+    private JwtTokenValidator jwtTokenValidator;
+
+    @Autowired
+    private UserEntityService userEntityService;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    // claims by token hash+scopes, short lived
+    private Cache<String, UserInfo> userInfos;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        int validity = cacheValidity > 0 ? cacheValidity : DEFAULT_CACHE_VALIDITY;
+        userInfos = CacheBuilder.newBuilder()
+                .expireAfterWrite(validity, TimeUnit.SECONDS)
+                .maximumSize(10000)
+                .build();
+    }
+
     /**
      * Get information about the user as specified in the accessToken included in
      * this request
@@ -93,9 +128,9 @@ public class UserInfoEndpoint {
     @ApiOperation(value = "Get info about the authenticated End-User")
     @RequestMapping(value = USERINFO_URL, method = { RequestMethod.GET, RequestMethod.POST }, produces = {
             MediaType.APPLICATION_JSON_VALUE, JOSE_MEDIA_TYPE_VALUE })
-    public @ResponseBody Map<String, Object> getUserInfo(
+    public ResponseEntity<Map<String, Object>> getUserInfo(
             @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String acceptHeader,
-            BearerTokenAuthentication auth)
+            BearerTokenAuthentication auth, WebRequest webRequest)
             throws NoSuchUserException, NoSuchRealmException, ClientRegistrationException, NoSuchClientException {
 
         if (auth == null) {
@@ -103,8 +138,14 @@ public class UserInfoEndpoint {
             throw new IllegalArgumentException("invalid authentication");
         }
 
-        // fetch token from store
+        // fetch token from store, always, to honor revocation
         OAuth2AccessToken token = tokenStore.readAccessToken(auth.getToken().getTokenValue());
+        boolean stateless = false;
+        if (token == null && jwtTokenValidator != null) {
+            // stateless jwt are not in store, validate locally against denylist
+            token = jwtTokenValidator.readAccessToken(auth.getToken().getTokenValue());
+            stateless = true;
+        }
         if (token == null) {
             throw new IllegalArgumentException("invalid token");
         }
@@ -114,24 +155,79 @@ public class UserInfoEndpoint {
             throw new IllegalArgumentException("invalid token");
         }
 
+        String key = extractKey(token);
+
+        // check subject on every call, cached claims must not outlive the user
+        String subjectId = auth.getName();
+        UserEntity user = userEntityService.findUser(subjectId);
+        if (user == null || user.isBlocked()) {
+            userInfos.invalidate(key);
+            throw new IllegalArgumentException("invalid token");
+        }
+
+        UserInfo userInfo = userInfos.getIfPresent(key);
+        if (userInfo == null) {
+            userInfo = stateless
+                    ? buildUserInfo((AACOAuth2AccessToken) token, acceptHeader)
+                    : buildUserInfo(token, acceptHeader);
+            userInfos.put(key, userInfo);
+        }
+
+        // TODO handle jwt/jwe response types
+        if (userInfo.etag == null) {
+            return ResponseEntity.ok(userInfo.claims);
+        }
+
+        // conditional request, unchanged claims cost only the token lookup
+        if (webRequest.checkNotModified(userInfo.etag)) {
+            return null;
+        }
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(userInfo.etag)
+                .body(userInfo.claims);
+
+    }
+
+    private UserInfo buildUserInfo(OAuth2AccessToken token, String acceptHeader)
+            throws ClientRegistrationException, NoSuchClientException {
         OAuth2Authentication oauthAuth = tokenStore.readAuthentication(token);
         if (oauthAuth == null) {
             throw new IllegalArgumentException("invalid token");
         }
 
         // TODO refresh authentication to update userDetails + authorities etc.
-
         String clientId = oauthAuth.getOAuth2Request().getClientId();
-        ClientDetails clientDetails = clientService.loadClient(clientId);
+        checkContentType(clientId, acceptHeader);
 
-        // principal name is userid for user tokens
-        // we don't know yet if this is a client token...
-        String subjectId = auth.getName();
-        String realm = clientDetails.getRealm();
+        // build claims for token scopes only, the enhancer reads the user from the
+        // stored authentication and loads realm data once per realm
+        Map<String, Object> claims = new HashMap<>();
+        AACOAuth2AccessToken accessToken = claimsEnhancer.enhance(token, oauthAuth);
+        claims.putAll(accessToken.getClaims());
+
+        return new UserInfo(Collections.unmodifiableMap(claims), computeEtag(claims));
+    }
+
+    private UserInfo buildUserInfo(AACOAuth2AccessToken token, String acceptHeader)
+            throws ClientRegistrationException, NoSuchClientException {
+        // stateless tokens carry the claims built at issue for the token scopes
+        String clientId = token.getAuthorizedParty();
+        if (!StringUtils.hasText(clientId)) {
+            throw new IllegalArgumentException("invalid token");
+        }
+        checkContentType(clientId, acceptHeader);
 
-        // fetch user, translated for client realm
-        User user = userService.getUser(subjectId, realm);
+        Map<String, Object> claims = new HashMap<>();
+        claims.putAll(token.getClaims());
+        claims.put("sub", token.getSubject());
 
+        return new UserInfo(Collections.unmodifiableMap(claims), computeEtag(claims));
+    }
+
+    private boolean checkContentType(String clientId, String acceptHeader)
+            throws ClientRegistrationException, NoSuchClientException {
         // content negotiation
         boolean useJwt = false;
         // start off by seeing if the client has registered for a signed/encrypted JWT
@@ -176,18 +272,45 @@ public class UserInfoEndpoint {
             useJwt = false;
         }
 
-        // build response
-        Map<String, Object> userInfo = new HashMap<>();
-
-        // we rebuild all claims
-        AACOAuth2AccessToken accessToken = claimsEnhancer.enhance(token, oauthAuth);
+        return useJwt;
+    }
 
-        userInfo.putAll(accessToken.getClaims());
+    private String extractKey(OAuth2AccessToken token) {
+        // never keep raw token values in memory, use a digest
+        // scopes are sorted to get a stable key
+        String value = token.getValue() + "|"
+                + StringUtils.collectionToCommaDelimitedString(new TreeSet<>(token.getScope()));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // sha-256 is always available
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
 
-        // TODO handle jwt/jwe response types
+    private String computeEtag(Map<String, Object> claims) {
+        try {
+            // stable serialization, map keys sorted
+            byte[] bytes = mapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+                    .writeValueAsBytes(claims);
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            // no etag, every response is full
+            logger.error("error computing userinfo etag: " + e.getMessage());
+            return null;
+        }
+    }
 
-        return userInfo;
+    private static class UserInfo {
+        private final Map<String, Object> claims;
+        private final String etag;
 
+        public UserInfo(Map<String, Object> claims, String etag) {
+            this.claims = claims;
+            this.etag = etag;
+        }
     }
 
     @ExceptionHandler(IllegalArgumentException.class)
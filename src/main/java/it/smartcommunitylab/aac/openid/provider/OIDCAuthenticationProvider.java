@@ -32,6 +32,7 @@ import it.smartcommunitylab.aac.openid.auth.OIDCAuthenticatedPrincipal;
 import it.smartcommunitylab.aac.openid.auth.OIDCAuthenticationException;
 import it.smartcommunitylab.aac.openid.auth.OIDCAuthenticationToken;
 import it.smartcommunitylab.aac.openid.persistence.OIDCUserAccountRepository;
+import it.smartcommunitylab.aac.openid.service.OIDCUpstreamManager;
 
 public class OIDCAuthenticationProvider extends ExtendedAuthenticationProvider {
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -61,17 +62,29 @@ public class OIDCAuthenticationProvider extends ExtendedAuthenticationProvider {
         this.providerConfig = config;
         this.accountRepository = accountRepository;
 
-        // we support only authCode login
-        OAuth2AccessTokenResponseClient<OAuth2AuthorizationCodeGrantRequest> accessTokenResponseClient = new DefaultAuthorizationCodeTokenResponseClient();
-
-        // we don't use the account repository to fetch user details,
-        // use oidc userinfo to provide user details
-        // TODO add jwt handling from id_token or access token
-        this.oidcProvider = new OidcAuthorizationCodeAuthenticationProvider(accessTokenResponseClient,
-                new OidcUserService());
-        // oauth userinfo comes from oidc userinfo..
-        this.oauthProvider = new OAuth2LoginAuthenticationProvider(accessTokenResponseClient,
-                new DefaultOAuth2UserService());
+        OIDCUpstreamManager upstreamManager = config.getUpstreamManager();
+        if (upstreamManager != null) {
+            // shared pooled clients and jwks
+            OAuth2AccessTokenResponseClient<OAuth2AuthorizationCodeGrantRequest> accessTokenResponseClient = upstreamManager
+                    .getAccessTokenResponseClient();
+            this.oidcProvider = new OidcAuthorizationCodeAuthenticationProvider(accessTokenResponseClient,
+                    upstreamManager.getOidcUserService());
+            this.oidcProvider.setJwtDecoderFactory(upstreamManager.getIdTokenDecoderFactory());
+            this.oauthProvider = new OAuth2LoginAuthenticationProvider(accessTokenResponseClient,
+                    upstreamManager.getOAuth2UserService());
+        } else {
+            // we support only authCode login
+            OAuth2AccessTokenResponseClient<OAuth2AuthorizationCodeGrantRequest> accessTokenResponseClient = new DefaultAuthorizationCodeTokenResponseClient();
+
+            // we don't use the account repository to fetch user details,
+            // use oidc userinfo to provide user details
+            // TODO add jwt handling from id_token or access token
+            this.oidcProvider = new OidcAuthorizationCodeAuthenticationProvider(accessTokenResponseClient,
+                    new OidcUserService());
+            // oauth userinfo comes from oidc userinfo..
+            this.oauthProvider = new OAuth2LoginAuthenticationProvider(accessTokenResponseClient,
+                    new DefaultOAuth2UserService());
+        }
 
         // use a custom authorities mapper to cleanup authorities spring injects
         // default impl translates the whole oauth response as an authority..
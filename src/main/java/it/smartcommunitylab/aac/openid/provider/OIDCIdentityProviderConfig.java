@@ -15,6 +15,7 @@ import it.smartcommunitylab.aac.core.base.AbstractConfigurableProvider;
 import it.smartcommunitylab.aac.core.base.ConfigurableIdentityProvider;
 import it.smartcommunitylab.aac.oauth.model.AuthenticationMethod;
 import it.smartcommunitylab.aac.openid.OIDCIdentityAuthority;
+import it.smartcommunitylab.aac.openid.service.OIDCUpstreamManager;
 
 public class OIDCIdentityProviderConfig extends AbstractConfigurableProvider {
 //
@@ -34,6 +35,7 @@ public class OIDCIdentityProviderConfig extends AbstractConfigurableProvider {
 
     private OIDCIdentityProviderConfigMap configMap;
     private ClientRegistration clientRegistration;
+    private OIDCUpstreamManager upstreamManager;
 
     // hook functions
     private Map<String, String> hookFunctions;
@@ -122,6 +124,14 @@ public class OIDCIdentityProviderConfig extends AbstractConfigurableProvider {
         configMap.setConfiguration(props);
     }
 
+    public OIDCUpstreamManager getUpstreamManager() {
+        return upstreamManager;
+    }
+
+    public void setUpstreamManager(OIDCUpstreamManager upstreamManager) {
+        this.upstreamManager = upstreamManager;
+    }
+
     public ClientRegistration getClientRegistration() {
         if (clientRegistration == null) {
             clientRegistration = toClientRegistration();
@@ -175,7 +185,12 @@ public class OIDCIdentityProviderConfig extends AbstractConfigurableProvider {
                 issuerUri = issuerUri.substring(0, issuerUri.length() - WELL_KNOWN_CONFIGURATION_OPENID.length());
             }
 
-            builder = ClientRegistrations.fromIssuerLocation(issuerUri);
+            if (upstreamManager != null) {
+                // read shared discovery to autoconfigure
+                builder = upstreamManager.fromIssuerLocation(issuerUri);
+            } else {
+                builder = ClientRegistrations.fromIssuerLocation(issuerUri);
+            }
         }
 
         // set config
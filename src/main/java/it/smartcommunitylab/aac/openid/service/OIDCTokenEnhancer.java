@@ -46,6 +46,7 @@ import it.smartcommunitylab.aac.model.User;
 import it.smartcommunitylab.aac.oauth.AACOAuth2AccessToken;
 import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientDetailsService;
+import it.smartcommunitylab.aac.oauth.token.TokenIssuanceContextHolder;
 import it.smartcommunitylab.aac.profiles.claims.OpenIdClaimsExtractorProvider;
 
 /**
@@ -115,8 +116,11 @@ public class OIDCTokenEnhancer implements TokenEnhancer {
 
         try {
 
-            ClientDetails clientDetails = clientDetailsService.loadClient(clientId);
-            OAuth2ClientDetails oauth2ClientDetails = oauth2ClientDetailsService.loadClientByClientId(clientId);
+            // resolve via context when available
+            ClientDetails clientDetails = TokenIssuanceContextHolder.getClientDetails(clientId,
+                    () -> clientDetailsService.loadClient(clientId));
+            OAuth2ClientDetails oauth2ClientDetails = TokenIssuanceContextHolder.getOAuth2ClientDetails(clientId,
+                    () -> oauth2ClientDetailsService.loadClientByClientId(clientId));
 
             logger.debug("fetch user via authentication");
 
@@ -166,7 +170,7 @@ public class OIDCTokenEnhancer implements TokenEnhancer {
 //                clientDetails, scopes,
 //                resourceIds);
 
-        User user = new User(userDetails);
+        User user = TokenIssuanceContextHolder.getUser(clientId, userDetails);
         Map<String, Serializable> userClaims = new HashMap<>();
 
         // check if client wants all claims from accessToken in idTokens
@@ -51,6 +51,7 @@ import it.smartcommunitylab.aac.oauth.common.SecureStringKeyGenerator;
 import it.smartcommunitylab.aac.oauth.common.ServerErrorException;
 import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientDetailsService;
+import it.smartcommunitylab.aac.oauth.token.TokenIssuanceContextHolder;
 import it.smartcommunitylab.aac.openid.common.IdToken;
 import it.smartcommunitylab.aac.openid.token.IdTokenServices;
 import it.smartcommunitylab.aac.profiles.claims.OpenIdClaimsExtractorProvider;
@@ -145,7 +146,7 @@ public class OIDCTokenServices implements IdTokenServices, InitializingBean {
 
         try {
 
-            OAuth2ClientDetails oauth2ClientDetails = clientDetailsService.loadClientByClientId(clientId);
+            OAuth2ClientDetails oauth2ClientDetails = loadOAuth2Client(clientId);
 
             Authentication userAuth = authentication.getUserAuthentication();
             if (userAuth == null || !(userAuth instanceof UserAuthentication)) {
@@ -216,7 +217,7 @@ public class OIDCTokenServices implements IdTokenServices, InitializingBean {
 
         try {
 
-            OAuth2ClientDetails oauth2ClientDetails = clientDetailsService.loadClientByClientId(clientId);
+            OAuth2ClientDetails oauth2ClientDetails = loadOAuth2Client(clientId);
 
             Authentication userAuth = authentication.getUserAuthentication();
             if (userAuth == null || !(userAuth instanceof UserAuthentication)) {
@@ -285,7 +286,7 @@ public class OIDCTokenServices implements IdTokenServices, InitializingBean {
 
         try {
 
-            OAuth2ClientDetails oauth2ClientDetails = clientDetailsService.loadClientByClientId(clientId);
+            OAuth2ClientDetails oauth2ClientDetails = loadOAuth2Client(clientId);
 
             Authentication userAuth = authentication.getUserAuthentication();
             if (userAuth == null || !(userAuth instanceof UserAuthentication)) {
@@ -359,7 +360,7 @@ public class OIDCTokenServices implements IdTokenServices, InitializingBean {
 
         try {
 
-            OAuth2ClientDetails oauth2ClientDetails = clientDetailsService.loadClientByClientId(clientId);
+            OAuth2ClientDetails oauth2ClientDetails = loadOAuth2Client(clientId);
 
             Authentication userAuth = authentication.getUserAuthentication();
             if (userAuth == null || !(userAuth instanceof UserAuthentication)) {
@@ -407,6 +408,12 @@ public class OIDCTokenServices implements IdTokenServices, InitializingBean {
         }
     }
 
+    private OAuth2ClientDetails loadOAuth2Client(String clientId) throws ClientRegistrationException {
+        // resolve via context when available
+        return TokenIssuanceContextHolder.getOAuth2ClientDetails(clientId,
+                () -> clientDetailsService.loadClientByClientId(clientId));
+    }
+
     private Map<String, Object> buildClaims(OAuth2Authentication authentication, OAuth2Request request,
             UserDetails userDetails, OAuth2ClientDetails oauth2ClientDetails,
             OAuth2AccessToken accessToken, String code)
@@ -422,10 +429,11 @@ public class OIDCTokenServices implements IdTokenServices, InitializingBean {
         String subjectId = userDetails.getSubjectId();
         Set<String> scopes = request.getScope();
 
-        ClientDetails clientDetails = clientService.loadClient(clientId);
+        ClientDetails clientDetails = TokenIssuanceContextHolder.getClientDetails(clientId,
+                () -> clientService.loadClient(clientId));
 
         // build user claims
-        User user = new User(userDetails);
+        User user = TokenIssuanceContextHolder.getUser(clientId, userDetails);
         Map<String, Object> userClaims = new HashMap<>();
         // check if client wants all claims from accessToken in idTokens
         if (accessToken != null && oauth2ClientDetails.isIdTokenClaims()
@@ -0,0 +1,357 @@
+package it.smartcommunitylab.aac.openid.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.FormHttpMessageConverter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.oauth2.client.endpoint.DefaultAuthorizationCodeTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AuthorizationCodeGrantRequest;
+import org.springframework.security.oauth2.client.http.OAuth2ErrorResponseErrorHandler;
+import org.springframework.security.oauth2.client.oidc.authentication.OidcIdTokenDecoderFactory;
+import org.springframework.security.oauth2.client.oidc.authentication.OidcIdTokenValidator;
+import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserService;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrations;
+import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.converter.ClaimTypeConverter;
+import org.springframework.security.oauth2.core.http.converter.OAuth2AccessTokenResponseHttpMessageConverter;
+import org.springframework.security.oauth2.jwt.JwtDecoderFactory;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.jwk.source.RemoteJWKSet;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.Resource;
+import com.nimbusds.jose.util.ResourceRetriever;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/*
+ * Process-wide registry for upstream OIDC issuers
+ *
+ * Discovery documents are fetched once per issuer and shared by every provider
+ * pointing to the same issuer, entries are refreshed in background and readers
+ * keep using the previous copy until the new one is ready. JWK sets are shared
+ * per uri as well. Token, userinfo and jwks calls use a single pooled http
+ * client with keep-alive, timed per upstream host.
+ */
+public class OIDCUpstreamManager {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_REFRESH_INTERVAL = 60 * 60;
+    public static final int DEFAULT_MAX_CONNECTIONS = 50;
+    public static final int DEFAULT_TIMEOUT = 10;
+
+    private static final String WELL_KNOWN_CONFIGURATION_OPENID = "/.well-known/openid-configuration";
+    // placeholders for discovery templates, overwritten by providers
+    private static final String TEMPLATE_CLIENT_ID = "template";
+    private static final String TEMPLATE_REDIRECT_URI = "{baseUrl}";
+
+    private final LoadingCache<String, ClientRegistration> issuers;
+    private final LoadingCache<String, JWKSource<SecurityContext>> jwkSources;
+    private final ExecutorService executor;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final RestTemplate tokenRestTemplate;
+    private final RestTemplate userInfoRestTemplate;
+    private final RestTemplate jwksRestTemplate;
+
+    private MeterRegistry meterRegistry;
+
+    public OIDCUpstreamManager() {
+        this(DEFAULT_REFRESH_INTERVAL, DEFAULT_MAX_CONNECTIONS, DEFAULT_TIMEOUT);
+    }
+
+    public OIDCUpstreamManager(int refreshInterval, int maxConnections, int timeout) {
+        Assert.isTrue(refreshInterval > 0, "refresh interval must be a positive number");
+        Assert.isTrue(maxConnections > 0, "max connections must be a positive number");
+        Assert.isTrue(timeout > 0, "timeout must be a positive number");
+
+        // shared pool, upstreams are few so each route can use a good share
+        connectionManager = new PoolingHttpClientConnectionManager(5, TimeUnit.MINUTES);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(Math.max(2, maxConnections / 2));
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout * 1000)
+                .setConnectionRequestTimeout(timeout * 1000)
+                .setSocketTimeout(timeout * 1000)
+                .build();
+
+        httpClient = HttpClientBuilder.create()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(60, TimeUnit.SECONDS)
+                .build();
+
+        // same converters and error handler as spring defaults
+        tokenRestTemplate = buildRestTemplate("token");
+        tokenRestTemplate.setMessageConverters(Arrays.asList(
+                new FormHttpMessageConverter(), new OAuth2AccessTokenResponseHttpMessageConverter()));
+        tokenRestTemplate.setErrorHandler(new OAuth2ErrorResponseErrorHandler());
+
+        userInfoRestTemplate = buildRestTemplate("userinfo");
+        userInfoRestTemplate.setErrorHandler(new OAuth2ErrorResponseErrorHandler());
+
+        jwksRestTemplate = buildRestTemplate("jwks");
+
+        // single background thread is enough, reloads are rare
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("oidc-upstream-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newSingleThreadExecutor(threadFactory);
+
+        this.issuers = CacheBuilder.newBuilder()
+                .refreshAfterWrite(refreshInterval, TimeUnit.SECONDS) // reload async, serve stale meanwhile
+                .expireAfterAccess(1, TimeUnit.DAYS) // drop unused issuers
+                .maximumSize(500)
+                .build(CacheLoader.asyncReloading(new DiscoveryFetcher(), executor));
+
+        // remote sets handle their own refresh on unknown keys
+        this.jwkSources = CacheBuilder.newBuilder()
+                .expireAfterAccess(1, TimeUnit.DAYS)
+                .maximumSize(500)
+                .build(new CacheLoader<String, JWKSource<SecurityContext>>() {
+                    @Override
+                    public JWKSource<SecurityContext> load(final String jwkSetUri) throws Exception {
+                        return new RemoteJWKSet<>(new URL(jwkSetUri), new RestTemplateResourceRetriever());
+                    }
+                });
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        if (meterRegistry != null) {
+            Gauge.builder("aac.oidc.upstream.connections", connectionManager, c -> c.getTotalStats().getLeased())
+                    .register(meterRegistry);
+        }
+    }
+
+    public void destroy() {
+        executor.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("error closing upstream http client: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Discovery
+     */
+
+    /*
+     * Build a registration with provider details read from (cached) discovery.
+     * This mirrors ClientRegistrations.fromIssuerLocation
+     */
+    public ClientRegistration.Builder fromIssuerLocation(String issuerUri) {
+        Assert.hasText(issuerUri, "issuer can not be null or empty");
+
+        // remove well-known path if provided by user
+        String issuer = issuerUri;
+        if (issuer.endsWith(WELL_KNOWN_CONFIGURATION_OPENID)) {
+            issuer = issuer.substring(0, issuer.length() - WELL_KNOWN_CONFIGURATION_OPENID.length());
+        }
+
+        try {
+            return ClientRegistration.withClientRegistration(issuers.get(issuer));
+        } catch (UncheckedExecutionException | ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IllegalArgumentException("error reading configuration from " + issuer + ": "
+                    + cause.getMessage(), cause);
+        }
+    }
+
+    public void evict(String issuer) {
+        issuers.invalidate(issuer);
+    }
+
+    public Map<String, ClientRegistration> listIssuers() {
+        return Collections.unmodifiableMap(issuers.asMap());
+    }
+
+    /*
+     * Shared clients
+     */
+    public OAuth2AccessTokenResponseClient<OAuth2AuthorizationCodeGrantRequest> getAccessTokenResponseClient() {
+        DefaultAuthorizationCodeTokenResponseClient client = new DefaultAuthorizationCodeTokenResponseClient();
+        client.setRestOperations(tokenRestTemplate);
+        return client;
+    }
+
+    public DefaultOAuth2UserService getOAuth2UserService() {
+        DefaultOAuth2UserService userService = new DefaultOAuth2UserService();
+        userService.setRestOperations(userInfoRestTemplate);
+        return userService;
+    }
+
+    public OidcUserService getOidcUserService() {
+        OidcUserService userService = new OidcUserService();
+        userService.setOauth2UserService(getOAuth2UserService());
+        return userService;
+    }
+
+    /*
+     * Id token decoders backed by shared jwk sets, validation mirrors
+     * OidcIdTokenDecoderFactory defaults
+     */
+    public JwtDecoderFactory<ClientRegistration> getIdTokenDecoderFactory() {
+        return clientRegistration -> {
+            String jwkSetUri = clientRegistration.getProviderDetails().getJwkSetUri();
+            if (!StringUtils.hasText(jwkSetUri)) {
+                throw new JwtException("missing jwkSetUri for client registration "
+                        + clientRegistration.getRegistrationId());
+            }
+
+            JWKSource<SecurityContext> jwkSource;
+            try {
+                jwkSource = jwkSources.get(jwkSetUri);
+            } catch (UncheckedExecutionException | ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw new JwtException("invalid jwkSetUri " + jwkSetUri + ": " + cause.getMessage(), cause);
+            }
+
+            DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+            jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, jwkSource));
+            // spring validates claims
+            jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+            });
+
+            NimbusJwtDecoder decoder = new NimbusJwtDecoder(jwtProcessor);
+            decoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+                    new JwtTimestampValidator(), new OidcIdTokenValidator(clientRegistration)));
+            decoder.setClaimSetConverter(
+                    new ClaimTypeConverter(OidcIdTokenDecoderFactory.createDefaultClaimTypeConverters()));
+
+            return decoder;
+        };
+    }
+
+    /*
+     * Helpers
+     */
+    private RestTemplate buildRestTemplate(String operation) {
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        restTemplate.getInterceptors().add(timingInterceptor(operation));
+        return restTemplate;
+    }
+
+    private ClientHttpRequestInterceptor timingInterceptor(String operation) {
+        return (request, body, execution) -> {
+            long start = System.nanoTime();
+            try {
+                return execution.execute(request, body);
+            } finally {
+                record(request.getURI().getHost(), operation, System.nanoTime() - start);
+            }
+        };
+    }
+
+    private void record(String host, String operation, long nanos) {
+        if (meterRegistry != null) {
+            Timer.builder("aac.oidc.upstream")
+                    .tag("host", host != null ? host : "unknown")
+                    .tag("operation", operation)
+                    .register(meterRegistry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private class DiscoveryFetcher extends CacheLoader<String, ClientRegistration> {
+
+        @Override
+        public ClientRegistration load(String issuer) throws Exception {
+            long start = System.nanoTime();
+            try {
+                // template registration, client details are set by providers
+                ClientRegistration registration = ClientRegistrations.fromIssuerLocation(issuer)
+                        .clientId(TEMPLATE_CLIENT_ID)
+                        .redirectUri(TEMPLATE_REDIRECT_URI)
+                        .build();
+
+                logger.info("loaded oidc configuration for issuer " + issuer);
+                return registration;
+            } finally {
+                record(URI.create(issuer).getHost(), "discovery", System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public ClientRegistration reload(String issuer, ClientRegistration previous) throws Exception {
+            try {
+                return load(issuer);
+            } catch (RuntimeException e) {
+                // keep serving the previous copy
+                logger.warn("error refreshing oidc configuration for issuer " + issuer + ": " + e.getMessage());
+                return previous;
+            }
+        }
+    }
+
+    /*
+     * Fetch jwks over the shared pool
+     */
+    private class RestTemplateResourceRetriever implements ResourceRetriever {
+
+        @Override
+        public Resource retrieveResource(URL url) throws IOException {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setAccept(Arrays.asList(MediaType.APPLICATION_JSON, MediaType.valueOf("application/jwk-set+json")));
+
+            try {
+                ResponseEntity<String> response = jwksRestTemplate.exchange(url.toURI(), HttpMethod.GET,
+                        new HttpEntity<>(headers), String.class);
+                if (response.getBody() == null) {
+                    throw new IOException("empty jwks response from " + url);
+                }
+
+                MediaType contentType = response.getHeaders().getContentType();
+                return new Resource(response.getBody(), contentType != null ? contentType.toString() : null);
+            } catch (RestClientException | URISyntaxException e) {
+                throw new IOException("unable to fetch jwks from " + url + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -10,11 +10,20 @@ import javax.persistence.AttributeConverter;
 import org.springframework.util.StringUtils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.cache.Cache;
 
 public class HashMapBase64Converter implements AttributeConverter<Map<String, String>, String> {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectWriter writer = JsonConverters.mapper.writer();
+    private static final ObjectReader reader = JsonConverters.mapper
+            .readerFor(new TypeReference<Map<String, String>>() {
+            });
+
+    // decoded maps by json
+    private static final Cache<String, Map<String, String>> cache = JsonConverters.newCache();
 
     @Override
     public String convertToDatabaseColumn(Map<String, String> map) {
@@ -29,32 +38,37 @@ public class HashMapBase64Converter implements AttributeConverter<Map<String, St
                     }));
 
             try {
-                json = objectMapper.writeValueAsString(encoded);
+                json = writer.writeValueAsString(encoded);
             } catch (final JsonProcessingException e) {
             }
         }
         return json;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Map<String, String> convertToEntityAttribute(String json) {
 
         Map<String, String> map = null;
         if (json != null) {
-            try {
-                Map<String, String> encoded = objectMapper.readValue(json, Map.class);
-
-                // decode values
-                map = encoded.entrySet().stream()
-                        .filter(e -> StringUtils.hasText(e.getValue()))
-                        .collect(Collectors.toMap(e -> e.getKey(), e -> {
-                            return new String(Base64.getDecoder().decode(e.getValue()));
-                        }));
+            map = cache.getIfPresent(json);
+            if (map == null) {
+                try {
+                    Map<String, String> encoded = reader.readValue(json);
 
-            } catch (final IOException e) {
+                    // decode values
+                    map = JsonConverters.freeze(encoded.entrySet().stream()
+                            .filter(e -> StringUtils.hasText(e.getValue()))
+                            .collect(Collectors.toMap(e -> e.getKey(), e -> {
+                                return new String(Base64.getDecoder().decode(e.getValue()));
+                            })));
+                    cache.put(json, map);
+                } catch (final IOException e) {
+                    return null;
+                }
             }
 
+            // entities may modify their maps
+            map = JsonConverters.copy(map);
         }
         return map;
     }
@@ -6,11 +6,18 @@ import java.util.Map;
 import javax.persistence.AttributeConverter;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.cache.Cache;
 
 public class HashMapConverter implements AttributeConverter<Map<String, String>, String> {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectWriter writer = JsonConverters.mapper.writer();
+    // untyped read, maps may hold serializable values
+    private static final ObjectReader reader = JsonConverters.mapper.readerFor(Map.class);
+
+    // parsed maps by json
+    private static final Cache<String, Map<String, String>> cache = JsonConverters.newCache();
 
     @Override
     public String convertToDatabaseColumn(Map<String, String> map) {
@@ -18,24 +25,30 @@ public class HashMapConverter implements AttributeConverter<Map<String, String>,
         String json = null;
         if (map != null) {
             try {
-                json = objectMapper.writeValueAsString(map);
+                json = writer.writeValueAsString(map);
             } catch (final JsonProcessingException e) {
             }
         }
         return json;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Map<String, String> convertToEntityAttribute(String json) {
 
         Map<String, String> map = null;
         if (json != null) {
-            try {
-                map = objectMapper.readValue(json, Map.class);
-            } catch (final IOException e) {
+            map = cache.getIfPresent(json);
+            if (map == null) {
+                try {
+                    map = JsonConverters.freeze(reader.readValue(json));
+                    cache.put(json, map);
+                } catch (final IOException e) {
+                    return null;
+                }
             }
 
+            // entities may modify their maps
+            map = JsonConverters.copy(map);
         }
         return map;
     }
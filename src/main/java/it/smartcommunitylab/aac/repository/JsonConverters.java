@@ -0,0 +1,72 @@
+package it.smartcommunitylab.aac.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/*
+ * Shared support for json attribute converters
+ *
+ * All converters use a single mapper, with readers and writers resolved once.
+ * Parsed values are cached by their json form, so repeated entity loads and
+ * hibernate snapshot copies skip parsing. Cached maps are never handed out,
+ * converters return deep copies of json containers which are much cheaper than
+ * parsing.
+ */
+public final class JsonConverters {
+
+    // max total size of cached json, in chars
+    public static final long CACHE_WEIGHT = 4 * 1024 * 1024;
+
+    public static final ObjectMapper mapper = new ObjectMapper();
+
+    private JsonConverters() {
+    }
+
+    public static <V> Cache<String, V> newCache() {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(CACHE_WEIGHT)
+                .weigher((Weigher<String, V>) (json, value) -> json.length())
+                .build();
+    }
+
+    public static <V> Map<String, V> freeze(Map<String, V> map) {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(map));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> Map<String, V> copy(Map<String, V> map) {
+        Map<String, V> result = new LinkedHashMap<>(map.size() * 2);
+        for (Map.Entry<String, V> e : map.entrySet()) {
+            result.put(e.getKey(), (V) copyValue(e.getValue()));
+        }
+
+        return result;
+    }
+
+    // json values are either containers or immutable scalars
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value instanceof Map) {
+            return copy((Map<String, Object>) value);
+        }
+
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            List<Object> result = new ArrayList<>(list.size());
+            for (Object v : list) {
+                result.add(copyValue(v));
+            }
+            return result;
+        }
+
+        return value;
+    }
+}
@@ -7,13 +7,19 @@ import javax.persistence.AttributeConverter;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.cache.Cache;
 
 public class NestedMapConverter implements AttributeConverter<Map<String, Map<String, String>>, String> {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final TypeReference<Map<String, Map<String, String>>> typeRef = new TypeReference<Map<String, Map<String, String>>>() {
-    };
+    private static final ObjectWriter writer = JsonConverters.mapper.writer();
+    private static final ObjectReader reader = JsonConverters.mapper
+            .readerFor(new TypeReference<Map<String, Map<String, String>>>() {
+            });
+
+    // parsed maps by json
+    private static final Cache<String, Map<String, Map<String, String>>> cache = JsonConverters.newCache();
 
     @Override
     public String convertToDatabaseColumn(Map<String, Map<String, String>> map) {
@@ -21,24 +27,30 @@ public class NestedMapConverter implements AttributeConverter<Map<String, Map<St
         String json = null;
         if (map != null) {
             try {
-                json = objectMapper.writeValueAsString(map);
+                json = writer.writeValueAsString(map);
             } catch (final JsonProcessingException e) {
             }
         }
         return json;
     }
 
-//    @SuppressWarnings("unchecked")
     @Override
     public Map<String, Map<String, String>> convertToEntityAttribute(String json) {
 
         Map<String, Map<String, String>> map = null;
         if (json != null) {
-            try {
-                map = objectMapper.readValue(json, typeRef);
-            } catch (final IOException e) {
+            map = cache.getIfPresent(json);
+            if (map == null) {
+                try {
+                    map = JsonConverters.freeze(reader.readValue(json));
+                    cache.put(json, map);
+                } catch (final IOException e) {
+                    return null;
+                }
             }
 
+            // entities may modify their maps
+            map = JsonConverters.copy(map);
         }
         return map;
     }
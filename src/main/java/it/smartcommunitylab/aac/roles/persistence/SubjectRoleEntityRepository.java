@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.roles.persistence;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.stereotype.Repository;
@@ -13,6 +14,8 @@ public interface SubjectRoleEntityRepository extends CustomJpaRepository<Subject
 
     List<SubjectRoleEntity> findBySubjectAndRealm(String subject, String realm);
 
+    List<SubjectRoleEntity> findBySubjectInAndRealm(Collection<String> subjects, String realm);
+
     List<SubjectRoleEntity> findByRealmAndRole(String realm, String role);
 
 }
@@ -1,6 +1,7 @@
 package it.smartcommunitylab.aac.roles.service;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -46,6 +47,20 @@ public class SubjectRoleService {
                 .collect(Collectors.toList());
     }
 
+    /*
+     * Realm roles for many subjects in a single query, keyed by subject
+     */
+    @Transactional(readOnly = true)
+    public Map<String, List<RealmRole>> getRoles(Collection<String> subjectIds, String realm) {
+        if (subjectIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return rolesRepository.findBySubjectInAndRealm(subjectIds, realm).stream()
+                .collect(Collectors.groupingBy(r -> r.getSubject(),
+                        Collectors.mapping(r -> toRole(r), Collectors.toList())));
+    }
+
     public Collection<RealmRole> addRoles(String subjectId, String realm, Collection<String> roles) {
 
         // fetch current roles
@@ -39,6 +39,7 @@ import it.smartcommunitylab.aac.core.provider.IdentityProvider;
 import it.smartcommunitylab.aac.core.provider.IdentityService;
 import it.smartcommunitylab.aac.core.provider.ProviderRepository;
 import it.smartcommunitylab.aac.saml.auth.SamlRelyingPartyRegistrationRepository;
+import it.smartcommunitylab.aac.saml.service.SamlMetadataManager;
 import it.smartcommunitylab.aac.saml.persistence.SamlUserAccountRepository;
 import it.smartcommunitylab.aac.saml.provider.SamlIdentityProvider;
 import it.smartcommunitylab.aac.saml.provider.SamlIdentityProviderConfig;
@@ -92,6 +93,9 @@ public class SamlIdentityAuthority implements IdentityAuthority, InitializingBea
     // execution service for custom attributes mapping
     private ScriptExecutionService executionService;
 
+    // shared idp metadata
+    private SamlMetadataManager metadataManager;
+
     @Override
     public String getAuthorityId() {
         return SystemKeys.AUTHORITY_SAML;
@@ -123,6 +127,11 @@ public class SamlIdentityAuthority implements IdentityAuthority, InitializingBea
         this.executionService = executionService;
     }
 
+    @Autowired
+    public void setMetadataManager(SamlMetadataManager metadataManager) {
+        this.metadataManager = metadataManager;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         // build templates
@@ -202,6 +211,7 @@ public class SamlIdentityAuthority implements IdentityAuthority, InitializingBea
 
             try {
                 SamlIdentityProviderConfig providerConfig = SamlIdentityProviderConfig.fromConfigurableProvider(cp);
+                providerConfig.setMetadataManager(metadataManager);
 
                 // build registration, will ensure configuration is valid *before* registering
                 // the provider in repositories
@@ -27,6 +27,7 @@ import it.smartcommunitylab.aac.SystemKeys;
 import it.smartcommunitylab.aac.core.base.AbstractConfigurableProvider;
 import it.smartcommunitylab.aac.core.base.ConfigurableIdentityProvider;
 import it.smartcommunitylab.aac.saml.SamlIdentityAuthority;
+import it.smartcommunitylab.aac.saml.service.SamlMetadataManager;
 
 public class SamlIdentityProviderConfig extends AbstractConfigurableProvider {
 
@@ -44,6 +45,9 @@ public class SamlIdentityProviderConfig extends AbstractConfigurableProvider {
     private SamlIdentityProviderConfigMap configMap;
     private RelyingPartyRegistration relyingPartyRegistration;
 
+    // shared metadata cache, optional
+    private SamlMetadataManager metadataManager;
+
     // hook functions
     private Map<String, String> hookFunctions;
 
@@ -136,6 +140,10 @@ public class SamlIdentityProviderConfig extends AbstractConfigurableProvider {
 
     }
 
+    public void setMetadataManager(SamlMetadataManager metadataManager) {
+        this.metadataManager = metadataManager;
+    }
+
     public RelyingPartyRegistration getRelyingPartyRegistration() {
         if (relyingPartyRegistration == null) {
             try {
@@ -183,7 +191,13 @@ public class SamlIdentityProviderConfig extends AbstractConfigurableProvider {
         String registrationId = getProvider();
         RelyingPartyRegistration.Builder builder = RelyingPartyRegistration.withRegistrationId(registrationId);
 
-        if (StringUtils.hasText(idpMetadataLocation)) {
+        if (StringUtils.hasText(idpMetadataLocation) && metadataManager != null) {
+            // read shared metadata to autoconfigure, entityId selects the idp
+            // when metadata describes a federation
+            builder = metadataManager
+                    .fromMetadataLocation(idpMetadataLocation, assertingPartyEntityId)
+                    .registrationId(registrationId);
+        } else if (StringUtils.hasText(idpMetadataLocation)) {
             // read metadata to autoconfigure
             builder = RelyingPartyRegistrations
                     .fromMetadataLocation(idpMetadataLocation)
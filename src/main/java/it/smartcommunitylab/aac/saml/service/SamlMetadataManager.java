@@ -0,0 +1,417 @@
+package it.smartcommunitylab.aac.saml.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml.saml2.metadata.KeyDescriptor;
+import org.opensaml.saml.saml2.metadata.SingleSignOnService;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.xmlsec.keyinfo.KeyInfoSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.saml2.Saml2Exception;
+import org.springframework.security.saml2.core.OpenSamlInitializationService;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.core.Saml2X509Credential.Saml2X509CredentialType;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.Saml2MessageBinding;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+/*
+ * Process-wide cache for SAML IdP metadata
+ *
+ * Every metadata location is fetched and parsed once, entity descriptors are
+ * indexed by entityId and shared between all the providers pointing to the same
+ * url. Entries are refreshed in background via conditional GET, readers keep
+ * using the previous copy until the new one is ready.
+ */
+public class SamlMetadataManager {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_REFRESH_INTERVAL = 6 * 60 * 60;
+
+    static {
+        OpenSamlInitializationService.initialize();
+    }
+
+    private final LoadingCache<String, SamlMetadata> metadata;
+    private final ExecutorService executor;
+
+    private MeterRegistry meterRegistry;
+
+    public SamlMetadataManager() {
+        this(DEFAULT_REFRESH_INTERVAL);
+    }
+
+    public SamlMetadataManager(int refreshInterval) {
+        Assert.isTrue(refreshInterval > 0, "refresh interval must be a positive number");
+
+        // single background thread is enough, reloads are rare
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("saml-metadata-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newSingleThreadExecutor(threadFactory);
+
+        this.metadata = CacheBuilder.newBuilder()
+                .refreshAfterWrite(refreshInterval, TimeUnit.SECONDS) // reload async, serve stale meanwhile
+                .expireAfterAccess(1, TimeUnit.DAYS) // drop unused locations
+                .maximumSize(100)
+                .build(CacheLoader.asyncReloading(new SamlMetadataFetcher(), executor));
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /*
+     * Metadata access
+     */
+    public SamlMetadata getMetadata(String location) {
+        Assert.hasText(location, "metadata location can not be null or empty");
+
+        try {
+            return metadata.get(location);
+        } catch (UncheckedExecutionException | ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new Saml2Exception("error reading metadata from " + location + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    public EntityDescriptor getEntityDescriptor(String location, String entityId) {
+        SamlMetadata meta = getMetadata(location);
+        Map<String, EntityDescriptor> entities = meta.getEntities();
+
+        if (StringUtils.hasText(entityId) && entities.containsKey(entityId)) {
+            return entities.get(entityId);
+        }
+
+        // single entity metadata, ignore mismatching id as per previous behavior
+        if (entities.size() == 1) {
+            return entities.values().iterator().next();
+        }
+
+        if (entities.isEmpty()) {
+            throw new Saml2Exception("no identity provider found in metadata from " + location);
+        }
+
+        throw new Saml2Exception("metadata from " + location + " describes " + entities.size()
+                + " identity providers, a valid entityId is required");
+    }
+
+    /*
+     * Build a registration with asserting party details read from (cached)
+     * metadata. This mirrors RelyingPartyRegistrations.fromMetadataLocation
+     */
+    public RelyingPartyRegistration.Builder fromMetadataLocation(String location, String entityId) {
+        EntityDescriptor descriptor = getEntityDescriptor(location, entityId);
+        IDPSSODescriptor idpssoDescriptor = descriptor.getIDPSSODescriptor(SAMLConstants.SAML20P_NS);
+
+        List<Saml2X509Credential> verification = new ArrayList<>();
+        List<Saml2X509Credential> encryption = new ArrayList<>();
+        for (KeyDescriptor keyDescriptor : idpssoDescriptor.getKeyDescriptors()) {
+            UsageType use = keyDescriptor.getUse();
+            for (X509Certificate certificate : getCertificates(keyDescriptor)) {
+                if (use == null || use == UsageType.UNSPECIFIED || use == UsageType.SIGNING) {
+                    verification.add(new Saml2X509Credential(certificate, Saml2X509CredentialType.VERIFICATION));
+                }
+                if (use == null || use == UsageType.UNSPECIFIED || use == UsageType.ENCRYPTION) {
+                    encryption.add(new Saml2X509Credential(certificate, Saml2X509CredentialType.ENCRYPTION));
+                }
+            }
+        }
+
+        if (verification.isEmpty()) {
+            throw new Saml2Exception(
+                    "metadata for " + descriptor.getEntityID() + " is missing verification certificates");
+        }
+
+        boolean wantAuthnRequestsSigned = (idpssoDescriptor.getWantAuthnRequestsSigned() != null
+                ? idpssoDescriptor.getWantAuthnRequestsSigned().booleanValue()
+                : true);
+
+        RelyingPartyRegistration.Builder builder = RelyingPartyRegistration
+                .withRegistrationId(descriptor.getEntityID())
+                .assertingPartyDetails((party) -> party
+                        .entityId(descriptor.getEntityID())
+                        .wantAuthnRequestsSigned(wantAuthnRequestsSigned)
+                        .verificationX509Credentials((c) -> c.addAll(verification))
+                        .encryptionX509Credentials((c) -> c.addAll(encryption)));
+
+        // pick first supported sso binding
+        for (SingleSignOnService sso : idpssoDescriptor.getSingleSignOnServices()) {
+            Saml2MessageBinding binding = null;
+            if (Saml2MessageBinding.POST.getUrn().equals(sso.getBinding())) {
+                binding = Saml2MessageBinding.POST;
+            } else if (Saml2MessageBinding.REDIRECT.getUrn().equals(sso.getBinding())) {
+                binding = Saml2MessageBinding.REDIRECT;
+            }
+
+            if (binding != null) {
+                Saml2MessageBinding ssoBinding = binding;
+                builder.assertingPartyDetails((party) -> party
+                        .singleSignOnServiceLocation(sso.getLocation())
+                        .singleSignOnServiceBinding(ssoBinding));
+                return builder;
+            }
+        }
+
+        throw new Saml2Exception(
+                "metadata for " + descriptor.getEntityID() + " is missing a supported single sign on service");
+    }
+
+    public void evict(String location) {
+        metadata.invalidate(location);
+    }
+
+    public Map<String, SamlMetadata> listMetadata() {
+        return Collections.unmodifiableMap(metadata.asMap());
+    }
+
+    /*
+     * Helpers
+     */
+
+    private List<X509Certificate> getCertificates(KeyDescriptor keyDescriptor) {
+        try {
+            return KeyInfoSupport.getCertificates(keyDescriptor.getKeyInfo());
+        } catch (CertificateException e) {
+            throw new Saml2Exception("invalid certificate in metadata: " + e.getMessage(), e);
+        }
+    }
+
+    private SamlMetadata parse(String location, byte[] content, String etag, long lastModified) {
+        long start = System.nanoTime();
+
+        XMLObject xmlObject;
+        try (InputStream is = new ByteArrayInputStream(content)) {
+            Document document = XMLObjectProviderRegistrySupport.getParserPool().parse(is);
+            Element element = document.getDocumentElement();
+            Unmarshaller unmarshaller = XMLObjectProviderRegistrySupport.getUnmarshallerFactory()
+                    .getUnmarshaller(element);
+            if (unmarshaller == null) {
+                throw new Saml2Exception("unsupported metadata element " + element.getLocalName());
+            }
+
+            xmlObject = unmarshaller.unmarshall(element);
+        } catch (IOException | XMLParserException | UnmarshallingException e) {
+            throw new Saml2Exception("error parsing metadata: " + e.getMessage(), e);
+        }
+
+        // we don't need the DOM anymore, drop it to keep only the object model
+        xmlObject.releaseChildrenDOM(true);
+        xmlObject.releaseDOM();
+
+        Map<String, EntityDescriptor> entities = new LinkedHashMap<>();
+        collectEntities(xmlObject, entities);
+
+        long parseTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        SamlMetadata meta = new SamlMetadata(location, etag, lastModified, entities, content.length,
+                parseTime);
+
+        logger.info("parsed saml metadata from " + location + " in " + parseTime + "ms: "
+                + entities.size() + " idps, " + content.length + " bytes");
+
+        if (meterRegistry != null) {
+            Timer.builder("aac.saml.metadata.parse")
+                    .tag("location", location)
+                    .register(meterRegistry)
+                    .record(parseTime, TimeUnit.MILLISECONDS);
+            Gauge.builder("aac.saml.metadata.size", metadata, m -> {
+                SamlMetadata s = m.getIfPresent(location);
+                return s != null ? s.getSize() : 0;
+            })
+                    .tag("location", location)
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+
+        return meta;
+    }
+
+    private void collectEntities(XMLObject xmlObject, Map<String, EntityDescriptor> entities) {
+        if (xmlObject instanceof EntityDescriptor) {
+            EntityDescriptor descriptor = (EntityDescriptor) xmlObject;
+            // index only identity providers
+            if (descriptor.getIDPSSODescriptor(SAMLConstants.SAML20P_NS) != null) {
+                entities.put(descriptor.getEntityID(), descriptor);
+            }
+        } else if (xmlObject instanceof EntitiesDescriptor) {
+            EntitiesDescriptor group = (EntitiesDescriptor) xmlObject;
+            for (EntityDescriptor descriptor : group.getEntityDescriptors()) {
+                collectEntities(descriptor, entities);
+            }
+            for (EntitiesDescriptor nested : group.getEntitiesDescriptors()) {
+                collectEntities(nested, entities);
+            }
+        }
+    }
+
+    private class SamlMetadataFetcher extends CacheLoader<String, SamlMetadata> {
+        private final RestTemplate restTemplate;
+        private final ResourceLoader resourceLoader;
+
+        SamlMetadataFetcher() {
+            HttpComponentsClientHttpRequestFactory httpFactory = new HttpComponentsClientHttpRequestFactory(
+                    HttpClientBuilder.create().useSystemProperties().build());
+            this.restTemplate = new RestTemplate(httpFactory);
+            this.resourceLoader = new DefaultResourceLoader();
+        }
+
+        @Override
+        public SamlMetadata load(String location) throws Exception {
+            if (!isHttp(location)) {
+                // local resource, read as is
+                Resource resource = resourceLoader.getResource(location);
+                try (InputStream is = resource.getInputStream()) {
+                    return parse(location, StreamUtils.copyToByteArray(is), null, -1);
+                }
+            }
+
+            try {
+                ResponseEntity<byte[]> response = restTemplate.exchange(location, HttpMethod.GET, null, byte[].class);
+                if (response.getBody() == null) {
+                    throw new Saml2Exception("empty metadata response");
+                }
+
+                return parse(location, response.getBody(),
+                        response.getHeaders().getETag(), response.getHeaders().getLastModified());
+            } catch (RestClientException e) {
+                throw new Saml2Exception("unable to fetch metadata: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public SamlMetadata reload(String location, SamlMetadata previous) throws Exception {
+            if (!isHttp(location)) {
+                return load(location);
+            }
+
+            try {
+                // conditional get, avoid download and parse when unchanged
+                HttpHeaders headers = new HttpHeaders();
+                if (StringUtils.hasText(previous.getEtag())) {
+                    headers.setIfNoneMatch(previous.getEtag());
+                }
+                if (previous.getLastModified() > 0) {
+                    headers.setIfModifiedSince(previous.getLastModified());
+                }
+
+                ResponseEntity<byte[]> response = restTemplate.exchange(location, HttpMethod.GET,
+                        new HttpEntity<>(headers), byte[].class);
+                if (response.getStatusCode() == HttpStatus.NOT_MODIFIED || response.getBody() == null) {
+                    logger.debug("saml metadata from " + location + " not modified");
+                    return previous;
+                }
+
+                return parse(location, response.getBody(),
+                        response.getHeaders().getETag(), response.getHeaders().getLastModified());
+            } catch (RuntimeException e) {
+                // keep serving the previous copy
+                logger.warn("error refreshing saml metadata from " + location + ": " + e.getMessage());
+                return previous;
+            }
+        }
+
+        private boolean isHttp(String location) {
+            return location.startsWith("http://") || location.startsWith("https://");
+        }
+    }
+
+    /*
+     * Parsed metadata, immutable
+     */
+    public static class SamlMetadata {
+        private final String location;
+        private final String etag;
+        private final long lastModified;
+        private final Map<String, EntityDescriptor> entities;
+        private final long size;
+        private final long parseTime;
+
+        public SamlMetadata(String location, String etag, long lastModified, Map<String, EntityDescriptor> entities,
+                long size, long parseTime) {
+            this.location = location;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.entities = Collections.unmodifiableMap(entities);
+            this.size = size;
+            this.parseTime = parseTime;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public Map<String, EntityDescriptor> getEntities() {
+            return entities;
+        }
+
+        // size of the source document, used as footprint estimate
+        public long getSize() {
+            return size;
+        }
+
+        public long getParseTime() {
+            return parseTime;
+        }
+
+    }
+}
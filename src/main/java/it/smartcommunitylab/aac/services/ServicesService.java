@@ -130,6 +130,18 @@ public class ServicesService {
         return services.stream().map(s -> toService(s)).collect(Collectors.toList());
     }
 
+    @Transactional(readOnly = true)
+    public long countServices(String realm) {
+        return serviceRepository.countByRealm(realm);
+    }
+
+    // counts for all realms at once
+    @Transactional(readOnly = true)
+    public Map<String, Long> countServicesByRealm() {
+        return serviceRepository.countGroupByRealm().stream()
+                .collect(Collectors.toMap(r -> (String) r[0], r -> (Long) r[1]));
+    }
+
     @Transactional(readOnly = true)
     public List<it.smartcommunitylab.aac.services.Service> listServices(String realm) {
         List<ServiceEntity> services = serviceRepository.findByRealm(realm);
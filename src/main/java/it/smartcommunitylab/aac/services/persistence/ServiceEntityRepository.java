@@ -34,6 +34,11 @@ public interface ServiceEntityRepository extends CustomJpaRepository<ServiceEnti
 
     List<ServiceEntity> findByRealm(String realm);
 
+    long countByRealm(String realm);
+
+    @Query("select s.realm, count(s) from ServiceEntity s group by s.realm")
+    List<Object[]> countGroupByRealm();
+
     ServiceEntity findByNamespace(String namespace);
 
     @Query("select namespace from #{#entityName}")
@@ -33,6 +33,7 @@ import it.smartcommunitylab.aac.core.provider.IdentityProvider;
 import it.smartcommunitylab.aac.core.provider.IdentityService;
 import it.smartcommunitylab.aac.core.provider.ProviderRepository;
 import it.smartcommunitylab.aac.saml.auth.SamlRelyingPartyRegistrationRepository;
+import it.smartcommunitylab.aac.saml.service.SamlMetadataManager;
 import it.smartcommunitylab.aac.spid.persistence.SpidUserAccountRepository;
 import it.smartcommunitylab.aac.spid.provider.SpidIdentityProvider;
 import it.smartcommunitylab.aac.spid.provider.SpidIdentityProviderConfig;
@@ -82,6 +83,9 @@ public class SpidIdentityAuthority implements IdentityAuthority, InitializingBea
     // execution service for custom attributes mapping
     private ScriptExecutionService executionService;
 
+    // shared idp metadata
+    private SamlMetadataManager metadataManager;
+
     @Override
     public String getAuthorityId() {
         return SystemKeys.AUTHORITY_SPID;
@@ -110,6 +114,11 @@ public class SpidIdentityAuthority implements IdentityAuthority, InitializingBea
         this.executionService = executionService;
     }
 
+    @Autowired
+    public void setMetadataManager(SamlMetadataManager metadataManager) {
+        this.metadataManager = metadataManager;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         // initialize registry
@@ -175,6 +184,7 @@ public class SpidIdentityAuthority implements IdentityAuthority, InitializingBea
 
             try {
                 SpidIdentityProviderConfig providerConfig = SpidIdentityProviderConfig.fromConfigurableProvider(cp);
+                providerConfig.setMetadataManager(metadataManager);
                 providerConfig.setIdps(spidRegistry.getIdentityProviders());
 
                 // build registration, will ensure configuration is valid *before* registering
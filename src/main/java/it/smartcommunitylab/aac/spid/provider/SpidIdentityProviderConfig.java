@@ -39,6 +39,7 @@ import org.springframework.util.StringUtils;
 import it.smartcommunitylab.aac.SystemKeys;
 import it.smartcommunitylab.aac.core.base.AbstractConfigurableProvider;
 import it.smartcommunitylab.aac.core.base.ConfigurableIdentityProvider;
+import it.smartcommunitylab.aac.saml.service.SamlMetadataManager;
 import it.smartcommunitylab.aac.spid.SpidIdentityAuthority;
 import it.smartcommunitylab.aac.spid.model.SpidRegistration;
 
@@ -61,6 +62,9 @@ public class SpidIdentityProviderConfig extends AbstractConfigurableProvider {
     private Set<RelyingPartyRegistration> relyingPartyRegistrations;
     private Map<String, SpidRegistration> idps;
 
+    // shared metadata cache, optional
+    private SamlMetadataManager metadataManager;
+
     // hook functions
     private Map<String, String> hookFunctions;
 
@@ -78,6 +82,10 @@ public class SpidIdentityProviderConfig extends AbstractConfigurableProvider {
 
     }
 
+    public void setMetadataManager(SamlMetadataManager metadataManager) {
+        this.metadataManager = metadataManager;
+    }
+
     public void setIdps(Collection<SpidRegistration> idps) {
         if (idps != null) {
             this.idps = idps.stream().collect(Collectors.toMap(e -> e.getEntityId(), e -> e));
@@ -270,9 +278,16 @@ public class SpidIdentityProviderConfig extends AbstractConfigurableProvider {
         RelyingPartyRegistration.Builder builder = RelyingPartyRegistration.withRegistrationId(registrationId);
 
         // read metadata to autoconfigure
-        builder = RelyingPartyRegistrations
-                .fromMetadataLocation(idpMetadataLocation)
-                .registrationId(registrationId);
+        if (metadataManager != null) {
+            // shared across all realms using the same idps
+            builder = metadataManager
+                    .fromMetadataLocation(idpMetadataLocation, getIdp(idpMetadataUrl).getEntityId())
+                    .registrationId(registrationId);
+        } else {
+            builder = RelyingPartyRegistrations
+                    .fromMetadataLocation(idpMetadataLocation)
+                    .registrationId(registrationId);
+        }
 
         // set fixed config params
         builder
@@ -0,0 +1,173 @@
+package it.smartcommunitylab.aac.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.util.Assert;
+
+/*
+ * Durable queue of rendered mail messages, with DB table creation on startup
+ *
+ * Messages are claimed with a conditional update so that each one is handled by
+ * a single node, and released with a new attempt time on failure. Messages
+ * which exhausted their attempts are parked with no attempt time, for
+ * inspection: the body is dropped, since it may carry links or codes, and the
+ * row is purged after the retention period.
+ */
+public class AutoJdbcMailOutboxStore {
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS mail_outbox ("
+            + "id VARCHAR(64) NOT NULL PRIMARY KEY, recipient VARCHAR(255) NOT NULL, subject VARCHAR(1024), "
+            + "body BLOB, attempts INT DEFAULT 0, createdAt TIMESTAMP, nextAttempt TIMESTAMP NULL, "
+            + "claimedBy VARCHAR(64), claimedAt TIMESTAMP NULL, lastError VARCHAR(1024));";
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into mail_outbox (id, recipient, subject, body, attempts, createdAt, nextAttempt) values (?, ?, ?, ?, 0, ?, ?)";
+    private static final String DEFAULT_SELECT_PENDING_STATEMENT = "select id from mail_outbox where nextAttempt <= ? and (claimedBy is null or claimedAt < ?) order by nextAttempt";
+    private static final String DEFAULT_CLAIM_STATEMENT = "update mail_outbox set claimedBy = ?, claimedAt = ? where id = ? and nextAttempt is not null and (claimedBy is null or claimedAt < ?)";
+    private static final String DEFAULT_SELECT_STATEMENT = "select id, recipient, subject, body, attempts from mail_outbox where id = ? and claimedBy = ?";
+    private static final String DEFAULT_DELETE_STATEMENT = "delete from mail_outbox where id = ?";
+    private static final String DEFAULT_RELEASE_STATEMENT = "update mail_outbox set attempts = attempts + 1, nextAttempt = ?, claimedBy = null, claimedAt = null, lastError = ? where id = ?";
+    private static final String DEFAULT_PARK_STATEMENT = "update mail_outbox set attempts = attempts + 1, nextAttempt = null, body = null, claimedBy = null, claimedAt = null, lastError = ? where id = ?";
+    private static final String DEFAULT_PURGE_STATEMENT = "delete from mail_outbox where nextAttempt is null and createdAt < ?";
+    private static final String DEFAULT_COUNT_PENDING_STATEMENT = "select count(*) from mail_outbox where nextAttempt is not null";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final RowMapper<OutboxMessage> rowMapper = new RowMapper<OutboxMessage>() {
+        public OutboxMessage mapRow(ResultSet rs, int rowNum) throws SQLException {
+            byte[] body = rs.getBytes("body");
+            return new OutboxMessage(rs.getString("id"), rs.getString("recipient"), rs.getString("subject"),
+                    body != null ? new String(body, StandardCharsets.UTF_8) : null,
+                    rs.getInt("attempts"));
+        }
+    };
+
+    public AutoJdbcMailOutboxStore(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        initSchema();
+    }
+
+    protected void initSchema() {
+        jdbcTemplate.execute(DEFAULT_CREATE_TABLE_STATEMENT);
+    }
+
+    public String add(String recipient, String subject, String body) {
+        String id = UUID.randomUUID().toString();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.update(DEFAULT_INSERT_STATEMENT,
+                new Object[] { id, recipient, subject,
+                        new SqlLobValue(body.getBytes(StandardCharsets.UTF_8)), now, now },
+                new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB, Types.TIMESTAMP,
+                        Types.TIMESTAMP });
+
+        return id;
+    }
+
+    /*
+     * Claim up to limit due messages for the given owner, claims older than
+     * lease are considered abandoned
+     */
+    public List<OutboxMessage> claim(String owner, int limit, long leaseMillis) {
+        long now = System.currentTimeMillis();
+        Timestamp ts = new Timestamp(now);
+        Timestamp expired = new Timestamp(now - leaseMillis);
+
+        // limit via max rows, portable across dialects
+        List<String> ids = jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(DEFAULT_SELECT_PENDING_STATEMENT);
+            ps.setMaxRows(limit);
+            ps.setTimestamp(1, ts);
+            ps.setTimestamp(2, expired);
+            return ps;
+        }, (rs, i) -> rs.getString("id"));
+
+        List<OutboxMessage> messages = new ArrayList<>();
+        for (String id : ids) {
+            // only one node wins the update
+            if (jdbcTemplate.update(DEFAULT_CLAIM_STATEMENT, owner, ts, id, expired) == 1) {
+                messages.addAll(jdbcTemplate.query(DEFAULT_SELECT_STATEMENT, rowMapper, id, owner));
+            }
+        }
+
+        return messages;
+    }
+
+    public void remove(String id) {
+        jdbcTemplate.update(DEFAULT_DELETE_STATEMENT, id);
+    }
+
+    /*
+     * Release after a failure, a null next attempt parks the message and drops
+     * its body
+     */
+    public void release(String id, Long nextAttempt, String error) {
+        if (error != null && error.length() > 1024) {
+            error = error.substring(0, 1024);
+        }
+
+        if (nextAttempt == null) {
+            jdbcTemplate.update(DEFAULT_PARK_STATEMENT, error, id);
+        } else {
+            jdbcTemplate.update(DEFAULT_RELEASE_STATEMENT, new Timestamp(nextAttempt), error, id);
+        }
+    }
+
+    /*
+     * Delete parked messages created before the given time
+     */
+    public int purge(long before) {
+        return jdbcTemplate.update(DEFAULT_PURGE_STATEMENT, new Timestamp(before));
+    }
+
+    public long countPending() {
+        return jdbcTemplate.queryForObject(DEFAULT_COUNT_PENDING_STATEMENT, Long.class);
+    }
+
+    public static class OutboxMessage {
+        private final String id;
+        private final String recipient;
+        private final String subject;
+        private final String body;
+        private final int attempts;
+
+        public OutboxMessage(String id, String recipient, String subject, String body, int attempts) {
+            this.id = id;
+            this.recipient = recipient;
+            this.subject = subject;
+            this.body = body;
+            this.attempts = attempts;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getRecipient() {
+            return recipient;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+}
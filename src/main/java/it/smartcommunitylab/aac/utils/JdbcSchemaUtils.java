@@ -0,0 +1,109 @@
+package it.smartcommunitylab.aac.utils;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+/*
+ * Schema inspection for stores which create their own tables
+ *
+ * Table names are looked up as given and then upper case, as some databases
+ * report unquoted names. Results are lowercase, and empty when metadata is not
+ * available.
+ */
+public class JdbcSchemaUtils {
+
+    public static final String UNIQUE_PREFIX = "unique:";
+
+    /*
+     * Index name -> columns, unique indexes are prefixed with UNIQUE_PREFIX
+     */
+    public static Map<String, Set<String>> readIndexes(DataSource dataSource, String tableName) {
+        try {
+            return JdbcUtils.extractDatabaseMetaData(dataSource, (DatabaseMetaData dbmd) -> {
+                Map<String, Set<String>> indexes = new HashMap<>();
+                for (String table : new String[] { tableName, tableName.toUpperCase() }) {
+                    try (ResultSet rs = dbmd.getIndexInfo(null, null, table, false, false)) {
+                        while (rs.next()) {
+                            String name = rs.getString("INDEX_NAME");
+                            String column = rs.getString("COLUMN_NAME");
+                            if (name != null && column != null) {
+                                String key = rs.getBoolean("NON_UNIQUE") ? name.toLowerCase()
+                                        : UNIQUE_PREFIX + name.toLowerCase();
+                                indexes.computeIfAbsent(key, k -> new HashSet<>()).add(column.toLowerCase());
+                            }
+                        }
+                    }
+                    if (!indexes.isEmpty()) {
+                        break;
+                    }
+                }
+                return indexes;
+            });
+        } catch (MetaDataAccessException e) {
+            return new HashMap<>();
+        }
+    }
+
+    /*
+     * Index names, unique or not
+     */
+    public static Set<String> readIndexNames(DataSource dataSource, String tableName) {
+        Set<String> names = new HashSet<>();
+        for (String key : readIndexes(dataSource, tableName).keySet()) {
+            names.add(key.startsWith(UNIQUE_PREFIX) ? key.substring(UNIQUE_PREFIX.length()) : key);
+        }
+
+        return names;
+    }
+
+    /*
+     * Columns covered by any index
+     */
+    public static Set<String> readIndexedColumns(DataSource dataSource, String tableName) {
+        Set<String> columns = new HashSet<>();
+        readIndexes(dataSource, tableName).values().forEach(columns::addAll);
+        return columns;
+    }
+
+    public static Set<String> readColumns(DataSource dataSource, String tableName) {
+        try {
+            return JdbcUtils.extractDatabaseMetaData(dataSource, (DatabaseMetaData dbmd) -> {
+                Set<String> columns = new HashSet<>();
+                for (String table : new String[] { tableName, tableName.toUpperCase() }) {
+                    try (ResultSet rs = dbmd.getColumns(null, null, table, null)) {
+                        while (rs.next()) {
+                            columns.add(rs.getString("COLUMN_NAME").toLowerCase());
+                        }
+                    }
+                    if (!columns.isEmpty()) {
+                        break;
+                    }
+                }
+                return columns;
+            });
+        } catch (MetaDataAccessException e) {
+            return new HashSet<>();
+        }
+    }
+
+    /*
+     * Common product name, as in JdbcUtils.commonDatabaseName
+     */
+    public static String readProductName(DataSource dataSource) {
+        try {
+            return JdbcUtils.commonDatabaseName(
+                    JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName));
+        } catch (MetaDataAccessException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package it.smartcommunitylab.aac.utils;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.smartcommunitylab.aac.utils.AutoJdbcMailOutboxStore.OutboxMessage;
+
+/*
+ * Asynchronous delivery of queued mail
+ *
+ * A poller claims due messages from the outbox and hands them in batches to a
+ * small worker pool. Only as many batches as there are idle workers are
+ * claimed, so that claims never wait in a queue past their lease. Each batch is
+ * sent over a single smtp connection. Failed messages are retried with
+ * exponential backoff, up to a maximum number of attempts, and parked messages
+ * are purged after the retention period.
+ */
+public class MailOutbox implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_BATCH_SIZE = 20;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final int DEFAULT_BACKOFF = 30;
+    public static final int MAX_BACKOFF = 3600;
+    public static final int DEFAULT_RETENTION = 7;
+
+    private final AutoJdbcMailOutboxStore store;
+    private final JavaMailSender mailSender;
+    private final String from;
+
+    // identifies this node for claims
+    private final String owner = UUID.randomUUID().toString();
+
+    private final ScheduledExecutorService poller;
+    private final ExecutorService workers;
+    private final Semaphore idle;
+    private final AtomicBoolean polling = new AtomicBoolean(false);
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long backoffMillis = DEFAULT_BACKOFF * 1000L;
+    private long leaseMillis = 10 * 60 * 1000L;
+    private long retentionMillis = DEFAULT_RETENTION * 24 * 3600 * 1000L;
+
+    // metrics
+    private final AtomicLong pending = new AtomicLong(0);
+    private Timer sendTimer;
+    private Counter sentCounter;
+    private Counter failedCounter;
+
+    public MailOutbox(AutoJdbcMailOutboxStore store, JavaMailSender mailSender, String from,
+            int threads, int pollInterval) {
+        Assert.notNull(store, "outbox store is required");
+        Assert.notNull(mailSender, "mail sender is required");
+        Assert.isTrue(threads > 0, "threads must be a positive number");
+        Assert.isTrue(pollInterval > 0, "poll interval must be a positive number");
+
+        this.store = store;
+        this.mailSender = mailSender;
+        this.from = from;
+        this.idle = new Semaphore(threads);
+
+        CustomizableThreadFactory workerFactory = new CustomizableThreadFactory("mail-outbox-");
+        workerFactory.setDaemon(true);
+        this.workers = Executors.newFixedThreadPool(threads, workerFactory);
+
+        CustomizableThreadFactory pollerFactory = new CustomizableThreadFactory("mail-outbox-poll-");
+        pollerFactory.setDaemon(true);
+        this.poller = Executors.newSingleThreadScheduledExecutor(pollerFactory);
+        this.poller.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.SECONDS);
+        this.poller.scheduleWithFixedDelay(this::purge, 1, 1, TimeUnit.HOURS);
+    }
+
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batch size must be a positive number");
+        this.batchSize = batchSize;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        Assert.isTrue(maxAttempts > 0, "max attempts must be a positive number");
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void setBackoff(int backoff) {
+        Assert.isTrue(backoff > 0, "backoff must be a positive number");
+        this.backoffMillis = backoff * 1000L;
+    }
+
+    public void setRetention(int retention) {
+        Assert.isTrue(retention > 0, "retention must be a positive number");
+        this.retentionMillis = retention * 24 * 3600 * 1000L;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            sendTimer = Timer.builder("aac.mail.send").register(meterRegistry);
+            sentCounter = Counter.builder("aac.mail.sent").register(meterRegistry);
+            failedCounter = Counter.builder("aac.mail.failed").register(meterRegistry);
+            Gauge.builder("aac.mail.outbox", pending, p -> p.get()).register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        poller.shutdownNow();
+        workers.shutdown();
+    }
+
+    /*
+     * Enqueue a rendered message, delivery happens in background
+     */
+    public void enqueue(String recipient, String subject, String body) {
+        store.add(recipient, subject, body);
+        pending.incrementAndGet();
+
+        // don't wait for the next round, when shut down the message stays queued
+        if (poller.isShutdown()) {
+            return;
+        }
+
+        try {
+            poller.execute(this::poll);
+        } catch (RejectedExecutionException e) {
+            // shutdown in progress
+        }
+    }
+
+    private void poll() {
+        // one round at a time
+        if (!polling.compareAndSet(false, true)) {
+            return;
+        }
+
+        // claim one batch per idle worker, permits are returned when done
+        int slots = idle.drainPermits();
+        try {
+            if (slots > 0) {
+                List<OutboxMessage> messages = store.claim(owner, batchSize * slots, leaseMillis);
+                for (int i = 0; i < messages.size(); i += batchSize) {
+                    List<OutboxMessage> batch = new ArrayList<>(
+                            messages.subList(i, Math.min(messages.size(), i + batchSize)));
+                    workers.execute(() -> {
+                        try {
+                            send(batch);
+                        } finally {
+                            idle.release();
+                        }
+                    });
+                    slots--;
+                }
+            }
+
+            pending.set(store.countPending());
+        } catch (RuntimeException e) {
+            // keep schedule alive, unsent claims expire with their lease
+            logger.error("error polling mail outbox: " + e.getMessage());
+        } finally {
+            idle.release(slots);
+            polling.set(false);
+        }
+    }
+
+    private void purge() {
+        try {
+            int count = store.purge(System.currentTimeMillis() - retentionMillis);
+            if (count > 0) {
+                logger.debug("purged " + count + " parked mails from outbox");
+            }
+        } catch (RuntimeException e) {
+            // keep schedule alive
+            logger.error("error purging mail outbox: " + e.getMessage());
+        }
+    }
+
+    private void send(List<OutboxMessage> batch) {
+        Map<MimeMessage, OutboxMessage> mimeMessages = new IdentityHashMap<>();
+        for (OutboxMessage m : batch) {
+            try {
+                mimeMessages.put(build(m), m);
+            } catch (MessagingException e) {
+                // broken message, retrying won't help
+                failed(m, e, false);
+            }
+        }
+
+        if (mimeMessages.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        Map<Object, Exception> failures = new IdentityHashMap<>();
+        try {
+            // single connection for the whole batch
+            mailSender.send(mimeMessages.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            failures.putAll(e.getFailedMessages());
+            if (failures.isEmpty()) {
+                // connection level failure, nothing was sent
+                mimeMessages.keySet().forEach(mm -> failures.put(mm, e));
+            }
+        } catch (MailException e) {
+            mimeMessages.keySet().forEach(mm -> failures.put(mm, e));
+        } finally {
+            if (sendTimer != null) {
+                sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        for (Map.Entry<MimeMessage, OutboxMessage> e : mimeMessages.entrySet()) {
+            OutboxMessage m = e.getValue();
+            Exception ex = failures.get(e.getKey());
+            if (ex == null) {
+                store.remove(m.getId());
+                if (sentCounter != null) {
+                    sentCounter.increment();
+                }
+            } else {
+                failed(m, ex, true);
+            }
+        }
+    }
+
+    private MimeMessage build(OutboxMessage m) throws MessagingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper message = new MimeMessageHelper(mimeMessage, true, "UTF-8");
+        message.setSubject(m.getSubject());
+        message.setFrom(from);
+        message.setTo(m.getRecipient());
+        message.setText(m.getBody(), true);
+        return mimeMessage;
+    }
+
+    private void failed(OutboxMessage m, Exception e, boolean retry) {
+        if (failedCounter != null) {
+            failedCounter.increment();
+        }
+
+        int attempts = m.getAttempts() + 1;
+        Long nextAttempt = null;
+        if (retry && attempts < maxAttempts) {
+            // exponential backoff, capped
+            long delay = Math.min(backoffMillis << Math.min(attempts - 1, 16), MAX_BACKOFF * 1000L);
+            nextAttempt = System.currentTimeMillis() + delay;
+            logger.warn("error sending mail " + m.getId() + ", retry in " + (delay / 1000) + "s: " + e.getMessage());
+        } else {
+            logger.error("error sending mail " + m.getId() + ", giving up: " + e.getMessage());
+        }
+
+        store.release(m.getId(), nextAttempt, e.getMessage());
+    }
+}
@@ -21,10 +21,12 @@ import java.util.Map;
 import java.util.Properties;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
+import javax.sql.DataSource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +39,8 @@ import org.springframework.stereotype.Component;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 /**
  * Mail send utilities
  * 
@@ -70,6 +74,29 @@ public class MailService {
     @Value("classpath:/javamail.properties")
     private org.springframework.core.io.Resource mailProps;
 
+    @Value("${mail.outbox.enabled}")
+    private boolean outboxEnabled;
+    @Value("${mail.outbox.threads}")
+    private int outboxThreads;
+    @Value("${mail.outbox.poll}")
+    private int outboxPollInterval;
+    @Value("${mail.outbox.batch}")
+    private int outboxBatchSize;
+    @Value("${mail.outbox.attempts}")
+    private int outboxMaxAttempts;
+    @Value("${mail.outbox.backoff}")
+    private int outboxBackoff;
+    @Value("${mail.outbox.retention}")
+    private int outboxRetention;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private MailOutbox outbox;
+
     @Resource(name = "messageSource")
     private MessageSource messageSource;
 
@@ -92,6 +119,23 @@ public class MailService {
         props.load(mailProps.getInputStream());
         mailSender.setJavaMailProperties(props);
 
+        if (outboxEnabled) {
+            // queue and send in background
+            outbox = new MailOutbox(new AutoJdbcMailOutboxStore(dataSource), mailSender, mailUser,
+                    outboxThreads, outboxPollInterval);
+            outbox.setBatchSize(outboxBatchSize);
+            outbox.setMaxAttempts(outboxMaxAttempts);
+            outbox.setBackoff(outboxBackoff);
+            outbox.setRetention(outboxRetention);
+            outbox.setMeterRegistry(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws Exception {
+        if (outbox != null) {
+            outbox.destroy();
+        }
     }
 
     public MessageSource getMessageSource() {
@@ -101,6 +145,9 @@ public class MailService {
     /**
      * Send email based on specified template
      * 
+     * When the outbox is enabled the message is rendered and queued, and this
+     * returns without waiting for smtp.
+     * 
      * @param email    recepient
      * @param template Thymeleaf template reference
      * @param subject  mail subject
@@ -117,14 +164,19 @@ public class MailService {
             }
         }
 
+        // Create the HTML body using Thymeleaf, parsed templates are cached
+        final String htmlContent = this.templateEngine.process(template, ctx);
+
+        if (outbox != null) {
+            outbox.enqueue(email, subject, htmlContent);
+            return;
+        }
+
         final MimeMessage mimeMessage = mailSender.createMimeMessage();
         final MimeMessageHelper message = new MimeMessageHelper(mimeMessage, true, "UTF-8");
         message.setSubject(subject);
         message.setFrom(mailUser);
         message.setTo(email);
-
-        // Create the HTML body using Thymeleaf
-        final String htmlContent = this.templateEngine.process(template, ctx);
         message.setText(htmlContent, true);
         // Send mail
         mailSender.send(mimeMessage);